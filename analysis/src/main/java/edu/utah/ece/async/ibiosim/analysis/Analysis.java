@@ -72,8 +72,8 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
  *    <li>-sErr [value]: positive double for relative error</li>
  *    <li>-sd [value]: long for random seed</li>
  *    <li>-r [value]: integer for number of runs</li>
- *    <li>-sim [value]: simulation type. Options are: ode, hode, ssa, hssa, dfba, jode, jssa.</li>
- *    <li>-data [value]: graph data type. Options are: csv, tsd.</li>
+ *    <li>-sim [value]: simulation type. Options are: ode, hode, ssa, hssa, dfba, jode, jssa, jstiff, hstiff.</li>
+ *    <li>-data [value]: graph data type. Options are: csv, tsd, btsd.</li>
  *  </ul>
  *  <li>Input file: (Combine archive, SED-ML, or SBML.</li>
  * </ul>
@@ -97,6 +97,7 @@ public class Analysis implements BioObserver
   private static final String rErr = "Relative Error";
   private static final String sd = "Random Seed";
   private static final String r = "Number of Runs";
+  private static final String th = "Number of Threads";
   private static final String sim = "Simulation";
   private static final String data = "Graph Data Type";
 
@@ -131,6 +132,7 @@ public class Analysis implements BioObserver
     System.err.println("\t -sErr [value]: relative error");
     System.err.println("\t -sd [value]: random seed");
     System.err.println("\t -r [value]: number of runs");
+    System.err.println("\t -th [value]: number of threads that simulate the runs");
     System.err.println("\t -sim [value]: simulation type");
     System.err.println("\t -data [value]: output data type");
     System.exit(1);
@@ -205,6 +207,9 @@ public class Analysis implements BioObserver
       case "-r":
         analysis.propertiesMap.put(r, value);
         break;
+      case "-th":
+        analysis.propertiesMap.put(th, value);
+        break;
       case "-sim":
         analysis.propertiesMap.put(sim, value);
         break;
@@ -512,6 +517,10 @@ public class Analysis implements BioObserver
       {
         simProperties.setRun(Integer.parseInt(value));
       }
+      else if(key == th)
+      {
+        simProperties.setThreads(Integer.parseInt(value));
+      }
       else if(key == sim)
       {
         if(value.equals("ode"))
@@ -544,6 +553,16 @@ public class Analysis implements BioObserver
           properties.setSim("Runge-Kutta-Fehlberg (Dynamic)");
           properties.setOde();
         }
+        else if(value.equals("jstiff"))
+        {
+          properties.setSim("Rosenbrock (Dynamic)");
+          properties.setOde();
+        }
+        else if(value.equals("hstiff"))
+        {
+          properties.setSim("Rosenbrock (Hierarchical)");
+          properties.setOde();
+        }
         else if(value.equals("jssa"))
         {
           properties.setSim("SSA-Direct (Dynamic)");
@@ -564,6 +583,10 @@ public class Analysis implements BioObserver
         {
           simProperties.setPrinter_id(GraphData.TSD_DATA_TYPE);
         }
+        else if(value.equals("btsd"))
+        {
+          simProperties.setPrinter_id(GraphData.BTSD_DATA_TYPE);
+        }
       }
     }
   }
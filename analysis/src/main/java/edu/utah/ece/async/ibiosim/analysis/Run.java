@@ -529,6 +529,16 @@ public class Run extends CoreObservable implements ActionListener
       dynSim = new DynamicSimulation(SimulationType.DIRECT);
       dynSim.addObservable(this);
     }
+    else if (sim.equals("SSA-NRM (Dynamic)"))
+    {
+      dynSim = new DynamicSimulation(SimulationType.NRM);
+      dynSim.addObservable(this);
+    }
+    else if (sim.equals("SSA-Tau-Leap (Dynamic)"))
+    {
+      dynSim = new DynamicSimulation(SimulationType.TAU_LEAP);
+      dynSim.addObservable(this);
+    }
     else if (sim.equals("SSA-Direct (Flatten)"))
     {
       dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_DIRECT);
@@ -564,6 +574,16 @@ public class Run extends CoreObservable implements ActionListener
       dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_RK);
       dynSim.addObservable(this);
     }
+    else if (sim.equals("Rosenbrock (Dynamic)"))
+    {
+      dynSim = new DynamicSimulation(SimulationType.ROSENBROCK);
+      dynSim.addObservable(this);
+    }
+    else if (sim.equals("Rosenbrock (Hierarchical)"))
+    {
+      dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_ROSENBROCK);
+      dynSim.addObservable(this);
+    }
     else if (sim.equals("atacs"))
     {
       exitValue = executeAtacs();
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The rate matrix of a state graph in compressed sparse row form. Row i holds
+ * the rates of the enabled transitions that enter state i, so one step of the
+ * uniformization series computes every entry of the next probability vector
+ * from the current one without writing to any shared location. The rows are
+ * split into blocks with about the same number of entries, and the blocks are
+ * processed in parallel when the matrix is large enough.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SparseRateMatrix {
+
+	private static final int MIN_BLOCK_SIZE = 1 << 14;
+
+	private final int size;
+
+	private final int[] rowStart;
+
+	private final int[] columns;
+
+	private final double[] rates;
+
+	private final double[] exitRates;
+
+	private final int[] blocks;
+
+	/**
+	 * Creates a matrix from its rows. The entries of row i are stored from
+	 * rowStart[i] to rowStart[i + 1] in columns and rates, and exitRates[i] is
+	 * the sum of the rates of the enabled transitions that leave state i.
+	 */
+	public SparseRateMatrix(int[] rowStart, int[] columns, double[] rates, double[] exitRates) {
+		this.size = exitRates.length;
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.rates = rates;
+		this.exitRates = exitRates;
+		this.blocks = createBlocks(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the number of states.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of stored transitions.
+	 */
+	public int getNumberOfEntries() {
+		return rowStart[size];
+	}
+
+	/**
+	 * Performs the k-th step of the uniformization series with rate Gamma over
+	 * the given time. The next vector is set to current * P * (Gamma * time / k),
+	 * where P is the uniformized transition matrix, and is added to pi.
+	 */
+	public void step(final double[] current, final double[] next, final double[] pi, final double Gamma,
+			final double time, final int k) {
+		final double scale = (Gamma * time) / k;
+		if (blocks.length == 2) {
+			step(current, next, pi, Gamma, scale, 0, size);
+			return;
+		}
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(blocks.length - 1);
+		for (int i = 0; i + 1 < blocks.length; i++) {
+			final int start = blocks[i];
+			final int end = blocks[i + 1];
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					step(current, next, pi, Gamma, scale, start, end);
+				}
+			});
+		}
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	private void step(double[] current, double[] next, double[] pi, double Gamma, double scale, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double nextProb = current[i] * (1 - (exitRates[i] / Gamma));
+			for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+				nextProb += current[columns[j]] * (rates[j] / Gamma);
+			}
+			nextProb *= scale;
+			next[i] = nextProb;
+			pi[i] += nextProb;
+		}
+	}
+
+	private int[] createBlocks(int threads) {
+		int count = Math.max(1, Math.min(threads, size / MIN_BLOCK_SIZE));
+		int[] bounds = new int[count + 1];
+		long work = (long) size + rowStart[size];
+		int row = 0;
+		for (int i = 1; i < count; i++) {
+			long target = (work * i) / count;
+			while (row < size && (long) row + rowStart[row] < target) {
+				row++;
+			}
+			bounds[i] = row;
+		}
+		bounds[count] = size;
+		return bounds;
+	}
+}
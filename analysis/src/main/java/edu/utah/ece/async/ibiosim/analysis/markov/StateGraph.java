@@ -50,15 +50,13 @@ public class StateGraph extends CoreObservable implements Runnable {
 
 	private LPN lhpn;
 
-	private boolean stop;
+	private volatile boolean stop;
 
 	private String markovResults;
 
 	private DataParser probData;
 
-	private int waitingThreads, threadCount;
-
-	private boolean phase1, phase2;
+	private SparseRateMatrix rateMatrix;
 	
 	private double totalUsedMemory, usedMemory;
 
@@ -77,6 +75,7 @@ public class StateGraph extends CoreObservable implements Runnable {
 	public void buildStateGraph(JProgressBar progress) {
 		System.gc();
 		long initialMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		rateMatrix = null;
 		stateGraph = new ArrayList<State>();// HashMap<String,
 		// LinkedList<State>>();
 		HashMap<String, LinkedList<Integer>> stateLocations = new HashMap<String, LinkedList<Integer>>();
@@ -993,8 +992,7 @@ public class StateGraph extends CoreObservable implements Runnable {
 		return id;
 	}
 
-	private synchronized boolean performTransientMarkovianAnalysis(double timeLimit, double Gamma, int K,
-			JProgressBar progress) {
+	private boolean performTransientMarkovianAnalysis(double timeLimit, double Gamma, int K, JProgressBar progress) {
 		if (timeLimit == 0.0) {
 			return true;
 		}
@@ -1002,177 +1000,84 @@ public class StateGraph extends CoreObservable implements Runnable {
 		if (progress != null) {
 			progressValue = progress.getValue();
 		}
+		SparseRateMatrix matrix = getRateMatrix();
+		int size = matrix.size();
+		double[] current = new double[size];
+		double[] next = new double[size];
+		double[] pi = new double[size];
+		for (int i = 0; i < size; i++) {
+			State m = stateGraph.get(i);
+			current[i] = m.getCurrentProb();
+			pi[i] = m.getPiProb();
+		}
 		// Approximate pi(t)
-		threadCount = 4;
-		waitingThreads = threadCount;
-		phase1 = true;
-		phase2 = false;
-		ArrayList<TransientMarkovMatrixMultiplyThread> threads = new ArrayList<TransientMarkovMatrixMultiplyThread>();
-		for (int i = 0; i < threadCount; i++) {
-			TransientMarkovMatrixMultiplyThread thread = new TransientMarkovMatrixMultiplyThread(this);
-			thread.start((i * stateGraph.size()) / threadCount, ((i + 1) * stateGraph.size()) / threadCount, Gamma,
-					timeLimit, K);
-			threads.add(thread);
-		}
-		for (int k = 1; k <= K && !stop; k++) {
-			while (waitingThreads != 0) {
-				try {
-					notifyAll();
-					wait();
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+		for (int k = 1; k <= K; k++) {
 			if (stop) {
-				for (TransientMarkovMatrixMultiplyThread thread : threads) {
-					try {
-						thread.join();
-					}
-					catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
 				return false;
 			}
-			phase1 = false;
-			phase2 = true;
-			while (waitingThreads != threadCount) {
-				try {
-					notifyAll();
-					wait();
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			if (stop) {
-				for (TransientMarkovMatrixMultiplyThread thread : threads) {
-					try {
-						thread.join();
-					}
-					catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				return false;
-			}
-			phase1 = true;
-			phase2 = false;
+			matrix.step(current, next, pi, Gamma, timeLimit, k);
+			double[] temp = current;
+			current = next;
+			next = temp;
 			if (progress != null) {
 				progress.setValue(progressValue + ((int) ((timeLimit * k) / K)));
 			}
-			/*
-			 * for (State m : stateGraph) { //for (String state :
-			 * stateGraph.keySet()) { // for (State m : stateGraph.get(state)) {
-			 * double nextProb = m.getCurrentProb() (1 -
-			 * (m.getTransitionSum(0.0, null) / Gamma)); for
-			 * (StateTransitionPair prev : m.getPrevStatesWithTrans()) { // if
-			 * (lhpn.getTransitionRateTree(prev.getTransition()) // != null) {
-			 * // prob = //
-			 * lhpn.getTransitionRateTree(prev.getTransition()).evaluateExpr
-			 * (prev.getState().getVariables()); // } nextProb +=
-			 * (prev.getState().getCurrentProb() * (prev.getTransition() /
-			 * Gamma)); } m.setNextProb(nextProb * ((Gamma * timeLimit) / k));
-			 * m.setPiProb(m.getPiProb() + m.getNextProb()); //} } if (stop) {
-			 * return false; } for (State m : stateGraph) { //for (String state
-			 * : stateGraph.keySet()) { //for (State m : stateGraph.get(state))
-			 * { m.setCurrentProbToNext(); //} } progress.setValue(progressValue
-			 * + ((int) ((timeLimit * k) / K)));
-			 */
-		}
-		try {
-			while (waitingThreads != 0) {
-				try {
-					notifyAll();
-					wait(10);
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			for (TransientMarkovMatrixMultiplyThread thread : threads) {
-				thread.join();
-			}
-		}
-		catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-		if (!stop) {
-			for (State m : stateGraph) {
-				// for (String state : stateGraph.keySet()) {
-				// for (State m : stateGraph.get(state)) {
-				m.setPiProb(m.getPiProb() * (Math.pow(Math.E, ((0 - Gamma) * timeLimit))));
-				m.setCurrentProbToPi();
-				// }
-			}
 		}
 		if (stop) {
 			return false;
 		}
+		double scale = Math.pow(Math.E, ((0 - Gamma) * timeLimit));
+		for (int i = 0; i < size; i++) {
+			State m = stateGraph.get(i);
+			m.setPiProb(pi[i] * scale);
+			m.setCurrentProbToPi();
+		}
 		return true;
 	}
 
-	public synchronized void transientMarkovMatrixMultiplication(int startIndex, int endIndex, double Gamma,
-			double timeLimit, int K) {
-		for (int k = 1; k <= K && !stop; k++) {
-			for (int i = startIndex; i < endIndex; i++) {
+	/**
+	 * Returns the rate matrix of the enabled transitions, which is built the
+	 * first time it is needed after the state graph or the enabled transitions
+	 * change.
+	 */
+	private SparseRateMatrix getRateMatrix() {
+		if (rateMatrix == null) {
+			HashMap<State, Integer> indices = new HashMap<State, Integer>();
+			int entries = 0;
+			for (int i = 0; i < stateGraph.size(); i++) {
 				State m = stateGraph.get(i);
-				double nextProb = m.getCurrentProb() * (1 - (m.getTransitionSum(0.0, null) / Gamma));
+				indices.put(m, i);
 				for (StateTransitionPair prev : m.getPrevStatesWithTrans()) {
 					if (prev.isEnabled()) {
-						nextProb += (prev.getState().getCurrentProb() * (prev.getTransition() / Gamma));
+						entries++;
 					}
 				}
-				m.setNextProb(nextProb * ((Gamma * timeLimit) / k));
-				m.setPiProb(m.getPiProb() + m.getNextProb());
-				if (stop) {
-					waitingThreads--;
-					notifyAll();
-					return;
-				}
-			}
-			waitingThreads--;
-			if (waitingThreads == 0) {
-				notifyAll();
-			}
-			try {
-				while (!phase2 && !stop) {
-					wait();
-				}
 			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			for (int i = startIndex; i < endIndex; i++) {
+			int[] rowStart = new int[stateGraph.size() + 1];
+			int[] columns = new int[entries];
+			double[] rates = new double[entries];
+			double[] exitRates = new double[stateGraph.size()];
+			int entry = 0;
+			for (int i = 0; i < stateGraph.size(); i++) {
 				State m = stateGraph.get(i);
-				m.setCurrentProbToNext();
-				if (stop) {
-					waitingThreads++;
-					notifyAll();
-					return;
-				}
-			}
-			waitingThreads++;
-			if (waitingThreads == threadCount) {
-				notifyAll();
-			}
-			try {
-				while (!phase1 && !stop) {
-					wait();
+				rowStart[i] = entry;
+				for (StateTransitionPair prev : m.getPrevStatesWithTrans()) {
+					if (prev.isEnabled()) {
+						columns[entry] = indices.get(prev.getState());
+						rates[entry] = prev.getTransition();
+						entry++;
+					}
 				}
+				exitRates[i] = m.getTransitionSum(0.0, null);
 			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			if (stop) {
-				return;
-			}
+			rowStart[stateGraph.size()] = entry;
+			rateMatrix = new SparseRateMatrix(rowStart, columns, rates, exitRates);
 		}
-		waitingThreads--;
+		return rateMatrix;
 	}
 
 	public void pruneStateGraph(String condition) {
+		rateMatrix = null;
 		for (State m : stateGraph) {
 			// for (String state : stateGraph.keySet()) {
 			// for (State m : stateGraph.get(state)) {
@@ -1205,6 +1110,7 @@ public class StateGraph extends CoreObservable implements Runnable {
 	}
 
 	public void enableAllTransitions() {
+		rateMatrix = null;
 		for (State m : stateGraph) {
 			for (StateTransitionPair trans : m.getNextStatesWithTrans()) {
 				trans.setEnabled(true);
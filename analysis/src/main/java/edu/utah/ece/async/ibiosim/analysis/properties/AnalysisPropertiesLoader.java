@@ -357,6 +357,10 @@ public class AnalysisPropertiesLoader {
         {
         	simProperties.setStartIndex(Integer.parseInt(load.getProperty(mc_start_index)));
         }
+        else if (key.equals(mc_threads))
+        {
+          simProperties.setThreads(Integer.parseInt(load.getProperty(mc_threads)));
+        }
         else if (key.equals("abstraction.interesting"))
         {
           String intVars = load.getProperty("abstraction.interesting");
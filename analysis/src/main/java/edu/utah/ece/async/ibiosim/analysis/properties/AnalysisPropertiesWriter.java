@@ -273,6 +273,7 @@ public class AnalysisPropertiesWriter {
       properties.setProperty(mc_seed, String.valueOf(analysisProperties.getSimulationProperties().getRndSeed()));
       properties.setProperty(mc_runs, String.valueOf(analysisProperties.getSimulationProperties().getRun()));
       properties.setProperty(mc_start_index, String.valueOf(analysisProperties.getSimulationProperties().getStartIndex()));
+      properties.setProperty(mc_threads, String.valueOf(analysisProperties.getSimulationProperties().getThreads()));
       properties.setProperty(ode_out_dir, analysisProperties.getOutDir());
     }
     if (analysisProperties.isSsa())
@@ -306,6 +307,7 @@ public class AnalysisPropertiesWriter {
       properties.setProperty(mc_seed, String.valueOf(analysisProperties.getSimulationProperties().getRndSeed()));
       properties.setProperty(mc_runs, String.valueOf(analysisProperties.getSimulationProperties().getRun()));
       properties.setProperty(mc_start_index, String.valueOf(analysisProperties.getSimulationProperties().getStartIndex()));
+      properties.setProperty(mc_threads, String.valueOf(analysisProperties.getSimulationProperties().getThreads()));
       properties.setProperty(mc_out_dir, analysisProperties.getOutDir());
     }
     properties.setProperty(sim_run_term , "constraint");
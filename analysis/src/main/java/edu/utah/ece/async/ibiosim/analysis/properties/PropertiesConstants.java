@@ -76,5 +76,6 @@ public class PropertiesConstants {
 	public static final String mc_simulation_runs = "monte.carlo.simulation.runs";
 	public static final String mc_out_dir = "monte.carlo.simulation.out.dir";
 	public static final String mc_start_index = "monte.carlo.simulation.start.index";
+	public static final String mc_threads = "monte.carlo.simulation.threads";
 	
 }
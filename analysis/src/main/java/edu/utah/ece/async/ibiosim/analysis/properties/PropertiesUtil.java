@@ -53,6 +53,11 @@ public class PropertiesUtil {
       {
         algorithm = new Algorithm(GlobalConstants.KISAO_RUNGE_KUTTA_PRINCE_DORMAND);
       }
+      else if (sim.contains("Rosenbrock"))
+      {
+        algorithm = new Algorithm(GlobalConstants.KISAO_ROSENBROCK);
+        para.setAttribute("method", sim);
+      }
       else if (sim.contains("rkf45") || sim.contains("Runge-Kutta-Fehlberg"))
       {
         algorithm = new Algorithm(GlobalConstants.KISAO_RUNGE_KUTTA_FEHLBERG);
@@ -82,6 +87,14 @@ public class PropertiesUtil {
       {
         algorithm = new Algorithm(GlobalConstants.KISAO_SSA_CR);
       }
+      else if (sim.contains("SSA-NRM"))
+      {
+        algorithm = new Algorithm(GlobalConstants.KISAO_NEXT_REACTION);
+      }
+      else if (sim.contains("SSA-Tau-Leap"))
+      {
+        algorithm = new Algorithm(GlobalConstants.KISAO_TAU_LEAPING);
+      }
       else {
         algorithm = new Algorithm(GlobalConstants.KISAO_GILLESPIE_DIRECT);
         para.setAttribute("method", sim);
@@ -169,6 +182,12 @@ public class PropertiesUtil {
       if (method!=null) {
         properties.setSim(method);
       }
+    } else if (kisaoId.equals(GlobalConstants.KISAO_ROSENBROCK)) {
+      properties.setOde();
+      properties.setSim("Rosenbrock (Dynamic)");
+      if (method!=null) {
+        properties.setSim(method);
+      }
     } else if (kisaoId.equals(GlobalConstants.KISAO_RUNGE_KUTTA_PRINCE_DORMAND)) {
       properties.setOde();
       properties.setSim("rk8pd");
@@ -202,6 +221,12 @@ public class PropertiesUtil {
     } else if (kisaoId.equals(GlobalConstants.KISAO_SSA_CR)) {
       properties.setSsa();
       properties.setSim("SSA-CR (Dynamic)");
+    } else if (kisaoId.equals(GlobalConstants.KISAO_NEXT_REACTION)) {
+      properties.setSsa();
+      properties.setSim("SSA-NRM (Dynamic)");
+    } else if (kisaoId.equals(GlobalConstants.KISAO_TAU_LEAPING)) {
+      properties.setSsa();
+      properties.setSim("SSA-Tau-Leap (Dynamic)");
     }
     else if (kisaoId.equals(GlobalConstants.KISAO_FBA))
     {
@@ -30,7 +30,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
 public final class SimulationProperties extends CoreObservable
 {
 
-  private int         numSteps, run, startIndex;
+  private int         numSteps, run, startIndex, threads;
   private double        initialTime, outputStartTime, minTimeStep, maxTimeStep, printInterval, timeLimit, absError, relError;
   private String        printer_id, printer_track_quantity,genStats;
   private long        rndSeed;
@@ -54,6 +54,7 @@ public final class SimulationProperties extends CoreObservable
     timeLimit = 100;
     intSpecies = new ArrayList<String>();
     startIndex = 1;
+    threads = 1;
     
   }
   /**
@@ -168,6 +169,15 @@ public final class SimulationProperties extends CoreObservable
   public int getRun() {
     return run;
   }
+
+  /**
+   * Getter for the number of threads used to simulate independent runs.
+   * 
+   * @return the number of threads.
+   */
+  public int getThreads() {
+    return threads;
+  }
   
   /**
    * Setter for absolute error.
@@ -268,6 +278,15 @@ public final class SimulationProperties extends CoreObservable
   public void setRun(int run) {
     this.run = run;
   }
+
+  /**
+   * Setter for the number of threads used to simulate independent runs.
+   * 
+   * @param a positive integer corresponding to the number of threads.
+   */
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
   
   /**
    * Setter for the simulation time limit.
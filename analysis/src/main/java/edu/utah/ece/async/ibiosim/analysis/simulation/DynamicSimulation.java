@@ -19,13 +19,21 @@ import javax.xml.stream.XMLStreamException;
 
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.EnsembleSimulation.SimulatorFactory;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorODERK;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSACR;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSADirect;
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSANRM;
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSATauLeap;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalBinaryWriter;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalHybridSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.graphData.GraphData;
 import edu.utah.ece.async.ibiosim.dataModels.util.Message;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.RunStatistics;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObservable.RequestType;
@@ -47,13 +55,14 @@ public class DynamicSimulation extends CoreObservable
 
   // the simulator object
   private AbstractSimulator			simulator;
-  private boolean					cancelFlag;
+  private volatile EnsembleSimulation	ensemble;
+  private volatile boolean			cancelFlag;
   private boolean					statisticsFlag;
 
 
   public static enum SimulationType
   {
-    CR, DIRECT, RK, HIERARCHICAL_DIRECT, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_MIXED;
+    CR, DIRECT, NRM, TAU_LEAP, RK, ROSENBROCK, HIERARCHICAL_DIRECT, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_ROSENBROCK, HIERARCHICAL_MIXED;
   }
 
   /**
@@ -78,6 +87,8 @@ public class DynamicSimulation extends CoreObservable
       long randomSeed = simProperties.getRndSeed();
       String[] interestingSpecies = simProperties.getIntSpecies().toArray(new String[simProperties.getIntSpecies().size()]);
       int runs = simProperties.getRun(), numSteps = simProperties.getNumSteps();
+      final boolean binaryOutput = GraphData.BTSD_DATA_TYPE.equals(simProperties.getPrinter_id());
+      boolean accumulateStatistics = "true".equals(simProperties.getGenStats()) && simProperties.getStartIndex() <= 1;
       if(numSteps == 0)
       {
         numSteps = (int)(timeLimit/printInterval);
@@ -89,6 +100,12 @@ public class DynamicSimulation extends CoreObservable
         simulator = new SimulatorODERK(SBMLFileName,  outputDirectory,  runs,  timeLimit,  maxTimeStep,  randomSeed,  printInterval,  stoichAmpValue, interestingSpecies,  numSteps,  relError,  absError, quantityType);
         simulator.addObservable(this);
         break;
+      case ROSENBROCK:
+        SimulatorODERK rosenbrockSimulator = new SimulatorODERK(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, numSteps, relError, absError, quantityType);
+        rosenbrockSimulator.setStiff(true);
+        simulator = rosenbrockSimulator;
+        simulator.addObservable(this);
+        break;
       case CR:
         simulator = new SimulatorSSACR(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue, interestingSpecies, quantityType);
         simulator.addObservable(this);
@@ -97,7 +114,43 @@ public class DynamicSimulation extends CoreObservable
         simulator = new SimulatorSSADirect(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue, interestingSpecies, quantityType);
         simulator.addObservable(this);
         break;
+      case NRM:
+        simulator = new SimulatorSSANRM(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue, interestingSpecies, quantityType);
+        simulator.addObservable(this);
+        break;
+      case TAU_LEAP:
+        simulator = new SimulatorSSATauLeap(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue, interestingSpecies, quantityType);
+        simulator.addObservable(this);
+        break;
       case HIERARCHICAL_DIRECT:
+        if (runs > 1 && simProperties.getThreads() > 1)
+        {
+          SimulatorFactory factory = new SimulatorFactory()
+          {
+            @Override
+            public HierarchicalSimulation createSimulator() throws IOException, XMLStreamException, BioSimException
+            {
+              HierarchicalSimulation worker = new HierarchicalSSADirectSimulator(SBMLFileName, rootDirectory, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue,  interestingSpecies, quantityType, initialTime, outputStartTime);
+              if (binaryOutput)
+              {
+                worker.setWriter(new HierarchicalBinaryWriter());
+              }
+              return worker;
+            }
+          };
+          ensemble = new EnsembleSimulation(factory, runs, simProperties.getThreads(), randomSeed, statisticsFlag);
+          ensemble.addObservable(this);
+          ensemble.setAccumulateStatistics(accumulateStatistics);
+          if (!cancelFlag)
+          {
+            ensemble.simulate();
+          }
+          if (!cancelFlag && ensemble.getRunStatistics() != null)
+          {
+            ensemble.getRunStatistics().outputTSD(outputDirectory);
+          }
+          return;
+        }
         simulator = new HierarchicalSSADirectSimulator(SBMLFileName, rootDirectory, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed,  printInterval, stoichAmpValue,  interestingSpecies, quantityType, initialTime, outputStartTime);
         simulator.addObservable(this);
         break;
@@ -106,7 +159,17 @@ public class DynamicSimulation extends CoreObservable
           outputStartTime);
         simulator.addObservable(this);
         break;
+      case HIERARCHICAL_ROSENBROCK:
+        HierarchicalODERKSimulator hierarchicalRosenbrockSimulator = new HierarchicalODERKSimulator(SBMLFileName, rootDirectory, outputDirectory, runs, timeLimit, maxTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, numSteps, relError, absError,
+          quantityType, initialTime, outputStartTime);
+        hierarchicalRosenbrockSimulator.setStiff(true);
+        simulator = hierarchicalRosenbrockSimulator;
+        simulator.addObservable(this);
+        break;
       case HIERARCHICAL_HYBRID:
+        simulator = new HierarchicalHybridSimulator(SBMLFileName, rootDirectory, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, numSteps, relError, absError, quantityType, initialTime,
+          outputStartTime);
+        simulator.addObservable(this);
         break;
       case HIERARCHICAL_MIXED:
         simulator = new HierarchicalMixedSimulator(SBMLFileName, rootDirectory, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, quantityType, initialTime, outputStartTime);
@@ -117,6 +180,18 @@ public class DynamicSimulation extends CoreObservable
         notifyObservers(message);
         return;
       }
+
+      if (simulator instanceof HierarchicalSimulation)
+      {
+        if (binaryOutput)
+        {
+          ((HierarchicalSimulation) simulator).setWriter(new HierarchicalBinaryWriter());
+        }
+        if (accumulateStatistics)
+        {
+          ((HierarchicalSimulation) simulator).setAccumulateStatistics(true);
+        }
+      }
       
       //double val1 = System.currentTimeMillis();
 
@@ -132,9 +207,16 @@ public class DynamicSimulation extends CoreObservable
 
         if (simulator != null)
         {
+          // the runs are seeded as in the ensemble, so that a run produces
+          // the same trajectory with any number of threads
+          if (run == 1)
+          {
+            setRunSeed(randomSeed, run);
+          }
           simulator.simulate();
           if ((runs - run) >= 1)
           {
+            setRunSeed(randomSeed, run + 1);
             simulator.setupForNewRun(run + 1);
           }
         }
@@ -159,6 +241,15 @@ public class DynamicSimulation extends CoreObservable
 
         }
       }
+
+      if (cancelFlag == false && simulator instanceof HierarchicalSimulation)
+      {
+        RunStatistics statistics = ((HierarchicalSimulation) simulator).getRunStatistics();
+        if (statistics != null)
+        {
+          statistics.outputTSD(outputDirectory);
+        }
+      }
     }
     catch (IOException e)
     {
@@ -180,6 +271,14 @@ public class DynamicSimulation extends CoreObservable
 
   }
 
+  private void setRunSeed(long randomSeed, int run)
+  {
+    if (simulator instanceof HierarchicalSimulation)
+    {
+      ((HierarchicalSimulation) simulator).setRandomSeed(EnsembleSimulation.getRunSeed(randomSeed, run));
+    }
+  }
+
   /**
    * cancels the simulation on the next iteration called from outside the
    * class when the user closes the progress bar dialog
@@ -187,7 +286,14 @@ public class DynamicSimulation extends CoreObservable
   public void cancel()
   {
 
-    if (simulator != null)
+    if (ensemble != null)
+    {
+      ensemble.cancel();
+      cancelFlag = true;
+      message.setCancel();
+      notifyObservers(message);
+    }
+    else if (simulator != null)
     {
 
       simulator.cancel();
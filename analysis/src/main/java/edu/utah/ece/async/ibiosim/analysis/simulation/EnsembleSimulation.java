@@ -0,0 +1,313 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.dataModels.util.Message;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.RunStatistics;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
+import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObservable.RequestType;
+
+/**
+ * Runs the independent runs of a stochastic simulation on a pool of worker
+ * threads. Each worker owns a separate simulator instance and repeatedly claims
+ * the next unsimulated run, so the runs are balanced across the workers. The
+ * random seed of a run depends only on the base seed and the run number, which
+ * makes the output of every run independent of the number of threads.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class EnsembleSimulation extends CoreObservable
+{
+
+  /**
+   * Creates the simulator used by a worker thread. Each call must return a new
+   * instance that shares no mutable state with the others.
+   */
+  public interface SimulatorFactory
+  {
+    public HierarchicalSimulation createSimulator() throws IOException, XMLStreamException, BioSimException;
+  }
+
+  private final SimulatorFactory           factory;
+  private final int                        runs;
+  private final int                        threads;
+  private final long                       randomSeed;
+  private final boolean                    statisticsFlag;
+  private boolean                          accumulateStatistics;
+  private RunStatistics                    statistics;
+  private final Message                    message;
+  private final List<HierarchicalSimulation> simulators;
+  private volatile boolean                 cancelFlag;
+
+  public EnsembleSimulation(SimulatorFactory factory, int runs, int threads, long randomSeed, boolean statisticsFlag)
+  {
+    this.factory = factory;
+    this.runs = runs;
+    this.threads = Math.max(1, Math.min(threads, runs));
+    this.randomSeed = randomSeed;
+    this.statisticsFlag = statisticsFlag;
+    this.message = new Message();
+    this.simulators = new ArrayList<HierarchicalSimulation>();
+  }
+
+  /**
+   * Enables the accumulation of the mean, variance and standard deviation of
+   * the runs. Each worker accumulates its own runs and the results are merged
+   * once every run is done.
+   */
+  public void setAccumulateStatistics(boolean accumulateStatistics)
+  {
+    this.accumulateStatistics = accumulateStatistics;
+  }
+
+  /**
+   * Returns the statistics of all the runs, or null if they were not
+   * accumulated.
+   */
+  public RunStatistics getRunStatistics()
+  {
+    return statistics;
+  }
+
+  /**
+   * Simulates every run and waits until all the workers are done.
+   */
+  public void simulate() throws IOException, XMLStreamException, BioSimException
+  {
+    final AtomicInteger nextRun = new AtomicInteger(1);
+    final AtomicIntegerArray progress = new AtomicIntegerArray(threads);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+    try
+    {
+      for (int i = 0; i < threads; i++)
+      {
+        tasks.add(pool.submit(new Worker(i, nextRun, progress)));
+      }
+
+      for (Future<Void> task : tasks)
+      {
+        task.get();
+      }
+
+      if (accumulateStatistics)
+      {
+        mergeStatistics();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      cancel();
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e)
+    {
+      cancel();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+      {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof XMLStreamException)
+      {
+        throw (XMLStreamException) cause;
+      }
+      else if (cause instanceof BioSimException)
+      {
+        throw (BioSimException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    finally
+    {
+      pool.shutdownNow();
+    }
+  }
+
+  private void mergeStatistics()
+  {
+    synchronized (simulators)
+    {
+      for (HierarchicalSimulation simulator : simulators)
+      {
+        RunStatistics workerStatistics = simulator.getRunStatistics();
+        if (workerStatistics == null)
+        {
+          continue;
+        }
+        if (statistics == null)
+        {
+          statistics = new RunStatistics(workerStatistics.getSpecies());
+        }
+        statistics.merge(workerStatistics);
+      }
+    }
+  }
+
+  /**
+   * Cancels every worker. Runs that are in progress stop on their next step.
+   */
+  public void cancel()
+  {
+    cancelFlag = true;
+    synchronized (simulators)
+    {
+      for (HierarchicalSimulation simulator : simulators)
+      {
+        simulator.cancel();
+      }
+    }
+  }
+
+  /**
+   * Returns the seed of the given run. The seeds are derived by mixing the base
+   * seed with the run number so that neighboring runs get uncorrelated streams.
+   */
+  public static long getRunSeed(long randomSeed, int run)
+  {
+    long z = randomSeed + run * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private class Worker implements Callable<Void>
+  {
+    private final int                id;
+    private final AtomicInteger      nextRun;
+    private final AtomicIntegerArray progress;
+
+    Worker(int id, AtomicInteger nextRun, AtomicIntegerArray progress)
+    {
+      this.id = id;
+      this.nextRun = nextRun;
+      this.progress = progress;
+    }
+
+    @Override
+    public Void call() throws IOException, XMLStreamException, BioSimException
+    {
+      HierarchicalSimulation simulator = factory.createSimulator();
+      simulator.addObservable(new ProgressRelay(id, progress));
+      simulator.setAccumulateStatistics(accumulateStatistics);
+
+      synchronized (simulators)
+      {
+        simulators.add(simulator);
+      }
+      if (cancelFlag)
+      {
+        simulator.cancel();
+      }
+
+      boolean isInitialized = false;
+      int run;
+      while (!cancelFlag && (run = nextRun.getAndIncrement()) <= runs)
+      {
+        long seed = getRunSeed(randomSeed, run);
+        simulator.setRandomSeed(seed);
+        if (!isInitialized)
+        {
+          simulator.initialize(seed, run);
+          isInitialized = true;
+        }
+        else
+        {
+          simulator.setupForNewRun(run);
+        }
+
+        simulator.simulate();
+
+        if (!cancelFlag && statisticsFlag)
+        {
+          simulator.printStatisticsTSD();
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Receives the progress of one worker and reports the combined progress of
+   * all the workers. Every simulator measures progress against the total number
+   * of runs, so the combined progress is the sum of the individual ones.
+   */
+  private class ProgressRelay extends CoreObservable
+  {
+    private final int                id;
+    private final AtomicIntegerArray progress;
+
+    ProgressRelay(int id, AtomicIntegerArray progress)
+    {
+      this.id = id;
+      this.progress = progress;
+    }
+
+    @Override
+    public boolean send(RequestType type, Message message)
+    {
+      if (type == RequestType.REQUEST_PROGRESS)
+      {
+        progress.set(id, message.getValue());
+        int total = 0;
+        for (int i = 0; i < progress.length(); i++)
+        {
+          total += progress.get(i);
+        }
+        return sendToParent(type, Math.min(total, 100));
+      }
+      return EnsembleSimulation.this.send(type, message);
+    }
+  }
+
+  private boolean sendToParent(RequestType type, int value)
+  {
+    synchronized (message)
+    {
+      message.setInteger(value);
+      return send(type, message);
+    }
+  }
+
+  @Override
+  public boolean send(RequestType type, Message message)
+  {
+    if (parent != null)
+    {
+      synchronized (parent)
+      {
+        return parent.send(type, message);
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,1268 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.math3.analysis.UnivariateFunction;
+import org.apache.commons.math3.analysis.solvers.AllowedSolution;
+import org.apache.commons.math3.analysis.solvers.BracketingNthOrderBrentSolver;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.exception.NumberIsTooSmallException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
+
+/**
+ * An integrator for stiff systems using the linearly implicit Rosenbrock pair
+ * of orders 2 and 3 by Shampine and Reichelt (the formula of ode23s). Every
+ * step solves three linear systems with the iteration matrix
+ * I - h d J, whose LU factorization is kept until the step size or the
+ * Jacobian changes. Since the pair is a W-method, it keeps its order with an
+ * outdated Jacobian, so the Jacobian is only recomputed after a rejected step,
+ * after a given number of steps or after a call to {@link #reset()}.
+ *
+ * Equations that implement {@link JacobianEquations} give the Jacobian over
+ * the sparsity pattern themselves. Otherwise, it is computed by finite
+ * differences: the columns that share no row are perturbed together, so a
+ * reaction network whose reactions depend on a few species needs only a few
+ * evaluations of the derivatives for a whole Jacobian. Without a pattern, the
+ * Jacobian is dense.
+ *
+ * The iteration matrix is factored by a sparse LU without pivoting, whose
+ * fill-in is found once for the pattern. A pivot that is too small for the
+ * elimination to be stable falls back to a dense LU with partial pivoting.
+ *
+ * Event handlers are checked after every accepted step. A sign change of a
+ * switching function is located on the continuous extension of the step, so
+ * the integration stops or restarts at the event itself.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RosenbrockIntegrator
+{
+
+  private static final double D = 1.0 / (2.0 + Math.sqrt(2.0));
+  private static final double E32 = 6.0 + Math.sqrt(2.0);
+  private static final double SQRT_EPSILON = Math.sqrt(Math.ulp(1.0));
+  private static final double SAFETY = 0.8;
+  private static final double MIN_REDUCTION = 0.1;
+  private static final double MAX_GROWTH = 5.0;
+
+  // the step size is kept when it would grow by less than this, so that the
+  // factorization can be reused
+  private static final double MAX_UNCHANGED_GROWTH = 1.2;
+
+  // the number of accepted steps after which the Jacobian is recomputed
+  private static final int MAX_JACOBIAN_AGE = 20;
+
+  // a pivot of the sparse LU below this fraction of the largest entry of its
+  // row makes the factorization fall back to partial pivoting
+  private static final double PIVOT_TOLERANCE = 1e-8;
+
+  // the factors are kept dense once the fill-in would exceed this fraction
+  // of the dense matrix
+  private static final double MAX_FILL = 0.3;
+
+  private final double minStep;
+  private final double maxStep;
+  private final double absoluteTolerance;
+  private final double relativeTolerance;
+
+  private int dimension = -1;
+
+  // the rows of column j of the Jacobian are patternRows[k] for
+  // patternStart[j] <= k < patternStart[j + 1]
+  private int[][] columnRows;
+  private int[] patternStart;
+  private int[] patternRows;
+
+  // the columns of row i of the Jacobian are rowColumns[k] for
+  // rowStart[i] <= k < rowStart[i + 1]
+  private int[] rowStart;
+  private int[] rowColumns;
+
+  // the columns that are perturbed together, in the same form
+  private int[] groupStart;
+  private int[] groupColumns;
+
+  private double[] jacobian;
+  private double[] timeDerivative;
+  private boolean isJacobianCurrent;
+  private int jacobianAge;
+
+  // the Jacobian as given by JacobianEquations, shaped like columnRows, and
+  // the position in jacobian of each of its entries
+  private double[][] givenJacobian;
+  private int[][] givenPositions;
+
+  // the rows of the LU factors in compressed sparse row form including the
+  // fill-in, or null when the factors are dense. L is unit lower triangular
+  // and stored left of the diagonal, U from the diagonal on.
+  private int[] factorStart;
+  private int[] factorColumns;
+  private int[] factorDiagonal;
+  private int[] factorPositions;
+  private double[] factorValues;
+  private int[] rowPositions;
+  private boolean isFactorSparse;
+
+  private double[][] matrix;
+  private int[] pivots;
+  private double factoredStep = Double.NaN;
+
+  private double stepSize = Double.NaN;
+
+  private double[] state, nextState, temp, f0, f1, f2, k1, k2, k3, perturbed, interpolated;
+
+  private final List<EventState> eventStates = new ArrayList<EventState>();
+
+  /**
+   * Equations that can compute their own Jacobian.
+   */
+  public interface JacobianEquations extends FirstOrderDifferentialEquations
+  {
+
+    /**
+     * Computes the Jacobian and the derivatives with respect to time at the
+     * given state. jacobian[j][m] is the partial derivative of the derivative
+     * of y[columnRows[j][m]] with respect to y[j], where columnRows is the
+     * pattern given to {@link RosenbrockIntegrator#setSparsity(int[][])}, or
+     * of y[m] without a pattern. The arrays are cleared beforehand.
+     *
+     * @return false if the Jacobian can't be computed, in which case it is
+     *         approximated by finite differences
+     */
+    boolean computeJacobian(double t, double[] y, double[][] jacobian, double[] timeDerivative);
+  }
+
+  /**
+   * @param minStep
+   *          the smallest step allowed, below which the integration fails
+   * @param maxStep
+   *          the largest step allowed
+   * @param absoluteTolerance
+   * @param relativeTolerance
+   */
+  public RosenbrockIntegrator(double minStep, double maxStep, double absoluteTolerance, double relativeTolerance)
+  {
+    this.minStep = minStep;
+    this.maxStep = maxStep;
+    this.absoluteTolerance = absoluteTolerance;
+    this.relativeTolerance = relativeTolerance;
+  }
+
+  /**
+   * Sets the structure of the Jacobian. Entry i, j can only be nonzero if
+   * columnRows[j] contains i. The diagonal is always part of the pattern.
+   */
+  public void setSparsity(int[][] columnRows)
+  {
+    this.columnRows = columnRows;
+    dimension = -1;
+  }
+
+  /**
+   * Adds an event handler, whose switching function is sampled at most
+   * maxCheckInterval apart within a step. A sign change is located to within
+   * convergence with at most maxIterationCount evaluations.
+   */
+  public void addEventHandler(EventHandler handler, double maxCheckInterval, double convergence, int maxIterationCount)
+  {
+    eventStates.add(new EventState(handler, maxCheckInterval, convergence, maxIterationCount));
+  }
+
+  public void clearEventHandlers()
+  {
+    eventStates.clear();
+  }
+
+  /**
+   * Drops the Jacobian, its factorization and the step size, which should be
+   * done when the state jumps (e.g. when an event fires or a new run starts).
+   */
+  public void reset()
+  {
+    isJacobianCurrent = false;
+    factoredStep = Double.NaN;
+    stepSize = Double.NaN;
+  }
+
+  /**
+   * Integrates the equations from t0 to t.
+   *
+   * @param equations
+   * @param t0
+   *          the initial time
+   * @param y0
+   *          the initial state
+   * @param t
+   *          the final time
+   * @param y
+   *          where the final state is stored, which may be y0
+   * @return the final time, which is earlier than t if an event handler
+   *         stopped the integration
+   */
+  public double integrate(FirstOrderDifferentialEquations equations, double t0, double[] y0, double t, double[] y)
+      throws MaxCountExceededException, DimensionMismatchException, NumberIsTooSmallException
+  {
+    int n = equations.getDimension();
+
+    if (y0.length != n)
+    {
+      throw new DimensionMismatchException(y0.length, n);
+    }
+
+    if (y.length != n)
+    {
+      throw new DimensionMismatchException(y.length, n);
+    }
+
+    if (n != dimension)
+    {
+      setup(n);
+    }
+
+    System.arraycopy(y0, 0, state, 0, n);
+
+    if (n == 0 || t <= t0)
+    {
+      System.arraycopy(state, 0, y, 0, n);
+      return t0;
+    }
+
+    double time = t0;
+
+    for (EventState eventState : eventStates)
+    {
+      eventState.handler.init(t0, state, t);
+    }
+
+    updateEvents(time);
+
+    equations.computeDerivatives(time, state, f0);
+
+    if (Double.isNaN(stepSize))
+    {
+      stepSize = initialStep(t - t0);
+    }
+
+    boolean isLastStep = false;
+
+    while (!isLastStep)
+    {
+      double h = Math.min(stepSize, maxStep);
+
+      if (time + h >= t)
+      {
+        h = t - time;
+        isLastStep = true;
+      }
+
+      if (!isLastStep && (h < minStep || time + h == time))
+      {
+        throw new NumberIsTooSmallException(h, minStep, true);
+      }
+
+      if (!isJacobianCurrent)
+      {
+        computeJacobian(equations, time, h);
+      }
+
+      if (h != factoredStep)
+      {
+        factor(h);
+      }
+
+      double error = step(equations, time, h);
+
+      if (error <= 1)
+      {
+        double end = isLastStep ? t : time + h;
+        EventState event = findEvent(time, h, end);
+
+        if (event != null)
+        {
+          // the step is cut back to the event
+          double[] eventValues = interpolate(time, h, event.eventTime);
+          time = event.eventTime;
+          EventHandler.Action action = event.handler.eventOccurred(time, eventValues, event.isIncreasing);
+          System.arraycopy(eventValues, 0, state, 0, n);
+
+          if (action == EventHandler.Action.STOP)
+          {
+            System.arraycopy(state, 0, y, 0, n);
+            reset();
+            return time;
+          }
+
+          if (action == EventHandler.Action.RESET_STATE)
+          {
+            event.handler.resetState(time, state);
+          }
+
+          if (action != EventHandler.Action.CONTINUE)
+          {
+            reset();
+          }
+
+          updateEvents(time);
+          equations.computeDerivatives(time, state, f0);
+
+          if (Double.isNaN(stepSize))
+          {
+            stepSize = initialStep(t - time);
+          }
+
+          isLastStep = false;
+          continue;
+        }
+
+        time = end;
+
+        double[] swap = state;
+        state = nextState;
+        nextState = swap;
+
+        swap = f0;
+        f0 = f2;
+        f2 = swap;
+
+        if (!eventStates.isEmpty())
+        {
+          // the switching functions may have overwritten the derivatives
+          equations.computeDerivatives(time, state, f0);
+        }
+
+        ++jacobianAge;
+
+        if (jacobianAge >= MAX_JACOBIAN_AGE)
+        {
+          isJacobianCurrent = false;
+        }
+
+        double growth = error == 0 ? MAX_GROWTH : Math.min(MAX_GROWTH, SAFETY * Math.pow(error, -1.0 / 3.0));
+
+        if (isLastStep)
+        {
+          // a step that was shortened to reach t only limits the next one
+          // if it had to shrink
+          if (growth < 1)
+          {
+            stepSize = Math.min(stepSize, h * growth);
+          }
+        }
+        else if (growth < 1 || growth >= MAX_UNCHANGED_GROWTH)
+        {
+          stepSize = Math.min(h * growth, maxStep);
+        }
+        else
+        {
+          stepSize = h;
+        }
+      }
+      else
+      {
+        isLastStep = false;
+
+        // a failure with an outdated Jacobian is retried with a new one
+        if (jacobianAge > 0)
+        {
+          isJacobianCurrent = false;
+        }
+
+        stepSize = h * Math.max(MIN_REDUCTION, SAFETY * Math.pow(error, -1.0 / 3.0));
+      }
+    }
+
+    System.arraycopy(state, 0, y, 0, n);
+
+    return time;
+  }
+
+  /**
+   * evaluates every switching function at the current state
+   */
+  private void updateEvents(double time)
+  {
+    for (EventState eventState : eventStates)
+    {
+      eventState.previousValue = eventState.handler.g(time, state);
+    }
+  }
+
+  /**
+   * looks for sign changes of the switching functions over the accepted step
+   * from time to end, whose values at the end become the previous values
+   *
+   * @return the handler with the earliest event, or null if there is none
+   */
+  private EventState findEvent(final double time, final double h, double end)
+  {
+    EventState first = null;
+
+    for (final EventState eventState : eventStates)
+    {
+      int count = Math.max(1, (int) Math.ceil((end - time) / eventState.maxCheckInterval));
+      double before = time;
+      double valueBefore = eventState.previousValue;
+      boolean hasEvent = false;
+
+      for (int i = 1; i <= count && !hasEvent; ++i)
+      {
+        double after = i == count ? end : time + (end - time) * i / count;
+        double valueAfter = eventState.handler.g(after, interpolate(time, h, after));
+
+        if (valueBefore != 0 && (valueAfter == 0 || (valueBefore < 0) != (valueAfter < 0)))
+        {
+          UnivariateFunction switchingFunction = new UnivariateFunction()
+          {
+            @Override
+            public double value(double x)
+            {
+              return eventState.handler.g(x, interpolate(time, h, x));
+            }
+          };
+
+          eventState.eventTime = eventState.solver.solve(eventState.maxIterationCount, switchingFunction, before, after, AllowedSolution.RIGHT_SIDE);
+          eventState.isIncreasing = valueBefore < 0;
+          hasEvent = true;
+
+          if (first == null || eventState.eventTime < first.eventTime)
+          {
+            first = eventState;
+          }
+        }
+
+        before = after;
+        valueBefore = valueAfter;
+      }
+
+      eventState.previousValue = valueBefore;
+    }
+
+    return first;
+  }
+
+  /**
+   * evaluates the continuous extension of the step of size h taken from time
+   * at the given time, which is exact at both ends of the step
+   */
+  private double[] interpolate(double time, double h, double t)
+  {
+    double s = (t - time) / h;
+    double s1 = s * (1 - s) / (1 - 2 * D);
+    double s2 = s * (s - 2 * D) / (1 - 2 * D);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      interpolated[i] = state[i] + h * (s1 * k1[i] + s2 * k2[i]);
+    }
+
+    return interpolated;
+  }
+
+  private void setup(int n)
+  {
+    dimension = n;
+    state = new double[n];
+    nextState = new double[n];
+    temp = new double[n];
+    f0 = new double[n];
+    f1 = new double[n];
+    f2 = new double[n];
+    k1 = new double[n];
+    k2 = new double[n];
+    k3 = new double[n];
+    perturbed = new double[n];
+    interpolated = new double[n];
+    timeDerivative = new double[n];
+    matrix = null;
+    pivots = null;
+
+    setupPattern(n);
+    setupRows(n);
+    setupGivenJacobian(n);
+    setupFactorization(n);
+
+    if (columnRows != null && columnRows.length == n)
+    {
+      setupGroups(n);
+    }
+    else
+    {
+      // every column of a dense Jacobian is perturbed on its own
+      groupStart = new int[n + 1];
+      groupColumns = new int[n];
+
+      for (int column = 0; column < n; ++column)
+      {
+        groupStart[column + 1] = column + 1;
+        groupColumns[column] = column;
+      }
+    }
+
+    jacobian = new double[patternRows.length];
+    reset();
+  }
+
+  /**
+   * stores the sparsity pattern in compressed sparse column form, without
+   * duplicate rows
+   */
+  private void setupPattern(int n)
+  {
+    boolean isSparse = columnRows != null && columnRows.length == n;
+
+    patternStart = new int[n + 1];
+
+    int[] marked = new int[n];
+    Arrays.fill(marked, -1);
+
+    int[] rows = new int[n];
+    int[] buffer = new int[Math.max(16, 2 * n)];
+    int size = 0;
+
+    for (int column = 0; column < n; ++column)
+    {
+      int count = 0;
+
+      if (isSparse)
+      {
+        marked[column] = column;
+        rows[count++] = column;
+
+        if (columnRows[column] != null)
+        {
+          for (int row : columnRows[column])
+          {
+            if (row >= 0 && row < n && marked[row] != column)
+            {
+              marked[row] = column;
+              rows[count++] = row;
+            }
+          }
+        }
+
+        Arrays.sort(rows, 0, count);
+      }
+      else
+      {
+        for (int row = 0; row < n; ++row)
+        {
+          rows[count++] = row;
+        }
+      }
+
+      if (size + count > buffer.length)
+      {
+        buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + count));
+      }
+
+      System.arraycopy(rows, 0, buffer, size, count);
+      size += count;
+      patternStart[column + 1] = size;
+    }
+
+    patternRows = Arrays.copyOf(buffer, size);
+  }
+
+  /**
+   * stores the pattern in compressed sparse row form as well, whose columns
+   * are sorted
+   */
+  private void setupRows(int n)
+  {
+    rowStart = new int[n + 1];
+
+    for (int k = 0; k < patternRows.length; ++k)
+    {
+      ++rowStart[patternRows[k] + 1];
+    }
+
+    for (int row = 0; row < n; ++row)
+    {
+      rowStart[row + 1] += rowStart[row];
+    }
+
+    rowColumns = new int[patternRows.length];
+    int[] next = Arrays.copyOf(rowStart, n);
+
+    for (int column = 0; column < n; ++column)
+    {
+      for (int k = patternStart[column]; k < patternStart[column + 1]; ++k)
+      {
+        rowColumns[next[patternRows[k]]++] = column;
+      }
+    }
+  }
+
+  /**
+   * finds where each entry of a Jacobian given by the equations goes in the
+   * compressed pattern
+   */
+  private void setupGivenJacobian(int n)
+  {
+    boolean isSparse = columnRows != null && columnRows.length == n;
+
+    givenJacobian = new double[n][];
+    givenPositions = new int[n][];
+
+    for (int column = 0; column < n; ++column)
+    {
+      int[] rows = isSparse ? columnRows[column] : null;
+      int count = isSparse ? (rows == null ? 0 : rows.length) : n;
+
+      givenJacobian[column] = new double[count];
+      givenPositions[column] = new int[count];
+
+      for (int m = 0; m < count; ++m)
+      {
+        int row = isSparse ? rows[m] : m;
+
+        if (row >= 0 && row < n)
+        {
+          givenPositions[column][m] = Arrays.binarySearch(patternRows, patternStart[column], patternStart[column + 1], row);
+        }
+        else
+        {
+          givenPositions[column][m] = -1;
+        }
+      }
+    }
+  }
+
+  /**
+   * finds the structure of the LU factors of I - h d J without pivoting,
+   * including the fill-in of the elimination, which doesn't depend on h or on
+   * the values of the Jacobian
+   */
+  private void setupFactorization(int n)
+  {
+    factorStart = null;
+    factorColumns = null;
+    factorDiagonal = null;
+    factorPositions = null;
+    factorValues = null;
+    rowPositions = null;
+
+    long maxSize = (long) (MAX_FILL * n * (double) n);
+
+    int[] start = new int[n + 1];
+    int[] diagonal = new int[n];
+    int[] columns = new int[Math.max(16, 2 * patternRows.length)];
+    int size = 0;
+
+    int[] marked = new int[n];
+    Arrays.fill(marked, -1);
+
+    int[] row = new int[n];
+    PriorityQueue<Integer> lower = new PriorityQueue<Integer>();
+
+    for (int i = 0; i < n; ++i)
+    {
+      int count = 0;
+
+      for (int k = rowStart[i]; k < rowStart[i + 1]; ++k)
+      {
+        int column = rowColumns[k];
+        marked[column] = i;
+        row[count++] = column;
+
+        if (column < i)
+        {
+          lower.add(column);
+        }
+      }
+
+      // eliminating with row k adds the columns of U in row k, which are
+      // eliminated in turn if they are left of the diagonal
+      while (!lower.isEmpty())
+      {
+        int k = lower.poll();
+
+        for (int p = diagonal[k] + 1; p < start[k + 1]; ++p)
+        {
+          int column = columns[p];
+
+          if (marked[column] != i)
+          {
+            marked[column] = i;
+            row[count++] = column;
+
+            if (column < i)
+            {
+              lower.add(column);
+            }
+          }
+        }
+      }
+
+      if (size + count > maxSize)
+      {
+        return;
+      }
+
+      Arrays.sort(row, 0, count);
+
+      if (size + count > columns.length)
+      {
+        columns = Arrays.copyOf(columns, Math.max(2 * columns.length, size + count));
+      }
+
+      System.arraycopy(row, 0, columns, size, count);
+      diagonal[i] = Arrays.binarySearch(columns, size, size + count, i);
+      size += count;
+      start[i + 1] = size;
+    }
+
+    factorStart = start;
+    factorColumns = Arrays.copyOf(columns, size);
+    factorDiagonal = diagonal;
+    factorValues = new double[size];
+    rowPositions = new int[n];
+    factorPositions = new int[patternRows.length];
+
+    for (int column = 0; column < n; ++column)
+    {
+      for (int k = patternStart[column]; k < patternStart[column + 1]; ++k)
+      {
+        int r = patternRows[k];
+        factorPositions[k] = Arrays.binarySearch(factorColumns, factorStart[r], factorStart[r + 1], column);
+      }
+    }
+  }
+
+  /**
+   * colors the columns greedily so that the columns of a color share no row
+   */
+  private void setupGroups(int n)
+  {
+    int[] colors = new int[n];
+    int[] forbidden = new int[n];
+    Arrays.fill(colors, -1);
+    Arrays.fill(forbidden, -1);
+
+    int numColors = 0;
+
+    for (int column = 0; column < n; ++column)
+    {
+      for (int k = patternStart[column]; k < patternStart[column + 1]; ++k)
+      {
+        int row = patternRows[k];
+
+        for (int l = rowStart[row]; l < rowStart[row + 1]; ++l)
+        {
+          int color = colors[rowColumns[l]];
+
+          if (color >= 0)
+          {
+            forbidden[color] = column;
+          }
+        }
+      }
+
+      int color = 0;
+
+      while (forbidden[color] == column)
+      {
+        ++color;
+      }
+
+      colors[column] = color;
+      numColors = Math.max(numColors, color + 1);
+    }
+
+    groupStart = new int[numColors + 1];
+
+    for (int column = 0; column < n; ++column)
+    {
+      ++groupStart[colors[column] + 1];
+    }
+
+    for (int color = 0; color < numColors; ++color)
+    {
+      groupStart[color + 1] += groupStart[color];
+    }
+
+    groupColumns = new int[n];
+    int[] next = Arrays.copyOf(groupStart, numColors);
+
+    for (int column = 0; column < n; ++column)
+    {
+      groupColumns[next[colors[column]]++] = column;
+    }
+  }
+
+  /**
+   * chooses the first step from the size of the derivatives, as ode23s does
+   */
+  private double initialStep(double span)
+  {
+    double threshold = absoluteTolerance / relativeTolerance;
+    double rate = 0;
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      rate = Math.max(rate, Math.abs(f0[i]) / Math.max(Math.abs(state[i]), threshold));
+    }
+
+    double h = Math.min(span, maxStep);
+
+    rate = rate / (SAFETY * Math.pow(relativeTolerance, 1.0 / 3.0));
+
+    if (h * rate > 1)
+    {
+      h = 1 / rate;
+    }
+
+    return Math.max(h, minStep);
+  }
+
+  /**
+   * computes the Jacobian and the derivative with respect to time at the
+   * current state, whose derivatives are in f0
+   */
+  private void computeJacobian(FirstOrderDifferentialEquations equations, double time, double h)
+  {
+    if (!(equations instanceof JacobianEquations) || !computeGivenJacobian((JacobianEquations) equations, time))
+    {
+      approximateJacobian(equations, time, h);
+    }
+
+    isJacobianCurrent = true;
+    jacobianAge = 0;
+    factoredStep = Double.NaN;
+  }
+
+  /**
+   * gathers the Jacobian computed by the equations into the pattern
+   *
+   * @return false if the equations couldn't compute it
+   */
+  private boolean computeGivenJacobian(JacobianEquations equations, double time)
+  {
+    for (int column = 0; column < dimension; ++column)
+    {
+      Arrays.fill(givenJacobian[column], 0);
+    }
+
+    Arrays.fill(timeDerivative, 0);
+
+    if (!equations.computeJacobian(time, state, givenJacobian, timeDerivative))
+    {
+      return false;
+    }
+
+    Arrays.fill(jacobian, 0);
+
+    for (int column = 0; column < dimension; ++column)
+    {
+      for (int m = 0; m < givenPositions[column].length; ++m)
+      {
+        int k = givenPositions[column][m];
+
+        if (k >= 0)
+        {
+          jacobian[k] += givenJacobian[column][m];
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * approximates the Jacobian and the derivative with respect to time by
+   * finite differences
+   */
+  private void approximateJacobian(FirstOrderDifferentialEquations equations, double time, double h)
+  {
+    double threshold = absoluteTolerance / relativeTolerance;
+
+    System.arraycopy(state, 0, perturbed, 0, dimension);
+
+    for (int group = 0; group + 1 < groupStart.length; ++group)
+    {
+      for (int g = groupStart[group]; g < groupStart[group + 1]; ++g)
+      {
+        int column = groupColumns[g];
+        perturbed[column] = state[column] + SQRT_EPSILON * Math.max(Math.abs(state[column]), threshold);
+      }
+
+      equations.computeDerivatives(time, perturbed, temp);
+
+      for (int g = groupStart[group]; g < groupStart[group + 1]; ++g)
+      {
+        int column = groupColumns[g];
+
+        // the difference that is actually representable
+        double delta = perturbed[column] - state[column];
+
+        for (int k = patternStart[column]; k < patternStart[column + 1]; ++k)
+        {
+          int row = patternRows[k];
+          jacobian[k] = (temp[row] - f0[row]) / delta;
+        }
+
+        perturbed[column] = state[column];
+      }
+    }
+
+    double delta = SQRT_EPSILON * Math.max(Math.abs(time), h);
+    delta = (time + delta) - time;
+
+    equations.computeDerivatives(time + delta, state, temp);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      timeDerivative[i] = (temp[i] - f0[i]) / delta;
+    }
+  }
+
+  /**
+   * factors I - h d J into LU, sparse if it can be done stably without
+   * pivoting and dense otherwise
+   */
+  private void factor(double h)
+  {
+    isFactorSparse = factorStart != null && factorSparse(h);
+
+    if (!isFactorSparse)
+    {
+      factorDense(h);
+    }
+
+    factoredStep = h;
+  }
+
+  /**
+   * factors I - h d J row by row into the structure found by
+   * setupFactorization
+   *
+   * @return false if a pivot is too small
+   */
+  private boolean factorSparse(double h)
+  {
+    double scale = -h * D;
+
+    Arrays.fill(factorValues, 0);
+
+    for (int k = 0; k < jacobian.length; ++k)
+    {
+      factorValues[factorPositions[k]] += scale * jacobian[k];
+    }
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      factorValues[factorDiagonal[i]] += 1;
+    }
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      int end = factorStart[i + 1];
+
+      for (int p = factorStart[i]; p < end; ++p)
+      {
+        rowPositions[factorColumns[p]] = p;
+      }
+
+      for (int p = factorStart[i]; p < factorDiagonal[i]; ++p)
+      {
+        int k = factorColumns[p];
+        double multiplier = factorValues[p] / factorValues[factorDiagonal[k]];
+        factorValues[p] = multiplier;
+
+        if (multiplier != 0)
+        {
+          for (int q = factorDiagonal[k] + 1; q < factorStart[k + 1]; ++q)
+          {
+            factorValues[rowPositions[factorColumns[q]]] -= multiplier * factorValues[q];
+          }
+        }
+      }
+
+      double largest = 0;
+
+      for (int p = factorStart[i]; p < end; ++p)
+      {
+        largest = Math.max(largest, Math.abs(factorValues[p]));
+      }
+
+      // also fails for a pivot that isn't finite
+      if (!(Math.abs(factorValues[factorDiagonal[i]]) > PIVOT_TOLERANCE * largest))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * factors I - h d J into LU with partial pivoting, skipping the zeros of
+   * the sparse Jacobian during the elimination
+   */
+  private void factorDense(double h)
+  {
+    double scale = -h * D;
+
+    if (matrix == null)
+    {
+      matrix = new double[dimension][dimension];
+      pivots = new int[dimension];
+    }
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      Arrays.fill(matrix[i], 0);
+      matrix[i][i] = 1;
+    }
+
+    for (int column = 0; column < dimension; ++column)
+    {
+      for (int k = patternStart[column]; k < patternStart[column + 1]; ++k)
+      {
+        matrix[patternRows[k]][column] += scale * jacobian[k];
+      }
+    }
+
+    for (int column = 0; column < dimension; ++column)
+    {
+      int pivot = column;
+      double largest = Math.abs(matrix[column][column]);
+
+      for (int row = column + 1; row < dimension; ++row)
+      {
+        if (Math.abs(matrix[row][column]) > largest)
+        {
+          largest = Math.abs(matrix[row][column]);
+          pivot = row;
+        }
+      }
+
+      pivots[column] = pivot;
+
+      if (pivot != column)
+      {
+        double[] swap = matrix[pivot];
+        matrix[pivot] = matrix[column];
+        matrix[column] = swap;
+      }
+
+      double diagonal = matrix[column][column];
+
+      if (diagonal == 0)
+      {
+        continue;
+      }
+
+      double[] pivotRow = matrix[column];
+
+      for (int row = column + 1; row < dimension; ++row)
+      {
+        double[] current = matrix[row];
+
+        if (current[column] == 0)
+        {
+          continue;
+        }
+
+        double multiplier = current[column] / diagonal;
+        current[column] = multiplier;
+
+        for (int j = column + 1; j < dimension; ++j)
+        {
+          if (pivotRow[j] != 0)
+          {
+            current[j] -= multiplier * pivotRow[j];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * solves (I - h d J) x = b in place with the cached factorization
+   */
+  private void solve(double[] b)
+  {
+    if (isFactorSparse)
+    {
+      solveSparse(b);
+    }
+    else
+    {
+      solveDense(b);
+    }
+  }
+
+  private void solveSparse(double[] b)
+  {
+    for (int i = 0; i < dimension; ++i)
+    {
+      double value = b[i];
+
+      for (int p = factorStart[i]; p < factorDiagonal[i]; ++p)
+      {
+        value -= factorValues[p] * b[factorColumns[p]];
+      }
+
+      b[i] = value;
+    }
+
+    for (int i = dimension - 1; i >= 0; --i)
+    {
+      double value = b[i];
+
+      for (int p = factorDiagonal[i] + 1; p < factorStart[i + 1]; ++p)
+      {
+        value -= factorValues[p] * b[factorColumns[p]];
+      }
+
+      b[i] = value / factorValues[factorDiagonal[i]];
+    }
+  }
+
+  private void solveDense(double[] b)
+  {
+    for (int column = 0; column < dimension; ++column)
+    {
+      int pivot = pivots[column];
+
+      if (pivot != column)
+      {
+        double swap = b[pivot];
+        b[pivot] = b[column];
+        b[column] = swap;
+      }
+
+      double value = b[column];
+
+      if (value != 0)
+      {
+        for (int row = column + 1; row < dimension; ++row)
+        {
+          b[row] -= matrix[row][column] * value;
+        }
+      }
+    }
+
+    for (int row = dimension - 1; row >= 0; --row)
+    {
+      double[] current = matrix[row];
+      double value = b[row];
+
+      for (int j = row + 1; j < dimension; ++j)
+      {
+        value -= current[j] * b[j];
+      }
+
+      // a singular matrix leaves the stage as the explicit increment
+      b[row] = current[row] == 0 ? value : value / current[row];
+    }
+  }
+
+  /**
+   * takes a step from the current state into nextState, whose derivatives are
+   * left in f2
+   *
+   * @return the norm of the error estimate relative to the tolerances
+   */
+  private double step(FirstOrderDifferentialEquations equations, double time, double h)
+  {
+    double hd = h * D;
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      k1[i] = f0[i] + hd * timeDerivative[i];
+    }
+
+    solve(k1);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      temp[i] = state[i] + 0.5 * h * k1[i];
+    }
+
+    equations.computeDerivatives(time + 0.5 * h, temp, f1);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      k2[i] = f1[i] - k1[i];
+    }
+
+    solve(k2);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      k2[i] += k1[i];
+      nextState[i] = state[i] + h * k2[i];
+    }
+
+    equations.computeDerivatives(time + h, nextState, f2);
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      k3[i] = f2[i] - E32 * (k2[i] - f1[i]) - 2 * (k1[i] - f0[i]) + hd * timeDerivative[i];
+    }
+
+    solve(k3);
+
+    double sum = 0;
+
+    for (int i = 0; i < dimension; ++i)
+    {
+      double error = h / 6 * (k1[i] - 2 * k2[i] + k3[i]);
+      double scale = absoluteTolerance + relativeTolerance * Math.max(Math.abs(state[i]), Math.abs(nextState[i]));
+      double ratio = error / scale;
+      sum += ratio * ratio;
+    }
+
+    double error = Math.sqrt(sum / dimension);
+
+    return Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+  }
+
+  /**
+   * an event handler with the value of its switching function at the current
+   * state
+   */
+  private static class EventState
+  {
+
+    private final EventHandler handler;
+    private final double maxCheckInterval;
+    private final int maxIterationCount;
+    private final BracketingNthOrderBrentSolver solver;
+
+    private double previousValue;
+    private double eventTime;
+    private boolean isIncreasing;
+
+    private EventState(EventHandler handler, double maxCheckInterval, double convergence, int maxIterationCount)
+    {
+      this.handler = handler;
+      this.maxCheckInterval = maxCheckInterval;
+      this.maxIterationCount = maxIterationCount;
+      this.solver = new BracketingNthOrderBrentSolver(convergence, 5);
+    }
+  }
+}
@@ -0,0 +1,806 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.ArrayList;
+
+import org.apache.commons.math3.util.FastMath;
+import org.sbml.jsbml.ASTNode;
+
+/**
+ * A formula of the compiledModel lowered into a flat postfix program whose
+ * variables and reaction IDs are resolved to indices once. The program reads
+ * the values and propensities arrays of the compiledModel, so evaluating it
+ * neither hashes names nor recurses. It computes the same result as
+ * Simulator.evaluateExpressionRecursive(ASTNode). Subtrees the compiler
+ * doesn't support, such as random functions, are kept as a single instruction
+ * that writes the changed values back into the variableToValueMap and calls
+ * the recursive evaluator.
+ *
+ * An instance reuses its operand stack and is therefore not thread-safe.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+final class CompiledExpression
+{
+
+	private static final int	CONST			= 0;
+	private static final int	LOAD			= 1;
+	private static final int	LOAD_PROPENSITY	= 2;
+	private static final int	LOAD_TIME		= 3;
+	private static final int	EVAL			= 4;
+	private static final int	ADD				= 5;
+	private static final int	SUB				= 6;
+	private static final int	MUL				= 7;
+	private static final int	DIV				= 8;
+	private static final int	POW				= 9;
+	private static final int	EQ				= 10;
+	private static final int	NEQ				= 11;
+	private static final int	GEQ				= 12;
+	private static final int	GT				= 13;
+	private static final int	LEQ				= 14;
+	private static final int	LT				= 15;
+	private static final int	NOT				= 16;
+	private static final int	AND				= 17;
+	private static final int	OR				= 18;
+	private static final int	XOR				= 19;
+	private static final int	JUMP			= 20;
+	private static final int	JUMP_IF_FALSE	= 21;
+	private static final int	ABS				= 22;
+	private static final int	ACOS			= 23;
+	private static final int	ASIN			= 24;
+	private static final int	ATAN			= 25;
+	private static final int	CEIL			= 26;
+	private static final int	COS				= 27;
+	private static final int	COSH			= 28;
+	private static final int	EXP				= 29;
+	private static final int	FLOOR			= 30;
+	private static final int	LN				= 31;
+	private static final int	LOG10			= 32;
+	private static final int	SIN				= 33;
+	private static final int	SINH			= 34;
+	private static final int	TAN				= 35;
+	private static final int	TANH			= 36;
+
+	private final Simulator		simulator;
+	private final double[]		values;
+	private final double[]		propensities;
+	private final int[]			code;
+	private final double[]		constants;
+	private final ASTNode[]		nodes;
+	private final double[]		stack;
+
+	/**
+	 * compiles a formula against the variables and reactions of the
+	 * compiledModel
+	 */
+	CompiledExpression(ASTNode formula, CompiledModel compiled, Simulator simulator)
+	{
+
+		Compiler compiler = new Compiler(compiled, simulator);
+		compiler.compile(formula);
+
+		this.simulator = simulator;
+		this.values = compiled.values;
+		this.propensities = compiled.propensities;
+		this.code = new int[compiler.size];
+		System.arraycopy(compiler.code, 0, this.code, 0, compiler.size);
+		this.constants = new double[compiler.constants.size()];
+
+		for (int i = 0; i < constants.length; ++i)
+		{
+			constants[i] = compiler.constants.get(i);
+		}
+
+		this.nodes = compiler.nodes.toArray(new ASTNode[compiler.nodes.size()]);
+		this.stack = new double[Math.max(1, compiler.maxDepth)];
+	}
+
+	/**
+	 * evaluates the formula with the current values of the compiledModel
+	 */
+	double evaluate()
+	{
+
+		final int[] code = this.code;
+		final double[] stack = this.stack;
+		int sp = 0;
+		int pc = 0;
+
+		while (pc < code.length)
+		{
+
+			int op = code[pc++];
+			int arg = code[pc++];
+
+			switch (op)
+			{
+
+			case CONST:
+				stack[sp++] = constants[arg];
+				break;
+
+			case LOAD:
+				stack[sp++] = values[arg];
+				break;
+
+			case LOAD_PROPENSITY:
+				stack[sp++] = propensities[arg];
+				break;
+
+			case LOAD_TIME:
+				stack[sp++] = simulator.currentTime;
+				break;
+
+			case EVAL:
+				// the recursive evaluator reads the variableToValueMap
+				simulator.flushCompiledValues();
+				stack[sp++] = simulator.evaluateExpressionRecursive(nodes[arg]);
+				break;
+
+			case ADD:
+			{
+
+				double sum = 0.0;
+
+				for (int i = sp - arg; i < sp; ++i)
+				{
+					sum += stack[i];
+				}
+
+				sp -= arg;
+				stack[sp++] = sum;
+				break;
+			}
+
+			case SUB:
+			{
+
+				// like the recursive evaluator, a single operand isn't negated
+				int first = sp - arg;
+				double sum = stack[first];
+
+				for (int i = first + 1; i < sp; ++i)
+				{
+					sum -= stack[i];
+				}
+
+				sp = first;
+				stack[sp++] = sum;
+				break;
+			}
+
+			case MUL:
+			{
+
+				double product = 1.0;
+
+				for (int i = sp - arg; i < sp; ++i)
+				{
+					product *= stack[i];
+				}
+
+				sp -= arg;
+				stack[sp++] = product;
+				break;
+			}
+
+			case DIV:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+
+			case POW:
+				--sp;
+				stack[sp - 1] = FastMath.pow(stack[sp - 1], stack[sp]);
+				break;
+
+			case EQ:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case NEQ:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case GEQ:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case GT:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case LEQ:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case LT:
+				--sp;
+				stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1.0 : 0.0;
+				break;
+
+			case NOT:
+				stack[sp - 1] = stack[sp - 1] == 0.0 ? 1.0 : 0.0;
+				break;
+
+			case AND:
+			{
+
+				double result = 1.0;
+
+				for (int i = sp - arg; i < sp; ++i)
+				{
+					if (stack[i] == 0.0)
+					{
+						result = 0.0;
+					}
+				}
+
+				sp -= arg;
+				stack[sp++] = result;
+				break;
+			}
+
+			case OR:
+			{
+
+				double result = 0.0;
+
+				for (int i = sp - arg; i < sp; ++i)
+				{
+					if (stack[i] != 0.0)
+					{
+						result = 1.0;
+					}
+				}
+
+				sp -= arg;
+				stack[sp++] = result;
+				break;
+			}
+
+			case XOR:
+			{
+
+				boolean result = false;
+
+				for (int i = sp - arg; i < sp; ++i)
+				{
+					result = result ^ stack[i] != 0.0;
+				}
+
+				sp -= arg;
+				stack[sp++] = result ? 1.0 : 0.0;
+				break;
+			}
+
+			case JUMP:
+				pc = arg;
+				break;
+
+			case JUMP_IF_FALSE:
+				if (stack[--sp] == 0.0)
+				{
+					pc = arg;
+				}
+				break;
+
+			case ABS:
+				stack[sp - 1] = FastMath.abs(stack[sp - 1]);
+				break;
+
+			case ACOS:
+				stack[sp - 1] = FastMath.acos(stack[sp - 1]);
+				break;
+
+			case ASIN:
+				stack[sp - 1] = FastMath.asin(stack[sp - 1]);
+				break;
+
+			case ATAN:
+				stack[sp - 1] = FastMath.atan(stack[sp - 1]);
+				break;
+
+			case CEIL:
+				stack[sp - 1] = FastMath.ceil(stack[sp - 1]);
+				break;
+
+			case COS:
+				stack[sp - 1] = FastMath.cos(stack[sp - 1]);
+				break;
+
+			case COSH:
+				stack[sp - 1] = FastMath.cosh(stack[sp - 1]);
+				break;
+
+			case EXP:
+				stack[sp - 1] = FastMath.exp(stack[sp - 1]);
+				break;
+
+			case FLOOR:
+				stack[sp - 1] = FastMath.floor(stack[sp - 1]);
+				break;
+
+			case LN:
+				stack[sp - 1] = FastMath.log(stack[sp - 1]);
+				break;
+
+			case LOG10:
+				stack[sp - 1] = FastMath.log10(stack[sp - 1]);
+				break;
+
+			case SIN:
+				stack[sp - 1] = FastMath.sin(stack[sp - 1]);
+				break;
+
+			case SINH:
+				stack[sp - 1] = FastMath.sinh(stack[sp - 1]);
+				break;
+
+			case TAN:
+				stack[sp - 1] = FastMath.tan(stack[sp - 1]);
+				break;
+
+			case TANH:
+				stack[sp - 1] = FastMath.tanh(stack[sp - 1]);
+				break;
+
+			default:
+				break;
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * emits instructions as (opcode, argument) pairs
+	 */
+	private static final class Compiler
+	{
+
+		private final CompiledModel		compiled;
+		private final Simulator			simulator;
+		private int[]					code		= new int[32];
+		private int						size;
+		private int						depth;
+		private int						maxDepth;
+		private ArrayList<Double>		constants	= new ArrayList<Double>();
+		private ArrayList<ASTNode>		nodes		= new ArrayList<ASTNode>();
+		private int						numEvals;
+
+		Compiler(CompiledModel compiled, Simulator simulator)
+		{
+			this.compiled = compiled;
+			this.simulator = simulator;
+		}
+
+		private void emit(int op, int arg, int stackChange)
+		{
+
+			if (size + 2 > code.length)
+			{
+				int[] newCode = new int[code.length * 2];
+				System.arraycopy(code, 0, newCode, 0, size);
+				code = newCode;
+			}
+
+			code[size++] = op;
+			code[size++] = arg;
+			depth += stackChange;
+
+			if (depth > maxDepth)
+			{
+				maxDepth = depth;
+			}
+		}
+
+		private void emitConstant(double value)
+		{
+			constants.add(value);
+			emit(CONST, constants.size() - 1, 1);
+		}
+
+		private void emitEval(ASTNode node)
+		{
+			nodes.add(node);
+			++numEvals;
+			emit(EVAL, nodes.size() - 1, 1);
+		}
+
+		private void compileNary(ASTNode node, int op)
+		{
+
+			int numChildren = node.getChildCount();
+
+			for (int childIter = 0; childIter < numChildren; ++childIter)
+			{
+				compile(node.getChild(childIter));
+			}
+
+			emit(op, numChildren, 1 - numChildren);
+		}
+
+		private void compileUnary(ASTNode node, int op)
+		{
+
+			if (node.getChildCount() < 1)
+			{
+				emitEval(node);
+				return;
+			}
+
+			compile(node.getChild(0));
+			emit(op, 0, 0);
+		}
+
+		private void compileBinary(ASTNode node, int op)
+		{
+
+			if (node.getChildCount() != 2)
+			{
+				emitEval(node);
+				return;
+			}
+
+			compile(node.getLeftChild());
+			compile(node.getRightChild());
+			emit(op, 0, -1);
+		}
+
+		/**
+		 * the recursive evaluator stops at the first operand that decides the
+		 * result, so the operands are only evaluated eagerly when none of
+		 * them falls back to it
+		 */
+		private void compileShortCircuit(ASTNode node, int op)
+		{
+
+			int mark = size;
+			int markDepth = depth;
+			int markConstants = constants.size();
+			int markNodes = nodes.size();
+			int markEvals = numEvals;
+
+			compileNary(node, op);
+
+			if (numEvals > markEvals)
+			{
+				size = mark;
+				depth = markDepth;
+				numEvals = markEvals;
+
+				while (constants.size() > markConstants)
+				{
+					constants.remove(constants.size() - 1);
+				}
+
+				while (nodes.size() > markNodes)
+				{
+					nodes.remove(nodes.size() - 1);
+				}
+
+				emitEval(node);
+			}
+		}
+
+		/**
+		 * mirrors the recursive evaluator, which returns the first child if
+		 * the second is true and the third child otherwise
+		 */
+		private void compilePiecewise(ASTNode node)
+		{
+
+			int numChildren = node.getChildCount();
+
+			if (numChildren < 2)
+			{
+				emitConstant(0.0);
+				return;
+			}
+
+			int startDepth = depth;
+
+			compile(node.getChild(1));
+			emit(JUMP_IF_FALSE, 0, -1);
+			int otherwise = size - 1;
+			compile(node.getChild(0));
+			emit(JUMP, 0, 0);
+			int end = size - 1;
+			code[otherwise] = size;
+			depth = startDepth;
+
+			if (numChildren > 2)
+			{
+				compile(node.getChild(2));
+			}
+			else
+			{
+				emitConstant(0.0);
+			}
+
+			code[end] = size;
+			depth = startDepth + 1;
+		}
+
+		private void compileName(ASTNode node)
+		{
+
+			if (node.getType() == ASTNode.Type.NAME_TIME)
+			{
+				emit(LOAD_TIME, 0, 1);
+				return;
+			}
+
+			if (node.getType() != ASTNode.Type.NAME)
+			{
+				emitEval(node);
+				return;
+			}
+
+			// if it's a reaction id it stands for the propensity
+			if (simulator.reactionToPropensityMap.containsKey(node.getName()))
+			{
+
+				int reaction = compiled.reactionToIndexMap.get(node.getName());
+
+				if (reaction >= 0)
+				{
+					emit(LOAD_PROPENSITY, reaction, 1);
+				}
+				else
+				{
+					emitEval(node);
+				}
+
+				return;
+			}
+
+			String name = node.getName().replace("_negative_", "-");
+			int variable = compiled.variableToIndexMap.get(name);
+
+			if (variable < 0)
+			{
+				emitEval(node);
+				return;
+			}
+
+			// a species in concentration units is divided by its compartment
+			if (simulator.speciesToHasOnlySubstanceUnitsMap.containsKey(name) && simulator.speciesToHasOnlySubstanceUnitsMap.get(name) == false)
+			{
+
+				String compartmentID = simulator.speciesToCompartmentNameMap.get(name);
+				int compartment = compartmentID == null ? -1 : compiled.variableToIndexMap.get(compartmentID);
+
+				if (compartment < 0)
+				{
+					emitEval(node);
+					return;
+				}
+
+				emit(LOAD, variable, 1);
+				emit(LOAD, compartment, 1);
+				emit(DIV, 0, -1);
+				return;
+			}
+
+			emit(LOAD, variable, 1);
+		}
+
+		private void compile(ASTNode node)
+		{
+
+			if (node.isBoolean())
+			{
+
+				switch (node.getType())
+				{
+
+				case CONSTANT_TRUE:
+					emitConstant(1.0);
+					return;
+
+				case CONSTANT_FALSE:
+					emitConstant(0.0);
+					return;
+
+				case LOGICAL_NOT:
+					compileUnary(node, NOT);
+					return;
+
+				case LOGICAL_AND:
+					compileShortCircuit(node, AND);
+					return;
+
+				case LOGICAL_OR:
+					compileShortCircuit(node, OR);
+					return;
+
+				case LOGICAL_XOR:
+					if (node.getChildCount() < 1)
+					{
+						emitEval(node);
+						return;
+					}
+					compileNary(node, XOR);
+					return;
+
+				case RELATIONAL_EQ:
+					compileBinary(node, EQ);
+					return;
+
+				case RELATIONAL_NEQ:
+					compileBinary(node, NEQ);
+					return;
+
+				case RELATIONAL_GEQ:
+					compileBinary(node, GEQ);
+					return;
+
+				case RELATIONAL_GT:
+					compileBinary(node, GT);
+					return;
+
+				case RELATIONAL_LEQ:
+					compileBinary(node, LEQ);
+					return;
+
+				case RELATIONAL_LT:
+					compileBinary(node, LT);
+					return;
+
+				default:
+					emitEval(node);
+					return;
+				}
+			}
+			else if (node.isConstant())
+			{
+
+				switch (node.getType())
+				{
+
+				case CONSTANT_E:
+					emitConstant(Math.E);
+					return;
+
+				case CONSTANT_PI:
+					emitConstant(Math.PI);
+					return;
+
+				default:
+					emitEval(node);
+					return;
+				}
+			}
+			else if (node.isNumber())
+			{
+				emitConstant(node.getReal());
+				return;
+			}
+			else if (node.isName())
+			{
+				compileName(node);
+				return;
+			}
+
+			switch (node.getType())
+			{
+
+			case PLUS:
+				compileNary(node, ADD);
+				return;
+
+			case MINUS:
+				if (node.getChildCount() < 1)
+				{
+					emitEval(node);
+					return;
+				}
+				compileNary(node, SUB);
+				return;
+
+			case TIMES:
+				compileNary(node, MUL);
+				return;
+
+			case DIVIDE:
+				compileBinary(node, DIV);
+				return;
+
+			case FUNCTION_POWER:
+				compileBinary(node, POW);
+				return;
+
+			case FUNCTION_PIECEWISE:
+				compilePiecewise(node);
+				return;
+
+			case FUNCTION_ABS:
+				compileUnary(node, ABS);
+				return;
+
+			case FUNCTION_ARCCOS:
+				compileUnary(node, ACOS);
+				return;
+
+			case FUNCTION_ARCSIN:
+				compileUnary(node, ASIN);
+				return;
+
+			case FUNCTION_ARCTAN:
+				compileUnary(node, ATAN);
+				return;
+
+			case FUNCTION_CEILING:
+				compileUnary(node, CEIL);
+				return;
+
+			case FUNCTION_COS:
+				compileUnary(node, COS);
+				return;
+
+			case FUNCTION_COSH:
+				compileUnary(node, COSH);
+				return;
+
+			case FUNCTION_EXP:
+				compileUnary(node, EXP);
+				return;
+
+			case FUNCTION_FLOOR:
+				compileUnary(node, FLOOR);
+				return;
+
+			case FUNCTION_LN:
+				compileUnary(node, LN);
+				return;
+
+			case FUNCTION_LOG:
+				compileUnary(node, LOG10);
+				return;
+
+			case FUNCTION_SIN:
+				compileUnary(node, SIN);
+				return;
+
+			case FUNCTION_SINH:
+				compileUnary(node, SINH);
+				return;
+
+			case FUNCTION_TAN:
+				compileUnary(node, TAN);
+				return;
+
+			case FUNCTION_TANH:
+				compileUnary(node, TANH);
+				return;
+
+			default:
+				emitEval(node);
+				return;
+			}
+		}
+	}
+
+}
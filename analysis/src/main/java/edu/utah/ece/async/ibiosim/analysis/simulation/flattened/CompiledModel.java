@@ -0,0 +1,482 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.AssignmentRule;
+
+/**
+ * The reaction network of a simulator with its variables and reactions
+ * numbered by dense integer indices. The variables are the keys of the
+ * variableToValueMap (species, compartments, parameters and species
+ * references) in the order of the map, and the reactions are the split
+ * reactions of the reactionToFormulaMap. The stoichiometries, the reactant
+ * requirements and the reactions whose propensities a reaction affects are
+ * stored in compressed sparse row form, so that firing a reaction and updating
+ * the propensities it affects neither hashes reaction IDs nor allocates sets.
+ *
+ * The model holds the state of the simulator: the values of the variables and
+ * the propensities of the reactions are kept in arrays, and the kinetic laws
+ * are compiled into programs that read them by index. Firing reactions,
+ * updating propensities and integrating the values only change the arrays.
+ * The changed entries are written back into the variableToValueMap and
+ * reactionToPropensityMap before rules, events, constraints and output read
+ * them through the expression evaluator, and the variables those change are
+ * read back afterwards. A model that changes dynamically is not compiled,
+ * since its reactions change during a run.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompiledModel
+{
+
+	final String[]						variableIDs;
+	final TObjectIntHashMap<String>		variableToIndexMap;
+
+	final String[]						reactionIDs;
+	final TObjectIntHashMap<String>		reactionToIndexMap;
+	final ASTNode[]						reactionFormulas;
+
+	// the factor by which stoichiometry amplification scales a propensity
+	final double[]						propensityScales;
+
+	// reactions whose stoichiometries are variables are performed by ID
+	final boolean[]						hasNonconstantStoichiometry;
+
+	// reaction r changes variable stoichiometryVariables[k] by
+	// stoichiometries[k] for stoichiometryStart[r] <= k < stoichiometryStart[r + 1]
+	final int[]							stoichiometryStart;
+	final int[]							stoichiometryVariables;
+	final double[]						stoichiometries;
+
+	// reaction r needs at least reactantStoichiometries[k] of variable
+	// reactantVariables[k] for reactantStart[r] <= k < reactantStart[r + 1]
+	final int[]							reactantStart;
+	final int[]							reactantVariables;
+	final double[]						reactantStoichiometries;
+
+	// firing reaction r changes the propensities of the reactions
+	// dependencies[k] for dependencyStart[r] <= k < dependencyStart[r + 1]
+	final int[]							dependencyStart;
+	final int[]							dependencies;
+
+	// whether reactions change the value of the variable, that is whether it
+	// is a species that is neither a boundary condition nor constant
+	final boolean[]						isUpdatable;
+
+	// the index of the conversion factor of a species, or -1
+	final int[]							conversionFactors;
+
+	final boolean[]						isInAssignmentRule;
+	final boolean[]						isInConstraint;
+
+	final double[]						propensities;
+
+	// the values of the variables, which the maps only match after a call to
+	// flush; as with the variableToValueMap, reactions don't change the
+	// variables that aren't in the map
+	final double[]						values;
+	private final boolean[]				isInValueMap;
+
+	// the kinetic laws compiled against the values and propensities
+	final CompiledExpression[]			reactionPrograms;
+
+	// the variables and reactions changed since the last flush
+	private final int[]					changedVariables;
+	private final boolean[]				isVariableChanged;
+	private int							numChangedVariables;
+	private boolean						areAllValuesChanged;
+	private final int[]					changedReactions;
+	private final boolean[]				isReactionChanged;
+	private int							numChangedReactions;
+
+	/**
+	 * compiles the reactions that the simulator has set up
+	 *
+	 * @param simulator
+	 * @param noAssignmentRulesFlag
+	 *            whether the dependencies can leave out the reactions affected
+	 *            through assignment rules
+	 */
+	CompiledModel(Simulator simulator, boolean noAssignmentRulesFlag)
+	{
+
+		ArrayList<String> variableList = new ArrayList<String>(simulator.variableToValueMap.keySet());
+		variableToIndexMap = new TObjectIntHashMap<String>((int) (variableList.size() * 1.5), 0.5f, -1);
+
+		for (int i = 0; i < variableList.size(); ++i)
+		{
+			variableToIndexMap.put(variableList.get(i), i);
+		}
+
+		int numReactions = simulator.reactionToFormulaMap.size();
+		reactionIDs = simulator.reactionToFormulaMap.keySet().toArray(new String[numReactions]);
+		reactionToIndexMap = new TObjectIntHashMap<String>((int) (numReactions * 1.5), 0.5f, -1);
+		reactionFormulas = new ASTNode[numReactions];
+		propensityScales = new double[numReactions];
+		hasNonconstantStoichiometry = new boolean[numReactions];
+		propensities = new double[numReactions];
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			String reactionID = reactionIDs[r];
+
+			reactionToIndexMap.put(reactionID, r);
+			reactionFormulas[r] = simulator.reactionToFormulaMap.get(reactionID);
+			propensityScales[r] = 1.0;
+			hasNonconstantStoichiometry[r] = simulator.reactionToNonconstantStoichiometriesSetMap.containsKey(reactionID);
+			propensities[r] = simulator.reactionToPropensityMap.get(reactionID);
+
+			// stoichiometry amplification -- alter the propensity
+			if (reactionID.contains("_Diffusion_") && simulator.stoichAmpBoolean == true)
+			{
+				propensityScales[r] = 1.0 / simulator.stoichAmpGridValue;
+			}
+		}
+
+		// the stoichiometries
+		stoichiometryStart = new int[numReactions + 1];
+		ArrayList<Simulator.StringDoublePair> entries = new ArrayList<Simulator.StringDoublePair>();
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			HashSet<Simulator.StringDoublePair> speciesAndStoichiometrySet = simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionIDs[r]);
+
+			if (speciesAndStoichiometrySet != null)
+			{
+				entries.addAll(speciesAndStoichiometrySet);
+			}
+
+			stoichiometryStart[r + 1] = entries.size();
+		}
+
+		stoichiometryVariables = new int[entries.size()];
+		stoichiometries = new double[entries.size()];
+
+		for (int k = 0; k < entries.size(); ++k)
+		{
+			stoichiometryVariables[k] = internVariable(variableList, entries.get(k).string);
+			stoichiometries[k] = entries.get(k).doub;
+		}
+
+		// the reactant requirements
+		reactantStart = new int[numReactions + 1];
+		entries.clear();
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			HashSet<Simulator.StringDoublePair> reactantStoichiometrySet = simulator.reactionToReactantStoichiometrySetMap.get(reactionIDs[r]);
+
+			if (reactantStoichiometrySet != null)
+			{
+				entries.addAll(reactantStoichiometrySet);
+			}
+
+			reactantStart[r + 1] = entries.size();
+		}
+
+		reactantVariables = new int[entries.size()];
+		reactantStoichiometries = new double[entries.size()];
+
+		for (int k = 0; k < entries.size(); ++k)
+		{
+			reactantVariables[k] = internVariable(variableList, entries.get(k).string);
+			reactantStoichiometries[k] = entries.get(k).doub;
+		}
+
+		// the conversion factors are looked up by index as well
+		for (String speciesID : simulator.speciesToConversionFactorMap.keySet())
+		{
+			internVariable(variableList, simulator.speciesToConversionFactorMap.get(speciesID));
+		}
+
+		variableIDs = variableList.toArray(new String[variableList.size()]);
+
+		int numVariables = variableIDs.length;
+		isUpdatable = new boolean[numVariables];
+		conversionFactors = new int[numVariables];
+		isInAssignmentRule = new boolean[numVariables];
+		isInConstraint = new boolean[numVariables];
+
+		for (int v = 0; v < numVariables; ++v)
+		{
+
+			String variableID = variableIDs[v];
+
+			isUpdatable[v] = simulator.speciesIDSet.contains(variableID) && isTrue(simulator.speciesToIsBoundaryConditionMap.get(variableID)) == false
+					&& isTrue(simulator.variableToIsConstantMap.get(variableID)) == false;
+			conversionFactors[v] = -1;
+
+			if (simulator.speciesToConversionFactorMap.containsKey(variableID))
+			{
+				conversionFactors[v] = variableToIndexMap.get(simulator.speciesToConversionFactorMap.get(variableID));
+			}
+
+			isInAssignmentRule[v] = simulator.variableToIsInAssignmentRuleMap != null && isTrue(simulator.variableToIsInAssignmentRuleMap.get(variableID));
+			isInConstraint[v] = simulator.variableToIsInConstraintMap != null && isTrue(simulator.variableToIsInConstraintMap.get(variableID));
+		}
+
+		// the dependency graph
+		dependencyStart = new int[numReactions + 1];
+		int[] dependencyList = new int[numReactions];
+		int numDependencies = 0;
+
+		// lastMarked[d] == r + 1 once d is a dependency of r
+		int[] lastMarked = new int[numReactions];
+		int[] affected = new int[numReactions];
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			int numAffected = 0;
+
+			lastMarked[r] = r + 1;
+			affected[numAffected++] = r;
+
+			for (int k = stoichiometryStart[r]; k < stoichiometryStart[r + 1]; ++k)
+			{
+
+				String speciesID = variableIDs[stoichiometryVariables[k]];
+
+				numAffected = markReactions(simulator.speciesToAffectedReactionSetMap.get(speciesID), r, lastMarked, affected, numAffected);
+
+				// if the species is involved in an assignment rule then its
+				// changing may affect a reaction's propensity
+				if (noAssignmentRulesFlag == false && isInAssignmentRule[stoichiometryVariables[k]])
+				{
+					for (AssignmentRule assignmentRule : simulator.variableToAffectedAssignmentRuleSetMap.get(speciesID))
+					{
+						numAffected = markReactions(simulator.speciesToAffectedReactionSetMap.get(assignmentRule.getVariable()), r, lastMarked, affected, numAffected);
+					}
+				}
+			}
+
+			Arrays.sort(affected, 0, numAffected);
+
+			if (numDependencies + numAffected > dependencyList.length)
+			{
+				dependencyList = Arrays.copyOf(dependencyList, Math.max(2 * dependencyList.length, numDependencies + numAffected));
+			}
+
+			System.arraycopy(affected, 0, dependencyList, numDependencies, numAffected);
+			numDependencies += numAffected;
+			dependencyStart[r + 1] = numDependencies;
+		}
+
+		dependencies = Arrays.copyOf(dependencyList, numDependencies);
+
+		// the state
+		values = new double[numVariables];
+		isInValueMap = new boolean[numVariables];
+
+		for (int v = 0; v < numVariables; ++v)
+		{
+			isInValueMap[v] = simulator.variableToValueMap.containsKey(variableIDs[v]);
+			values[v] = simulator.variableToValueMap.get(variableIDs[v]);
+		}
+
+		changedVariables = new int[numVariables];
+		isVariableChanged = new boolean[numVariables];
+		changedReactions = new int[numReactions];
+		isReactionChanged = new boolean[numReactions];
+		reactionPrograms = new CompiledExpression[numReactions];
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+			reactionPrograms[r] = new CompiledExpression(reactionFormulas[r], this, simulator);
+		}
+	}
+
+	/**
+	 * changes the value of a variable by the given amount
+	 */
+	void adjustValue(int variable, double change)
+	{
+
+		// like the variableToValueMap, which doesn't adjust missing keys
+		if (isInValueMap[variable] == false)
+		{
+			return;
+		}
+
+		values[variable] += change;
+
+		if (isVariableChanged[variable] == false)
+		{
+			isVariableChanged[variable] = true;
+			changedVariables[numChangedVariables++] = variable;
+		}
+	}
+
+	/**
+	 * sets the values of all of the variables at once, as an integrator does.
+	 * The values array itself may be passed after it was changed in place.
+	 */
+	void setValues(double[] newValues)
+	{
+
+		if (newValues != values)
+		{
+			System.arraycopy(newValues, 0, values, 0, values.length);
+		}
+
+		areAllValuesChanged = true;
+	}
+
+	/**
+	 * sets the propensity of a reaction
+	 */
+	void setPropensity(int reaction, double propensity)
+	{
+
+		propensities[reaction] = propensity;
+
+		if (isReactionChanged[reaction] == false)
+		{
+			isReactionChanged[reaction] = true;
+			changedReactions[numChangedReactions++] = reaction;
+		}
+	}
+
+	/**
+	 * writes the values and propensities changed since the last call into the
+	 * maps
+	 */
+	void flush(TObjectDoubleHashMap<String> variableToValueMap, TObjectDoubleHashMap<String> reactionToPropensityMap)
+	{
+
+		for (int i = 0; i < numChangedVariables; ++i)
+		{
+
+			int variable = changedVariables[i];
+
+			if (areAllValuesChanged == false)
+			{
+				variableToValueMap.put(variableIDs[variable], values[variable]);
+			}
+
+			isVariableChanged[variable] = false;
+		}
+
+		numChangedVariables = 0;
+
+		if (areAllValuesChanged == true)
+		{
+
+			for (int variable = 0; variable < values.length; ++variable)
+			{
+
+				if (isInValueMap[variable] == true)
+				{
+					variableToValueMap.put(variableIDs[variable], values[variable]);
+				}
+			}
+
+			areAllValuesChanged = false;
+		}
+
+		for (int i = 0; i < numChangedReactions; ++i)
+		{
+
+			int reaction = changedReactions[i];
+
+			reactionToPropensityMap.put(reactionIDs[reaction], propensities[reaction]);
+			isReactionChanged[reaction] = false;
+		}
+
+		numChangedReactions = 0;
+	}
+
+	/**
+	 * reads the value of a variable back from the map after a rule or an
+	 * event changed it
+	 */
+	void load(TObjectDoubleHashMap<String> variableToValueMap, String variableID)
+	{
+
+		int variable = variableToIndexMap.get(variableID);
+
+		if (variable >= 0)
+		{
+			values[variable] = variableToValueMap.get(variableID);
+		}
+	}
+
+	/**
+	 * adds the reactions of the set that aren't marked yet to the affected
+	 * reactions of reaction r
+	 *
+	 * @return the new number of affected reactions
+	 */
+	private int markReactions(HashSet<String> reactionSet, int r, int[] lastMarked, int[] affected, int numAffected)
+	{
+
+		if (reactionSet == null)
+		{
+			return numAffected;
+		}
+
+		for (String reactionID : reactionSet)
+		{
+
+			int d = reactionToIndexMap.get(reactionID);
+
+			if (d >= 0 && lastMarked[d] != r + 1)
+			{
+				lastMarked[d] = r + 1;
+				affected[numAffected++] = d;
+			}
+		}
+
+		return numAffected;
+	}
+
+	/**
+	 * returns the index of the variable, adding the variable if it isn't in
+	 * the variableToValueMap
+	 */
+	private int internVariable(ArrayList<String> variableList, String variableID)
+	{
+
+		int index = variableToIndexMap.get(variableID);
+
+		if (index < 0)
+		{
+			index = variableList.size();
+			variableList.add(variableID);
+			variableToIndexMap.put(variableID, index);
+		}
+
+		return index;
+	}
+
+	private static boolean isTrue(Boolean value)
+	{
+		return value != null && value.booleanValue();
+	}
+
+}
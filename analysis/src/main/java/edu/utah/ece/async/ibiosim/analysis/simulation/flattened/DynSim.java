@@ -146,6 +146,18 @@ public class DynSim
 			{
 				simulator = new DynamicSimulation(SimulationType.DIRECT);
 			}
+			else if (selectedSimulator.contains("SSA-NRM"))
+			{
+				simulator = new DynamicSimulation(SimulationType.NRM);
+			}
+			else if (selectedSimulator.contains("SSA-Tau-Leap"))
+			{
+				simulator = new DynamicSimulation(SimulationType.TAU_LEAP);
+			}
+			else if (selectedSimulator.contains("Rosenbrock"))
+			{
+				simulator = new DynamicSimulation(SimulationType.ROSENBROCK);
+			}
 			else
 			{
 				simulator = new DynamicSimulation(SimulationType.RK);
@@ -0,0 +1,542 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.Set;
+
+import org.sbml.jsbml.ASTNode;
+
+/**
+ * Builds the partial derivatives of formulas as new ASTNode trees, which
+ * Simulator.evaluateExpressionRecursive(ASTNode) evaluates like any other
+ * formula. A derivative is taken with respect to a value of the
+ * variableToValueMap, so a species in concentration units, which a formula
+ * reads as its amount over the size of its compartment, has a derivative with
+ * respect to both. A derivative that is zero by the structure of the formula
+ * is null.
+ *
+ * The time and the propensities are constant while the derivatives of an ODE
+ * are evaluated, so formulas have no derivative with respect to them. Random
+ * functions, delays and the less common functions aren't differentiable.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+final class FormulaDifferentiator
+{
+
+	private final Simulator	simulator;
+
+	FormulaDifferentiator(Simulator simulator)
+	{
+
+		this.simulator = simulator;
+	}
+
+	/**
+	 * returns whether every part of a formula that can change its value can be
+	 * differentiated
+	 */
+	boolean isDifferentiable(ASTNode node)
+	{
+
+		// conditions and rounding only change the value in jumps
+		if (node.isBoolean() || node.isNumber() || node.isConstant() || node.isName())
+		{
+			return true;
+		}
+
+		switch (node.getType())
+		{
+
+		case FUNCTION_CEILING:
+		case FUNCTION_FLOOR:
+			return true;
+
+		case DIVIDE:
+		case FUNCTION_POWER:
+		case FUNCTION_ROOT:
+			if (node.getChildCount() != 2)
+			{
+				return false;
+			}
+			break;
+
+		case FUNCTION_LOG:
+			if (node.getChildCount() != 1)
+			{
+				return false;
+			}
+			break;
+
+		case FUNCTION_EXP:
+		case FUNCTION_LN:
+		case FUNCTION_SIN:
+		case FUNCTION_COS:
+		case FUNCTION_TAN:
+		case FUNCTION_SINH:
+		case FUNCTION_COSH:
+		case FUNCTION_TANH:
+		case FUNCTION_ARCSIN:
+		case FUNCTION_ARCCOS:
+		case FUNCTION_ARCTAN:
+		case FUNCTION_ABS:
+		case PLUS:
+		case MINUS:
+		case TIMES:
+			if (node.getChildCount() == 0)
+			{
+				return false;
+			}
+			break;
+
+		case FUNCTION_PIECEWISE:
+			break;
+
+		default:
+			return false;
+		}
+
+		for (int childIter = 0; childIter < node.getChildCount(); ++childIter)
+		{
+
+			// the conditions of a piecewise are only evaluated
+			if (node.getType() == ASTNode.Type.FUNCTION_PIECEWISE && childIter % 3 == 1)
+			{
+				continue;
+			}
+
+			if (!isDifferentiable(node.getChild(childIter)))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * adds the variables of the variableToValueMap that a formula reads
+	 */
+	void addVariables(ASTNode node, Set<String> variables)
+	{
+
+		if (node.isName())
+		{
+
+			if (node.getType() != ASTNode.Type.NAME_TIME && !simulator.reactionToPropensityMap.containsKey(node.getName()))
+			{
+
+				String name = node.getName().replace("_negative_", "-");
+				String compartment = getCompartment(name);
+
+				variables.add(name);
+
+				if (compartment != null)
+				{
+					variables.add(compartment);
+				}
+			}
+		}
+
+		for (int childIter = 0; childIter < node.getChildCount(); ++childIter)
+		{
+			addVariables(node.getChild(childIter), variables);
+		}
+	}
+
+	/**
+	 * returns the partial derivative of a differentiable formula with respect
+	 * to a variable, or null if it is zero
+	 */
+	ASTNode differentiate(ASTNode node, String variable)
+	{
+
+		if (node.isBoolean() || node.isNumber() || node.isConstant())
+		{
+			return null;
+		}
+
+		if (node.isName())
+		{
+			return differentiateName(node, variable);
+		}
+
+		switch (node.getType())
+		{
+
+		case PLUS:
+		{
+
+			ASTNode sum = null;
+
+			for (int childIter = 0; childIter < node.getChildCount(); ++childIter)
+			{
+				sum = plus(sum, differentiate(node.getChild(childIter), variable));
+			}
+
+			return sum;
+		}
+
+		case MINUS:
+		{
+
+			// the evaluator subtracts the other children from the first one,
+			// which a single child is returned as
+			ASTNode difference = differentiate(node.getChild(0), variable);
+
+			for (int childIter = 1; childIter < node.getChildCount(); ++childIter)
+			{
+				difference = plus(difference, negate(differentiate(node.getChild(childIter), variable)));
+			}
+
+			return difference;
+		}
+
+		case TIMES:
+		{
+
+			ASTNode sum = null;
+
+			for (int childIter = 0; childIter < node.getChildCount(); ++childIter)
+			{
+
+				ASTNode term = differentiate(node.getChild(childIter), variable);
+
+				if (term == null)
+				{
+					continue;
+				}
+
+				for (int otherIter = 0; otherIter < node.getChildCount(); ++otherIter)
+				{
+
+					if (otherIter != childIter)
+					{
+						term = times(term, node.getChild(otherIter).clone());
+					}
+				}
+
+				sum = plus(sum, term);
+			}
+
+			return sum;
+		}
+
+		case DIVIDE:
+		{
+
+			ASTNode denominator = node.getRightChild();
+			ASTNode result = divide(differentiate(node.getLeftChild(), variable), denominator.clone());
+			ASTNode denominatorDerivative = differentiate(denominator, variable);
+
+			// (a / b)' = a' / b - (a / b) b' / b
+			if (denominatorDerivative != null)
+			{
+				result = plus(result, negate(divide(times(node.clone(), denominatorDerivative), denominator.clone())));
+			}
+
+			return result;
+		}
+
+		case FUNCTION_POWER:
+		{
+
+			ASTNode base = node.getLeftChild();
+			ASTNode exponent = node.getRightChild();
+			ASTNode result = null;
+			ASTNode baseDerivative = differentiate(base, variable);
+			ASTNode exponentDerivative = differentiate(exponent, variable);
+
+			// (a^b)' = b a^(b - 1) a' + a^b ln(a) b'
+			if (baseDerivative != null)
+			{
+
+				ASTNode reduced = exponent.isNumber() ? number(exponent.getReal() - 1) : minus(exponent.clone(), number(1));
+
+				result = times(times(exponent.clone(), power(base.clone(), reduced)), baseDerivative);
+			}
+
+			if (exponentDerivative != null)
+			{
+				result = plus(result, times(times(node.clone(), function(ASTNode.Type.FUNCTION_LN, base.clone())), exponentDerivative));
+			}
+
+			return result;
+		}
+
+		case FUNCTION_ROOT:
+			// the evaluator raises the second child to one over the first one
+			return differentiate(power(node.getRightChild().clone(), divide(number(1), node.getLeftChild().clone())), variable);
+
+		case FUNCTION_EXP:
+			return times(node.clone(), differentiate(node.getChild(0), variable));
+
+		case FUNCTION_LN:
+			return divide(differentiate(node.getChild(0), variable), node.getChild(0).clone());
+
+		case FUNCTION_LOG:
+			// the evaluator takes the base 10 logarithm
+			return divide(differentiate(node.getChild(0), variable), times(number(Math.log(10)), node.getChild(0).clone()));
+
+		case FUNCTION_SIN:
+			return times(function(ASTNode.Type.FUNCTION_COS, node.getChild(0).clone()), differentiate(node.getChild(0), variable));
+
+		case FUNCTION_COS:
+			return negate(times(function(ASTNode.Type.FUNCTION_SIN, node.getChild(0).clone()), differentiate(node.getChild(0), variable)));
+
+		case FUNCTION_TAN:
+			return divide(differentiate(node.getChild(0), variable), power(function(ASTNode.Type.FUNCTION_COS, node.getChild(0).clone()), number(2)));
+
+		case FUNCTION_SINH:
+			return times(function(ASTNode.Type.FUNCTION_COSH, node.getChild(0).clone()), differentiate(node.getChild(0), variable));
+
+		case FUNCTION_COSH:
+			return times(function(ASTNode.Type.FUNCTION_SINH, node.getChild(0).clone()), differentiate(node.getChild(0), variable));
+
+		case FUNCTION_TANH:
+			return divide(differentiate(node.getChild(0), variable), power(function(ASTNode.Type.FUNCTION_COSH, node.getChild(0).clone()), number(2)));
+
+		case FUNCTION_ARCSIN:
+			return divide(differentiate(node.getChild(0), variable), power(minus(number(1), power(node.getChild(0).clone(), number(2))), number(0.5)));
+
+		case FUNCTION_ARCCOS:
+			return negate(divide(differentiate(node.getChild(0), variable), power(minus(number(1), power(node.getChild(0).clone(), number(2))), number(0.5))));
+
+		case FUNCTION_ARCTAN:
+			return divide(differentiate(node.getChild(0), variable), plus(number(1), power(node.getChild(0).clone(), number(2))));
+
+		case FUNCTION_ABS:
+		{
+
+			ASTNode derivative = differentiate(node.getChild(0), variable);
+
+			if (derivative == null)
+			{
+				return null;
+			}
+
+			ASTNode isNegative = new ASTNode(ASTNode.Type.RELATIONAL_LT);
+			isNegative.addChild(node.getChild(0).clone());
+			isNegative.addChild(number(0));
+
+			ASTNode piecewise = new ASTNode(ASTNode.Type.FUNCTION_PIECEWISE);
+			piecewise.addChild(negate(derivative.clone()));
+			piecewise.addChild(isNegative);
+			piecewise.addChild(derivative);
+
+			return piecewise;
+		}
+
+		case FUNCTION_PIECEWISE:
+		{
+
+			// the evaluator returns the first child if the second one holds and
+			// the third child, or zero, otherwise
+			if (node.getChildCount() < 2)
+			{
+				return null;
+			}
+
+			ASTNode value = differentiate(node.getChild(0), variable);
+			ASTNode otherwise = node.getChildCount() > 2 ? differentiate(node.getChild(2), variable) : null;
+
+			if (value == null && otherwise == null)
+			{
+				return null;
+			}
+
+			ASTNode piecewise = new ASTNode(ASTNode.Type.FUNCTION_PIECEWISE);
+			piecewise.addChild(value == null ? number(0) : value);
+			piecewise.addChild(node.getChild(1).clone());
+			piecewise.addChild(otherwise == null ? number(0) : otherwise);
+
+			return piecewise;
+		}
+
+		default:
+			return null;
+		}
+	}
+
+	private ASTNode differentiateName(ASTNode node, String variable)
+	{
+
+		if (node.getType() == ASTNode.Type.NAME_TIME || simulator.reactionToPropensityMap.containsKey(node.getName()))
+		{
+			return null;
+		}
+
+		String name = node.getName().replace("_negative_", "-");
+		String compartment = getCompartment(name);
+
+		if (compartment == null)
+		{
+			return name.equals(variable) ? number(1) : null;
+		}
+
+		// the evaluator reads the amount over the size of the compartment
+		if (name.equals(variable))
+		{
+			return divide(number(1), name(compartment));
+		}
+		else if (compartment.equals(variable))
+		{
+			return negate(divide(node.clone(), name(compartment)));
+		}
+
+		return null;
+	}
+
+	/**
+	 * returns the compartment of a species in concentration units, or null
+	 */
+	String getCompartment(String name)
+	{
+
+		Boolean hasOnlySubstanceUnits = simulator.speciesToHasOnlySubstanceUnitsMap.get(name);
+
+		if (hasOnlySubstanceUnits != null && hasOnlySubstanceUnits == false)
+		{
+			return simulator.speciesToCompartmentNameMap.get(name);
+		}
+
+		return null;
+	}
+
+	private static ASTNode number(double value)
+	{
+
+		return new ASTNode(value);
+	}
+
+	private static ASTNode name(String name)
+	{
+
+		ASTNode node = new ASTNode(ASTNode.Type.NAME);
+		node.setName(name);
+
+		return node;
+	}
+
+	private static ASTNode function(ASTNode.Type type, ASTNode argument)
+	{
+
+		ASTNode node = new ASTNode(type);
+		node.addChild(argument);
+
+		return node;
+	}
+
+	private static ASTNode plus(ASTNode left, ASTNode right)
+	{
+
+		if (left == null)
+		{
+			return right;
+		}
+		else if (right == null)
+		{
+			return left;
+		}
+		else if (left.isNumber() && right.isNumber())
+		{
+			return number(left.getReal() + right.getReal());
+		}
+
+		ASTNode node = new ASTNode(ASTNode.Type.PLUS);
+		node.addChild(left);
+		node.addChild(right);
+
+		return node;
+	}
+
+	private static ASTNode minus(ASTNode left, ASTNode right)
+	{
+
+		ASTNode node = new ASTNode(ASTNode.Type.MINUS);
+		node.addChild(left);
+		node.addChild(right);
+
+		return node;
+	}
+
+	/**
+	 * multiplies by -1, since the evaluator doesn't negate a single child of
+	 * a minus
+	 */
+	private static ASTNode negate(ASTNode node)
+	{
+
+		return times(number(-1), node);
+	}
+
+	private static ASTNode times(ASTNode left, ASTNode right)
+	{
+
+		if (left == null || right == null)
+		{
+			return null;
+		}
+		else if (left.isNumber() && right.isNumber())
+		{
+			return number(left.getReal() * right.getReal());
+		}
+		else if (left.isNumber() && left.getReal() == 1)
+		{
+			return right;
+		}
+		else if (right.isNumber() && right.getReal() == 1)
+		{
+			return left;
+		}
+
+		ASTNode node = new ASTNode(ASTNode.Type.TIMES);
+		node.addChild(left);
+		node.addChild(right);
+
+		return node;
+	}
+
+	private static ASTNode divide(ASTNode numerator, ASTNode denominator)
+	{
+
+		if (numerator == null)
+		{
+			return null;
+		}
+		else if (denominator.isNumber() && denominator.getReal() == 1)
+		{
+			return numerator;
+		}
+
+		ASTNode node = new ASTNode(ASTNode.Type.DIVIDE);
+		node.addChild(numerator);
+		node.addChild(denominator);
+
+		return node;
+	}
+
+	private static ASTNode power(ASTNode base, ASTNode exponent)
+	{
+
+		ASTNode node = new ASTNode(ASTNode.Type.FUNCTION_POWER);
+		node.addChild(base);
+		node.addChild(exponent);
+
+		return node;
+	}
+}
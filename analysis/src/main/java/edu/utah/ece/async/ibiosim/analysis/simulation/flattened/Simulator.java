@@ -23,6 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -115,6 +116,10 @@ public abstract class Simulator extends AbstractSimulator
 	// allows for access to a kinetic formula tree from a reaction
 	protected HashMap<String, ASTNode>						reactionToFormulaMap						= null;
 
+	// the reactions indexed by integers, or null if the model changes
+	// dynamically
+	protected CompiledModel									compiledModel								= null;
+
 	// contains all rate rules
 	protected HashSet<RateRule>								listOfRateRules;
 	// contains all assignment rules
@@ -2436,6 +2441,8 @@ public abstract class Simulator extends AbstractSimulator
 	protected HashSet<String> fireEvents(final boolean noAssignmentRulesFlag, final boolean noConstraintsFlag)
 	{
 
+		flushCompiledValues();
+
 		// temporary set of events to remove from the triggeredEventQueue
 		HashSet<String> untriggeredEvents = new HashSet<String>();
 
@@ -2761,6 +2768,11 @@ public abstract class Simulator extends AbstractSimulator
 				{
 					variableToValueMap.put(variable, assignmentValue);
 				}
+
+				if (compiledModel != null)
+				{
+					compiledModel.load(variableToValueMap, variable);
+				}
 			}
 		}
 
@@ -2958,6 +2970,8 @@ public abstract class Simulator extends AbstractSimulator
 	protected void handleEvents()
 	{
 
+		flushCompiledValues();
+
 		HashSet<String> triggeredEvents = new HashSet<String>();
 
 		// loop through all untriggered events
@@ -3968,6 +3982,8 @@ public abstract class Simulator extends AbstractSimulator
 
 	protected void performAssignmentRules()
 	{
+		flushCompiledValues();
+
 		boolean changed = true;
 
 		while (changed)
@@ -4011,6 +4027,14 @@ public abstract class Simulator extends AbstractSimulator
 				}
 			}
 		}
+
+		if (compiledModel != null)
+		{
+			for (AssignmentRule assignmentRule : listOfAssignmentRules)
+			{
+				compiledModel.load(variableToValueMap, assignmentRule.getVariable());
+			}
+		}
 	}
 
 	/**
@@ -4023,6 +4047,8 @@ public abstract class Simulator extends AbstractSimulator
 	protected HashSet<String> performAssignmentRules(HashSet<AssignmentRule> affectedAssignmentRuleSet)
 	{
 
+		flushCompiledValues();
+
 		HashSet<String> affectedVariables = new HashSet<String>();
 
 		for (AssignmentRule assignmentRule : affectedAssignmentRuleSet)
@@ -4049,6 +4075,8 @@ public abstract class Simulator extends AbstractSimulator
 			}
 		}
 
+		loadCompiledValues(affectedVariables);
+
 		return affectedVariables;
 	}
 
@@ -4069,6 +4097,8 @@ public abstract class Simulator extends AbstractSimulator
 			if (rule.isRate())
 			{
 
+				flushCompiledValues();
+
 				RateRule rateRule = (RateRule) rule;
 				String variable = rateRule.getVariable();
 
@@ -4092,6 +4122,8 @@ public abstract class Simulator extends AbstractSimulator
 			}
 		}
 
+		loadCompiledValues(affectedVariables);
+
 		return affectedVariables;
 	}
 
@@ -4188,6 +4220,190 @@ public abstract class Simulator extends AbstractSimulator
 		}
 	}
 
+	/**
+	 * compiles the reactions that have been set up into the compiledModel,
+	 * unless the model changes dynamically
+	 * 
+	 * @param noAssignmentRulesFlag
+	 */
+	protected void compileModel(final boolean noAssignmentRulesFlag)
+	{
+
+		if (dynamicBoolean == true)
+		{
+			compiledModel = null;
+		}
+		else
+		{
+			compiledModel = new CompiledModel(this, noAssignmentRulesFlag);
+		}
+	}
+
+	/**
+	 * writes the values and propensities that reactions changed in the
+	 * compiledModel into the variableToValueMap and reactionToPropensityMap,
+	 * which is what the expression evaluator reads
+	 */
+	protected void flushCompiledValues()
+	{
+
+		if (compiledModel != null)
+		{
+			compiledModel.flush(variableToValueMap, reactionToPropensityMap);
+		}
+	}
+
+	/**
+	 * reads variables that rules or events changed in the variableToValueMap
+	 * back into the compiledModel
+	 * 
+	 * @param variableIDs
+	 */
+	protected void loadCompiledValues(Collection<String> variableIDs)
+	{
+
+		if (compiledModel != null)
+		{
+			for (String variableID : variableIDs)
+			{
+				compiledModel.load(variableToValueMap, variableID);
+			}
+		}
+	}
+
+	/**
+	 * updates reactant/product species counts based on their stoichiometries
+	 * like performReaction(String, boolean, boolean), but with the reaction
+	 * given by its index in the compiledModel
+	 * 
+	 * @param reaction
+	 *            the index of the reaction to perform
+	 */
+	protected void performReaction(int reaction, final boolean noAssignmentRulesFlag, final boolean noConstraintsFlag)
+	{
+		performReaction(reaction, 1, noAssignmentRulesFlag, noConstraintsFlag);
+	}
+
+	/**
+	 * performs a reaction of the compiledModel a number of times at once
+	 * 
+	 * @param reaction
+	 *            the index of the reaction to perform
+	 * @param firings
+	 *            the number of times the reaction fires
+	 */
+	protected void performReaction(int reaction, double firings, final boolean noAssignmentRulesFlag, final boolean noConstraintsFlag)
+	{
+
+		CompiledModel compiled = compiledModel;
+
+		if (compiled.hasNonconstantStoichiometry[reaction])
+		{
+
+			flushCompiledValues();
+
+			for (int firing = 0; firing < firings; ++firing)
+			{
+				performReaction(compiled.reactionIDs[reaction], noAssignmentRulesFlag, noConstraintsFlag);
+			}
+
+			for (int k = compiled.stoichiometryStart[reaction]; k < compiled.stoichiometryStart[reaction + 1]; ++k)
+			{
+				compiled.load(variableToValueMap, compiled.variableIDs[compiled.stoichiometryVariables[k]]);
+			}
+
+			return;
+		}
+
+		// these are sets of things that need to be re-evaluated or tested due
+		// to the reaction firing
+		HashSet<AssignmentRule> affectedAssignmentRuleSet = null;
+		HashSet<ASTNode> affectedConstraintSet = null;
+
+		for (int k = compiled.stoichiometryStart[reaction]; k < compiled.stoichiometryStart[reaction + 1]; ++k)
+		{
+
+			int species = compiled.stoichiometryVariables[k];
+
+			if (compiled.isUpdatable[species])
+			{
+
+				int conversionFactor = compiled.conversionFactors[species];
+
+				if (conversionFactor >= 0)
+				{
+					compiled.adjustValue(species, firings * compiled.stoichiometries[k] * compiled.values[conversionFactor]);
+				}
+				else
+				{
+					compiled.adjustValue(species, firings * compiled.stoichiometries[k]);
+				}
+			}
+
+			if (noAssignmentRulesFlag == false && compiled.isInAssignmentRule[species])
+			{
+
+				if (affectedAssignmentRuleSet == null)
+				{
+					affectedAssignmentRuleSet = new HashSet<AssignmentRule>();
+				}
+
+				affectedAssignmentRuleSet.addAll(variableToAffectedAssignmentRuleSetMap.get(compiled.variableIDs[species]));
+			}
+
+			if (noConstraintsFlag == false && compiled.isInConstraint[species])
+			{
+
+				if (affectedConstraintSet == null)
+				{
+					affectedConstraintSet = new HashSet<ASTNode>();
+				}
+
+				affectedConstraintSet.addAll(variableToAffectedConstraintSetMap.get(compiled.variableIDs[species]));
+			}
+		}
+
+		if (affectedAssignmentRuleSet != null && affectedAssignmentRuleSet.size() > 0)
+		{
+			performAssignmentRules(affectedAssignmentRuleSet);
+		}
+
+		if (affectedConstraintSet != null && affectedConstraintSet.size() > 0)
+		{
+
+			if (testConstraints(affectedConstraintSet) == false)
+			{
+				constraintFailureFlag = true;
+			}
+		}
+	}
+
+	/**
+	 * calculates the propensity of a reaction of the compiledModel from its
+	 * values, which is zero if there aren't enough molecules of its reactants
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 * @return the propensity of the reaction
+	 */
+	protected double computePropensity(int reaction)
+	{
+
+		CompiledModel compiled = compiledModel;
+
+		for (int k = compiled.reactantStart[reaction]; k < compiled.reactantStart[reaction + 1]; ++k)
+		{
+
+			// if there aren't enough molecules to satisfy the stoichiometry
+			if (compiled.values[compiled.reactantVariables[k]] < compiled.reactantStoichiometries[k])
+			{
+				return 0.0;
+			}
+		}
+
+		return compiled.reactionPrograms[reaction].evaluate() * compiled.propensityScales[reaction];
+	}
+
 	/**
 	 * recursively finds all variable nodes and prepends a string to the
 	 * variable static version
@@ -4228,6 +4444,8 @@ public abstract class Simulator extends AbstractSimulator
 	protected void printToTSD(double printTime) throws IOException
 	{
 
+		flushCompiledValues();
+
 		String commaSpace = "";
 
     
@@ -6636,6 +6854,8 @@ public abstract class Simulator extends AbstractSimulator
 	protected boolean testConstraints(HashSet<ASTNode> affectedConstraintSet)
 	{
 
+		flushCompiledValues();
+
 		// check all of the affected constraints
 		// if one evaluates to true, then the simulation halts
 		for (ASTNode constraint : affectedConstraintSet)
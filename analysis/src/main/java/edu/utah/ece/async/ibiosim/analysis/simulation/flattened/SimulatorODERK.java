@@ -14,16 +14,19 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.exception.MaxCountExceededException;
-import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
 import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
 import org.sbml.jsbml.ASTNode;
 import org.sbml.jsbml.AssignmentRule;
 
+import edu.utah.ece.async.ibiosim.analysis.simulation.RosenbrockIntegrator;
 import edu.utah.ece.async.ibiosim.dataModels.util.MutableBoolean;
 
 /**
@@ -45,14 +48,18 @@ public class SimulatorODERK extends Simulator
 
 	String[]					variables;
 	double[]					values;
-	ASTNode[]					dvariablesdtime;
-	HashMap<String, Integer>	variableToIndexMap;
-	HashMap<Integer, String>	indexToVariableMap;
+	double[]					rates;
+	boolean[]					isDifferentialVariable;
+	HashSet<AssignmentRule>		derivativeAssignmentRuleSet;
 
 	int							numSteps;
 	double						relativeError;
 	double						absoluteError;
 	private DifferentialEquations  de;
+	private SymbolicJacobian		symbolicJacobian;
+
+	// whether the Rosenbrock integrator is used instead of the Runge-Kutta one
+	private boolean				isStiff;
 
 	public SimulatorODERK(String SBMLFileName, String outputDirectory, int runs, double timeLimit, double maxTimeStep, long randomSeed, double printInterval, double stoichAmpValue, String[] interestingSpecies, int numSteps, double relError, double absError,
 			String quantityType) throws IOException
@@ -67,6 +74,15 @@ public class SimulatorODERK extends Simulator
 		initialize(randomSeed, 1);
 	}
 
+	/**
+	 * selects the Rosenbrock integrator for stiff models instead of the
+	 * Runge-Kutta integrator
+	 */
+	public void setStiff(boolean isStiff)
+	{
+		this.isStiff = isStiff;
+	}
+
 	@Override
 	public void initialize(long randomSeed, int runNumber) throws IOException
 	{
@@ -121,69 +137,38 @@ public class SimulatorODERK extends Simulator
 
 		setupForOutput(randomSeed, runNumber);
 
-		variables = new String[variableToValueMap.size()];
-		values = new double[variableToValueMap.size()];
-		dvariablesdtime = new ASTNode[variableToValueMap.size()];
-		variableToIndexMap = new HashMap<String, Integer>(variableToValueMap.size());
-		indexToVariableMap = new HashMap<Integer, String>(variableToValueMap.size());
-
-		int index = 0;
+		// the values array of the compiled model is the state that is
+		// integrated, its compiled kinetic laws give the reaction rates and
+		// these are added to the derivatives through its stoichiometries
+		compiledModel = new CompiledModel(this, true);
 
-		// convert variableToValueMap into two arrays
-		// and create a hashmap to find indices
-		for (String variable : variableToValueMap.keySet())
-		{
-
-			variables[index] = variable;
-			values[index] = variableToValueMap.get(variable);
-			variableToIndexMap.put(variable, index);
-			dvariablesdtime[index] = new ASTNode();
-			dvariablesdtime[index].setValue(0);
-			indexToVariableMap.put(index, variable);
-			++index;
-		}
+		variables = compiledModel.variableIDs;
+		values = compiledModel.values;
+		rates = new double[compiledModel.reactionIDs.length];
+		isDifferentialVariable = new boolean[variables.length];
 
-		// create system of ODEs for the change in variables
-		for (String reaction : reactionToFormulaMap.keySet())
+		for (int index = 0; index < variables.length; ++index)
 		{
 
-			ASTNode formula = reactionToFormulaMap.get(reaction);
-			// System.out.println("HERE: " + formula.toFormula());
+			String variable = variables[index];
 
-			HashSet<StringDoublePair> reactantAndStoichiometrySet = reactionToReactantStoichiometrySetMap.get(reaction);
-			HashSet<StringDoublePair> speciesAndStoichiometrySet = reactionToSpeciesAndStoichiometrySetMap.get(reaction);
+			// only species that aren't boundary conditions or constant change
+			// through reactions
+			isDifferentialVariable[index] = compiledModel.isUpdatable[index] && variableToValueMap.contains(variable);
+		}
 
-			// loop through reactants
-			for (StringDoublePair reactantAndStoichiometry : reactantAndStoichiometrySet)
-			{
+		// the assignment rules that depend on the variables are the same for
+		// every evaluation of the derivatives
+		derivativeAssignmentRuleSet = new HashSet<AssignmentRule>();
 
-				String reactant = reactantAndStoichiometry.string;
-				double stoichiometry = reactantAndStoichiometry.doub;
-				int varIndex = variableToIndexMap.get(reactant);
-				ASTNode stoichNode = new ASTNode();
-				stoichNode.setValue(-1 * stoichiometry);
+		for (int index = 0; index < variables.length; ++index)
+		{
 
-				dvariablesdtime[varIndex] = ASTNode.sum(dvariablesdtime[varIndex], ASTNode.times(formula, stoichNode));
-			}
+			String variable = variables[index];
 
-			// loop through products
-			for (StringDoublePair speciesAndStoichiometry : speciesAndStoichiometrySet)
+			if (compiledModel.isInAssignmentRule[index] && variableToValueMap.contains(variable))
 			{
-
-				String species = speciesAndStoichiometry.string;
-				double stoichiometry = speciesAndStoichiometry.doub;
-
-				// if it's a product its stoichiometry will be positive
-				// (and if it's a reactant it'll be negative)
-				if (stoichiometry > 0)
-				{
-
-					int varIndex = variableToIndexMap.get(species);
-					ASTNode stoichNode = new ASTNode();
-					stoichNode.setValue(stoichiometry);
-
-					dvariablesdtime[varIndex] = ASTNode.sum(dvariablesdtime[varIndex], ASTNode.times(formula, stoichNode));
-				}
+				derivativeAssignmentRuleSet.addAll(variableToAffectedAssignmentRuleSetMap.get(variable));
 			}
 		}
 
@@ -317,6 +302,29 @@ public class SimulatorODERK extends Simulator
 		de = new DifferentialEquations();
 		HighamHall54Integrator rungeKutta = new HighamHall54Integrator(0 /*getMinTimeStep()*/, stepSize,
 			      absoluteError, relativeError);
+		RosenbrockIntegrator rosenbrock = null;
+
+		if (isStiff)
+		{
+			symbolicJacobian = new SymbolicJacobian();
+			rosenbrock = new RosenbrockIntegrator(0, maxTimeStep, absoluteError, relativeError);
+			rosenbrock.setSparsity(symbolicJacobian.getPattern());
+
+			// the integration stops where a trigger changes, so that the events
+			// are handled at their trigger time
+			if (noEventsFlag == false)
+			{
+
+				for (String eventID : eventToTriggerMap.keySet())
+				{
+					rosenbrock.addEventHandler(new TriggerHandler(eventID), timeLimit / numSteps, 1e-20, 10000);
+				}
+			}
+		}
+		else
+		{
+			symbolicJacobian = null;
+		}
 
 		// add events to queue if they trigger
 		if (noEventsFlag == false)
@@ -340,18 +348,15 @@ public class SimulatorODERK extends Simulator
 			if (noEventsFlag == false)
 			{
 
-				// if events fired, then the affected species counts need to be
-				// updated in the values array
+				// the events read their assignments back into the values array
 				int sizeBefore = triggeredEventQueue.size();
 				fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
 				int sizeAfter = triggeredEventQueue.size();
 
-				if (sizeAfter != sizeBefore)
+				// the values jumped, so the Jacobian is out of date
+				if (sizeAfter != sizeBefore && rosenbrock != null)
 				{
-					for (int i = 0; i < values.length; ++i)
-					{
-						values[i] = variableToValueMap.get(indexToVariableMap.get(i));
-					}
+					rosenbrock.reset();
 				}
 			}
 
@@ -397,33 +402,33 @@ public class SimulatorODERK extends Simulator
 				{
 					testConstraints(variableToAffectedConstraintSetMap.get(affectedVariable));
 				}
-
-				for (int i = 0; i < values.length; ++i)
-				{
-
-					if (affectedVariable.equals(indexToVariableMap.get(i)))
-					{
-						values[i] = variableToValueMap.get(indexToVariableMap.get(i));
-					}
-				}
 			}
 
 			if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
 			{
-
 				performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get("time"));
-
-				for (int i = 0; i < values.length; ++i)
-				{
-					values[i] = variableToValueMap.get(indexToVariableMap.get(i));
-				}
 			}
 
 			// System.err.println(variableToValueMap);
 
 			// call the rk algorithm
-			rungeKutta.integrate(de, currentTime, values, nextEndTime, values);
+			if (rosenbrock != null)
+			{
+
+				if (noEventsFlag == false && !triggeredEventQueue.isEmpty() && triggeredEventQueue.peek().fireTime > currentTime && triggeredEventQueue.peek().fireTime < nextEndTime)
+				{
+					nextEndTime = triggeredEventQueue.peek().fireTime;
+				}
 
+				nextEndTime = rosenbrock.integrate(de, currentTime, values, nextEndTime, values);
+			}
+			else
+			{
+				rungeKutta.integrate(de, currentTime, values, nextEndTime, values);
+			}
+
+			// the integrator wrote the values array in place
+			compiledModel.setValues(values);
 			currentTime = nextEndTime;
 
 			// TSD PRINTING
@@ -472,13 +477,516 @@ public class SimulatorODERK extends Simulator
 		}
 	}
 
+	/**
+	 * the Jacobian of the derivatives computed by DifferentialEquations for the
+	 * Rosenbrock integrator. A variable in the rate law of a reaction affects
+	 * the derivatives of the species that the reaction changes. The derivative
+	 * of the target of an assignment rule is the difference between its
+	 * assigned value and its value, and the rules are performed in the order
+	 * of the derivativeAssignmentRuleSet, so a rule depends on the variables
+	 * that it reads and on everything that the rules performed before it
+	 * depend on when it reads their targets.
+	 * 
+	 * The partial derivatives are built once from the formulas by a
+	 * FormulaDifferentiator. If a formula can't be differentiated, only the
+	 * pattern is given and the integrator uses finite differences.
+	 * 
+	 * Rate rules are performed between the steps of the integrator, so they
+	 * have no rows here.
+	 */
+	private class SymbolicJacobian
+	{
+
+		// the rows of each column, sorted
+		private final int[][]			pattern;
+
+		private final boolean			isDifferentiable;
+
+		// the variables that the rate law of each reaction depends on, their
+		// partial derivatives and, for each of them, the position in the
+		// pattern of the species of the reaction (or -1)
+		private final int[][]			reactionColumns;
+		private final ASTNode[][]		reactionPartials;
+		private final int[][][]			reactionPositions;
+
+		// the performed assignment rules with the row of their target (or -1
+		// if it isn't in the values array) and the compartment of a target in
+		// concentration units
+		private final AssignmentRule[]	rules;
+		private final int[]				ruleRows;
+		private final String[]			ruleCompartments;
+
+		// the variables that each rule reads with their partial derivatives.
+		// A variable is either the target of an earlier rule or a column (or
+		// neither if it is constant).
+		private final ASTNode[][]		rulePartials;
+		private final int[][]			ruleReadRules;
+		private final int[][]			ruleReadColumns;
+		private final int[]				compartmentRules;
+		private final int[]				compartmentColumns;
+
+		// the columns that the assigned value of each rule depends on, its
+		// gradient over them and their positions in the row of its target
+		private final int[][]			ruleColumns;
+		private final double[][]		ruleGradients;
+		private final int[][]			rulePositions;
+
+		private final double[]			gradient;
+
+		SymbolicJacobian()
+		{
+
+			CompiledModel compiled = compiledModel;
+			FormulaDifferentiator differentiator = new FormulaDifferentiator(SimulatorODERK.this);
+			ArrayList<HashSet<Integer>> columnSets = new ArrayList<HashSet<Integer>>(variables.length);
+			HashSet<String> formulaVariables = new HashSet<String>();
+			boolean differentiable = true;
+
+			for (int index = 0; index < variables.length; ++index)
+			{
+				columnSets.add(new HashSet<Integer>());
+			}
+
+			// the rules are performed in the iteration order of the set
+			rules = derivativeAssignmentRuleSet.toArray(new AssignmentRule[derivativeAssignmentRuleSet.size()]);
+			ruleRows = new int[rules.length];
+			ruleCompartments = new String[rules.length];
+			rulePartials = new ASTNode[rules.length][];
+			ruleReadRules = new int[rules.length][];
+			ruleReadColumns = new int[rules.length][];
+			compartmentRules = new int[rules.length];
+			compartmentColumns = new int[rules.length];
+			ruleColumns = new int[rules.length][];
+			ruleGradients = new double[rules.length][];
+			rulePositions = new int[rules.length][];
+
+			HashMap<String, Integer> variableToRuleMap = new HashMap<String, Integer>();
+			boolean[] isRuleRow = new boolean[variables.length];
+
+			for (int q = 0; q < rules.length; ++q)
+			{
+
+				String variable = rules[q].getVariable();
+
+				// constant targets are skipped like in performAssignmentRules
+				if (variableToIsConstantMap.containsKey(variable) && variableToIsConstantMap.get(variable) == true)
+				{
+					ruleRows[q] = -1;
+					ruleColumns[q] = new int[0];
+					continue;
+				}
+
+				ASTNode math = rules[q].getMath();
+				HashSet<Integer> dependencies = new HashSet<Integer>();
+
+				ruleRows[q] = compiled.variableToIndexMap.get(variable);
+				ruleCompartments[q] = differentiator.getCompartment(variable);
+				differentiable = differentiable && differentiator.isDifferentiable(math);
+
+				formulaVariables.clear();
+				differentiator.addVariables(math, formulaVariables);
+
+				String[] readVariables = formulaVariables.toArray(new String[formulaVariables.size()]);
+
+				rulePartials[q] = new ASTNode[readVariables.length];
+				ruleReadRules[q] = new int[readVariables.length];
+				ruleReadColumns[q] = new int[readVariables.length];
+
+				for (int i = 0; i < readVariables.length; ++i)
+				{
+
+					ruleReadRules[q][i] = variableToRule(variableToRuleMap, readVariables[i]);
+					ruleReadColumns[q][i] = compiled.variableToIndexMap.get(readVariables[i]);
+					addDependencies(dependencies, ruleReadRules[q][i], ruleReadColumns[q][i]);
+				}
+
+				if (ruleCompartments[q] != null)
+				{
+
+					compartmentRules[q] = variableToRule(variableToRuleMap, ruleCompartments[q]);
+					compartmentColumns[q] = compiled.variableToIndexMap.get(ruleCompartments[q]);
+					addDependencies(dependencies, compartmentRules[q], compartmentColumns[q]);
+				}
+
+				if (differentiable)
+				{
+
+					for (int i = 0; i < readVariables.length; ++i)
+					{
+						rulePartials[q][i] = differentiator.differentiate(math, readVariables[i]);
+					}
+				}
+
+				ruleColumns[q] = toSortedArray(dependencies);
+				ruleGradients[q] = new double[ruleColumns[q].length];
+				variableToRuleMap.put(variable, q);
+
+				int row = ruleRows[q];
+
+				if (row >= 0)
+				{
+
+					isRuleRow[row] = true;
+
+					// the derivative is the assigned value minus the value
+					columnSets.get(row).add(row);
+
+					for (int column : ruleColumns[q])
+					{
+						columnSets.get(column).add(row);
+					}
+				}
+			}
+
+			int numReactions = compiled.reactionFormulas.length;
+
+			reactionColumns = new int[numReactions][];
+			reactionPartials = new ASTNode[numReactions][];
+			reactionPositions = new int[numReactions][][];
+
+			for (int r = 0; r < numReactions; ++r)
+			{
+
+				ASTNode formula = compiled.reactionFormulas[r];
+				ArrayList<Integer> columns = new ArrayList<Integer>();
+				ArrayList<ASTNode> partials = new ArrayList<ASTNode>();
+
+				differentiable = differentiable && differentiator.isDifferentiable(formula);
+
+				formulaVariables.clear();
+				differentiator.addVariables(formula, formulaVariables);
+
+				for (String formulaVariable : formulaVariables)
+				{
+
+					int column = compiled.variableToIndexMap.get(formulaVariable);
+
+					if (column < 0)
+					{
+						continue;
+					}
+
+					columns.add(column);
+					partials.add(differentiable ? differentiator.differentiate(formula, formulaVariable) : null);
+
+					for (int k = compiled.stoichiometryStart[r]; k < compiled.stoichiometryStart[r + 1]; ++k)
+					{
+
+						int species = compiled.stoichiometryVariables[k];
+
+						// a rule overwrites the derivative of its target
+						if (isDifferentialVariable[species] && !isRuleRow[species])
+						{
+							columnSets.get(column).add(species);
+						}
+					}
+				}
+
+				reactionColumns[r] = new int[columns.size()];
+				reactionPartials[r] = partials.toArray(new ASTNode[partials.size()]);
+
+				for (int p = 0; p < reactionColumns[r].length; ++p)
+				{
+					reactionColumns[r][p] = columns.get(p);
+				}
+			}
+
+			isDifferentiable = differentiable;
+			pattern = new int[variables.length][];
+
+			for (int column = 0; column < variables.length; ++column)
+			{
+				pattern[column] = toSortedArray(columnSets.get(column));
+			}
+
+			for (int r = 0; r < numReactions; ++r)
+			{
+
+				int start = compiled.stoichiometryStart[r];
+
+				reactionPositions[r] = new int[reactionColumns[r].length][compiled.stoichiometryStart[r + 1] - start];
+
+				for (int p = 0; p < reactionColumns[r].length; ++p)
+				{
+
+					for (int k = start; k < compiled.stoichiometryStart[r + 1]; ++k)
+					{
+
+						int species = compiled.stoichiometryVariables[k];
+
+						if (isDifferentialVariable[species] && !isRuleRow[species])
+						{
+							reactionPositions[r][p][k - start] = Arrays.binarySearch(pattern[reactionColumns[r][p]], species);
+						}
+						else
+						{
+							reactionPositions[r][p][k - start] = -1;
+						}
+					}
+				}
+			}
+
+			for (int q = 0; q < rules.length; ++q)
+			{
+
+				rulePositions[q] = new int[ruleColumns[q].length];
+
+				for (int c = 0; c < ruleColumns[q].length; ++c)
+				{
+					rulePositions[q][c] = ruleRows[q] >= 0 ? Arrays.binarySearch(pattern[ruleColumns[q][c]], ruleRows[q]) : -1;
+				}
+			}
+
+			gradient = new double[variables.length];
+		}
+
+		int[][] getPattern()
+		{
+			return pattern;
+		}
+
+		/**
+		 * evaluates the partial derivatives at the given values into a
+		 * Jacobian shaped like the pattern
+		 * 
+		 * @return false if the formulas couldn't be differentiated
+		 */
+		boolean compute(double[] y, double[][] jacobian)
+		{
+
+			if (!isDifferentiable)
+			{
+				return false;
+			}
+
+			CompiledModel compiled = compiledModel;
+
+			compiled.setValues(y);
+			flushCompiledValues();
+
+			for (int r = 0; r < reactionColumns.length; ++r)
+			{
+
+				int start = compiled.stoichiometryStart[r];
+
+				for (int p = 0; p < reactionColumns[r].length; ++p)
+				{
+
+					if (reactionPartials[r][p] == null)
+					{
+						continue;
+					}
+
+					double partial = evaluateExpressionRecursive(reactionPartials[r][p]);
+					int[] positions = reactionPositions[r][p];
+
+					for (int k = start; k < compiled.stoichiometryStart[r + 1]; ++k)
+					{
+
+						if (positions[k - start] >= 0)
+						{
+							jacobian[reactionColumns[r][p]][positions[k - start]] += compiled.stoichiometries[k] * partial;
+						}
+					}
+				}
+			}
+
+			// the rules are performed again so that later rules read the values
+			// that the earlier ones assigned, with the chain rule through the
+			// gradients of the earlier ones
+			for (int q = 0; q < rules.length; ++q)
+			{
+
+				if (rulePartials[q] == null)
+				{
+					continue;
+				}
+
+				for (int i = 0; i < rulePartials[q].length; ++i)
+				{
+
+					if (rulePartials[q][i] != null)
+					{
+						addGradient(evaluateExpressionRecursive(rulePartials[q][i]), ruleReadRules[q][i], ruleReadColumns[q][i]);
+					}
+				}
+
+				double assigned = evaluateExpressionRecursive(rules[q].getMath());
+
+				if (ruleCompartments[q] != null)
+				{
+
+					double size = variableToValueMap.get(ruleCompartments[q]);
+
+					for (int column : ruleColumns[q])
+					{
+						gradient[column] *= size;
+					}
+
+					addGradient(assigned, compartmentRules[q], compartmentColumns[q]);
+					assigned *= size;
+				}
+
+				variableToValueMap.put(rules[q].getVariable(), assigned);
+
+				for (int c = 0; c < ruleColumns[q].length; ++c)
+				{
+
+					int column = ruleColumns[q][c];
+
+					ruleGradients[q][c] = gradient[column];
+					gradient[column] = 0;
+
+					if (rulePositions[q][c] >= 0)
+					{
+						jacobian[column][rulePositions[q][c]] += ruleGradients[q][c];
+					}
+				}
+
+				if (ruleRows[q] >= 0)
+				{
+					jacobian[ruleRows[q]][Arrays.binarySearch(pattern[ruleRows[q]], ruleRows[q])] -= 1;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * adds a partial derivative times the gradient of what it is taken with
+		 * respect to
+		 */
+		private void addGradient(double partial, int rule, int column)
+		{
+
+			if (rule >= 0)
+			{
+
+				for (int c = 0; c < ruleColumns[rule].length; ++c)
+				{
+					gradient[ruleColumns[rule][c]] += partial * ruleGradients[rule][c];
+				}
+			}
+			else if (column >= 0)
+			{
+				gradient[column] += partial;
+			}
+		}
+
+		/**
+		 * adds the columns that a variable read by a rule depends on
+		 */
+		private void addDependencies(HashSet<Integer> dependencies, int rule, int column)
+		{
+
+			if (rule >= 0)
+			{
+
+				for (int dependency : ruleColumns[rule])
+				{
+					dependencies.add(dependency);
+				}
+			}
+			else if (column >= 0)
+			{
+				dependencies.add(column);
+			}
+		}
+
+		/**
+		 * returns the performed rule that assigns a variable before the current
+		 * one, or -1
+		 */
+		private int variableToRule(HashMap<String, Integer> variableToRuleMap, String variable)
+		{
+
+			Integer rule = variableToRuleMap.get(variable);
+
+			return rule == null ? -1 : rule;
+		}
+
+		private int[] toSortedArray(HashSet<Integer> set)
+		{
+
+			int[] array = new int[set.size()];
+			int k = 0;
+
+			for (int element : set)
+			{
+				array[k++] = element;
+			}
+
+			Arrays.sort(array);
+
+			return array;
+		}
+	}
+
+	/**
+	 * switches sign where the trigger of an event changes, so that the
+	 * Rosenbrock integrator stops there
+	 */
+	private class TriggerHandler implements EventHandler
+	{
+
+		private final String	eventID;
+		private double[]		derivatives;
+
+		TriggerHandler(String eventID)
+		{
+
+			this.eventID = eventID;
+		}
+
+		@Override
+		public void init(double t0, double[] y0, double t)
+		{
+
+			derivatives = new double[y0.length];
+		}
+
+		@Override
+		public double g(double t, double[] y)
+		{
+
+			double time = currentTime;
+
+			// the derivatives set the values and perform the assignment rules
+			currentTime = t;
+			de.computeDerivatives(t, y, derivatives);
+			flushCompiledValues();
+
+			double value = getBooleanFromDouble(evaluateExpressionRecursive(eventToTriggerMap.get(eventID))) ? 1 : -1;
+
+			currentTime = time;
+
+			return value;
+		}
+
+		@Override
+		public Action eventOccurred(double t, double[] y, boolean increasing)
+		{
+
+			currentTime = t;
+			de.computeDerivatives(t, y, derivatives);
+
+			return Action.STOP;
+		}
+
+		@Override
+		public void resetState(double t, double[] y)
+		{
+
+		}
+	}
+
 	@Override
 	protected void updateAfterDynamicChanges()
 	{
 
 	}
 
-	public class DifferentialEquations implements FirstOrderDifferentialEquations {
+	public class DifferentialEquations implements RosenbrockIntegrator.JacobianEquations {
 		
 	    @Override
 	    public int getDimension() {
@@ -496,56 +1004,52 @@ public class SimulatorODERK extends Simulator
 	        throws MaxCountExceededException, DimensionMismatchException 
 	    {
 	    	//double[] currValueChanges = new double[y.length];
-			HashSet<AssignmentRule> affectedAssignmentRuleSet = new HashSet<AssignmentRule>();
+			CompiledModel compiled = compiledModel;
 
-			for (int i = 0; i < y.length; ++i)
+			// the maps are only written when the assignment rules read them
+			compiled.setValues(y);
+
+			// evaluate each rate law once and add it to the derivatives of the
+			// species of the reaction times their stoichiometries
+			for (int r = 0; r < rates.length; ++r)
 			{
-				variableToValueMap.put(indexToVariableMap.get(i), y[i]);
+				rates[r] = compiled.reactionPrograms[r].evaluate();
 			}
 
-			// calculate the current variable values
-			// based on the ODE system
 			for (int i = 0; i < currValueChanges.length; ++i)
 			{
+				currValueChanges[i] = 0;
+			}
 
-				String currentVar = indexToVariableMap.get(i);
+			for (int r = 0; r < rates.length; ++r)
+			{
 
-				if ((speciesIDSet.contains(currentVar) && speciesToIsBoundaryConditionMap.get(currentVar) == false) && (variableToValueMap.contains(currentVar)) && variableToIsConstantMap.get(currentVar) == false)
-				{
+				double rate = rates[r];
 
-					currValueChanges[i] = evaluateExpressionRecursive(dvariablesdtime[i]);
-					// if (currValueChanges[i]!=0) {
-					// System.out.println(indexToVariableMap.get(i) + "= " +
-					// dvariablesdtime[i].toFormula() + "=" +
-					// currValueChanges[i]);
-					// }
-				}
-				else
+				for (int k = compiled.stoichiometryStart[r]; k < compiled.stoichiometryStart[r + 1]; ++k)
 				{
-					currValueChanges[i] = 0;
-				}
 
-				if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey(currentVar) && variableToValueMap.contains(currentVar) && variableToIsInAssignmentRuleMap.get(currentVar) == true)
-				{
-					affectedAssignmentRuleSet.addAll(variableToAffectedAssignmentRuleSetMap.get(currentVar));
-				}
+					int species = compiled.stoichiometryVariables[k];
 
-				// if (variableToIsInConstraintMap.get(speciesID) == true)
-				// affectedConstraintSet.addAll(variableToAffectedConstraintSetMap.get(speciesID));
+					if (isDifferentialVariable[species])
+					{
+						currValueChanges[species] += compiled.stoichiometries[k] * rate;
+					}
+				}
 			}
 
 			// if assignment rules are performed, these changes need to be
 			// reflected in the currValueChanges
 			// that get passed back
-			if (affectedAssignmentRuleSet.size() > 0)
+			if (derivativeAssignmentRuleSet.size() > 0)
 			{
 
-				HashSet<String> affectedVariables = performAssignmentRules(affectedAssignmentRuleSet);
+				HashSet<String> affectedVariables = performAssignmentRules(derivativeAssignmentRuleSet);
 
 				for (String affectedVariable : affectedVariables)
 				{
 
-					int index = variableToIndexMap.get(affectedVariable);
+					int index = compiled.variableToIndexMap.get(affectedVariable);
 					currValueChanges[index] = variableToValueMap.get(affectedVariable) - y[index];
 				}
 			}
@@ -555,5 +1059,15 @@ public class SimulatorODERK extends Simulator
 
 			//return currValueChanges;
 		}
+
+	    /**
+	     * the derivatives don't depend on the time, and the Jacobian is only
+	     * known for the Rosenbrock integrator
+	     */
+	    @Override
+	    public boolean computeJacobian(double t, double[] y, double[][] jacobian, double[] timeDerivative)
+	    {
+	    	return symbolicJacobian != null && symbolicJacobian.compute(y, jacobian);
+	    }
 	}
 }
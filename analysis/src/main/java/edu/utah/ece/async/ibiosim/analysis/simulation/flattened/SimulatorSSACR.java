@@ -298,43 +298,50 @@ public class SimulatorSSACR extends Simulator
 					// System.err.println(selectedReactionID + "  " +
 					// reactionToPropensityMap.get(selectedReactionID));
 
-					// STEP 4: perform selected reaction and update species
-					// counts
+					if (compiledModel != null)
+					{
+						performCompiledReaction(selectedReactionID, noAssignmentRulesFlag, noConstraintsFlag);
+					}
+					else
+					{
+						// STEP 4: perform selected reaction and update species
+						// counts
 
-					// long step4Initial = System.nanoTime();
+						// long step4Initial = System.nanoTime();
 
-					performReaction(selectedReactionID, noAssignmentRulesFlag, noConstraintsFlag);
+						performReaction(selectedReactionID, noAssignmentRulesFlag, noConstraintsFlag);
 
-					// step4Time += System.nanoTime() - step4Initial;
+						// step4Time += System.nanoTime() - step4Initial;
 
-					// STEP 5: compute affected reactions' new propensities and
-					// update total propensity
+						// STEP 5: compute affected reactions' new propensities and
+						// update total propensity
 
-					// long step5Initial = System.nanoTime();
+						// long step5Initial = System.nanoTime();
 
-					// create a set (precludes duplicates) of reactions that the
-					// selected reaction's species affect
-					HashSet<String> affectedReactionSet = getAffectedReactionSet(selectedReactionID, noAssignmentRulesFlag);
+						// create a set (precludes duplicates) of reactions that the
+						// selected reaction's species affect
+						HashSet<String> affectedReactionSet = getAffectedReactionSet(selectedReactionID, noAssignmentRulesFlag);
 
-					boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
+						boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
 
-					// step5Time += System.nanoTime() - step5Initial;
+						// step5Time += System.nanoTime() - step5Initial;
 
-					// STEP 6: re-assign affected reactions to appropriate
-					// groups
+						// STEP 6: re-assign affected reactions to appropriate
+						// groups
 
-					// long step6Initial = System.nanoTime();
+						// long step6Initial = System.nanoTime();
 
-					// if there's a new minPropensity, then the group boundaries
-					// change
-					// so re-calculate all groups
-					if (newMinPropensityFlag == true)
-					{
-						reassignAllReactionsToGroups();
-					}
-					else
-					{
-						updateGroups(affectedReactionSet);
+						// if there's a new minPropensity, then the group boundaries
+						// change
+						// so re-calculate all groups
+						if (newMinPropensityFlag == true)
+						{
+							reassignAllReactionsToGroups();
+						}
+						else
+						{
+							updateGroups(affectedReactionSet);
+						}
 					}
 
 					// step6Time += System.nanoTime() - step6Initial;
@@ -509,6 +516,7 @@ public class SimulatorSSACR extends Simulator
 		createAndPopulateInitialGroups();
 
 		setupEvents();
+		compileModel((Boolean) rulesFlag.getValue());
 		setupForOutput(randomSeed, runNumber);
 
 		if (dynamicBoolean == true)
@@ -780,7 +788,7 @@ public class SimulatorSSACR extends Simulator
 		for (String reaction : reactionToPropensityMap.keySet())
 		{
 
-			double propensity = reactionToPropensityMap.get(reaction);
+			double propensity = getPropensity(reaction);
 
 			totalPropensity += propensity;
 
@@ -904,7 +912,7 @@ public class SimulatorSSACR extends Simulator
 		}
 
 		String selectedReactionID = reactionSetIterator.next();
-		double reactionPropensity = reactionToPropensityMap.get(selectedReactionID);
+		double reactionPropensity = getPropensity(selectedReactionID);
 
 		// this is choosing a value between 0 and the max propensity in the
 		// group
@@ -931,7 +939,7 @@ public class SimulatorSSACR extends Simulator
 			}
 
 			selectedReactionID = reactionSetIterator.next();
-			reactionPropensity = reactionToPropensityMap.get(selectedReactionID);
+			reactionPropensity = getPropensity(selectedReactionID);
 			randomPropensity = r4 * groupToMaxValueMap.get(selectedGroup);
 		}
 
@@ -998,6 +1006,7 @@ public class SimulatorSSACR extends Simulator
 		createAndPopulateInitialGroups();
 
 		setupEvents();
+		compileModel((Boolean) rulesFlag.getValue());
 		setupForOutput(0, newRun);
 
 		if (dynamicBoolean == true)
@@ -1034,115 +1043,126 @@ public class SimulatorSSACR extends Simulator
 		// different group
 		for (String affectedReactionID : affectedReactionSet)
 		{
+			updateGroup(affectedReactionID, getPropensity(affectedReactionID));
+		}
+	}
+
+	/**
+	 * moves a reaction whose propensity has changed into the group of its new
+	 * propensity
+	 * 
+	 * @param affectedReactionID
+	 * @param newPropensity
+	 */
+	private void updateGroup(String affectedReactionID, double newPropensity)
+	{
 
-			double newPropensity = reactionToPropensityMap.get(affectedReactionID);
-			int oldGroup = reactionToGroupMap.get(affectedReactionID);
+		int oldGroup = reactionToGroupMap.get(affectedReactionID);
 
-			if (newPropensity == 0.0)
-			{
+		if (newPropensity == 0.0)
+		{
 
-				HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
+			HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
 
-				// update group collections
-				// zero propensities go into group 0
-				oldReactionSet.remove(affectedReactionID);
-				reactionToGroupMap.put(affectedReactionID, 0);
-				groupToReactionSetList.get(0).add(affectedReactionID);
+			// update group collections
+			// zero propensities go into group 0
+			oldReactionSet.remove(affectedReactionID);
+			reactionToGroupMap.put(affectedReactionID, 0);
+			groupToReactionSetList.get(0).add(affectedReactionID);
 
-				if (oldReactionSet.size() == 0)
-				{
-					nonemptyGroupSet.remove(oldGroup);
-				}
+			if (oldReactionSet.size() == 0)
+			{
+				nonemptyGroupSet.remove(oldGroup);
 			}
-			// if the new propensity != 0.0 (ie, new group != 0)
-			else
+		}
+		// if the new propensity != 0.0 (ie, new group != 0)
+		else
+		{
+			// if it's outside of the old group's boundaries
+			if (newPropensity > groupToPropensityCeilingMap.get(oldGroup) || newPropensity < groupToPropensityFloorMap.get(oldGroup))
 			{
-				// if it's outside of the old group's boundaries
-				if (newPropensity > groupToPropensityCeilingMap.get(oldGroup) || newPropensity < groupToPropensityFloorMap.get(oldGroup))
-				{
 
-					int group = Math.getExponent(newPropensity / minPropensity);
+				int group = Math.getExponent(newPropensity / minPropensity);
 
-					// if the group is one that currently exists
-					if (group < numGroups)
-					{
+				// if the group is one that currently exists
+				if (group < numGroups)
+				{
 
-						HashSet<String> newGroupReactionSet = groupToReactionSetList.get(group);
-						HashSet<String> oldGroupReactionSet = groupToReactionSetList.get(oldGroup);
+					HashSet<String> newGroupReactionSet = groupToReactionSetList.get(group);
+					HashSet<String> oldGroupReactionSet = groupToReactionSetList.get(oldGroup);
 
-						// update group collections
-						oldGroupReactionSet.remove(affectedReactionID);
-						reactionToGroupMap.put(affectedReactionID, group);
-						newGroupReactionSet.add(affectedReactionID);
-						groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
+					// update group collections
+					oldGroupReactionSet.remove(affectedReactionID);
+					reactionToGroupMap.put(affectedReactionID, group);
+					newGroupReactionSet.add(affectedReactionID);
+					groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
 
-						// if the group that the reaction was just added to is
-						// now nonempty
-						if (newGroupReactionSet.size() == 1)
-						{
-							nonemptyGroupSet.add(group);
-						}
+					// if the group that the reaction was just added to is
+					// now nonempty
+					if (newGroupReactionSet.size() == 1)
+					{
+						nonemptyGroupSet.add(group);
+					}
 
-						if (oldGroupReactionSet.size() == 0)
-						{
-							nonemptyGroupSet.remove(oldGroup);
-						}
+					if (oldGroupReactionSet.size() == 0)
+					{
+						nonemptyGroupSet.remove(oldGroup);
+					}
 
-						if (newPropensity > groupToMaxValueMap.get(group))
-						{
-							groupToMaxValueMap.put(group, newPropensity);
-						}
+					if (newPropensity > groupToMaxValueMap.get(group))
+					{
+						groupToMaxValueMap.put(group, newPropensity);
 					}
-					// this means the propensity goes into a group that doesn't
-					// currently exist
-					else
+				}
+				// this means the propensity goes into a group that doesn't
+				// currently exist
+				else
+				{
+
+					// groupToReactionSetList is a list, so the group needs
+					// to be the index
+					for (int iter = numGroups; iter <= group; ++iter)
 					{
 
-						// groupToReactionSetList is a list, so the group needs
-						// to be the index
-						for (int iter = numGroups; iter <= group; ++iter)
+						if (iter >= groupToReactionSetList.size())
 						{
-
-							if (iter >= groupToReactionSetList.size())
-							{
-								groupToReactionSetList.add(new HashSet<String>(500));
-							}
-
-							groupToTotalGroupPropensityMap.put(iter, 0.0);
+							groupToReactionSetList.add(new HashSet<String>(500));
 						}
 
-						numGroups = group + 1;
-
-						HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
+						groupToTotalGroupPropensityMap.put(iter, 0.0);
+					}
 
-						// update group collections
-						groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
-						groupToReactionSetList.get(oldGroup).remove(affectedReactionID);
-						reactionToGroupMap.put(affectedReactionID, group);
-						groupToReactionSetList.get(group).add(affectedReactionID);
-						nonemptyGroupSet.add(group);
-						groupToMaxValueMap.put(group, newPropensity);
+					numGroups = group + 1;
 
-						if (oldReactionSet.size() == 0)
-						{
-							nonemptyGroupSet.remove(oldGroup);
-						}
-					}
-				}
-				// if it's within the old group's boundaries (ie, group isn't
-				// changing)
-				else
-				{
+					HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
 
-					// maintain current group
+					// update group collections
+					groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
+					groupToReactionSetList.get(oldGroup).remove(affectedReactionID);
+					reactionToGroupMap.put(affectedReactionID, group);
+					groupToReactionSetList.get(group).add(affectedReactionID);
+					nonemptyGroupSet.add(group);
+					groupToMaxValueMap.put(group, newPropensity);
 
-					if (newPropensity > groupToMaxValueMap.get(oldGroup))
+					if (oldReactionSet.size() == 0)
 					{
-						groupToMaxValueMap.put(oldGroup, newPropensity);
+						nonemptyGroupSet.remove(oldGroup);
 					}
+				}
+			}
+			// if it's within the old group's boundaries (ie, group isn't
+			// changing)
+			else
+			{
+
+				// maintain current group
 
-					groupToTotalGroupPropensityMap.adjustValue(oldGroup, newPropensity);
+				if (newPropensity > groupToMaxValueMap.get(oldGroup))
+				{
+					groupToMaxValueMap.put(oldGroup, newPropensity);
 				}
+
+				groupToTotalGroupPropensityMap.adjustValue(oldGroup, newPropensity);
 			}
 		}
 	}
@@ -1166,85 +1186,199 @@ public class SimulatorSSACR extends Simulator
 		for (String affectedReactionID : affectedReactionSet)
 		{
 
-			boolean notEnoughMoleculesFlag = false;
-
-			HashSet<StringDoublePair> reactantStoichiometrySet = reactionToReactantStoichiometrySetMap.get(affectedReactionID);
-
-			if (reactantStoichiometrySet == null)
+			if (updatePropensity(affectedReactionID) == true)
 			{
-				continue;
+				newMinPropensityFlag = true;
 			}
+		}
 
-			// check for enough molecules for the reaction to occur
-			for (StringDoublePair speciesAndStoichiometry : reactantStoichiometrySet)
-			{
+		return newMinPropensityFlag;
+	}
 
-				String speciesID = speciesAndStoichiometry.string;
-				double stoichiometry = speciesAndStoichiometry.doub;
+	/**
+	 * updates the propensity of a reaction and removes its old propensity from
+	 * its group's total
+	 * 
+	 * @param affectedReactionID
+	 * @return whether or not there's a new minPropensity
+	 */
+	private boolean updatePropensity(String affectedReactionID)
+	{
 
-				// if there aren't enough molecules to satisfy the stoichiometry
-				if (variableToValueMap.get(speciesID) < stoichiometry)
-				{
-					notEnoughMoleculesFlag = true;
-					break;
-				}
-			}
+		if (compiledModel != null)
+		{
 
-			double newPropensity = 0.0;
+			int affectedReaction = compiledModel.reactionToIndexMap.get(affectedReactionID);
 
-			if (notEnoughMoleculesFlag == false)
+			if (affectedReaction >= 0)
 			{
-				newPropensity = evaluateExpressionRecursive(reactionToFormulaMap.get(affectedReactionID));
+				return updatePropensity(affectedReaction);
 			}
+		}
+
+		double newPropensity = 0.0;
+		boolean notEnoughMoleculesFlag = false;
+
+		HashSet<StringDoublePair> reactantStoichiometrySet = reactionToReactantStoichiometrySetMap.get(affectedReactionID);
+
+		if (reactantStoichiometrySet == null)
+		{
+			return false;
+		}
+
+		// check for enough molecules for the reaction to occur
+		for (StringDoublePair speciesAndStoichiometry : reactantStoichiometrySet)
+		{
+
+			String speciesID = speciesAndStoichiometry.string;
+			double stoichiometry = speciesAndStoichiometry.doub;
 
-			// stoichiometry amplification -- alter the propensity
-			if (affectedReactionID.contains("_Diffusion_") && stoichAmpBoolean == true)
+			// if there aren't enough molecules to satisfy the stoichiometry
+			if (variableToValueMap.get(speciesID) < stoichiometry)
 			{
-				newPropensity *= (1.0 / stoichAmpGridValue);
+				notEnoughMoleculesFlag = true;
+				break;
 			}
+		}
 
-			if (newPropensity > 0.0 && newPropensity < minPropensity)
-			{
+		if (notEnoughMoleculesFlag == false)
+		{
+			newPropensity = evaluateExpressionRecursive(reactionToFormulaMap.get(affectedReactionID));
+		}
 
-				minPropensity = newPropensity;
-				newMinPropensityFlag = true;
-			}
+		// stoichiometry amplification -- alter the propensity
+		if (affectedReactionID.contains("_Diffusion_") && stoichAmpBoolean == true)
+		{
+			newPropensity *= (1.0 / stoichAmpGridValue);
+		}
+
+		double oldPropensity = reactionToPropensityMap.get(affectedReactionID);
+
+		reactionToPropensityMap.put(affectedReactionID, newPropensity);
+
+		return changePropensity(affectedReactionID, oldPropensity, newPropensity);
+	}
+
+	/**
+	 * updates the propensity of a reaction of the compiledModel, which holds
+	 * the propensities of its reactions, and removes its old propensity from
+	 * its group's total
+	 * 
+	 * @param affectedReaction
+	 * @return whether or not there's a new minPropensity
+	 */
+	private boolean updatePropensity(int affectedReaction)
+	{
+
+		double oldPropensity = compiledModel.propensities[affectedReaction];
+		double newPropensity = computePropensity(affectedReaction);
+
+		compiledModel.setPropensity(affectedReaction, newPropensity);
+
+		return changePropensity(compiledModel.reactionIDs[affectedReaction], oldPropensity, newPropensity);
+	}
+
+	/**
+	 * updates the minimum, maximum and total propensities and the total of the
+	 * group of a reaction whose propensity changed
+	 * 
+	 * @return whether or not there's a new minPropensity
+	 */
+	private boolean changePropensity(String affectedReactionID, double oldPropensity, double newPropensity)
+	{
+
+		boolean newMinPropensityFlag = false;
+
+		if (newPropensity > 0.0 && newPropensity < minPropensity)
+		{
+
+			minPropensity = newPropensity;
+			newMinPropensityFlag = true;
+		}
+
+		if (newPropensity > maxPropensity)
+		{
+			maxPropensity = newPropensity;
+		}
+
+		int oldGroup = reactionToGroupMap.get(affectedReactionID);
+
+		// remove the old propensity from the group's total
+		// later on, the new propensity is added to the (possibly new)
+		// group's total
+		groupToTotalGroupPropensityMap.adjustValue(oldGroup, -oldPropensity);
+
+		// add the difference of new v. old propensity to the total
+		// propensity
+		totalPropensity += newPropensity - oldPropensity;
+
+		return newMinPropensityFlag;
+	}
+
+	/**
+	 * returns the propensity of a reaction, which the compiledModel holds if
+	 * there is one
+	 * 
+	 * @param reactionID
+	 */
+	private double getPropensity(String reactionID)
+	{
+
+		if (compiledModel != null)
+		{
 
-			if (newPropensity > maxPropensity)
+			int reaction = compiledModel.reactionToIndexMap.get(reactionID);
+
+			if (reaction >= 0)
 			{
-				maxPropensity = newPropensity;
+				return compiledModel.propensities[reaction];
 			}
+		}
 
-			double oldPropensity = reactionToPropensityMap.get(affectedReactionID);
-			int oldGroup = reactionToGroupMap.get(affectedReactionID);
+		return reactionToPropensityMap.get(reactionID);
+	}
 
-			// if (oldGroup == 15) {
-			//
-			// if (newPropensity == 0)
-			// System.err.println(affectedReactionID + "  NOW IS ZERO");
-			//
-			// if (oldPropensity == 0)
-			// System.err.println(affectedReactionID +
-			// "  still has propensity zero");
-			//
-			// System.err.println("oldgroup: " + oldGroup);
-			// System.err.println(groupToTotalGroupPropensityMap.get(oldGroup) +
-			// " - " + oldPropensity);
-			// }
+	/**
+	 * performs a reaction of the compiledModel and updates the propensities
+	 * and groups of the reactions it affects
+	 * 
+	 * @param selectedReactionID
+	 */
+	private void performCompiledReaction(String selectedReactionID, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
 
-			// remove the old propensity from the group's total
-			// later on, the new propensity is added to the (possibly new)
-			// group's total
-			groupToTotalGroupPropensityMap.adjustValue(oldGroup, -oldPropensity);
+		int selectedReaction = compiledModel.reactionToIndexMap.get(selectedReactionID);
 
-			// add the difference of new v. old propensity to the total
-			// propensity
-			totalPropensity += newPropensity - oldPropensity;
+		performReaction(selectedReaction, noAssignmentRulesFlag, noConstraintsFlag);
 
-			reactionToPropensityMap.put(affectedReactionID, newPropensity);
+		String[] reactionIDs = compiledModel.reactionIDs;
+		int[] dependencies = compiledModel.dependencies;
+		int start = compiledModel.dependencyStart[selectedReaction];
+		int end = compiledModel.dependencyStart[selectedReaction + 1];
+		boolean newMinPropensityFlag = false;
+
+		for (int k = start; k < end; ++k)
+		{
+
+			if (updatePropensity(dependencies[k]) == true)
+			{
+				newMinPropensityFlag = true;
+			}
 		}
 
-		return newMinPropensityFlag;
+		// if there's a new minPropensity, then the group boundaries change
+		// so re-calculate all groups
+		if (newMinPropensityFlag == true)
+		{
+			reassignAllReactionsToGroups();
+		}
+		else
+		{
+			for (int k = start; k < end; ++k)
+			{
+				updateGroup(reactionIDs[dependencies[k]], compiledModel.propensities[dependencies[k]]);
+			}
+		}
 	}
 
 	private double print(double printTime)
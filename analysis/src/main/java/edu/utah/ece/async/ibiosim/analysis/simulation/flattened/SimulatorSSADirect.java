@@ -39,8 +39,8 @@ public class SimulatorSSADirect extends Simulator
 	MutableBoolean		rulesFlag			= new MutableBoolean(false);
 	MutableBoolean		constraintsFlag		= new MutableBoolean(false);
 
-	private double		currentStep;
-	private double		numSteps;
+	protected double	currentStep;
+	protected double	numSteps;
 
 	public SimulatorSSADirect(String SBMLFileName, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue, String[] interestingSpecies, String quantityType)
 			throws IOException
@@ -151,7 +151,7 @@ public class SimulatorSSADirect extends Simulator
 
 			if (currentTime == nextReactionTime)
 			{
-				performReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
+				selectAndPerformReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
 
 				performRateRules(currentTime - oldTime);
 
@@ -270,6 +270,7 @@ public class SimulatorSSADirect extends Simulator
 		// STEP 0: calculate initial propensities (including the total)
 		setupReactions();
 		setupEvents();
+		compileModel((Boolean) rulesFlag.getValue());
 
 		setupForOutput(randomSeed, runNumber);
 
@@ -343,8 +344,19 @@ public class SimulatorSSADirect extends Simulator
 
 	}
 
-	private void performReaction(double r2, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	/**
+	 * Selects the reaction whose cumulative propensity first exceeds r2 and
+	 * fires it once.
+	 */
+	protected void selectAndPerformReaction(double r2, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
 	{
+
+		if (compiledModel != null)
+		{
+			performCompiledReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
+			return;
+		}
+
 		// long step3Initial = System.nanoTime();
 		String selectedReactionID = selectReaction(r2);
 
@@ -385,7 +397,38 @@ public class SimulatorSSADirect extends Simulator
 		}
 	}
 
-	private double print(double printTime)
+	/**
+	 * selects and performs a reaction of the compiledModel and updates the
+	 * propensities of the reactions it affects
+	 */
+	private void performCompiledReaction(double r2, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
+
+		int selectedReaction = selectReactionIndex(r2);
+
+		// if it's negative then there aren't any reactions
+		if (selectedReaction >= 0)
+		{
+
+			performReaction(selectedReaction, noAssignmentRulesFlag, noConstraintsFlag);
+
+			int[] dependencies = compiledModel.dependencies;
+
+			for (int k = compiledModel.dependencyStart[selectedReaction]; k < compiledModel.dependencyStart[selectedReaction + 1]; ++k)
+			{
+				updatePropensity(dependencies[k]);
+			}
+		}
+
+		// update time for next iteration
+
+		if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
+		{
+			performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get("time"));
+		}
+	}
+
+	protected double print(double printTime)
 	{
 		while (currentTime >= printTime && printTime < timeLimit)
 		{
@@ -418,9 +461,26 @@ public class SimulatorSSADirect extends Simulator
 	 *            the set of reactions affected by the recently performed
 	 *            reaction
 	 */
-	private void updatePropensities(HashSet<String> affectedReactionSet)
+	protected void updatePropensities(HashSet<String> affectedReactionSet)
 	{
 
+		if (compiledModel != null)
+		{
+
+			for (String affectedReactionID : affectedReactionSet)
+			{
+
+				int affectedReaction = compiledModel.reactionToIndexMap.get(affectedReactionID);
+
+				if (affectedReaction >= 0)
+				{
+					updatePropensity(affectedReaction);
+				}
+			}
+
+			return;
+		}
+
 		// loop through the affected reactions and update the propensities
 		for (String affectedReactionID : affectedReactionSet)
 		{
@@ -464,6 +524,25 @@ public class SimulatorSSADirect extends Simulator
 		}
 	}
 
+	/**
+	 * updates the propensity of a reaction of the compiledModel and the total
+	 * propensity
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 */
+	private void updatePropensity(int reaction)
+	{
+
+		double newPropensity = computePropensity(reaction);
+
+		// add the difference of new v. old propensity to the total
+		// propensity
+		totalPropensity += newPropensity - compiledModel.propensities[reaction];
+
+		compiledModel.setPropensity(reaction, newPropensity);
+	}
+
 	/**
 	 * randomly selects a reaction to perform
 	 * 
@@ -496,6 +575,34 @@ public class SimulatorSSADirect extends Simulator
 		return selectedReaction;
 	}
 
+	/**
+	 * randomly selects a reaction of the compiledModel to perform
+	 * 
+	 * @param r2
+	 *            random number
+	 * @return the index of the selected reaction, or -1 if there isn't any
+	 */
+	private int selectReactionIndex(double r2)
+	{
+
+		double randomPropensity = r2 * (totalPropensity);
+		double runningTotalReactionsPropensity = 0.0;
+		double[] propensities = compiledModel.propensities;
+
+		for (int reaction = 0; reaction < propensities.length; ++reaction)
+		{
+
+			runningTotalReactionsPropensity += propensities[reaction];
+
+			if (randomPropensity < runningTotalReactionsPropensity)
+			{
+				return reaction;
+			}
+		}
+
+		return -1;
+	}
+
 	/**
 	 * cancels the current run
 	 */
@@ -601,6 +708,7 @@ public class SimulatorSSADirect extends Simulator
 		// STEP 0A: calculate initial propensities (including the total)
 		setupReactions();
 		setupEvents();
+		compileModel((Boolean) rulesFlag.getValue());
 		setupForOutput(0, newRun);
 
 		if (dynamicBoolean == true)
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * The Next Reaction Method of Gibson and Bruck. Every reaction has a putative
+ * firing time, and the reactions are kept in an indexed binary heap ordered by
+ * these times, so the next reaction is found in constant time and a changed
+ * firing time is restored in logarithmic time. When a reaction fires, only the
+ * reactions in its dependency list are updated. Their firing times are
+ * rescaled by the ratio of the old to the new propensity instead of being
+ * drawn again, so a step uses a single random number for the fired reaction
+ * (and one for each reaction that becomes enabled).
+ *
+ * Models that change dynamically are not compiled and are simulated with the
+ * direct method.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SimulatorSSANRM extends SimulatorSSADirect
+{
+
+	// the putative firing time of each reaction of the compiledModel
+	private double[]	firingTimes;
+
+	// the reactions in a binary heap ordered by firing time
+	private int[]		heap;
+
+	// the position of each reaction in the heap
+	private int[]		heapPositions;
+
+	public SimulatorSSANRM(String SBMLFileName, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue, String[] interestingSpecies, String quantityType)
+			throws IOException
+	{
+
+		super(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, quantityType);
+	}
+
+	@Override
+	public void simulate()
+	{
+
+		if (sbmlHasErrorsFlag == true)
+		{
+			return;
+		}
+
+		// the reactions of a dynamic model aren't indexed
+		if (compiledModel == null)
+		{
+			super.simulate();
+			return;
+		}
+
+		final boolean noEventsFlag = (Boolean) eventsFlag.getValue();
+		final boolean noAssignmentRulesFlag = (Boolean) rulesFlag.getValue();
+		final boolean noConstraintsFlag = (Boolean) constraintsFlag.getValue();
+
+		currentTime = 0.0;
+		double printTime = 0;
+		double oldTime = 0;
+		double nextEventTime = Double.POSITIVE_INFINITY;
+
+		numSteps = (int) (timeLimit / printInterval);
+		currentStep = 0;
+
+		setupFiringTimes();
+
+		// add events to queue if they trigger
+		if (noEventsFlag == false)
+		{
+			handleEvents();
+
+			HashSet<String> affectedReactionSet = fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+
+			// recalculate propensities/firing times for affected reactions
+			if (affectedReactionSet.size() > 0)
+			{
+				updateFiringTimes(affectedReactionSet);
+			}
+		}
+
+		printTime = print(printTime);
+
+		while (currentTime < timeLimit && cancelFlag == false)
+		{
+
+			// if a constraint fails
+			if (constraintFailureFlag == true)
+			{
+				message.setErrorDialog("Simulation Canceled Due To Constraint Failure", "Constraint Failure");
+				this.notifyObservers(message);
+				return;
+			}
+
+			oldTime = currentTime;
+
+			int nextReaction = -1;
+			double nextReactionTime = Double.POSITIVE_INFINITY;
+
+			if (heap.length > 0)
+			{
+				nextReaction = heap[0];
+				nextReactionTime = firingTimes[nextReaction];
+			}
+
+			if (noEventsFlag == false)
+			{
+
+				handleEvents();
+				nextEventTime = Double.POSITIVE_INFINITY;
+				if (!triggeredEventQueue.isEmpty() && triggeredEventQueue.peek().fireTime <= nextEventTime)
+				{
+					nextEventTime = triggeredEventQueue.peek().fireTime;
+				}
+			}
+
+			// the firing times are absolute, so they stay valid when the time
+			// advances without a reaction
+			if (nextReactionTime < nextEventTime && nextReactionTime < currentTime + maxTimeStep)
+			{
+				currentTime = nextReactionTime;
+			}
+			else if (nextEventTime < currentTime + maxTimeStep)
+			{
+				currentTime = nextEventTime;
+			}
+			else
+			{
+				currentTime = currentTime + maxTimeStep;
+			}
+
+			if (currentTime > timeLimit)
+			{
+				currentTime = timeLimit;
+
+				if (noEventsFlag == false)
+				{
+					fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+				}
+
+				performRateRules(currentTime - oldTime);
+
+				break;
+			}
+
+			if (currentTime == nextReactionTime)
+			{
+				fireReaction(nextReaction, noAssignmentRulesFlag, noConstraintsFlag);
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+			else if (currentTime == nextEventTime)
+			{
+				HashSet<String> affectedReactionSet = fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+
+				// recalculate propensities/firing times for affected reactions
+				if (affectedReactionSet.size() > 0)
+				{
+					updateFiringTimes(affectedReactionSet);
+				}
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+			else
+			{
+				performAssignmentRules();
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+
+		} // end simulation loop
+
+		if (cancelFlag == false)
+		{
+
+			currentTime = timeLimit;
+
+			if (noEventsFlag == false)
+			{
+				fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+			}
+
+			performRateRules(currentTime - oldTime);
+
+			// print the final species counts
+			try
+			{
+				printToTSD(printTime);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+
+			try
+			{
+				bufferedTSDWriter.write(')');
+				bufferedTSDWriter.flush();
+			}
+			catch (IOException e1)
+			{
+				e1.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * draws a firing time for every reaction and builds the heap
+	 */
+	private void setupFiringTimes()
+	{
+
+		int numReactions = compiledModel.reactionIDs.length;
+
+		firingTimes = new double[numReactions];
+		heap = new int[numReactions];
+		heapPositions = new int[numReactions];
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+			firingTimes[reaction] = drawFiringTime(compiledModel.propensities[reaction]);
+			heap[reaction] = reaction;
+			heapPositions[reaction] = reaction;
+		}
+
+		for (int position = numReactions / 2 - 1; position >= 0; --position)
+		{
+			siftDown(position);
+		}
+	}
+
+	/**
+	 * performs a reaction and updates the propensities and firing times of the
+	 * reactions it affects, which include the reaction itself
+	 */
+	private void fireReaction(int reaction, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
+
+		performReaction(reaction, noAssignmentRulesFlag, noConstraintsFlag);
+
+		int[] dependencies = compiledModel.dependencies;
+
+		for (int k = compiledModel.dependencyStart[reaction]; k < compiledModel.dependencyStart[reaction + 1]; ++k)
+		{
+
+			int affectedReaction = dependencies[k];
+
+			// the reaction that fired needs a new random number
+			if (affectedReaction == reaction)
+			{
+				firingTimes[reaction] = drawFiringTime(updatePropensity(reaction));
+				updateHeap(reaction);
+			}
+			else
+			{
+				updateFiringTime(affectedReaction);
+			}
+		}
+
+		// update time for next iteration
+
+		if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
+		{
+			performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get("time"));
+		}
+	}
+
+	/**
+	 * updates the propensities and firing times of the reactions that events
+	 * affected
+	 */
+	private void updateFiringTimes(HashSet<String> affectedReactionSet)
+	{
+
+		for (String affectedReactionID : affectedReactionSet)
+		{
+
+			int affectedReaction = compiledModel.reactionToIndexMap.get(affectedReactionID);
+
+			if (affectedReaction >= 0)
+			{
+				updateFiringTime(affectedReaction);
+			}
+		}
+	}
+
+	/**
+	 * updates the propensity of a reaction that didn't fire and rescales the
+	 * time until it fires by the ratio of its old to its new propensity
+	 */
+	private void updateFiringTime(int reaction)
+	{
+
+		double oldPropensity = compiledModel.propensities[reaction];
+		double newPropensity = updatePropensity(reaction);
+
+		if (newPropensity == oldPropensity)
+		{
+			return;
+		}
+
+		if (newPropensity <= 0.0)
+		{
+			firingTimes[reaction] = Double.POSITIVE_INFINITY;
+		}
+		else if (oldPropensity > 0.0 && firingTimes[reaction] < Double.POSITIVE_INFINITY)
+		{
+			firingTimes[reaction] = currentTime + (oldPropensity / newPropensity) * (firingTimes[reaction] - currentTime);
+		}
+		else
+		{
+			// the reaction was disabled, so there is no time left to rescale
+			firingTimes[reaction] = drawFiringTime(newPropensity);
+		}
+
+		updateHeap(reaction);
+	}
+
+	/**
+	 * recalculates the propensity of a reaction and updates the total
+	 * propensity
+	 *
+	 * @return the new propensity
+	 */
+	private double updatePropensity(int reaction)
+	{
+
+		double newPropensity = computePropensity(reaction);
+
+		totalPropensity += newPropensity - compiledModel.propensities[reaction];
+		compiledModel.setPropensity(reaction, newPropensity);
+
+		return newPropensity;
+	}
+
+	/**
+	 * @return the current time plus an exponentially distributed time with the
+	 *         propensity as its rate
+	 */
+	private double drawFiringTime(double propensity)
+	{
+
+		if (propensity <= 0.0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		return currentTime + FastMath.log(1 / randomNumberGenerator.nextDouble()) / propensity;
+	}
+
+	/**
+	 * moves a reaction whose firing time changed to its place in the heap
+	 */
+	private void updateHeap(int reaction)
+	{
+
+		int position = heapPositions[reaction];
+
+		siftUp(position);
+
+		if (heapPositions[reaction] == position)
+		{
+			siftDown(position);
+		}
+	}
+
+	private void siftUp(int position)
+	{
+
+		while (position > 0)
+		{
+
+			int parent = (position - 1) / 2;
+
+			if (firingTimes[heap[parent]] <= firingTimes[heap[position]])
+			{
+				break;
+			}
+
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position)
+	{
+
+		while (true)
+		{
+
+			int smallest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+
+			if (left < heap.length && firingTimes[heap[left]] < firingTimes[heap[smallest]])
+			{
+				smallest = left;
+			}
+
+			if (right < heap.length && firingTimes[heap[right]] < firingTimes[heap[smallest]])
+			{
+				smallest = right;
+			}
+
+			if (smallest == position)
+			{
+				break;
+			}
+
+			swap(position, smallest);
+			position = smallest;
+		}
+	}
+
+	private void swap(int first, int second)
+	{
+
+		int reaction = heap[first];
+
+		heap[first] = heap[second];
+		heap[second] = reaction;
+		heapPositions[heap[first]] = first;
+		heapPositions[heap[second]] = second;
+	}
+}
@@ -0,0 +1,738 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import org.apache.commons.math3.special.Gamma;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * The explicit tau-leaping method with the step size selection of Cao,
+ * Gillespie and Petzold. Instead of firing one reaction at a time, every
+ * reaction fires a Poisson distributed number of times in a leap of length
+ * tau, where tau is chosen so that the relative change of every propensity in
+ * the leap is bounded by ERROR_CONTROL. A reaction that can fire fewer than
+ * CRITICAL_FIRINGS more times is critical and fires at most once per leap, at
+ * an exponentially distributed time, so that species don't become negative. A
+ * leap that would still make a species negative is rejected and tried again
+ * with half the step. When the leap would cover only a few reactions, the
+ * simulator takes NUM_EXACT_STEPS steps of the direct method instead.
+ *
+ * Leaps end at events, print times and the maximum time step. Models that
+ * change dynamically are not compiled and are simulated with the direct
+ * method.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SimulatorSSATauLeap extends SimulatorSSADirect
+{
+
+	// the bound on the relative change of the propensities in a leap
+	private static final double	ERROR_CONTROL			= 0.03;
+
+	// reactions that can fire fewer times than this are critical
+	private static final int	CRITICAL_FIRINGS		= 10;
+
+	// a leap shorter than this many expected reactions isn't worth it
+	private static final double	EXACT_STEPS_THRESHOLD	= 10;
+
+	private static final int	NUM_EXACT_STEPS			= 100;
+
+	// reaction r changes updatable variable netVariables[k] by
+	// netStoichiometries[k] for netStart[r] <= k < netStart[r + 1]
+	private int[]				netStart;
+	private int[]				netVariables;
+	private double[]			netStoichiometries;
+
+	// the highest order of the reactions a species is a reactant of, and the
+	// stoichiometry of the species in such a reaction
+	private int[]				highestOrders;
+	private double[]			highestOrderStoichiometries;
+
+	private boolean[]			isCritical;
+	private double				criticalPropensity;
+
+	// the mean and variance of the change of each variable in a leap
+	private double[]			means;
+	private double[]			variances;
+	private boolean[]			isLeapReactant;
+
+	private double[]			firings;
+	private double[]			changes;
+
+	private int					exactStepsLeft;
+
+	public SimulatorSSATauLeap(String SBMLFileName, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue, String[] interestingSpecies, String quantityType)
+			throws IOException
+	{
+
+		super(SBMLFileName, outputDirectory, runs, timeLimit, maxTimeStep, minTimeStep, randomSeed, printInterval, stoichAmpValue, interestingSpecies, quantityType);
+	}
+
+	@Override
+	public void simulate()
+	{
+
+		if (sbmlHasErrorsFlag == true)
+		{
+			return;
+		}
+
+		// the reactions of a dynamic model aren't indexed
+		if (compiledModel == null)
+		{
+			super.simulate();
+			return;
+		}
+
+		final boolean noEventsFlag = (Boolean) eventsFlag.getValue();
+		final boolean noAssignmentRulesFlag = (Boolean) rulesFlag.getValue();
+		final boolean noConstraintsFlag = (Boolean) constraintsFlag.getValue();
+
+		currentTime = 0.0;
+		double printTime = 0;
+		double oldTime = 0;
+		double nextEventTime = Double.POSITIVE_INFINITY;
+
+		numSteps = (int) (timeLimit / printInterval);
+		currentStep = 0;
+
+		setupLeaping();
+
+		// add events to queue if they trigger
+		if (noEventsFlag == false)
+		{
+			handleEvents();
+
+			HashSet<String> affectedReactionSet = fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+
+			// recalculate propensties for affected reactions
+			if (affectedReactionSet.size() > 0)
+			{
+				updatePropensities(affectedReactionSet);
+			}
+		}
+
+		printTime = print(printTime);
+
+		while (currentTime < timeLimit && cancelFlag == false)
+		{
+
+			// if a constraint fails
+			if (constraintFailureFlag == true)
+			{
+				message.setErrorDialog("Simulation Canceled Due To Constraint Failure", "Constraint Failure");
+				this.notifyObservers(message);
+				return;
+			}
+
+			oldTime = currentTime;
+
+			if (noEventsFlag == false)
+			{
+
+				handleEvents();
+				nextEventTime = Double.POSITIVE_INFINITY;
+				if (!triggeredEventQueue.isEmpty() && triggeredEventQueue.peek().fireTime <= nextEventTime)
+				{
+					nextEventTime = triggeredEventQueue.peek().fireTime;
+				}
+			}
+
+			if (exactStepsLeft == 0)
+			{
+
+				double leapTime = selectLeapTime();
+
+				if (leapTime < EXACT_STEPS_THRESHOLD / totalPropensity)
+				{
+					exactStepsLeft = NUM_EXACT_STEPS;
+				}
+				else
+				{
+					currentTime = leap(leapTime, nextEventTime, printTime, noAssignmentRulesFlag, noConstraintsFlag);
+
+					if (currentTime == nextEventTime)
+					{
+						fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+					}
+
+					performRateRules(currentTime - oldTime);
+
+					// a leap changes most of the species, so all propensities
+					// are recalculated
+					updatePropensities();
+
+					printTime = print(printTime);
+
+					// the leap ends at the time limit, so the rate rules are
+					// already up to date there
+					oldTime = currentTime;
+
+					continue;
+				}
+			}
+
+			// an exact step of the direct method
+			exactStepsLeft--;
+
+			double r1 = randomNumberGenerator.nextDouble();
+			double r2 = randomNumberGenerator.nextDouble();
+
+			double delta_t = FastMath.log(1 / r1) / totalPropensity;
+			double nextReactionTime = currentTime + delta_t;
+
+			if (nextReactionTime < nextEventTime && nextReactionTime < currentTime + maxTimeStep)
+			{
+				currentTime = nextReactionTime;
+			}
+			else if (nextEventTime < currentTime + maxTimeStep)
+			{
+				currentTime = nextEventTime;
+			}
+			else
+			{
+				currentTime = currentTime + maxTimeStep;
+			}
+
+			if (currentTime > timeLimit)
+			{
+				currentTime = timeLimit;
+
+				if (noEventsFlag == false)
+				{
+					fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+				}
+
+				performRateRules(currentTime - oldTime);
+
+				break;
+			}
+
+			if (currentTime == nextReactionTime)
+			{
+				selectAndPerformReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+			else if (currentTime == nextEventTime)
+			{
+				HashSet<String> affectedReactionSet = fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+
+				// recalculate propensties for affected reactions
+				if (affectedReactionSet.size() > 0)
+				{
+					updatePropensities(affectedReactionSet);
+				}
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+			else
+			{
+				performAssignmentRules();
+
+				performRateRules(currentTime - oldTime);
+
+				printTime = print(printTime);
+			}
+
+		} // end simulation loop
+
+		if (cancelFlag == false)
+		{
+
+			currentTime = timeLimit;
+
+			if (noEventsFlag == false)
+			{
+				fireEvents(noAssignmentRulesFlag, noConstraintsFlag);
+			}
+
+			performRateRules(currentTime - oldTime);
+
+			// print the final species counts
+			try
+			{
+				printToTSD(printTime);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+
+			try
+			{
+				bufferedTSDWriter.write(')');
+				bufferedTSDWriter.flush();
+			}
+			catch (IOException e1)
+			{
+				e1.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * computes the net stoichiometries of the reactions and the highest
+	 * reaction orders of the species
+	 */
+	private void setupLeaping()
+	{
+
+		CompiledModel compiled = compiledModel;
+		int numReactions = compiled.reactionIDs.length;
+		int numVariables = compiled.variableIDs.length;
+
+		// a species can appear more than once in the stoichiometries of a
+		// reaction, so the entries are summed per species
+		netStart = new int[numReactions + 1];
+		netVariables = new int[compiled.stoichiometryVariables.length];
+		netStoichiometries = new double[compiled.stoichiometries.length];
+		int numEntries = 0;
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			for (int k = compiled.stoichiometryStart[r]; k < compiled.stoichiometryStart[r + 1]; ++k)
+			{
+
+				int variable = compiled.stoichiometryVariables[k];
+
+				if (compiled.isUpdatable[variable] == false)
+				{
+					continue;
+				}
+
+				int entry = netStart[r];
+
+				while (entry < numEntries && netVariables[entry] != variable)
+				{
+					++entry;
+				}
+
+				if (entry == numEntries)
+				{
+					netVariables[numEntries++] = variable;
+				}
+
+				netStoichiometries[entry] += compiled.stoichiometries[k];
+			}
+
+			netStart[r + 1] = numEntries;
+		}
+
+		highestOrders = new int[numVariables];
+		highestOrderStoichiometries = new double[numVariables];
+
+		for (int r = 0; r < numReactions; ++r)
+		{
+
+			double order = 0;
+
+			for (int k = compiled.reactantStart[r]; k < compiled.reactantStart[r + 1]; ++k)
+			{
+				order += compiled.reactantStoichiometries[k];
+			}
+
+			for (int k = compiled.reactantStart[r]; k < compiled.reactantStart[r + 1]; ++k)
+			{
+
+				int variable = compiled.reactantVariables[k];
+
+				if ((int) order > highestOrders[variable])
+				{
+					highestOrders[variable] = (int) order;
+					highestOrderStoichiometries[variable] = compiled.reactantStoichiometries[k];
+				}
+				else if ((int) order == highestOrders[variable])
+				{
+					highestOrderStoichiometries[variable] = Math.max(highestOrderStoichiometries[variable], compiled.reactantStoichiometries[k]);
+				}
+			}
+		}
+
+		isCritical = new boolean[numReactions];
+		firings = new double[numReactions];
+		means = new double[numVariables];
+		variances = new double[numVariables];
+		isLeapReactant = new boolean[numVariables];
+		changes = new double[numVariables];
+		exactStepsLeft = 0;
+	}
+
+	/**
+	 * determines the critical reactions and selects the largest leap for which
+	 * the expected relative change of the propensities of the other reactions
+	 * stays below ERROR_CONTROL
+	 *
+	 * @return the length of the leap
+	 */
+	private double selectLeapTime()
+	{
+
+		CompiledModel compiled = compiledModel;
+		double[] propensities = compiled.propensities;
+
+		criticalPropensity = 0;
+
+		for (int v = 0; v < means.length; ++v)
+		{
+			means[v] = 0;
+			variances[v] = 0;
+			isLeapReactant[v] = false;
+		}
+
+		for (int r = 0; r < propensities.length; ++r)
+		{
+
+			isCritical[r] = false;
+
+			if (propensities[r] > 0.0)
+			{
+
+				// the number of times the reaction can fire before a species
+				// runs out
+				double maxFirings = Double.POSITIVE_INFINITY;
+
+				for (int k = netStart[r]; k < netStart[r + 1]; ++k)
+				{
+					if (netStoichiometries[k] < 0)
+					{
+						maxFirings = Math.min(maxFirings, FastMath.floor(getValue(netVariables[k]) / -netStoichiometries[k]));
+					}
+				}
+
+				if (maxFirings < CRITICAL_FIRINGS)
+				{
+					isCritical[r] = true;
+					criticalPropensity += propensities[r];
+					continue;
+				}
+
+				for (int k = netStart[r]; k < netStart[r + 1]; ++k)
+				{
+
+					double stoichiometry = netStoichiometries[k] * getConversionFactor(netVariables[k]);
+
+					means[netVariables[k]] += stoichiometry * propensities[r];
+					variances[netVariables[k]] += stoichiometry * stoichiometry * propensities[r];
+				}
+			}
+
+			// the propensity of a disabled reaction may change in the leap as
+			// well
+			for (int k = compiled.reactantStart[r]; k < compiled.reactantStart[r + 1]; ++k)
+			{
+				isLeapReactant[compiled.reactantVariables[k]] = true;
+			}
+		}
+
+		double leapTime = Double.POSITIVE_INFINITY;
+
+		for (int v = 0; v < means.length; ++v)
+		{
+
+			if (isLeapReactant[v] == false || compiled.isUpdatable[v] == false)
+			{
+				continue;
+			}
+
+			double value = getValue(v);
+			double bound = Math.max(ERROR_CONTROL * value / getHighestOrderFactor(v, value), 1.0);
+
+			if (means[v] != 0.0)
+			{
+				leapTime = Math.min(leapTime, bound / Math.abs(means[v]));
+			}
+
+			if (variances[v] != 0.0)
+			{
+				leapTime = Math.min(leapTime, bound * bound / variances[v]);
+			}
+		}
+
+		return leapTime;
+	}
+
+	/**
+	 * g_i of Cao, Gillespie and Petzold, which relates the relative change of
+	 * a species to the relative change of the propensities of the reactions it
+	 * is a reactant of
+	 */
+	private double getHighestOrderFactor(int variable, double value)
+	{
+
+		int order = highestOrders[variable];
+		double stoichiometry = highestOrderStoichiometries[variable];
+
+		if (stoichiometry <= 1 || value <= stoichiometry)
+		{
+			return order;
+		}
+
+		if (order == 2)
+		{
+			return 2 + 1 / (value - 1);
+		}
+		else if (order == 3 && stoichiometry == 2)
+		{
+			return 1.5 * (2 + 1 / (value - 1));
+		}
+		else if (order == 3)
+		{
+			return 3 + 1 / (value - 1) + 2 / (value - 2);
+		}
+
+		return order;
+	}
+
+	/**
+	 * leaps to the earliest of the end of the leap, the firing of a critical
+	 * reaction, the next event, the next print time, the maximum time step and
+	 * the time limit, halving the leap until no species becomes negative
+	 *
+	 * @return the time at the end of the leap
+	 */
+	private double leap(double leapTime, double nextEventTime, double printTime, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
+
+		double criticalTime = Double.POSITIVE_INFINITY;
+
+		if (criticalPropensity > 0.0)
+		{
+			criticalTime = FastMath.log(1 / randomNumberGenerator.nextDouble()) / criticalPropensity;
+		}
+
+		double endTime;
+
+		while (true)
+		{
+
+			endTime = currentTime + Math.min(leapTime, criticalTime);
+			boolean criticalFires = criticalTime <= leapTime;
+
+			double earliestTime = Math.min(Math.min(nextEventTime, currentTime + maxTimeStep), timeLimit);
+
+			if (printTime > currentTime)
+			{
+				earliestTime = Math.min(earliestTime, printTime);
+			}
+
+			if (earliestTime < endTime)
+			{
+				endTime = earliestTime;
+				criticalFires = false;
+			}
+
+			if (sampleFirings(endTime - currentTime, criticalFires))
+			{
+				break;
+			}
+
+			leapTime /= 2;
+		}
+
+		for (int r = 0; r < firings.length; ++r)
+		{
+			if (firings[r] > 0)
+			{
+				performReaction(r, firings[r], noAssignmentRulesFlag, noConstraintsFlag);
+			}
+		}
+
+		// update time for next iteration
+
+		if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
+		{
+			performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get("time"));
+		}
+
+		return endTime;
+	}
+
+	/**
+	 * draws the number of times every reaction fires in the leap
+	 *
+	 * @return false if a species would become negative
+	 */
+	private boolean sampleFirings(double tau, boolean criticalFires)
+	{
+
+		CompiledModel compiled = compiledModel;
+		double[] propensities = compiled.propensities;
+
+		int criticalReaction = -1;
+
+		if (criticalFires)
+		{
+
+			double randomPropensity = randomNumberGenerator.nextDouble() * criticalPropensity;
+			double runningTotalPropensity = 0.0;
+
+			for (int r = 0; r < propensities.length && criticalReaction < 0; ++r)
+			{
+				if (isCritical[r])
+				{
+
+					runningTotalPropensity += propensities[r];
+
+					if (randomPropensity < runningTotalPropensity)
+					{
+						criticalReaction = r;
+					}
+				}
+			}
+		}
+
+		for (int r = 0; r < propensities.length; ++r)
+		{
+
+			firings[r] = 0;
+
+			if (r == criticalReaction)
+			{
+				firings[r] = 1;
+			}
+			else if (isCritical[r] == false && propensities[r] > 0.0)
+			{
+				firings[r] = samplePoisson(propensities[r] * tau);
+			}
+
+			if (firings[r] > 0)
+			{
+				for (int k = netStart[r]; k < netStart[r + 1]; ++k)
+				{
+					changes[netVariables[k]] += firings[r] * netStoichiometries[k] * getConversionFactor(netVariables[k]);
+				}
+			}
+		}
+
+		boolean isNonnegative = true;
+
+		for (int v = 0; v < changes.length; ++v)
+		{
+
+			if (changes[v] != 0.0 && getValue(v) + changes[v] < 0)
+			{
+				isNonnegative = false;
+			}
+
+			changes[v] = 0;
+		}
+
+		return isNonnegative;
+	}
+
+	/**
+	 * draws a Poisson distributed number, by multiplying uniform numbers for a
+	 * small mean and by the transformed rejection method of Hoermann for a
+	 * large one
+	 */
+	private double samplePoisson(double mean)
+	{
+
+		if (mean < 10)
+		{
+
+			double limit = FastMath.exp(-mean);
+			double product = randomNumberGenerator.nextDouble();
+			int count = 0;
+
+			while (product > limit)
+			{
+				product *= randomNumberGenerator.nextDouble();
+				++count;
+			}
+
+			return count;
+		}
+
+		double sqrtMean = FastMath.sqrt(mean);
+		double logMean = FastMath.log(mean);
+		double b = 0.931 + 2.53 * sqrtMean;
+		double a = -0.059 + 0.02483 * b;
+		double inverseAlpha = 1.1239 + 1.1328 / (b - 3.4);
+		double vr = 0.9277 - 3.6224 / (b - 2);
+
+		while (true)
+		{
+
+			double u = randomNumberGenerator.nextDouble() - 0.5;
+			double v = randomNumberGenerator.nextDouble();
+			double us = 0.5 - Math.abs(u);
+			double count = FastMath.floor((2 * a / us + b) * u + mean + 0.43);
+
+			if (us >= 0.07 && v <= vr)
+			{
+				return count;
+			}
+
+			if (count < 0 || (us < 0.013 && v > us))
+			{
+				continue;
+			}
+
+			if (FastMath.log(v) + FastMath.log(inverseAlpha) - FastMath.log(a / (us * us) + b) <= -mean + count * logMean - Gamma.logGamma(count + 1))
+			{
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * recalculates the propensities of all reactions and the total propensity
+	 */
+	private void updatePropensities()
+	{
+
+		CompiledModel compiled = compiledModel;
+		double[] propensities = compiled.propensities;
+
+		totalPropensity = 0.0;
+
+		for (int r = 0; r < propensities.length; ++r)
+		{
+
+			compiled.setPropensity(r, computePropensity(r));
+			totalPropensity += propensities[r];
+		}
+	}
+
+	private double getValue(int variable)
+	{
+		return compiledModel.values[variable];
+	}
+
+	private double getConversionFactor(int variable)
+	{
+
+		int conversionFactor = compiledModel.conversionFactors[variable];
+
+		if (conversionFactor >= 0)
+		{
+			return getValue(conversionFactor);
+		}
+
+		return 1.0;
+	}
+}
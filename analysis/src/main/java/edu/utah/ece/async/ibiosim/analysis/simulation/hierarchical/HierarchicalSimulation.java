@@ -43,6 +43,7 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.Hierarc
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState.StateType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.HierarchicalEventComparator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEventNode;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.RunStatistics;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 
@@ -61,7 +62,7 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
 
   public static enum SimType
   {
-    HSSA, HODE, FBA, MIXED, NONE;
+    HSSA, HODE, HYBRID, FBA, MIXED, NONE;
   }
 
   protected final VariableNode      currentTime;
@@ -100,6 +101,10 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
   private double              initialTime, outputStartTime;
 
   private HierarchicalWriter writer;
+  private boolean            accumulateStatistics;
+  private RunStatistics      statistics;
+  private double[]           printValues;
+  private int                printPoint;
 
   protected double currProgress, maxProgress;
 
@@ -122,7 +127,7 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
     this.printConcentrationSpecies = new HashSet<String>();
     
     this.parentType = StateType.SPARSE;
-    if(type == SimType.HODE || type == SimType.MIXED)
+    if(type == SimType.HODE || type == SimType.HYBRID || type == SimType.MIXED)
     {
       this.atomicType = StateType.VECTOR;
     }
@@ -238,6 +243,38 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
     writer.addVariable(id, node, index, isConcentration);
   }
 
+  /**
+   * Replaces the writer used to print the runs. This must be called before the
+   * simulation is initialized, since the printed variables are registered with
+   * the writer during the setup.
+   *
+   * @param writer
+   *            the new writer
+   */
+  public void setWriter(HierarchicalWriter writer)
+  {
+    this.writer = writer;
+    this.addPrintVariable("time", printTime, 0, false);
+  }
+
+  /**
+   * Enables the accumulation of the mean, variance and standard deviation of
+   * every printed variable while the runs are simulated.
+   */
+  public void setAccumulateStatistics(boolean accumulateStatistics)
+  {
+    this.accumulateStatistics = accumulateStatistics;
+  }
+
+  /**
+   * Returns the statistics accumulated over the runs, or null if they are not
+   * being accumulated.
+   */
+  public RunStatistics getRunStatistics()
+  {
+    return statistics;
+  }
+
   public List<HierarchicalModel> getListOfHierarchicalModels()
   {
     return modules;
@@ -598,6 +635,17 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
     return randomNumberGenerator;
   }
 
+  /**
+   * Reseeds the random number generator of this simulation.
+   *
+   * @param randomSeed
+   *            the new seed
+   */
+  public void setRandomSeed(long randomSeed)
+  {
+    randomNumberGenerator.setSeed(randomSeed);
+  }
+
 
 
   /**
@@ -651,7 +699,13 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
   protected void setupForOutput(int currentRun) throws IOException
   {
     setCurrentRun(currentRun);
-    writer.init(getOutputDirectory() + File.separator + "run-" + currentRun + ".tsd");
+    printPoint = 0;
+    if (accumulateStatistics && statistics == null)
+    {
+      statistics = new RunStatistics(writer.getListOfIds());
+      printValues = new double[statistics.getSpecies().size()];
+    }
+    writer.init(getOutputDirectory() + File.separator + "run-" + currentRun + "." + writer.getExtension());
 
   }
 
@@ -713,6 +767,11 @@ public abstract class HierarchicalSimulation extends AbstractSimulator
       try
       {
         writer.print();
+        if (statistics != null)
+        {
+          writer.getValues(printValues);
+          statistics.add(printPoint++, printValues);
+        }
       }
       catch (IOException e)
       {
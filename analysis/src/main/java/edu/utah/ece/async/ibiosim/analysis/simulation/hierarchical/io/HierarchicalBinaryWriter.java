@@ -0,0 +1,131 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.BTSDParser;
+
+/**
+ * Writes trajectories in the binary columnar format read by {@link BTSDParser}.
+ * Printed rows are buffered until a chunk is full and the chunk is then written
+ * column by column.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class HierarchicalBinaryWriter extends HierarchicalWriter
+{
+
+  private final int        chunkSize;
+  private DataOutputStream output;
+  private double[][]       chunk;
+  private double[]         row;
+  private int              rows;
+
+  public HierarchicalBinaryWriter()
+  {
+    this(BTSDParser.DEFAULT_CHUNK_SIZE);
+  }
+
+  public HierarchicalBinaryWriter(int chunkSize)
+  {
+    super();
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public String getExtension()
+  {
+    return "btsd";
+  }
+
+  @Override
+  public void init(String filename) throws IOException
+  {
+    if (!isSet && listOfStates.size() > 0)
+    {
+      chunk = new double[listOfStates.size()][chunkSize];
+      row = new double[listOfStates.size()];
+      isSet = true;
+    }
+    if (isSet)
+    {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+      output.writeInt(BTSDParser.MAGIC);
+      output.writeInt(BTSDParser.VERSION);
+      output.writeInt(listOfStates.size());
+      output.writeInt(chunkSize);
+      for (String id : getListOfIds())
+      {
+        output.writeUTF(id);
+      }
+      rows = 0;
+    }
+  }
+
+  @Override
+  public void print() throws IOException
+  {
+    getValues(row);
+    for (int i = 0; i < row.length; ++i)
+    {
+      chunk[i][rows] = row[i];
+    }
+    rows++;
+    if (rows == chunkSize)
+    {
+      writeChunk();
+    }
+  }
+
+  @Override
+  public void addVariable(String id, HierarchicalNode node, int index, boolean isConcentration)
+  {
+    addNode(id, node, index, isConcentration);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (output != null)
+    {
+      if (rows > 0)
+      {
+        writeChunk();
+      }
+      output.close();
+      output = null;
+    }
+  }
+
+  private void writeChunk() throws IOException
+  {
+    output.writeInt(rows);
+    for (int i = 0; i < chunk.length; ++i)
+    {
+      for (int j = 0; j < rows; ++j)
+      {
+        output.writeDouble(chunk[i][j]);
+      }
+    }
+    rows = 0;
+  }
+}
@@ -59,7 +59,7 @@ public class HierarchicalCSVWriter extends HierarchicalWriter{
       header.append(separator + id);
     }
     
-    addNode(node, index, isConcentration);
+    addNode(id, node, index, isConcentration);
   }
   @Override
   public void init(String filename) throws IOException {
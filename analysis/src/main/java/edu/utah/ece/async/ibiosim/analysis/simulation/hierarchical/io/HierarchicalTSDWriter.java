@@ -57,7 +57,7 @@ public class HierarchicalTSDWriter extends HierarchicalWriter{
 			header.append(",\"" + id + "\"");
 		}
 		
-		addNode(node, index, isConcentration);
+		addNode(id, node, index, isConcentration);
 	}
 	@Override
 	public void init(String filename) throws IOException {
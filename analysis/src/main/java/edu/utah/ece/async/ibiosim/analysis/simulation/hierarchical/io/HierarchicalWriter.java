@@ -48,6 +48,14 @@ public abstract class HierarchicalWriter {
   
   public abstract void init(String filename) throws IOException;
   
+  /**
+   * Returns the extension of the files produced by this writer.
+   */
+  public String getExtension()
+  {
+    return "tsd";
+  }
+  
   public abstract void print() throws IOException;
   
   public abstract void addVariable(String id, HierarchicalNode node, int index,  boolean isConcentration);
@@ -64,25 +72,54 @@ public abstract class HierarchicalWriter {
    * @param index
    * @param isConcentration
    */
-  protected void addNode(HierarchicalNode node, int index, boolean isConcentration)
+  protected void addNode(String id, HierarchicalNode node, int index, boolean isConcentration)
+  {
+    listOfStates.add(new WriterNode(id, node, index, isConcentration));
+  }
+  
+  /**
+   * Returns the ids of the printed variables in the order they are printed.
+   */
+  public List<String> getListOfIds()
+  {
+    List<String> ids = new ArrayList<String>(listOfStates.size());
+    for(WriterNode state : listOfStates)
+    {
+      ids.add(state.id);
+    }
+    return ids;
+  }
+  
+  /**
+   * Copies the current value of every printed variable into the given array.
+   * 
+   * @param values
+   */
+  public void getValues(double[] values)
   {
-    listOfStates.add(new WriterNode(node, index, isConcentration));
+    for(int i = 0; i < listOfStates.size(); ++i)
+    {
+      values[i] = listOfStates.get(i).getValue();
+    }
   }
   
   protected class WriterNode
   {
+    private String id;
     private HierarchicalNode node;
     private int index;
     private boolean isConcentration;
     
     /**
      * 
+     * @param id
      * @param node
      * @param index
      * @param isConcentration
      */
-    public WriterNode(HierarchicalNode node, int index, boolean isConcentration)
+    public WriterNode(String id, HierarchicalNode node, int index, boolean isConcentration)
     {
+      this.id = id;
       this.node = node;
       this.index = index;
       this.isConcentration = isConcentration;
@@ -91,20 +128,22 @@ public abstract class HierarchicalWriter {
     /**
      * 
      */
-    public String toString()
+    public double getValue()
     {
-      double value = 0;
       if(isConcentration && node.isSpecies())
       {
         SpeciesNode species = (SpeciesNode) node;
-        value = species.getConcentration(index);
-      }
-      else
-      {
-        value = node.getValue(index);
+        return species.getConcentration(index);
       }
-      
-      return String.valueOf(value);
+      return node.getValue(index);
+    }
+    
+    /**
+     * 
+     */
+    public String toString()
+    {
+      return String.valueOf(getValue());
     }
   }
 
@@ -0,0 +1,622 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+
+/**
+ * Builds the partial derivatives of HierarchicalNode trees with respect to the
+ * entries of the state vector, as new trees that an {@link ExpressionProgram}
+ * evaluates like any other. The trees share the nodes of the formulas, which
+ * is safe as nodes don't refer to their parents.
+ *
+ * A leaf is identified by its state. A leaf whose value is recomputed from
+ * the others, i.e. the target of an assignment rule or the propensity of a
+ * reaction, is replaced by its formula. Any other leaf with a
+ * {@link VectorState} is the entry of its index, the time is the column
+ * {@link #TIME} and everything else is constant. A derivative that is zero
+ * by the structure of the tree is null.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class Differentiator
+{
+
+  /**
+   * The column of the derivatives with respect to the time.
+   */
+  public static final int                                              TIME = -1;
+
+  private final HierarchicalState                                      timeState;
+
+  // the formula of each recomputed leaf, or null if it can't be differentiated
+  private final Map<HierarchicalState, HierarchicalNode>               substitutions;
+  private final Map<HierarchicalState, Set<Integer>>                   dependencies;
+  private final Map<HierarchicalState, Map<Integer, HierarchicalNode>> derivatives;
+  private final Set<HierarchicalState>                                 visiting;
+
+  public Differentiator(VariableNode time)
+  {
+    this.timeState = time.getState();
+    this.substitutions = new IdentityHashMap<HierarchicalState, HierarchicalNode>();
+    this.dependencies = new IdentityHashMap<HierarchicalState, Set<Integer>>();
+    this.derivatives = new IdentityHashMap<HierarchicalState, Map<Integer, HierarchicalNode>>();
+    this.visiting = Collections.newSetFromMap(new IdentityHashMap<HierarchicalState, Boolean>());
+  }
+
+  /**
+   * Replaces the target of an assignment rule by the rule, unless the rule
+   * can't change it.
+   */
+  public void addAssignmentRule(FunctionNode rule)
+  {
+    VariableNode variable = rule.getVariable();
+
+    if (rule.isInitAssignment() || variable.getState() == null)
+    {
+      return;
+    }
+
+    // only species are assigned when they are constant
+    if (variable.isVariableConstant() && !(variable instanceof SpeciesNode))
+    {
+      return;
+    }
+
+    substitutions.put(variable.getState(), rule);
+  }
+
+  /**
+   * Replaces a reaction by its rate law.
+   */
+  public void addReaction(ReactionNode reaction)
+  {
+    if (reaction.getState() == null)
+    {
+      return;
+    }
+
+    if (reaction.getReverseRate() != null)
+    {
+      substitutions.put(reaction.getState(), null);
+    }
+    else if (reaction.getForwardRate() != null)
+    {
+      substitutions.put(reaction.getState(), reaction.getForwardRate());
+    }
+    else
+    {
+      substitutions.put(reaction.getState(), new NumberNode(0));
+    }
+  }
+
+  /**
+   * Returns whether every part of the tree that can change its value can be
+   * differentiated.
+   */
+  public boolean isDifferentiable(HierarchicalNode node)
+  {
+    switch (node.getType())
+    {
+    case NAME:
+    case NAME_TIME:
+    {
+      HierarchicalState state = node.getState();
+
+      if (state == null || state == timeState || !substitutions.containsKey(state))
+      {
+        return true;
+      }
+
+      HierarchicalNode substitution = substitutions.get(state);
+
+      // a rule that depends on itself has no derivative either
+      if (substitution == null || !visiting.add(state))
+      {
+        return false;
+      }
+
+      boolean isDifferentiable = isDifferentiable(substitution);
+      visiting.remove(state);
+      return isDifferentiable;
+    }
+    case DIVIDE:
+    case POWER:
+    case FUNCTION_POWER:
+    case FUNCTION_ROOT:
+    case FUNCTION_LOG:
+      if (node.getNumOfChild() != 2)
+      {
+        return false;
+      }
+      break;
+    case FUNCTION_EXP:
+    case FUNCTION_LN:
+    case FUNCTION_SIN:
+    case FUNCTION_COS:
+    case FUNCTION_TAN:
+    case FUNCTION_SINH:
+    case FUNCTION_COSH:
+    case FUNCTION_TANH:
+    case FUNCTION_ARCSIN:
+    case FUNCTION_ARCCOS:
+    case FUNCTION_ARCTAN:
+    case FUNCTION_ABS:
+      if (node.getNumOfChild() != 1)
+      {
+        return false;
+      }
+      break;
+    case MINUS:
+    case FUNCTION_PIECEWISE:
+      if (node.getNumOfChild() == 0)
+      {
+        return false;
+      }
+      break;
+    case PLUS:
+    case TIMES:
+      break;
+    default:
+      return isConstant(node);
+    }
+
+    for (int i = 0; i < node.getNumOfChild(); i++)
+    {
+      if (!isCondition(node, i) && !isDifferentiable(node.getChild(i)))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds the columns whose entries the value of the tree depends on, which
+   * includes {@link #TIME} if it depends on the time.
+   */
+  public void addDependencies(HierarchicalNode node, Set<Integer> columns)
+  {
+    if (node.getType() == Type.NAME || node.getType() == Type.NAME_TIME)
+    {
+      HierarchicalState state = node.getState();
+
+      if (state == null)
+      {
+        return;
+      }
+      else if (state == timeState)
+      {
+        columns.add(TIME);
+      }
+      else if (substitutions.containsKey(state))
+      {
+        columns.addAll(getDependencies(state));
+      }
+      else if (state instanceof VectorState)
+      {
+        columns.add(((VectorState) state).getVectorIndex());
+      }
+      return;
+    }
+
+    if (isConstant(node))
+    {
+      return;
+    }
+
+    for (int i = 0; i < node.getNumOfChild(); i++)
+    {
+      if (!isCondition(node, i))
+      {
+        addDependencies(node.getChild(i), columns);
+      }
+    }
+  }
+
+  /**
+   * Returns the partial derivative of a differentiable tree with respect to
+   * a column, or null if it is zero.
+   */
+  public HierarchicalNode differentiate(HierarchicalNode node, int column)
+  {
+    switch (node.getType())
+    {
+    case NAME:
+    case NAME_TIME:
+      return differentiateName(node, column);
+    case PLUS:
+    {
+      HierarchicalNode result = null;
+      for (int i = 0; i < node.getNumOfChild(); i++)
+      {
+        result = plus(result, differentiate(node.getChild(i), column));
+      }
+      return result;
+    }
+    case MINUS:
+    {
+      HierarchicalNode result = differentiate(node.getChild(0), column);
+      if (node.getNumOfChild() == 1)
+      {
+        return negate(result);
+      }
+      for (int i = 1; i < node.getNumOfChild(); i++)
+      {
+        result = minus(result, differentiate(node.getChild(i), column));
+      }
+      return result;
+    }
+    case TIMES:
+    {
+      HierarchicalNode result = null;
+      for (int i = 0; i < node.getNumOfChild(); i++)
+      {
+        HierarchicalNode derivative = differentiate(node.getChild(i), column);
+        if (derivative == null)
+        {
+          continue;
+        }
+        HierarchicalNode term = derivative;
+        for (int j = 0; j < node.getNumOfChild(); j++)
+        {
+          if (j != i)
+          {
+            term = times(term, node.getChild(j));
+          }
+        }
+        result = plus(result, term);
+      }
+      return result;
+    }
+    case DIVIDE:
+    {
+      HierarchicalNode numerator = node.getChild(0);
+      HierarchicalNode denominator = node.getChild(1);
+      HierarchicalNode numeratorDerivative = differentiate(numerator, column);
+      HierarchicalNode denominatorDerivative = differentiate(denominator, column);
+      return minus(divide(numeratorDerivative, denominator),
+        divide(times(numerator, denominatorDerivative), times(denominator, denominator)));
+    }
+    case POWER:
+    case FUNCTION_POWER:
+      return differentiatePower(node.getChild(0), node.getChild(1), column);
+    case FUNCTION_ROOT:
+      // the degree comes first
+      return differentiatePower(node.getChild(1), divide(new NumberNode(1), node.getChild(0)), column);
+    case FUNCTION_LOG:
+    {
+      // the base comes first
+      HierarchicalNode logarithm = function(Type.FUNCTION_LN, node.getChild(1));
+      HierarchicalNode baseLogarithm = function(Type.FUNCTION_LN, node.getChild(0));
+      HierarchicalNode derivative = divide(differentiate(node.getChild(1), column), node.getChild(1));
+      HierarchicalNode baseDerivative = divide(differentiate(node.getChild(0), column), node.getChild(0));
+      return minus(divide(derivative, baseLogarithm),
+        divide(times(logarithm, baseDerivative), times(baseLogarithm, baseLogarithm)));
+    }
+    case FUNCTION_PIECEWISE:
+      return differentiatePiecewise(node, column);
+    case FUNCTION_EXP:
+    case FUNCTION_LN:
+    case FUNCTION_SIN:
+    case FUNCTION_COS:
+    case FUNCTION_TAN:
+    case FUNCTION_SINH:
+    case FUNCTION_COSH:
+    case FUNCTION_TANH:
+    case FUNCTION_ARCSIN:
+    case FUNCTION_ARCCOS:
+    case FUNCTION_ARCTAN:
+    case FUNCTION_ABS:
+    {
+      HierarchicalNode derivative = differentiate(node.getChild(0), column);
+      if (derivative == null)
+      {
+        return null;
+      }
+      return differentiateFunction(node.getType(), node.getChild(0), derivative);
+    }
+    default:
+      return null;
+    }
+  }
+
+  private HierarchicalNode differentiateName(HierarchicalNode node, int column)
+  {
+    HierarchicalState state = node.getState();
+
+    if (state == null)
+    {
+      return null;
+    }
+    else if (state == timeState)
+    {
+      return column == TIME ? new NumberNode(1) : null;
+    }
+    else if (substitutions.containsKey(state))
+    {
+      // the derivatives of a formula are shared by every tree that reads it
+      Map<Integer, HierarchicalNode> formulaDerivatives = derivatives.get(state);
+      if (formulaDerivatives == null)
+      {
+        formulaDerivatives = new HashMap<Integer, HierarchicalNode>();
+        derivatives.put(state, formulaDerivatives);
+      }
+      if (!formulaDerivatives.containsKey(column))
+      {
+        formulaDerivatives.put(column, differentiate(substitutions.get(state), column));
+      }
+      return formulaDerivatives.get(column);
+    }
+    else if (state instanceof VectorState)
+    {
+      return ((VectorState) state).getVectorIndex() == column ? new NumberNode(1) : null;
+    }
+
+    return null;
+  }
+
+  private HierarchicalNode differentiatePower(HierarchicalNode base, HierarchicalNode exponent, int column)
+  {
+    HierarchicalNode baseDerivative = differentiate(base, column);
+    HierarchicalNode exponentDerivative = differentiate(exponent, column);
+
+    if (exponentDerivative == null)
+    {
+      if (baseDerivative == null)
+      {
+        return null;
+      }
+      HierarchicalNode power = node(Type.POWER, base, minus(exponent, new NumberNode(1)));
+      return times(times(exponent, power), baseDerivative);
+    }
+
+    // d(a^b) = a^b (b' ln(a) + b a' / a)
+    HierarchicalNode power = node(Type.POWER, base, exponent);
+    HierarchicalNode derivative = times(exponentDerivative, function(Type.FUNCTION_LN, base));
+    derivative = plus(derivative, divide(times(exponent, baseDerivative), base));
+    return times(power, derivative);
+  }
+
+  /**
+   * A piecewise takes its values from pairs of a value and a condition,
+   * followed by the value otherwise. Without that last value, the last
+   * condition is the value otherwise, whose derivative is zero.
+   */
+  private HierarchicalNode differentiatePiecewise(HierarchicalNode node, int column)
+  {
+    int n = node.getNumOfChild();
+    HierarchicalNode result = new HierarchicalNode(Type.FUNCTION_PIECEWISE);
+    boolean isZero = true;
+
+    for (int i = 0; i < n; i++)
+    {
+      if (isCondition(node, i))
+      {
+        result.addChild(node.getChild(i));
+      }
+      else
+      {
+        HierarchicalNode derivative = differentiate(node.getChild(i), column);
+        isZero = isZero && derivative == null;
+        result.addChild(derivative == null ? new NumberNode(0) : derivative);
+      }
+    }
+
+    if (n % 2 == 0)
+    {
+      result.addChild(new NumberNode(0));
+    }
+
+    return isZero ? null : result;
+  }
+
+  private static HierarchicalNode differentiateFunction(Type type, HierarchicalNode argument, HierarchicalNode derivative)
+  {
+    switch (type)
+    {
+    case FUNCTION_EXP:
+      return times(function(Type.FUNCTION_EXP, argument), derivative);
+    case FUNCTION_LN:
+      return divide(derivative, argument);
+    case FUNCTION_SIN:
+      return times(function(Type.FUNCTION_COS, argument), derivative);
+    case FUNCTION_COS:
+      return negate(times(function(Type.FUNCTION_SIN, argument), derivative));
+    case FUNCTION_TAN:
+    {
+      HierarchicalNode cosine = function(Type.FUNCTION_COS, argument);
+      return divide(derivative, times(cosine, cosine));
+    }
+    case FUNCTION_SINH:
+      return times(function(Type.FUNCTION_COSH, argument), derivative);
+    case FUNCTION_COSH:
+      return times(function(Type.FUNCTION_SINH, argument), derivative);
+    case FUNCTION_TANH:
+    {
+      HierarchicalNode cosine = function(Type.FUNCTION_COSH, argument);
+      return divide(derivative, times(cosine, cosine));
+    }
+    case FUNCTION_ARCSIN:
+      return divide(derivative, node(Type.POWER, minus(new NumberNode(1), times(argument, argument)), new NumberNode(0.5)));
+    case FUNCTION_ARCCOS:
+      return negate(divide(derivative, node(Type.POWER, minus(new NumberNode(1), times(argument, argument)), new NumberNode(0.5))));
+    case FUNCTION_ARCTAN:
+      return divide(derivative, plus(new NumberNode(1), times(argument, argument)));
+    case FUNCTION_ABS:
+      return node(Type.FUNCTION_PIECEWISE, negate(derivative), node(Type.RELATIONAL_LT, argument, new NumberNode(0)), derivative);
+    default:
+      return null;
+    }
+  }
+
+  private Set<Integer> getDependencies(HierarchicalState state)
+  {
+    Set<Integer> columns = dependencies.get(state);
+
+    if (columns == null)
+    {
+      columns = new HashSet<Integer>();
+      HierarchicalNode substitution = substitutions.get(state);
+
+      // a rule that depends on itself stops at itself
+      if (substitution != null && visiting.add(state))
+      {
+        addDependencies(substitution, columns);
+        visiting.remove(state);
+        dependencies.put(state, columns);
+      }
+    }
+
+    return columns;
+  }
+
+  /**
+   * the values of booleans, numbers and rounded values only change in jumps
+   */
+  private static boolean isConstant(HierarchicalNode node)
+  {
+    switch (node.getType())
+    {
+    case CONSTANT_E:
+    case CONSTANT_PI:
+    case CONSTANT_TRUE:
+    case CONSTANT_FALSE:
+    case NAME_AVOGADRO:
+    case NUMBER:
+    case FUNCTION_CEILING:
+    case FUNCTION_FLOOR:
+    case RELATIONAL_EQ:
+    case RELATIONAL_NEQ:
+    case RELATIONAL_GEQ:
+    case RELATIONAL_GT:
+    case RELATIONAL_LEQ:
+    case RELATIONAL_LT:
+    case LOGICAL_AND:
+    case LOGICAL_OR:
+    case LOGICAL_XOR:
+    case LOGICAL_NOT:
+    case LOGICAL_IMPLIES:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * the conditions of a piecewise are its odd children
+   */
+  private static boolean isCondition(HierarchicalNode node, int index)
+  {
+    return node.getType() == Type.FUNCTION_PIECEWISE && index % 2 == 1;
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children)
+  {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children)
+    {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private static HierarchicalNode function(Type type, HierarchicalNode argument)
+  {
+    return node(type, argument);
+  }
+
+  private static HierarchicalNode plus(HierarchicalNode left, HierarchicalNode right)
+  {
+    if (left == null)
+    {
+      return right;
+    }
+    else if (right == null)
+    {
+      return left;
+    }
+    return node(Type.PLUS, left, right);
+  }
+
+  private static HierarchicalNode minus(HierarchicalNode left, HierarchicalNode right)
+  {
+    if (right == null)
+    {
+      return left;
+    }
+    else if (left == null)
+    {
+      return negate(right);
+    }
+    return node(Type.MINUS, left, right);
+  }
+
+  private static HierarchicalNode negate(HierarchicalNode node)
+  {
+    if (node == null)
+    {
+      return null;
+    }
+    return node(Type.MINUS, node);
+  }
+
+  private static HierarchicalNode times(HierarchicalNode left, HierarchicalNode right)
+  {
+    if (left == null || right == null)
+    {
+      return null;
+    }
+    else if (isNumber(left, 1))
+    {
+      return right;
+    }
+    else if (isNumber(right, 1))
+    {
+      return left;
+    }
+    return node(Type.TIMES, left, right);
+  }
+
+  private static HierarchicalNode divide(HierarchicalNode numerator, HierarchicalNode denominator)
+  {
+    if (numerator == null)
+    {
+      return null;
+    }
+    else if (isNumber(denominator, 1))
+    {
+      return numerator;
+    }
+    return node(Type.DIVIDE, numerator, denominator);
+  }
+
+  private static boolean isNumber(HierarchicalNode node, double value)
+  {
+    return node instanceof NumberNode && node.getValue() == value;
+  }
+}
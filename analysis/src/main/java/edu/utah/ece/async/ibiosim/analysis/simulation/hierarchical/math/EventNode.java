@@ -54,6 +54,18 @@ public class EventNode extends HierarchicalNode
     eventState.put(index, state);
   }
 
+  /**
+   * Clears the enabled/disabled times and pending non-persistent events of
+   * every index so the event can be reevaluated from the start of a new run.
+   */
+  public void resetEventStates()
+  {
+    for (Map.Entry<Integer, EventState> entry : eventState.entrySet())
+    {
+      entry.setValue(new EventState());
+    }
+  }
+
   public EventState getEventState(int index)
   {
     return eventState.get(index);
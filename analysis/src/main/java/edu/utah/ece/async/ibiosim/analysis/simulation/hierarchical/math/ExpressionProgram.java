@@ -0,0 +1,725 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A HierarchicalNode tree lowered into a flat postfix program. The program is
+ * evaluated by a single loop over an instruction array using a primitive
+ * operand stack, which avoids the type dispatch and recursion performed by
+ * {@link Evaluator#evaluateExpressionRecursive(HierarchicalNode, int)}.
+ * Nodes the compiler does not support are kept as a single instruction that
+ * evaluates the subtree with the recursive evaluator.
+ *
+ * An instance reuses its operand stack and is therefore not thread-safe.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class ExpressionProgram
+{
+
+  private static final int    CONST       = 0;
+  private static final int    LOAD        = 1;
+  private static final int    LOAD_NUMBER = 2;
+  private static final int    EVAL        = 3;
+  private static final int    ADD         = 4;
+  private static final int    SUB         = 5;
+  private static final int    MUL         = 6;
+  private static final int    DIV         = 7;
+  private static final int    POW         = 8;
+  private static final int    ROOT        = 9;
+  private static final int    LOG         = 10;
+  private static final int    REM         = 11;
+  private static final int    QUOTIENT    = 12;
+  private static final int    MIN         = 13;
+  private static final int    MAX         = 14;
+  private static final int    EQ          = 15;
+  private static final int    NEQ         = 16;
+  private static final int    GEQ         = 17;
+  private static final int    GT          = 18;
+  private static final int    LEQ         = 19;
+  private static final int    LT          = 20;
+  private static final int    NOT         = 21;
+  private static final int    AND         = 22;
+  private static final int    OR          = 23;
+  private static final int    XOR         = 24;
+  private static final int    IMPLIES     = 25;
+  private static final int    JUMP        = 26;
+  private static final int    JUMP_IF_NOT = 27;
+  private static final int    ABS         = 28;
+  private static final int    ACOS        = 29;
+  private static final int    ASIN        = 30;
+  private static final int    ATAN        = 31;
+  private static final int    CEIL        = 32;
+  private static final int    COS         = 33;
+  private static final int    COSH        = 34;
+  private static final int    EXP         = 35;
+  private static final int    FLOOR       = 36;
+  private static final int    LN          = 37;
+  private static final int    SIN         = 38;
+  private static final int    SINH        = 39;
+  private static final int    TAN         = 40;
+  private static final int    TANH        = 41;
+
+  private final int[]              code;
+  private final double[]           constants;
+  private final HierarchicalNode[] nodes;
+  private final double[]           stack;
+
+  private ExpressionProgram(Compiler compiler)
+  {
+    this.code = new int[compiler.size];
+    System.arraycopy(compiler.code, 0, this.code, 0, compiler.size);
+    this.constants = new double[compiler.constants.size()];
+    for (int i = 0; i < constants.length; i++)
+    {
+      constants[i] = compiler.constants.get(i);
+    }
+    this.nodes = compiler.nodes.toArray(new HierarchicalNode[compiler.nodes.size()]);
+    this.stack = new double[Math.max(1, compiler.maxDepth)];
+  }
+
+  /**
+   * Lowers the given tree into a postfix program.
+   */
+  public static ExpressionProgram compile(HierarchicalNode node)
+  {
+    Compiler compiler = new Compiler();
+    compiler.compile(node);
+    return new ExpressionProgram(compiler);
+  }
+
+  /**
+   * Returns true if every node of the tree was compiled into primitive
+   * instructions, i.e. the program never falls back to the recursive evaluator.
+   */
+  public boolean isFullyCompiled()
+  {
+    for (int pc = 0; pc < code.length; pc += 2)
+    {
+      if (code[pc] == EVAL)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public double evaluate(int index)
+  {
+    final int[] code = this.code;
+    final double[] stack = this.stack;
+    int sp = 0;
+    int pc = 0;
+
+    while (pc < code.length)
+    {
+      int op = code[pc++];
+      int arg = code[pc++];
+
+      switch (op)
+      {
+      case CONST:
+        stack[sp++] = constants[arg];
+        break;
+      case LOAD:
+        stack[sp++] = nodes[arg].getValue(index);
+        break;
+      case LOAD_NUMBER:
+        stack[sp++] = nodes[arg].getValue();
+        break;
+      case EVAL:
+        stack[sp++] = Evaluator.evaluateExpressionRecursive(nodes[arg], index);
+        break;
+      case ADD:
+      {
+        double result = 0.0;
+        for (int i = sp - arg; i < sp; i++)
+        {
+          result += stack[i];
+        }
+        sp -= arg;
+        stack[sp++] = result;
+        break;
+      }
+      case SUB:
+      {
+        if (arg == 1)
+        {
+          stack[sp - 1] = -stack[sp - 1];
+        }
+        else
+        {
+          int first = sp - arg;
+          double result = stack[first];
+          for (int i = first + 1; i < sp; i++)
+          {
+            result -= stack[i];
+          }
+          sp = first;
+          stack[sp++] = result;
+        }
+        break;
+      }
+      case MUL:
+      {
+        double result = 1.0;
+        for (int i = sp - arg; i < sp; i++)
+        {
+          result *= stack[i];
+        }
+        sp -= arg;
+        stack[sp++] = result;
+        break;
+      }
+      case DIV:
+        sp--;
+        stack[sp - 1] = stack[sp - 1] / stack[sp];
+        break;
+      case POW:
+        sp--;
+        stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+        break;
+      case ROOT:
+        sp--;
+        stack[sp - 1] = FastMath.pow(stack[sp], 1 / stack[sp - 1]);
+        break;
+      case LOG:
+        sp--;
+        stack[sp - 1] = Math.log(stack[sp]) / Math.log(stack[sp - 1]);
+        break;
+      case REM:
+      {
+        sp--;
+        double d0 = stack[sp - 1];
+        double d1 = stack[sp];
+        int quo = (int) (d0 / d1);
+        stack[sp - 1] = d0 - d1 * quo;
+        break;
+      }
+      case QUOTIENT:
+        sp--;
+        stack[sp - 1] = (int) (stack[sp - 1] / stack[sp]);
+        break;
+      case MIN:
+      {
+        int first = sp - arg;
+        double result = stack[first];
+        for (int i = first + 1; i < sp; i++)
+        {
+          if (stack[i] < result)
+          {
+            result = stack[i];
+          }
+        }
+        sp = first;
+        stack[sp++] = result;
+        break;
+      }
+      case MAX:
+      {
+        int first = sp - arg;
+        double result = stack[first];
+        for (int i = first + 1; i < sp; i++)
+        {
+          if (stack[i] > result)
+          {
+            result = stack[i];
+          }
+        }
+        sp = first;
+        stack[sp++] = result;
+        break;
+      }
+      case EQ:
+      case NEQ:
+      case GEQ:
+      case GT:
+      case LEQ:
+      case LT:
+      {
+        int first = sp - arg;
+        double result = 1;
+        for (int i = first + 1; i < sp; i++)
+        {
+          if (!compare(op, stack[i - 1], stack[i]))
+          {
+            result = 0;
+            break;
+          }
+        }
+        sp = first;
+        stack[sp++] = result;
+        break;
+      }
+      case NOT:
+        stack[sp - 1] = stack[sp - 1] < 1 ? 1 : 0;
+        break;
+      case AND:
+      {
+        int first = sp - arg;
+        double result = 1;
+        for (int i = first; i < sp; i++)
+        {
+          if (stack[i] == 0)
+          {
+            result = 0;
+            break;
+          }
+        }
+        sp = first;
+        stack[sp++] = result;
+        break;
+      }
+      case OR:
+      {
+        int first = sp - arg;
+        double result = 0;
+        for (int i = first; i < sp; i++)
+        {
+          if (stack[i] == 1)
+          {
+            result = 1;
+            break;
+          }
+        }
+        sp = first;
+        stack[sp++] = result;
+        break;
+      }
+      case XOR:
+      {
+        int first = sp - arg;
+        boolean result = false;
+        for (int i = first; i < sp; i++)
+        {
+          result = result ^ stack[i] > 0;
+        }
+        sp = first;
+        stack[sp++] = result ? 1 : 0;
+        break;
+      }
+      case IMPLIES:
+        sp--;
+        stack[sp - 1] = stack[sp - 1] < 1 || stack[sp] > 0 ? 1 : 0;
+        break;
+      case JUMP:
+        pc = arg;
+        break;
+      case JUMP_IF_NOT:
+        if (!(stack[--sp] > 0))
+        {
+          pc = arg;
+        }
+        break;
+      case ABS:
+        stack[sp - 1] = Math.abs(stack[sp - 1]);
+        break;
+      case ACOS:
+        stack[sp - 1] = Math.acos(stack[sp - 1]);
+        break;
+      case ASIN:
+        stack[sp - 1] = Math.asin(stack[sp - 1]);
+        break;
+      case ATAN:
+        stack[sp - 1] = Math.atan(stack[sp - 1]);
+        break;
+      case CEIL:
+        stack[sp - 1] = Math.ceil(stack[sp - 1]);
+        break;
+      case COS:
+        stack[sp - 1] = Math.cos(stack[sp - 1]);
+        break;
+      case COSH:
+        stack[sp - 1] = Math.cosh(stack[sp - 1]);
+        break;
+      case EXP:
+        stack[sp - 1] = Math.exp(stack[sp - 1]);
+        break;
+      case FLOOR:
+        stack[sp - 1] = Math.floor(stack[sp - 1]);
+        break;
+      case LN:
+        stack[sp - 1] = Math.log(stack[sp - 1]);
+        break;
+      case SIN:
+        stack[sp - 1] = Math.sin(stack[sp - 1]);
+        break;
+      case SINH:
+        stack[sp - 1] = Math.sinh(stack[sp - 1]);
+        break;
+      case TAN:
+        stack[sp - 1] = Math.tan(stack[sp - 1]);
+        break;
+      case TANH:
+        stack[sp - 1] = Math.tanh(stack[sp - 1]);
+        break;
+      default:
+        break;
+      }
+    }
+
+    return stack[0];
+  }
+
+  /**
+   * Mirrors the recursive evaluator, which fails a relation when its
+   * complement holds (this matters for NaN operands).
+   */
+  private static boolean compare(int op, double lhs, double rhs)
+  {
+    switch (op)
+    {
+    case EQ:
+      return !(lhs != rhs);
+    case NEQ:
+      return !(lhs == rhs);
+    case GEQ:
+      return !(lhs < rhs);
+    case GT:
+      return !(lhs <= rhs);
+    case LEQ:
+      return !(lhs > rhs);
+    default:
+      return !(lhs >= rhs);
+    }
+  }
+
+  /**
+   * Emits instructions as (opcode, argument) pairs.
+   */
+  private static final class Compiler
+  {
+    private int[]                  code      = new int[32];
+    private int                    size;
+    private int                    depth;
+    private int                    maxDepth;
+    private List<Double>           constants = new ArrayList<Double>();
+    private List<HierarchicalNode> nodes     = new ArrayList<HierarchicalNode>();
+
+    private void emit(int op, int arg, int stackChange)
+    {
+      if (size + 2 > code.length)
+      {
+        int[] tmp = new int[code.length * 2];
+        System.arraycopy(code, 0, tmp, 0, size);
+        code = tmp;
+      }
+      code[size++] = op;
+      code[size++] = arg;
+      depth += stackChange;
+      if (depth > maxDepth)
+      {
+        maxDepth = depth;
+      }
+    }
+
+    private void emitConstant(double value)
+    {
+      constants.add(value);
+      emit(CONST, constants.size() - 1, 1);
+    }
+
+    private void emitNode(int op, HierarchicalNode node)
+    {
+      nodes.add(node);
+      emit(op, nodes.size() - 1, 1);
+    }
+
+    private void compileChildren(HierarchicalNode node)
+    {
+      for (int i = 0; i < node.getNumOfChild(); i++)
+      {
+        compile(node.getChild(i));
+      }
+    }
+
+    private void compileNary(HierarchicalNode node, int op)
+    {
+      int n = node.getNumOfChild();
+      compileChildren(node);
+      emit(op, n, 1 - n);
+    }
+
+    private void compileUnary(HierarchicalNode node, int op)
+    {
+      if (node.getNumOfChild() < 1)
+      {
+        emitNode(EVAL, node);
+        return;
+      }
+      compile(node.getChild(0));
+      emit(op, 0, 0);
+    }
+
+    private void compileBinary(HierarchicalNode node, int op)
+    {
+      if (node.getNumOfChild() < 2)
+      {
+        emitNode(EVAL, node);
+        return;
+      }
+      compile(node.getChild(0));
+      compile(node.getChild(1));
+      emit(op, 0, -1);
+    }
+
+    /**
+     * Operators that may skip some of their operands must not evaluate
+     * subtrees with side effects eagerly, so they are only compiled when all
+     * operands are compiled too.
+     */
+    private void compileShortCircuit(HierarchicalNode node, int op, int minChildren)
+    {
+      if (node.getNumOfChild() < minChildren)
+      {
+        emitNode(EVAL, node);
+        return;
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++)
+      {
+        if (!isSupported(node.getChild(i)))
+        {
+          emitNode(EVAL, node);
+          return;
+        }
+      }
+      compileNary(node, op);
+    }
+
+    private void compilePiecewise(HierarchicalNode node)
+    {
+      int n = node.getNumOfChild();
+      if (n == 0)
+      {
+        emitNode(EVAL, node);
+        return;
+      }
+
+      int startDepth = depth;
+      int[] exits = new int[n / 2];
+      int numExits = 0;
+
+      for (int childIter = 0; childIter < n - 1; childIter += 2)
+      {
+        compile(node.getChild(childIter + 1));
+        emit(JUMP_IF_NOT, 0, -1);
+        int skip = size - 1;
+        compile(node.getChild(childIter));
+        emit(JUMP, 0, 0);
+        exits[numExits++] = size - 1;
+        code[skip] = size;
+        depth = startDepth;
+      }
+
+      compile(node.getChild(n - 1));
+      for (int i = 0; i < numExits; i++)
+      {
+        code[exits[i]] = size;
+      }
+      depth = startDepth + 1;
+    }
+
+    private void compile(HierarchicalNode node)
+    {
+      switch (node.getType())
+      {
+      case CONSTANT_TRUE:
+        emitConstant(1.0);
+        return;
+      case CONSTANT_FALSE:
+        emitConstant(0.0);
+        return;
+      case CONSTANT_E:
+        emitConstant(Math.E);
+        return;
+      case CONSTANT_PI:
+        emitConstant(Math.PI);
+        return;
+      case NAME_AVOGADRO:
+        emitConstant(6.02214179e23);
+        return;
+      case NUMBER:
+        if (node instanceof NumberNode)
+        {
+          emitConstant(node.getValue());
+        }
+        else
+        {
+          emitNode(LOAD_NUMBER, node);
+        }
+        return;
+      case NAME:
+      case NAME_TIME:
+        emitNode(LOAD, node);
+        return;
+      case PLUS:
+        compileNary(node, ADD);
+        return;
+      case TIMES:
+        compileNary(node, MUL);
+        return;
+      case MINUS:
+        if (node.getNumOfChild() < 1)
+        {
+          emitNode(EVAL, node);
+          return;
+        }
+        compileNary(node, SUB);
+        return;
+      case DIVIDE:
+        compileBinary(node, DIV);
+        return;
+      case POWER:
+      case FUNCTION_POWER:
+        compileBinary(node, POW);
+        return;
+      case FUNCTION_ROOT:
+        compileBinary(node, ROOT);
+        return;
+      case FUNCTION_LOG:
+        compileBinary(node, LOG);
+        return;
+      case FUNCTION_REM:
+        compileBinary(node, REM);
+        return;
+      case FUNCTION_QUOTIENT:
+        compileBinary(node, QUOTIENT);
+        return;
+      case FUNCTION_MIN:
+        if (node.getNumOfChild() < 1)
+        {
+          emitNode(EVAL, node);
+          return;
+        }
+        compileNary(node, MIN);
+        return;
+      case FUNCTION_MAX:
+        if (node.getNumOfChild() < 1)
+        {
+          emitNode(EVAL, node);
+          return;
+        }
+        compileNary(node, MAX);
+        return;
+      case RELATIONAL_EQ:
+        compileShortCircuit(node, EQ, 1);
+        return;
+      case RELATIONAL_NEQ:
+        compileShortCircuit(node, NEQ, 1);
+        return;
+      case RELATIONAL_GEQ:
+        compileShortCircuit(node, GEQ, 1);
+        return;
+      case RELATIONAL_GT:
+        compileShortCircuit(node, GT, 1);
+        return;
+      case RELATIONAL_LEQ:
+        compileShortCircuit(node, LEQ, 1);
+        return;
+      case RELATIONAL_LT:
+        compileShortCircuit(node, LT, 1);
+        return;
+      case LOGICAL_AND:
+        compileShortCircuit(node, AND, 0);
+        return;
+      case LOGICAL_OR:
+        compileShortCircuit(node, OR, 0);
+        return;
+      case LOGICAL_XOR:
+        compileNary(node, XOR);
+        return;
+      case LOGICAL_NOT:
+        compileUnary(node, NOT);
+        return;
+      case LOGICAL_IMPLIES:
+        compileBinary(node, IMPLIES);
+        return;
+      case FUNCTION_PIECEWISE:
+        compilePiecewise(node);
+        return;
+      case FUNCTION_ABS:
+        compileUnary(node, ABS);
+        return;
+      case FUNCTION_ARCCOS:
+        compileUnary(node, ACOS);
+        return;
+      case FUNCTION_ARCSIN:
+        compileUnary(node, ASIN);
+        return;
+      case FUNCTION_ARCTAN:
+        compileUnary(node, ATAN);
+        return;
+      case FUNCTION_CEILING:
+        compileUnary(node, CEIL);
+        return;
+      case FUNCTION_COS:
+        compileUnary(node, COS);
+        return;
+      case FUNCTION_COSH:
+        compileUnary(node, COSH);
+        return;
+      case FUNCTION_EXP:
+        compileUnary(node, EXP);
+        return;
+      case FUNCTION_FLOOR:
+        compileUnary(node, FLOOR);
+        return;
+      case FUNCTION_LN:
+        compileUnary(node, LN);
+        return;
+      case FUNCTION_SIN:
+        compileUnary(node, SIN);
+        return;
+      case FUNCTION_SINH:
+        compileUnary(node, SINH);
+        return;
+      case FUNCTION_TAN:
+        compileUnary(node, TAN);
+        return;
+      case FUNCTION_TANH:
+        compileUnary(node, TANH);
+        return;
+      default:
+        emitNode(EVAL, node);
+        return;
+      }
+    }
+
+    /**
+     * Returns true if the given tree can be compiled without falling back to
+     * the recursive evaluator.
+     */
+    private static boolean isSupported(HierarchicalNode node)
+    {
+      Compiler compiler = new Compiler();
+      compiler.compile(node);
+      for (int pc = 0; pc < compiler.size; pc += 2)
+      {
+        if (compiler.code[pc] == EVAL)
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
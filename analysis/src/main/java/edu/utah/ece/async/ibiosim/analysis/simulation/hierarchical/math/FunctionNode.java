@@ -29,6 +29,7 @@ public class FunctionNode extends HierarchicalNode
 
   private VariableNode	variable;
   private boolean isInitialAssignment;
+  private ExpressionProgram program;
   
   public FunctionNode(VariableNode variable, HierarchicalNode math)
   {
@@ -67,6 +68,13 @@ public class FunctionNode extends HierarchicalNode
     this.variable = math.variable;
   }
 
+  @Override
+  public void addChild(HierarchicalNode node)
+  {
+    super.addChild(node);
+    program = null;
+  }
+
   public VariableNode getVariable()
   {
     return variable;
@@ -95,7 +103,11 @@ public class FunctionNode extends HierarchicalNode
     if(!(this.isInitialAssignment && variable.hasRule))
     {
       double oldValue = variable.getValue(index);
-      double newValue = Evaluator.evaluateExpressionRecursive(this, index);
+      if (program == null)
+      {
+        program = ExpressionProgram.compile(this);
+      }
+      double newValue = program.evaluate(index);
       variable.setValue(index, newValue);
       boolean isNaN = Double.isNaN(oldValue) && Double.isNaN(newValue);
       changed = !isNaN && oldValue != newValue;
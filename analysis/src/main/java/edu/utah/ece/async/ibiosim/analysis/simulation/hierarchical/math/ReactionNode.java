@@ -36,6 +36,9 @@ public class ReactionNode extends VariableNode
   private Map<String, VariableNode> 	localParameters;
   private HierarchicalNode			forwardRate;
   private HierarchicalNode      reverseRate;
+  private boolean               hasVolatileRate;
+  private ExpressionProgram     forwardProgram;
+  private ExpressionProgram     reverseProgram;
 
   public ReactionNode(String name)
   {
@@ -51,6 +54,8 @@ public class ReactionNode extends VariableNode
     this.products = copy.products;
     this.localParameters = copy.localParameters;
     this.forwardRate = copy.forwardRate;
+    this.reverseRate = copy.reverseRate;
+    this.hasVolatileRate = copy.hasVolatileRate;
   }
 
   public void addReactant(SpeciesReferenceNode speciesRef)
@@ -77,11 +82,91 @@ public class ReactionNode extends VariableNode
   public void setForwardRate(HierarchicalNode kineticLaw)
   {
     this.forwardRate = kineticLaw;
+    this.forwardProgram = null;
+    addRateDependencies(kineticLaw);
   }
 
   public void setReverseRate(HierarchicalNode kineticLaw)
   {
     this.reverseRate = kineticLaw;
+    this.reverseProgram = null;
+    addRateDependencies(kineticLaw);
+  }
+
+  private double evaluateForwardRate(int index)
+  {
+    if (forwardProgram == null)
+    {
+      forwardProgram = ExpressionProgram.compile(forwardRate);
+    }
+    return forwardProgram.evaluate(index);
+  }
+
+  private double evaluateReverseRate(int index)
+  {
+    if (reverseProgram == null)
+    {
+      reverseProgram = ExpressionProgram.compile(reverseRate);
+    }
+    return reverseProgram.evaluate(index);
+  }
+
+  public List<SpeciesReferenceNode> getReactants()
+  {
+    return reactants;
+  }
+
+  public List<SpeciesReferenceNode> getProducts()
+  {
+    return products;
+  }
+
+  /**
+   * Returns true if the rate of this reaction can change without any of the
+   * variables it depends on changing (e.g. random functions or rateOf).
+   * Such reactions must have their propensity recomputed on every step.
+   */
+  public boolean hasVolatileRate()
+  {
+    return hasVolatileRate;
+  }
+
+  /**
+   * Registers this reaction as a dependent of every variable referenced
+   * in the given kinetic law.
+   */
+  private void addRateDependencies(HierarchicalNode node)
+  {
+    if (node == null)
+    {
+      return;
+    }
+
+    if (node instanceof VariableNode)
+    {
+      if (node != this)
+      {
+        ((VariableNode) node).addReactionDependency(this);
+      }
+    }
+    else if (node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_RATEOF)
+    {
+      hasVolatileRate = true;
+    }
+
+    for (int i = 0; i < node.getNumOfChild(); i++)
+    {
+      addRateDependencies(node.getChild(i));
+    }
+  }
+
+  /**
+   * Returns true if this reaction has separate forward and reverse rates, so
+   * that it can fire in both directions.
+   */
+  public boolean isReversible()
+  {
+    return reverseRate != null;
   }
 
   public HierarchicalNode getForwardRate()
@@ -101,13 +186,13 @@ public class ReactionNode extends VariableNode
 
     if (forwardRate != null)
     {
-      double forwardRateValue = Evaluator.evaluateExpressionRecursive(forwardRate, index);
+      double forwardRateValue = evaluateForwardRate(index);
       newValue = forwardRateValue;
     }
 
     if (reverseRate != null)
     {
-      double reverseRateValue = Evaluator.evaluateExpressionRecursive(forwardRate, index);
+      double reverseRateValue = evaluateReverseRate(index);
       newValue = newValue + reverseRateValue;
     }
 
@@ -116,12 +201,35 @@ public class ReactionNode extends VariableNode
     return oldValue != newValue;
   }
 
+  /**
+   * Returns the propensity of the forward direction. Unless the reaction is
+   * reversible, this is the value set by the last computePropensity.
+   */
+  public double getForwardPropensity(int index)
+  {
+    return reverseRate == null ? getValue(index) : evaluateForwardRate(index);
+  }
 
+  /**
+   * Returns the propensity of the reverse direction, which is 0 unless the
+   * reaction is reversible.
+   */
+  public double getReversePropensity(int index)
+  {
+    return reverseRate == null ? 0 : evaluateReverseRate(index);
+  }
 
+  /**
+   * Fires the reaction in the forward direction when the forward propensity is
+   * above the threshold, and in the reverse direction otherwise.
+   */
   public void fireReaction(int index, double threshold)
   {
+    fireReaction(index, reverseRate == null || evaluateForwardRate(index) > threshold);
+  }
 
-    boolean isForward = reverseRate == null || Evaluator.evaluateExpressionRecursive(forwardRate, index) > threshold;
+  public void fireReaction(int index, boolean isForward)
+  {
     if(isForward)
     {
       if (computeNotEnoughEnoughMoleculesFd(index))
@@ -186,9 +294,9 @@ public class ReactionNode extends VariableNode
 
   private boolean computeNotEnoughEnoughMoleculesRv(int index)
   {
-    if (reactants != null)
+    if (products != null)
     {
-      for (SpeciesReferenceNode specRef : reactants)
+      for (SpeciesReferenceNode specRef : products)
       {
         if (specRef.getSpecies().getValue(index) < specRef.getValue(index))
         {
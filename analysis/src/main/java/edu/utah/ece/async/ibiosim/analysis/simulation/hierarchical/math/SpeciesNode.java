@@ -26,6 +26,7 @@ public class SpeciesNode extends VariableNode
 
   private VariableNode		compartment;
   private HierarchicalNode	odeRate;
+  private ExpressionProgram odeRateProgram;
   private SpeciesTemplate speciesTemplates;
 
   public SpeciesNode(String name)
@@ -97,6 +98,7 @@ public class SpeciesNode extends VariableNode
     reactionRate.addChild(reactionNode);
     reactionRate.addChild(specRefNode);
     odeRate.addChild(reactionRate);
+    odeRateProgram = null;
   }
 
   public void subtractODERate(ReactionNode reactionNode, SpeciesReferenceNode specRefNode)
@@ -117,6 +119,7 @@ public class SpeciesNode extends VariableNode
     sub.addChild(reactionRate);
 
     odeRate.addChild(sub);
+    odeRateProgram = null;
   }
 
 
@@ -132,7 +135,7 @@ public class SpeciesNode extends VariableNode
     double rate = 0;
     if (rateRule != null)
     {
-      rate = Evaluator.evaluateExpressionRecursive(rateRule, index);
+      rate = evaluateRateRule(index);
       if (!speciesTemplates.hasOnlySubstance )
       {
         double compartmentChange = compartment.computeRateOfChange(index);
@@ -145,7 +148,11 @@ public class SpeciesNode extends VariableNode
     }
     else if (odeRate != null && !speciesTemplates.isBoundary)
     {
-      rate = Evaluator.evaluateExpressionRecursive(odeRate, index);
+      if (odeRateProgram == null)
+      {
+        odeRateProgram = ExpressionProgram.compile(odeRate);
+      }
+      rate = odeRateProgram.evaluate(index);
     }
 
     return rate;
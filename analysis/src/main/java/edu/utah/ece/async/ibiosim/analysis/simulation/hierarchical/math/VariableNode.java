@@ -38,6 +38,7 @@ public class VariableNode extends HierarchicalNode
   
   private List<ReactionNode>	reactionDependents;
   protected HierarchicalNode rateRule;
+  protected ExpressionProgram rateRuleProgram;
 
   public VariableNode(String name)
   {
@@ -73,7 +74,10 @@ public class VariableNode extends HierarchicalNode
     {
       reactionDependents = new ArrayList<ReactionNode>();
     }
-    reactionDependents.add(dependency);
+    if (!reactionDependents.contains(dependency))
+    {
+      reactionDependents.add(dependency);
+    }
   }
 
   public void setIsVariableConstant(boolean isConstant)
@@ -110,7 +114,7 @@ public class VariableNode extends HierarchicalNode
     double rate = 0;
     if (rateRule != null)
     {
-      rate = Evaluator.evaluateExpressionRecursive(rateRule, index);
+      rate = evaluateRateRule(index);
       state.setRateValue(index, rate);
     }
     return rate;
@@ -119,6 +123,16 @@ public class VariableNode extends HierarchicalNode
   public void setRateRule( HierarchicalNode rateRule)
   {
     this.rateRule = rateRule;
+    this.rateRuleProgram = null;
+  }
+
+  protected double evaluateRateRule(int index)
+  {
+    if (rateRuleProgram == null)
+    {
+      rateRuleProgram = ExpressionProgram.compile(rateRule);
+    }
+    return rateRuleProgram.evaluate(index);
   }
 
   public HierarchicalNode getRateRule()
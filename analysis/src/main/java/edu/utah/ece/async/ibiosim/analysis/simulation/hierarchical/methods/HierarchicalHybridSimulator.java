@@ -13,15 +13,556 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.exception.NumberIsTooSmallException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
+import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel.ModelType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.HierarchicalEventComparator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
 /**
- * 
+ * Hybrid SSA/ODE simulator with dynamic partitioning. Every repartition
+ * interval, a reaction is made fast when it is expected to fire at least
+ * propensityThreshold times in the interval and all species it changes have at
+ * least populationThreshold molecules per unit of stoichiometry. The forward
+ * and reverse directions of a reversible reaction have their own propensities
+ * and are partitioned separately. The fast reactions are integrated as ODEs
+ * with a Higham-Hall 5(4) integrator over the VectorWrapper, and the slow
+ * reactions fire one at a time as in the SSA. The
+ * integral of the total slow propensity is integrated along with the
+ * variables, and a slow reaction fires when it reaches an exponentially
+ * distributed threshold, so the propensities of the slow reactions may change
+ * with the fast species between firings.
  *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public final class HierarchicalHybridSimulator
+public final class HierarchicalHybridSimulator extends HierarchicalSimulation
 {
 
+  private static final double    DEFAULT_PROPENSITY_THRESHOLD = 10;
+  private static final double    DEFAULT_POPULATION_THRESHOLD = 100;
+
+  private long                   randomSeed;
+  private HighamHall54Integrator odecalc;
+  private double                 relativeError, absoluteError;
+  private DifferentialEquations  de;
+  private final VectorWrapper    vectorWrapper;
+
+  private double                 propensityThreshold;
+  private double                 populationThreshold;
+  private double                 repartitionInterval;
+
+  private ReactionNode[]         reactionList;
+  private HierarchicalModel[]    reactionModelList;
+  private boolean[]              isFast;
+  private boolean[]              isReverseFast;
+
+  // the values of the VectorWrapper followed by the integral of the total
+  // propensity of the slow reactions since the last slow reaction
+  private double[]               state;
+  private int                    slowIndex;
+  private double                 slowThreshold;
+  private boolean                isSlowReactionDue;
+
+  public HierarchicalHybridSimulator(String SBMLFileName, String rootDirectory, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue,
+    String[] interestingSpecies, int numSteps, double relError, double absError, String quantityType, double initialTime, double outputStartTime) throws IOException, XMLStreamException, BioSimException
+  {
+    super(SBMLFileName, rootDirectory, outputDirectory, randomSeed, runs, timeLimit, maxTimeStep, minTimeStep, printInterval, stoichAmpValue, interestingSpecies, quantityType, initialTime, outputStartTime, SimType.HYBRID);
+    this.randomSeed = randomSeed;
+    this.absoluteError = absError == 0 ? 1e-12 : absError;
+    this.relativeError = relError == 0 ? 1e-9 : relError;
+    this.vectorWrapper = new VectorWrapper(initValues);
+    if (numSteps > 0)
+    {
+      setPrintInterval(timeLimit / numSteps);
+    }
+    this.propensityThreshold = DEFAULT_PROPENSITY_THRESHOLD;
+    this.populationThreshold = DEFAULT_POPULATION_THRESHOLD;
+    this.repartitionInterval = getPrintInterval();
+    this.odecalc = new HighamHall54Integrator(getMinTimeStep(), getMaxTimeStep(), absoluteError, relativeError);
+    this.odecalc.addEventHandler(new SlowReactionHandler(), getPrintInterval(), 1e-20, 10000);
+    isInitialized = false;
+  }
+
+  /**
+   * Sets the thresholds of the partitioning. A reaction is fast when its
+   * propensity times the repartition interval is at least the propensity
+   * threshold and every species it changes has at least the population
+   * threshold times its stoichiometry molecules.
+   */
+  public void setPartitionThresholds(double propensityThreshold, double populationThreshold)
+  {
+    this.propensityThreshold = propensityThreshold;
+    this.populationThreshold = populationThreshold;
+  }
+
+  /**
+   * Sets the time between two partitionings of the reactions, which is the
+   * print interval by default.
+   */
+  public void setRepartitionInterval(double repartitionInterval)
+  {
+    this.repartitionInterval = repartitionInterval;
+  }
+
+  @Override
+  public void cancel()
+  {
+    setCancelFlag(true);
+  }
+
+  @Override
+  public void clear()
+  {
+  }
+
+  @Override
+  public void initialize(long randomSeed, int runNumber) throws IOException, XMLStreamException
+  {
+    if (!isInitialized)
+    {
+      currProgress = 0;
+      setCurrentTime(getInitialTime());
+      ModelSetup.setupModels(this, ModelType.HODE, vectorWrapper);
+      computeFixedPoint();
+
+      slowIndex = vectorWrapper.getSize();
+      state = Arrays.copyOf(vectorWrapper.getValues(), slowIndex + 1);
+      vectorWrapper.setValues(state);
+      de = new DifferentialEquations();
+
+      setupReactions();
+      if (hasEvents)
+      {
+        triggeredEventList = new PriorityQueue<TriggeredEventNode>(1, new HierarchicalEventComparator());
+        computeEvents();
+      }
+
+      setupForOutput(runNumber);
+      isInitialized = true;
+    }
+  }
+
+  @Override
+  public void simulate() throws IOException, XMLStreamException
+  {
+    if (isSbmlHasErrorsFlag())
+    {
+      return;
+    }
+
+    if (!isInitialized)
+    {
+      initialize(randomSeed, 1);
+    }
+
+    printTime.setValue(getOutputStartTime());
+    double nextRepartitionTime = currentTime.getValue();
+    drawSlowThreshold();
+
+    while (currentTime.getValue() < getTimeLimit() && !isCancelFlag())
+    {
+      if (currentTime.getValue() >= nextRepartitionTime)
+      {
+        partitionReactions();
+        nextRepartitionTime = currentTime.getValue() + repartitionInterval;
+      }
+
+      double nextEventTime = getNextEventTime();
+      double nextEndTime = getRoundedDouble(currentTime.getValue() + getMaxTimeStep());
+
+      if (nextEndTime > printTime.getValue())
+      {
+        nextEndTime = printTime.getValue();
+      }
+      if (nextEndTime > nextRepartitionTime)
+      {
+        nextEndTime = nextRepartitionTime;
+      }
+      if (nextEndTime > nextEventTime)
+      {
+        nextEndTime = nextEventTime;
+      }
+      if (nextEndTime > getTimeLimit())
+      {
+        nextEndTime = getTimeLimit();
+      }
+
+      isSlowReactionDue = false;
+
+      try
+      {
+        double endTime = odecalc.integrate(de, currentTime.getValue(), state, nextEndTime, state);
+        setCurrentTime(endTime);
+      }
+      catch (NumberIsTooSmallException e)
+      {
+        setCurrentTime(nextEndTime);
+      }
+      catch (MaxCountExceededException e)
+      {
+        setCurrentTime(nextEndTime);
+      }
+
+      // the integrator evaluates the derivatives on its own arrays
+      vectorWrapper.setValues(state);
+      computeAssignmentRules();
+
+      printToFile();
+
+      if (isSlowReactionDue)
+      {
+        fireSlowReaction();
+        computeAssignmentRules();
+        drawSlowThreshold();
+      }
+
+      if (hasEvents && currentTime.getValue() >= nextEventTime)
+      {
+        computeEvents();
+      }
+    }
+
+    if (!isCancelFlag())
+    {
+      printToFile();
+    }
+
+    closeWriter();
+  }
+
+  @Override
+  public void setupForNewRun(int newRun) throws IOException
+  {
+    setCurrentTime(getInitialTime());
+    vectorWrapper.initStateValues();
+    computeFixedPoint();
+    if (hasEvents)
+    {
+      for (HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+      {
+        for (EventNode event : modelstate.getEvents())
+        {
+          event.resetEventStates();
+        }
+      }
+      triggeredEventList = new PriorityQueue<TriggeredEventNode>(1, new HierarchicalEventComparator());
+      computeEvents();
+    }
+    setupForOutput(newRun);
+  }
+
+  @Override
+  public void printStatisticsTSD()
+  {
+  }
+
+  /**
+   * Collects the reactions of all models into a list so that each one can be
+   * marked fast or slow.
+   */
+  private void setupReactions()
+  {
+    List<ReactionNode> reactions = new ArrayList<ReactionNode>();
+    List<HierarchicalModel> reactionModels = new ArrayList<HierarchicalModel>();
+
+    for (HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+    {
+      for (ReactionNode node : modelstate.getReactions())
+      {
+        reactions.add(node);
+        reactionModels.add(modelstate);
+      }
+    }
+
+    reactionList = reactions.toArray(new ReactionNode[reactions.size()]);
+    reactionModelList = reactionModels.toArray(new HierarchicalModel[reactionModels.size()]);
+    isFast = new boolean[reactionList.length];
+    isReverseFast = new boolean[reactionList.length];
+  }
+
+  /**
+   * Marks both directions of every reaction fast or slow from their current
+   * propensities and the populations of the species the reaction changes.
+   */
+  private void partitionReactions()
+  {
+    computePropensities();
+
+    for (int i = 0; i < reactionList.length; i++)
+    {
+      int index = reactionModelList[i].getIndex();
+      boolean hasLargePopulations = hasLargePopulations(reactionList[i].getReactants(), index) && hasLargePopulations(reactionList[i].getProducts(), index);
+
+      isFast[i] = isFast(reactionList[i].getForwardPropensity(index), hasLargePopulations);
+      isReverseFast[i] = reactionList[i].isReversible() && isFast(reactionList[i].getReversePropensity(index), hasLargePopulations);
+    }
+  }
+
+  private boolean isFast(double propensity, boolean hasLargePopulations)
+  {
+    // a net rate that can become negative can't be simulated as discrete
+    // firings
+    return propensity < 0 || (propensity * repartitionInterval >= propensityThreshold && hasLargePopulations);
+  }
+
+  private boolean hasLargePopulations(List<SpeciesReferenceNode> specRefs, int index)
+  {
+    if (specRefs != null)
+    {
+      for (SpeciesReferenceNode specRef : specRefs)
+      {
+        SpeciesNode species = specRef.getSpecies();
+        if (!species.isBoundaryCondition() && species.getValue(index) < populationThreshold * specRef.getStoichiometry(index))
+        {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  private void computePropensities()
+  {
+    for (HierarchicalModel hierarchicalModel : modules)
+    {
+      hierarchicalModel.computePropensities();
+    }
+  }
+
+  /**
+   * Resets the integral of the slow propensity and draws the value at which
+   * the next slow reaction fires.
+   */
+  private void drawSlowThreshold()
+  {
+    state[slowIndex] = 0;
+    slowThreshold = Math.log(1 / getRandomNumberGenerator().nextDouble());
+  }
+
+  /**
+   * Selects a slow reaction direction with probability proportional to its
+   * propensity and fires it.
+   */
+  private void fireSlowReaction()
+  {
+    computePropensities();
+
+    double slowPropensity = 0;
+    for (int i = 0; i < reactionList.length; i++)
+    {
+      slowPropensity += getSlowPropensity(i);
+    }
+
+    double threshold = slowPropensity * getRandomNumberGenerator().nextDouble();
+    double sum = 0;
+
+    for (int i = 0; i < reactionList.length; i++)
+    {
+      int index = reactionModelList[i].getIndex();
+      if (!isFast[i])
+      {
+        sum += reactionList[i].getForwardPropensity(index);
+
+        if (threshold < sum)
+        {
+          reactionList[i].fireReaction(index, true);
+          return;
+        }
+      }
+      if (reactionList[i].isReversible() && !isReverseFast[i])
+      {
+        sum += reactionList[i].getReversePropensity(index);
+
+        if (threshold < sum)
+        {
+          reactionList[i].fireReaction(index, false);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the total propensity of the slow directions of a reaction.
+   */
+  private double getSlowPropensity(int i)
+  {
+    int index = reactionModelList[i].getIndex();
+    double propensity = 0;
+    if (!isFast[i])
+    {
+      propensity += reactionList[i].getForwardPropensity(index);
+    }
+    if (reactionList[i].isReversible() && !isReverseFast[i])
+    {
+      propensity += reactionList[i].getReversePropensity(index);
+    }
+    return propensity;
+  }
+
+  private double getNextEventTime()
+  {
+    if (!hasEvents)
+    {
+      return Double.POSITIVE_INFINITY;
+    }
+    checkEvents();
+    if (triggeredEventList != null && !triggeredEventList.isEmpty())
+    {
+      return triggeredEventList.peek().getFireTime();
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Stops the integration when the integral of the slow propensity reaches the
+   * threshold, which is when the next slow reaction fires.
+   */
+  private class SlowReactionHandler implements EventHandler
+  {
+
+    @Override
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    @Override
+    public double g(double t, double[] y)
+    {
+      return y[slowIndex] - slowThreshold;
+    }
+
+    @Override
+    public Action eventOccurred(double t, double[] y, boolean increasing)
+    {
+      isSlowReactionDue = true;
+      return EventHandler.Action.STOP;
+    }
+
+    @Override
+    public void resetState(double t, double[] y)
+    {
+    }
+  }
+
+  /**
+   * The rates of change of the variables under the fast reactions and rules,
+   * followed by the total propensity of the slow reactions.
+   */
+  private class DifferentialEquations implements FirstOrderDifferentialEquations
+  {
+
+    @Override
+    public int getDimension()
+    {
+      return slowIndex + 1;
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] y, double[] yDot) throws MaxCountExceededException, DimensionMismatchException
+    {
+      if (Double.isNaN(t))
+      {
+        throw new MaxCountExceededException(t);
+      }
+
+      setCurrentTime(t);
+      vectorWrapper.setValues(y);
+      computeAssignmentRules();
+      vectorWrapper.setRates(yDot);
+      Arrays.fill(yDot, 0);
+      computePropensities();
+
+      for (HierarchicalModel hierarchicalModel : modules)
+      {
+        int index = hierarchicalModel.getIndex();
+        for (VariableNode node : hierarchicalModel.getListOfVariables())
+        {
+          // the rates of the species come from the fast reactions below
+          if (!(node instanceof SpeciesNode) || node.getRateRule() != null)
+          {
+            node.setRateValue(index, node.computeRateOfChange(index));
+          }
+        }
+      }
+
+      double slowPropensity = 0;
+
+      for (int i = 0; i < reactionList.length; i++)
+      {
+        int index = reactionModelList[i].getIndex();
+        double forwardPropensity = reactionList[i].getForwardPropensity(index);
+        double reversePropensity = reactionList[i].getReversePropensity(index);
+        double netFastRate = 0;
+
+        if (isFast[i])
+        {
+          netFastRate += forwardPropensity;
+        }
+        else
+        {
+          slowPropensity += forwardPropensity;
+        }
+
+        if (isReverseFast[i])
+        {
+          netFastRate -= reversePropensity;
+        }
+        else
+        {
+          slowPropensity += reversePropensity;
+        }
+
+        if (netFastRate != 0)
+        {
+          addRates(reactionList[i].getReactants(), index, -netFastRate);
+          addRates(reactionList[i].getProducts(), index, netFastRate);
+        }
+      }
+
+      yDot[slowIndex] = slowPropensity;
+    }
+
+    private void addRates(List<SpeciesReferenceNode> specRefs, int index, double rate)
+    {
+      if (specRefs != null)
+      {
+        for (SpeciesReferenceNode specRef : specRefs)
+        {
+          SpeciesNode species = specRef.getSpecies();
+          if (!species.isBoundaryCondition() && species.getRateRule() == null)
+          {
+            species.setRateValue(index, species.getRate(index) + rate * specRef.getStoichiometry(index));
+          }
+        }
+      }
+    }
+  }
 }
@@ -15,21 +15,35 @@ package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.PriorityQueue;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.exception.MaxCountExceededException;
 import org.apache.commons.math3.exception.NumberIsTooSmallException;
-import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
 import org.apache.commons.math3.ode.events.EventHandler;
 import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
 
+import edu.utah.ece.async.ibiosim.analysis.simulation.RosenbrockIntegrator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Differentiator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ExpressionProgram;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel.ModelType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.HierarchicalEventComparator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEventNode;
@@ -47,6 +61,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
 
   private boolean                isSingleStep;
   private HighamHall54Integrator odecalc;
+  private RosenbrockIntegrator   stiffIntegrator;
+  private SymbolicJacobian       symbolicJacobian;
   private double                 relativeError, absoluteError;
   private DifferentialEquations  de;
   private final VectorWrapper    vectorWrapper;
@@ -132,6 +148,21 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
   }
 
 
+  /**
+   * Selects the Rosenbrock integrator for stiff models instead of the
+   * Runge-Kutta integrator. It must be selected before the simulation is
+   * initialized, which gives it the Jacobian and the event handlers.
+   */
+  public void setStiff(boolean isStiff) {
+    if (isStiff) {
+      stiffIntegrator = new RosenbrockIntegrator(getMinTimeStep(),
+        getMaxTimeStep(), absoluteError, relativeError);
+    } else {
+      stiffIntegrator = null;
+    }
+  }
+
+
   @Override
   public void cancel() {
     setCancelFlag(true);
@@ -152,6 +183,10 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
       ModelSetup.setupModels(this, ModelType.HODE, vectorWrapper);
       de = new DifferentialEquations();
       computeFixedPoint();
+      if (stiffIntegrator != null) {
+        symbolicJacobian = new SymbolicJacobian();
+        stiffIntegrator.setSparsity(symbolicJacobian.getPattern());
+      }
       if (hasEvents()) {
         HierarchicalEventHandler handler = new HierarchicalEventHandler();
         HierarchicalTriggeredEventHandler triggeredHandler =
@@ -159,6 +194,15 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
         odecalc.addEventHandler(handler, getPrintInterval(), 1e-20, 10000);
         odecalc.addEventHandler(triggeredHandler, getPrintInterval(), 1e-20,
           10000);
+        // the handlers keep the sign of their last event, so each integrator
+        // gets its own
+        if (stiffIntegrator != null) {
+          stiffIntegrator.addEventHandler(new HierarchicalEventHandler(),
+            getPrintInterval(), 1e-20, 10000);
+          stiffIntegrator.addEventHandler(
+            new HierarchicalTriggeredEventHandler(), getPrintInterval(), 1e-20,
+            10000);
+        }
         triggeredEventList =
             new PriorityQueue<TriggeredEventNode>(1, new HierarchicalEventComparator());
         computeEvents();
@@ -194,7 +238,9 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
       if (nextEndTime > getTimeLimit()) {
         nextEndTime = getTimeLimit();
       }
-      if (vectorWrapper.getSize() > 0) {
+      if (stiffIntegrator != null) {
+        stiffStep(nextEndTime);
+      } else if (vectorWrapper.getSize() > 0) {
         try {
           odecalc.integrate(de, currentTime.getValue(),
             vectorWrapper.getValues(), nextEndTime, vectorWrapper.getValues());
@@ -227,6 +273,9 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
   {
     setCurrentTime(getInitialTime());
     vectorWrapper.initStateValues();
+    if (stiffIntegrator != null) {
+      stiffIntegrator.reset();
+    }
     setupForOutput(newRun);
   }
 
@@ -236,6 +285,80 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
     // TODO Auto-generated method stub
   }
   
+  /**
+   * Integrates up to the given time with the Rosenbrock integrator, which
+   * stops at the first event that it locates.
+   */
+  private void stiffStep(double nextEndTime) {
+    if (vectorWrapper.getSize() > 0) {
+      double[] values = vectorWrapper.getValues();
+      double time = nextEndTime;
+      try {
+        time = stiffIntegrator.integrate(de, currentTime.getValue(), values,
+          nextEndTime, values);
+      } catch (NumberIsTooSmallException e) {
+        stiffIntegrator.reset();
+      } catch (MaxCountExceededException e) {
+        stiffIntegrator.reset();
+      }
+      // the integrator evaluates the derivatives on its own arrays
+      vectorWrapper.setValues(values);
+      setCurrentTime(time);
+    } else {
+      setCurrentTime(nextEndTime);
+    }
+    computeAssignmentRules();
+  }
+
+
+  /**
+   * The rate of change of a variable as a tree: its rate rule, or the sum of
+   * the reactions that change a species.
+   *
+   * @return null if the variable only changes through rules or events
+   */
+  private static HierarchicalNode getRateFormula(VariableNode node) {
+    if (node.getRateRule() != null) {
+      if (node instanceof SpeciesNode) {
+        SpeciesNode species = (SpeciesNode) node;
+        VariableNode compartment = species.getCompartment();
+        // the amount of a species in concentration units follows the size
+        // of its compartment
+        if (!species.hasOnlySubstance() && compartment != null
+            && compartment.getRateRule() != null) {
+          HierarchicalNode change = new HierarchicalNode(Type.TIMES);
+          change.addChild(species);
+          change.addChild(compartment.getRateRule());
+          HierarchicalNode dilution = new HierarchicalNode(Type.DIVIDE);
+          dilution.addChild(change);
+          dilution.addChild(compartment);
+          HierarchicalNode rate = new HierarchicalNode(Type.PLUS);
+          rate.addChild(node.getRateRule());
+          rate.addChild(dilution);
+          return rate;
+        }
+      }
+      return node.getRateRule();
+    }
+    if (node instanceof SpeciesNode) {
+      SpeciesNode species = (SpeciesNode) node;
+      if (species.getODERate() != null && !species.isBoundaryCondition()) {
+        return species.getODERate();
+      }
+    }
+    return null;
+  }
+
+
+  private static int getVectorIndex(HierarchicalNode node) {
+    HierarchicalState state = node.getState();
+    if (state instanceof VectorState) {
+      return ((VectorState) state).getVectorIndex();
+    }
+    return -1;
+  }
+
+
   private void computeRates()
   {
     boolean hasChanged = true;
@@ -354,8 +477,169 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
     }
   }
 
+  /**
+   * The Jacobian of the rates of change for the Rosenbrock integrator. The
+   * propensities of the reactions and the targets of the assignment rules are
+   * recomputed from the state, so their formulas take their place, and a rate
+   * depends on whatever those depend on in turn. The partial derivatives are
+   * built once as trees and compiled. If a formula can't be differentiated,
+   * only the pattern is given and the integrator uses finite differences.
+   */
+  private class SymbolicJacobian {
+
+    private final int[][]               pattern;
+    private final boolean               isDifferentiable;
+
+    // for each rate of change, its entry in the state, the index of its
+    // module and its partial derivatives with their positions in the
+    // pattern, where -1 is the derivative with respect to the time
+    private final int[]                 rows;
+    private final int[]                 moduleIndices;
+    private final ExpressionProgram[][] programs;
+    private final int[][]               columns;
+    private final int[][]               positions;
+
+    private double[]                    derivatives;
+
+
+    SymbolicJacobian() {
+      int size = vectorWrapper.getSize();
+      Differentiator differentiator = new Differentiator(currentTime);
+      List<HashSet<Integer>> columnSets = new ArrayList<HashSet<Integer>>(size);
+      List<Integer> rowList = new ArrayList<Integer>();
+      List<Integer> moduleList = new ArrayList<Integer>();
+      List<HierarchicalNode> formulas = new ArrayList<HierarchicalNode>();
+      List<Set<Integer>> dependencies = new ArrayList<Set<Integer>>();
+      boolean[] isRow = new boolean[size];
+      boolean differentiable = true;
+
+      for (int i = 0; i < size; ++i) {
+        columnSets.add(new HashSet<Integer>());
+      }
+      for (HierarchicalModel hierarchicalModel : modules) {
+        if (hierarchicalModel.getAssignRules() != null) {
+          for (FunctionNode rule : hierarchicalModel.getAssignRules()) {
+            differentiator.addAssignmentRule(rule);
+          }
+        }
+        if (hierarchicalModel.getReactions() != null) {
+          for (ReactionNode reaction : hierarchicalModel.getReactions()) {
+            differentiator.addReaction(reaction);
+          }
+        }
+      }
+      for (HierarchicalModel hierarchicalModel : modules) {
+        for (VariableNode node : hierarchicalModel.getListOfVariables()) {
+          int row = getVectorIndex(node);
+          if (row < 0 || row >= size || isRow[row]
+              || node.isVariableConstant()) {
+            continue;
+          }
+          HierarchicalNode formula = getRateFormula(node);
+          if (formula == null) {
+            continue;
+          }
+          Set<Integer> formulaDependencies = new HashSet<Integer>();
+          differentiator.addDependencies(formula, formulaDependencies);
+          for (int column : formulaDependencies) {
+            if (column >= 0 && column < size) {
+              columnSets.get(column).add(row);
+            }
+          }
+          differentiable = differentiable
+              && differentiator.isDifferentiable(formula);
+          isRow[row] = true;
+          rowList.add(row);
+          moduleList.add(hierarchicalModel.getIndex());
+          formulas.add(formula);
+          dependencies.add(formulaDependencies);
+        }
+      }
+
+      pattern = new int[size][];
+      for (int i = 0; i < size; ++i) {
+        pattern[i] = new int[columnSets.get(i).size()];
+        int k = 0;
+        for (int row : columnSets.get(i)) {
+          pattern[i][k++] = row;
+        }
+        Arrays.sort(pattern[i]);
+      }
+
+      isDifferentiable = differentiable;
+      rows = new int[rowList.size()];
+      moduleIndices = new int[rowList.size()];
+      programs = new ExpressionProgram[rowList.size()][];
+      columns = new int[rowList.size()][];
+      positions = new int[rowList.size()][];
+      for (int r = 0; r < rows.length; ++r) {
+        rows[r] = rowList.get(r);
+        moduleIndices[r] = moduleList.get(r);
+        List<ExpressionProgram> rowPrograms = new ArrayList<ExpressionProgram>();
+        List<Integer> rowColumns = new ArrayList<Integer>();
+        if (isDifferentiable) {
+          for (int column : dependencies.get(r)) {
+            if (column != Differentiator.TIME && (column < 0 || column >= size)) {
+              continue;
+            }
+            HierarchicalNode derivative =
+                differentiator.differentiate(formulas.get(r), column);
+            if (derivative != null) {
+              rowPrograms.add(ExpressionProgram.compile(derivative));
+              rowColumns.add(column);
+            }
+          }
+        }
+        programs[r] = rowPrograms.toArray(new ExpressionProgram[rowPrograms.size()]);
+        columns[r] = new int[rowColumns.size()];
+        positions[r] = new int[rowColumns.size()];
+        for (int k = 0; k < columns[r].length; ++k) {
+          int column = rowColumns.get(k);
+          columns[r][k] = column;
+          positions[r][k] = column == Differentiator.TIME ? -1
+              : Arrays.binarySearch(pattern[column], rows[r]);
+        }
+      }
+    }
+
+
+    int[][] getPattern() {
+      return pattern;
+    }
+
+
+    /**
+     * Evaluates the partial derivatives at the given state into a Jacobian
+     * shaped like the pattern.
+     *
+     * @return false if the formulas couldn't be differentiated
+     */
+    boolean compute(double t, double[] y, double[][] jacobian,
+      double[] timeDerivative) {
+      if (!isDifferentiable) {
+        return false;
+      }
+      if (derivatives == null || derivatives.length != y.length) {
+        derivatives = new double[y.length];
+      }
+      // brings the rules and the propensities up to date with the state
+      de.computeDerivatives(t, y, derivatives);
+      for (int r = 0; r < rows.length; ++r) {
+        for (int k = 0; k < programs[r].length; ++k) {
+          double value = programs[r][k].evaluate(moduleIndices[r]);
+          if (positions[r][k] < 0) {
+            timeDerivative[rows[r]] += value;
+          } else {
+            jacobian[columns[r][k]][positions[r][k]] += value;
+          }
+        }
+      }
+      return true;
+    }
+  }
+
   public class DifferentialEquations
-  implements FirstOrderDifferentialEquations {
+  implements RosenbrockIntegrator.JacobianEquations {
 
     @Override
     public int getDimension() {
@@ -378,8 +662,13 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation {
       vectorWrapper.setRates(yDot);
       computeRates();
     }
-    
 
-    
+
+    @Override
+    public boolean computeJacobian(double t, double[] y, double[][] jacobian,
+      double[] timeDerivative) {
+      return symbolicJacobian != null
+          && symbolicJacobian.compute(t, y, jacobian, timeDerivative);
+    }
   }
 }
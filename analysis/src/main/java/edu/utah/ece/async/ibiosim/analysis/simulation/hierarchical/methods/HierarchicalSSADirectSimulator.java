@@ -14,7 +14,14 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
 
 import javax.swing.JFrame;
 import javax.swing.JProgressBar;
@@ -23,10 +30,14 @@ import javax.xml.stream.XMLStreamException;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalWriter;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.model.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.HierarchicalUtilities;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.PropensityTree;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.HierarchicalEventComparator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEventNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
@@ -46,6 +57,26 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
 
   private long			randomSeed;
 
+  /**
+   * Number of incremental propensity updates performed before all
+   * propensities are recomputed to discard accumulated round-off.
+   */
+  private static final int REFRESH_INTERVAL = 1000;
+
+  private boolean isIncremental;
+  private boolean needsFullUpdate;
+  private int stepsSinceRefresh;
+  private Map<ReactionNode, Integer> reactionToIndex;
+  private ReactionNode[] reactionList;
+  private HierarchicalModel[] reactionModelList;
+  private PropensityTree propensityTree;
+  private List<ReactionNode> volatileReactions;
+  private ArrayDeque<ReactionNode> affectedReactions;
+  private Set<ReactionNode> queuedReactions;
+  private VariableNode[] initialNodes;
+  private int[] initialIndices;
+  private double[] initialValues;
+
   public HierarchicalSSADirectSimulator(String SBMLFileName, String rootDirectory, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue, 
     String[] interestingSpecies, String quantityType,  double initialTime, double outputStartTime) throws IOException, XMLStreamException, BioSimException
   {
@@ -60,7 +91,24 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
     super(SBMLFileName, rootDirectory, outputDirectory, randomSeed, runs, timeLimit, maxTimeStep, minTimeStep, printInterval, stoichAmpValue, interestingSpecies, quantityType, initialTime, outputStartTime, SimType.HSSA);
     this.print = print;
     this.randomSeed = randomSeed;
+    this.isIncremental = true;
+    this.needsFullUpdate = true;
+  }
+
+  /**
+   * Enables or disables incremental propensity updates. When enabled, firing a
+   * reaction only recomputes the propensities of reactions that depend on the
+   * variables it changed. Otherwise, every propensity is recomputed on every step.
+   */
+  public void setIncrementalPropensities(boolean isIncremental)
+  {
+    this.isIncremental = isIncremental;
+    this.needsFullUpdate = true;
+  }
 
+  public boolean isIncrementalPropensities()
+  {
+    return isIncremental;
   }
 
 
@@ -74,12 +122,14 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
       setCurrentTime(getInitialTime());
       ModelSetup.setupModels(this, ModelType.HSSA);
       computeFixedPoint();
+      saveInitialState();
 
       for(HierarchicalModel model : this.getListOfHierarchicalModels())
       {
         totalPropensity.addChild(model.getPropensity().getVariable());
       }
       totalPropensity.computeFunction(0);
+      setupDependencies();
       if (hasEvents)
       {
         triggeredEventList =
@@ -114,8 +164,66 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
   @Override
   public void setupForNewRun(int newRun) throws IOException
   {
+    restoreInitialState();
     setCurrentTime(getInitialTime());
+    if (hasEvents)
+    {
+      for(HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+      {
+        for(EventNode event : modelstate.getEvents())
+        {
+          event.resetEventStates();
+        }
+      }
+      triggeredEventList =
+          new PriorityQueue<TriggeredEventNode>(1, new HierarchicalEventComparator());
+      computeEvents();
+    }
     setupForOutput(newRun);
+    needsFullUpdate = true;
+  }
+
+  /**
+   * Records the value of every variable after the initial assignments so that
+   * each new run starts from the same state as the first one.
+   */
+  private void saveInitialState()
+  {
+    List<VariableNode> nodes = new ArrayList<VariableNode>();
+    List<Integer> indices = new ArrayList<Integer>();
+    for(HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+    {
+      for(VariableNode node : modelstate.getVariableToNodeMap().values())
+      {
+        nodes.add(node);
+        indices.add(modelstate.getIndex());
+      }
+      for(VariableNode node : modelstate.getListOfVariables())
+      {
+        nodes.add(node);
+        indices.add(modelstate.getIndex());
+      }
+    }
+
+    initialNodes = nodes.toArray(new VariableNode[nodes.size()]);
+    initialIndices = new int[nodes.size()];
+    initialValues = new double[nodes.size()];
+    for (int i = 0; i < initialNodes.length; i++)
+    {
+      initialIndices[i] = indices.get(i);
+      initialValues[i] = initialNodes[i].getValue(initialIndices[i]);
+    }
+  }
+
+  private void restoreInitialState()
+  {
+    if (initialNodes != null)
+    {
+      for (int i = 0; i < initialNodes.length; i++)
+      {
+        initialNodes[i].setValue(initialIndices[i], initialValues[i]);
+      }
+    }
   }
 
   @Override
@@ -145,7 +253,14 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
 
       r1 = getRandomNumberGenerator().nextDouble();
       r2 = getRandomNumberGenerator().nextDouble();
-      computePropensities();
+      if (isIncremental && !needsFullUpdate)
+      {
+        updatePropensities();
+      }
+      else
+      {
+        computePropensities();
+      }
       totalPropensity = getTotalPropensity();
       delta_t = computeNextTimeStep(r1, totalPropensity);
       nextReactionTime = currentTime.getValue(0) + delta_t;
@@ -209,7 +324,12 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
   {
     if (reaction)
     {
-      selectAndPerformReaction(r2);
+      ReactionNode firedReaction = selectAndPerformReaction(r2);
+      if (firedReaction != null)
+      {
+        addAffectedReactions(firedReaction.getReactants());
+        addAffectedReactions(firedReaction.getProducts());
+      }
     }
 
     if (rateRule)
@@ -220,12 +340,41 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
     if (events)
     {
       computeEvents();
+      needsFullUpdate = true;
     }
     
     computeAssignmentRules();
     
   }
   
+  /**
+   * Tracks assignment rules that changed so the propensities that depend on
+   * them can be updated incrementally.
+   */
+  @Override
+  protected void computeAssignmentRules()
+  {
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      for(HierarchicalModel modelstate : this.modules)
+      {
+        if(modelstate.getAssignRules() != null)
+        {
+          for (FunctionNode node : modelstate.getAssignRules())
+          {
+            if (node.computeFunction(modelstate.getIndex()))
+            {
+              changed = true;
+              addAffectedReactions(node.getVariable());
+            }
+          }
+        }
+      }
+    }
+  }
+
   private void computePropensities()
   {
     for(HierarchicalModel modelstate : this.getListOfHierarchicalModels())
@@ -238,6 +387,148 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
     }
     
     this.totalPropensity.computeFunction(0);
+
+    if (propensityTree != null)
+    {
+      for (int i = 0; i < reactionList.length; i++)
+      {
+        propensityTree.setValueNoUpdate(i, reactionList[i].getValue(reactionModelList[i].getIndex()));
+      }
+      propensityTree.rebuild();
+    }
+
+    needsFullUpdate = false;
+    stepsSinceRefresh = 0;
+    if (affectedReactions != null)
+    {
+      affectedReactions.clear();
+      queuedReactions.clear();
+    }
+  }
+
+  /**
+   * Assigns every reaction a flattened index across all models and collects
+   * the reactions whose propensity must be recomputed on every step.
+   */
+  private void setupDependencies()
+  {
+    int count = 0;
+    for(HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+    {
+      count += modelstate.getReactions().size();
+    }
+
+    reactionToIndex = new HashMap<ReactionNode, Integer>();
+    reactionList = new ReactionNode[count];
+    reactionModelList = new HierarchicalModel[count];
+    propensityTree = new PropensityTree(count);
+    volatileReactions = new ArrayList<ReactionNode>();
+    affectedReactions = new ArrayDeque<ReactionNode>();
+    queuedReactions = new HashSet<ReactionNode>();
+
+    count = 0;
+    for(HierarchicalModel modelstate : this.getListOfHierarchicalModels())
+    {
+      for(ReactionNode node : modelstate.getReactions())
+      {
+        reactionToIndex.put(node, count);
+        reactionList[count] = node;
+        reactionModelList[count] = modelstate;
+        count++;
+        if (node.hasVolatileRate())
+        {
+          volatileReactions.add(node);
+        }
+      }
+    }
+
+    if (currentTime.getReactionDependents() != null)
+    {
+      for(ReactionNode node : currentTime.getReactionDependents())
+      {
+        if (!volatileReactions.contains(node))
+        {
+          volatileReactions.add(node);
+        }
+      }
+    }
+
+    needsFullUpdate = true;
+  }
+
+  private void addAffectedReactions(List<SpeciesReferenceNode> specRefs)
+  {
+    if (specRefs != null)
+    {
+      for (SpeciesReferenceNode specRef : specRefs)
+      {
+        addAffectedReactions(specRef.getSpecies());
+      }
+    }
+  }
+
+  private void addAffectedReactions(VariableNode variable)
+  {
+    if (affectedReactions == null || variable == null || variable.getReactionDependents() == null)
+    {
+      return;
+    }
+
+    for (ReactionNode node : variable.getReactionDependents())
+    {
+      if (queuedReactions.add(node))
+      {
+        affectedReactions.add(node);
+      }
+    }
+  }
+
+  /**
+   * Recomputes only the propensities of reactions affected since the last step
+   * and adjusts the propensity sum of the models they belong to as well as the
+   * selection tree.
+   */
+  private void updatePropensities()
+  {
+    if (++stepsSinceRefresh >= REFRESH_INTERVAL)
+    {
+      computePropensities();
+      return;
+    }
+
+    for (ReactionNode node : volatileReactions)
+    {
+      if (queuedReactions.add(node))
+      {
+        affectedReactions.add(node);
+      }
+    }
+
+    while (!affectedReactions.isEmpty())
+    {
+      ReactionNode node = affectedReactions.poll();
+      Integer reactionIndex = reactionToIndex.get(node);
+
+      if (reactionIndex == null)
+      {
+        continue;
+      }
+
+      HierarchicalModel modelstate = reactionModelList[reactionIndex];
+      int index = modelstate.getIndex();
+      double oldValue = node.getValue(index);
+
+      if (node.computePropensity(index))
+      {
+        VariableNode propensity = modelstate.getPropensity().getVariable();
+        propensity.setValue(index, propensity.getValue(index) + node.getValue(index) - oldValue);
+        propensityTree.setValue(reactionIndex, node.getValue(index));
+        addAffectedReactions(node);
+      }
+    }
+
+    queuedReactions.clear();
+    this.totalPropensity.getVariable().setValue(propensityTree.getTotal());
   }
 
   private double computeNextTimeStep(double r1, double totalPropensity)
@@ -251,24 +542,20 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation
 
   }
 
-  private void selectAndPerformReaction(double r2)
+  private ReactionNode selectAndPerformReaction(double r2)
   {
-    double sum = 0;
     double threshold = getTotalPropensity() * r2;
-    for(HierarchicalModel model : this.getListOfHierarchicalModels())
-    {
-      for(ReactionNode node : model.getReactions())
-      {
-        sum += node.getValue(model.getIndex());
+    int reactionIndex = propensityTree.select(threshold);
 
-        if(sum >= threshold)
-        {
-          node.fireReaction(model.getIndex(), sum - threshold);
-          return;
-        }
-      }
+    if (reactionIndex < 0)
+    {
+      return null;
     }
 
+    ReactionNode node = reactionList[reactionIndex];
+    double sum = propensityTree.getPrefixSum(reactionIndex);
+    node.fireReaction(reactionModelList[reactionIndex].getIndex(), sum - threshold);
+    return node;
   }
 
   @Override
@@ -32,6 +32,11 @@ public class VectorState extends HierarchicalState{
     this.vectorIndex = vectorState.incrementSize();
   }
 
+  public int getVectorIndex()
+  {
+    return vectorIndex;
+  }
+
   @Override
   public double getStateValue() {
     if(vectorState.isSet())
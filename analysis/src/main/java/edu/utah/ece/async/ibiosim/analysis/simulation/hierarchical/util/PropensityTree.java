@@ -0,0 +1,157 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+/**
+ * A partial-sum (Fenwick) tree over reaction propensities. Reactions are
+ * identified by a flattened index across all models. Updating a propensity,
+ * computing prefix sums and selecting the reaction that crosses a threshold
+ * are O(log n).
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class PropensityTree
+{
+
+  private final double[] values;
+  private final double[] tree;
+  private final int      size;
+  private final int      highestBit;
+  private double         total;
+
+  public PropensityTree(int size)
+  {
+    this.size = size;
+    this.values = new double[size];
+    this.tree = new double[size + 1];
+    this.highestBit = size == 0 ? 0 : Integer.highestOneBit(size);
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public double getValue(int index)
+  {
+    return values[index];
+  }
+
+  public double getTotal()
+  {
+    return total;
+  }
+
+  /**
+   * Sets the propensity of the reaction at the given index.
+   */
+  public void setValue(int index, double value)
+  {
+    double delta = value - values[index];
+    if (delta == 0)
+    {
+      return;
+    }
+    values[index] = value;
+    total += delta;
+    for (int i = index + 1; i <= size; i += i & -i)
+    {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Sets the propensity of the reaction at the given index without updating
+   * the partial sums. {@link #rebuild()} must be called afterwards.
+   */
+  public void setValueNoUpdate(int index, double value)
+  {
+    values[index] = value;
+  }
+
+  /**
+   * Recomputes every partial sum from the stored propensities in O(n). This
+   * also discards the round-off accumulated by incremental updates.
+   */
+  public void rebuild()
+  {
+    total = 0;
+    for (int i = 1; i <= size; i++)
+    {
+      tree[i] = values[i - 1];
+      total += values[i - 1];
+    }
+    for (int i = 1; i <= size; i++)
+    {
+      int parent = i + (i & -i);
+      if (parent <= size)
+      {
+        tree[parent] += tree[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the sum of the propensities from index 0 up to and including the
+   * given index.
+   */
+  public double getPrefixSum(int index)
+  {
+    double sum = 0;
+    for (int i = index + 1; i > 0; i -= i & -i)
+    {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the smallest index whose prefix sum is greater than the given
+   * threshold, or -1 if every propensity is zero.
+   */
+  public int select(double threshold)
+  {
+    int position = 0;
+    double remainder = threshold;
+
+    for (int step = highestBit; step > 0; step >>= 1)
+    {
+      int next = position + step;
+      if (next <= size && tree[next] <= remainder)
+      {
+        position = next;
+        remainder -= tree[next];
+      }
+    }
+
+    if (position < size)
+    {
+      return position;
+    }
+
+    // round-off pushed the threshold past the last partial sum
+    for (int i = size - 1; i >= 0; i--)
+    {
+      if (values[i] > 0)
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+}
@@ -37,6 +37,7 @@ import org.sbml.jsbml.SpeciesReference;
 import org.sbml.jsbml.Trigger;
 
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation.SimType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
@@ -485,7 +486,8 @@ public class CoreSetup
   {
     Model model = container.getModel();
     HierarchicalModel modelstate = container.getHierarchicalModel();
-    boolean split = modelstate.getModelType() == ModelType.HSSA;
+    // the hybrid simulator fires each direction of a slow reversible reaction on its own
+    boolean split = modelstate.getModelType() == ModelType.HSSA || sim.getSimType() == SimType.HYBRID;
     for (Reaction reaction : model.getListOfReactions())
     {
 
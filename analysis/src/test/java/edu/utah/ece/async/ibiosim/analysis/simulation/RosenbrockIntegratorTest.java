@@ -0,0 +1,347 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
+import org.junit.Test;
+
+/**
+ * Compares RosenbrockIntegrator against stiff linear systems with known
+ * exponential solutions, and the events it locates against the times at which
+ * the switching functions of those solutions change sign.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RosenbrockIntegratorTest
+{
+
+  /**
+   * y' = A y with the eigenvalues -1 and -1000, whose solution from (2, 0) is
+   * y1 = exp(-t) + exp(-1000 t) and y2 = exp(-t) - exp(-1000 t).
+   */
+  private static class StiffPair implements RosenbrockIntegrator.JacobianEquations
+  {
+
+    private static final double[][] A = { { -500.5, 499.5 }, { 499.5, -500.5 } };
+
+    private final boolean hasJacobian;
+    private int evaluations;
+
+    StiffPair(boolean hasJacobian)
+    {
+      this.hasJacobian = hasJacobian;
+    }
+
+    @Override
+    public int getDimension()
+    {
+      return 2;
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] y, double[] yDot)
+    {
+      ++evaluations;
+      yDot[0] = A[0][0] * y[0] + A[0][1] * y[1];
+      yDot[1] = A[1][0] * y[0] + A[1][1] * y[1];
+    }
+
+    @Override
+    public boolean computeJacobian(double t, double[] y, double[][] jacobian, double[] timeDerivative)
+    {
+      if (!hasJacobian)
+      {
+        return false;
+      }
+
+      for (int j = 0; j < 2; ++j)
+      {
+        for (int m = 0; m < 2; ++m)
+        {
+          jacobian[j][m] = A[m][j];
+        }
+      }
+
+      return true;
+    }
+
+    static double[] solution(double t)
+    {
+      return new double[] { Math.exp(-t) + Math.exp(-1000 * t), Math.exp(-t) - Math.exp(-1000 * t) };
+    }
+  }
+
+  /**
+   * The heat equation on n interior points with zero boundaries, y_i' = c
+   * (y_(i-1) - 2 y_i + y_(i+1)). The sine modes are its eigenvectors, so a sum
+   * of modes decays mode by mode.
+   */
+  private static class Heat implements FirstOrderDifferentialEquations
+  {
+
+    private final int n;
+    private final double c;
+
+    Heat(int n, double c)
+    {
+      this.n = n;
+      this.c = c;
+    }
+
+    @Override
+    public int getDimension()
+    {
+      return n;
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] y, double[] yDot)
+    {
+      for (int i = 0; i < n; ++i)
+      {
+        double left = i > 0 ? y[i - 1] : 0;
+        double right = i < n - 1 ? y[i + 1] : 0;
+        yDot[i] = c * (left - 2 * y[i] + right);
+      }
+    }
+
+    int[][] pattern()
+    {
+      int[][] columnRows = new int[n][];
+
+      for (int j = 0; j < n; ++j)
+      {
+        if (j == 0)
+        {
+          columnRows[j] = new int[] { 0, 1 };
+        }
+        else if (j == n - 1)
+        {
+          columnRows[j] = new int[] { n - 2, n - 1 };
+        }
+        else
+        {
+          columnRows[j] = new int[] { j - 1, j, j + 1 };
+        }
+      }
+
+      return columnRows;
+    }
+
+    double mode(int k, int i)
+    {
+      return Math.sin(Math.PI * k * (i + 1) / (n + 1));
+    }
+
+    double eigenvalue(int k)
+    {
+      double s = Math.sin(Math.PI * k / (2.0 * (n + 1)));
+      return -4 * c * s * s;
+    }
+
+    double[] solution(double t)
+    {
+      double[] y = new double[n];
+
+      for (int i = 0; i < n; ++i)
+      {
+        y[i] = mode(1, i) * Math.exp(eigenvalue(1) * t) + mode(n, i) * Math.exp(eigenvalue(n) * t);
+      }
+
+      return y;
+    }
+  }
+
+  /**
+   * Records the events of the switching function y[index] - level and
+   * performs the given action on each.
+   */
+  private static class LevelHandler implements EventHandler
+  {
+
+    private final int index;
+    private final double level;
+    private final Action action;
+    private final double resetValue;
+
+    final ArrayList<Double> times = new ArrayList<Double>();
+    final ArrayList<Boolean> directions = new ArrayList<Boolean>();
+
+    LevelHandler(int index, double level, Action action, double resetValue)
+    {
+      this.index = index;
+      this.level = level;
+      this.action = action;
+      this.resetValue = resetValue;
+    }
+
+    @Override
+    public void init(double t0, double[] y0, double t)
+    {
+    }
+
+    @Override
+    public double g(double t, double[] y)
+    {
+      return y[index] - level;
+    }
+
+    @Override
+    public Action eventOccurred(double t, double[] y, boolean increasing)
+    {
+      times.add(t);
+      directions.add(increasing);
+      return action;
+    }
+
+    @Override
+    public void resetState(double t, double[] y)
+    {
+      y[index] = resetValue;
+    }
+  }
+
+  private static void assertClose(double[] expected, double[] actual, double tolerance)
+  {
+    assertEquals(expected.length, actual.length);
+
+    for (int i = 0; i < expected.length; ++i)
+    {
+      assertEquals(expected[i], actual[i], tolerance);
+    }
+  }
+
+  private static void testStiffPair(boolean hasJacobian)
+  {
+    StiffPair equations = new StiffPair(hasJacobian);
+    RosenbrockIntegrator integrator = new RosenbrockIntegrator(1e-12, 1.0, 1e-9, 1e-7);
+    double[] y = { 2, 0 };
+
+    for (int t = 1; t <= 10; ++t)
+    {
+      assertEquals(t, integrator.integrate(equations, t - 1, y, t, y), 0);
+      assertClose(StiffPair.solution(t), y, 1e-5);
+    }
+
+    // an explicit method would need thousands of steps for the stability of
+    // the fast mode alone
+    assertTrue(equations.evaluations < 3000);
+  }
+
+  @Test
+  public void testStiffLinearSystem()
+  {
+    testStiffPair(false);
+  }
+
+  @Test
+  public void testGivenJacobian()
+  {
+    testStiffPair(true);
+  }
+
+  @Test
+  public void testSparseJacobian()
+  {
+    Heat heat = new Heat(30, 1000);
+    double[] y0 = heat.solution(0);
+
+    RosenbrockIntegrator sparse = new RosenbrockIntegrator(1e-12, 1.0, 1e-9, 1e-7);
+    sparse.setSparsity(heat.pattern());
+    RosenbrockIntegrator dense = new RosenbrockIntegrator(1e-12, 1.0, 1e-9, 1e-7);
+
+    double[] sparseY = y0.clone();
+    double[] denseY = y0.clone();
+
+    for (int step = 1; step <= 20; ++step)
+    {
+      double t = 0.01 * step;
+      sparse.integrate(heat, t - 0.01, sparseY, t, sparseY);
+      dense.integrate(heat, t - 0.01, denseY, t, denseY);
+      assertClose(heat.solution(t), sparseY, 1e-5);
+      assertClose(denseY, sparseY, 1e-5);
+    }
+  }
+
+  @Test
+  public void testStopEvent()
+  {
+    // y2 rises through 0.5 as the fast mode dies out and falls through it
+    // again at about t = ln 2
+    StiffPair equations = new StiffPair(false);
+    RosenbrockIntegrator integrator = new RosenbrockIntegrator(1e-12, 1.0, 1e-9, 1e-7);
+    LevelHandler handler = new LevelHandler(1, 0.5, EventHandler.Action.STOP, 0);
+    integrator.addEventHandler(handler, 0.1, 1e-12, 100);
+    double[] y = { 2, 0 };
+
+    double t = integrator.integrate(equations, 0, y, 10, y);
+    assertEquals(1, handler.times.size());
+    assertTrue(handler.directions.get(0));
+    assertEquals(t, handler.times.get(0), 0);
+    assertTrue(t < 0.01);
+    assertEquals(0.5, StiffPair.solution(t)[1], 1e-5);
+    assertClose(StiffPair.solution(t), y, 1e-5);
+
+    t = integrator.integrate(equations, t, y, 10, y);
+    assertEquals(2, handler.times.size());
+    assertFalse(handler.directions.get(1));
+    assertEquals(Math.log(2), t, 1e-5);
+    assertClose(StiffPair.solution(t), y, 1e-5);
+  }
+
+  @Test
+  public void testResetEvent()
+  {
+    // y1 decays like exp(-t) once the fast mode has died out, so resetting
+    // it to 1 whenever it falls to 0.5 gives an event every ln 2
+    final double[][] A = { { -1, 0 }, { 0, -1000 } };
+    FirstOrderDifferentialEquations equations = new FirstOrderDifferentialEquations()
+    {
+      @Override
+      public int getDimension()
+      {
+        return 2;
+      }
+
+      @Override
+      public void computeDerivatives(double t, double[] y, double[] yDot)
+      {
+        yDot[0] = A[0][0] * y[0];
+        yDot[1] = A[1][1] * y[1];
+      }
+    };
+    RosenbrockIntegrator integrator = new RosenbrockIntegrator(1e-12, 1.0, 1e-10, 1e-9);
+    LevelHandler handler = new LevelHandler(0, 0.5, EventHandler.Action.RESET_STATE, 1);
+    integrator.addEventHandler(handler, 0.1, 1e-12, 100);
+    double[] y = { 1, 1 };
+
+    assertEquals(3, integrator.integrate(equations, 0, y, 3, y), 0);
+    assertEquals(4, handler.times.size());
+
+    for (int k = 0; k < 4; ++k)
+    {
+      assertEquals((k + 1) * Math.log(2), handler.times.get(k), 1e-5);
+      assertFalse(handler.directions.get(k));
+    }
+
+    assertEquals(Math.exp(-(3 - 4 * Math.log(2))), y[0], 1e-5);
+    assertEquals(0, y[1], 1e-5);
+  }
+}
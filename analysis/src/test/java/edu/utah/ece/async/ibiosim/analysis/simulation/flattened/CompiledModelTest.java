@@ -0,0 +1,132 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the simulators that keep their state in a CompiledModel on the chain
+ * A -> B -> C and compares them against the closed form solution: the ODE
+ * simulators give the means exactly, and the means of the direct method and
+ * the composition-rejection method are within six standard errors of them.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompiledModelTest
+{
+
+	private static final int	RUNS	= 400;
+
+	private File				directory;
+
+	private FirstOrderChain		chain;
+
+	private String				filename;
+
+	@Before
+	public void setUp() throws Exception
+	{
+
+		directory = Files.createTempDirectory("compiled").toFile();
+		chain = new FirstOrderChain(100, 1.0, 0.5);
+		filename = chain.write(directory);
+	}
+
+	@After
+	public void tearDown()
+	{
+
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * asserts that the means of the species over the runs are within the
+	 * tolerance, given in standard errors of the mean, of the closed form means
+	 */
+	private void assertMeans(double[][][] results, double standardErrors, double tolerance)
+	{
+
+		double[] times = results[0][0];
+		assertEquals(9, times.length);
+
+		for (int step = 0; step < times.length; ++step)
+		{
+
+			assertEquals(0.5 * step, times[step], 1e-9);
+
+			for (int s = 0; s < FirstOrderChain.SPECIES.length; ++s)
+			{
+
+				double sum = 0;
+
+				for (double[][] run : results)
+				{
+					sum += run[s + 1][step];
+				}
+
+				double error = standardErrors * chain.deviation(s, times[step]) / Math.sqrt(results.length);
+				assertEquals(chain.mean(s, times[step]), sum / results.length, error + tolerance);
+			}
+		}
+	}
+
+	@Test
+	public void testDirect() throws Exception
+	{
+
+		String outputDirectory = directory.getPath();
+		SimulatorSSADirect simulator = new SimulatorSSADirect(filename, outputDirectory, RUNS, 4.0, Double.POSITIVE_INFINITY, 0.0, 0, 0.5, 1.0, new String[0], "amount");
+		assertMeans(FirstOrderChain.simulate(simulator, outputDirectory, RUNS), 6, 1e-9);
+	}
+
+	@Test
+	public void testCompositionRejection() throws Exception
+	{
+
+		String outputDirectory = directory.getPath();
+		SimulatorSSACR simulator = new SimulatorSSACR(filename, outputDirectory, RUNS, 4.0, Double.POSITIVE_INFINITY, 0.0, 0, 0.5, 1.0, new String[0], "amount");
+		assertMeans(FirstOrderChain.simulate(simulator, outputDirectory, RUNS), 6, 1e-9);
+	}
+
+	@Test
+	public void testODE() throws Exception
+	{
+
+		String outputDirectory = directory.getPath();
+		SimulatorODERK simulator = new SimulatorODERK(filename, outputDirectory, 1, 4.0, Double.POSITIVE_INFINITY, 0, 0.5, 1.0, new String[0], 8, 1e-9, 1e-9, "amount");
+		assertMeans(FirstOrderChain.simulate(simulator, outputDirectory, 1), 0, 1e-4);
+	}
+
+	@Test
+	public void testStiffODE() throws Exception
+	{
+
+		String outputDirectory = directory.getPath();
+		SimulatorODERK simulator = new SimulatorODERK(filename, outputDirectory, 1, 4.0, Double.POSITIVE_INFINITY, 0, 0.5, 1.0, new String[0], 8, 1e-9, 1e-9, "amount");
+		simulator.setStiff(true);
+		assertMeans(FirstOrderChain.simulate(simulator, outputDirectory, 1), 0, 1e-4);
+	}
+}
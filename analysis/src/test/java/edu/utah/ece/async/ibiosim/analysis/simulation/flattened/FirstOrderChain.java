@@ -0,0 +1,203 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.KineticLaw;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLWriter;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDParser;
+
+/**
+ * The chain of first order reactions A -> B -> C, whose species means are known
+ * in closed form. Each molecule is independently an A, a B or a C at time t, so
+ * a species is binomially distributed with the probability p(t) given by the
+ * solution of the rate equations.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class FirstOrderChain
+{
+
+	static final String[]	SPECIES	= { "A", "B", "C" };
+
+	final int				initialAmount;
+	final double			k1;
+	final double			k2;
+
+	FirstOrderChain(int initialAmount, double k1, double k2)
+	{
+
+		this.initialAmount = initialAmount;
+		this.k1 = k1;
+		this.k2 = k2;
+	}
+
+	/**
+	 * writes the chain as an SBML file in the directory
+	 *
+	 * @return the name of the file
+	 */
+	String write(File directory) throws Exception
+	{
+
+		SBMLDocument document = new SBMLDocument(3, 1);
+		Model model = document.createModel("chain");
+		Compartment compartment = model.createCompartment("cell");
+		compartment.setSize(1);
+		compartment.setConstant(true);
+
+		for (String speciesID : SPECIES)
+		{
+			Species species = model.createSpecies(speciesID, compartment);
+			species.setInitialAmount(speciesID.equals("A") ? initialAmount : 0);
+			species.setHasOnlySubstanceUnits(true);
+			species.setBoundaryCondition(false);
+			species.setConstant(false);
+		}
+
+		addReaction(model, "r1", "A", "B", "k1", k1);
+		addReaction(model, "r2", "B", "C", "k2", k2);
+
+		String filename = new File(directory, "chain.xml").getPath();
+		SBMLWriter.write(document, filename, ' ', (short) 2);
+
+		return filename;
+	}
+
+	private static void addReaction(Model model, String reactionID, String reactant, String product, String rateID, double rate)
+	{
+
+		Parameter parameter = model.createParameter(rateID);
+		parameter.setValue(rate);
+		parameter.setConstant(true);
+
+		Reaction reaction = model.createReaction(reactionID);
+		reaction.setReversible(false);
+		reaction.setFast(false);
+		SpeciesReference reactantReference = reaction.createReactant(model.getSpecies(reactant));
+		reactantReference.setStoichiometry(1);
+		reactantReference.setConstant(true);
+		SpeciesReference productReference = reaction.createProduct(model.getSpecies(product));
+		productReference.setStoichiometry(1);
+		productReference.setConstant(true);
+
+		KineticLaw kineticLaw = reaction.createKineticLaw();
+		kineticLaw.setMath(SBMLutilities.myParseFormula(rateID + "*" + reactant));
+	}
+
+	/**
+	 * performs the runs the simulator was created for, the way DynamicSimulation
+	 * does
+	 *
+	 * @return the printed times followed by the amounts of A, B and C for each
+	 *         run, indexed by run, column and print step
+	 */
+	static double[][][] simulate(Simulator simulator, String outputDirectory, int runs)
+	{
+
+		double[][][] results = new double[runs][][];
+
+		for (int run = 1; run <= runs; ++run)
+		{
+
+			simulator.simulate();
+
+			TSDParser parser = new TSDParser(outputDirectory + File.separator + "run-" + run + ".tsd", false);
+			ArrayList<String> species = parser.getSpecies();
+			ArrayList<ArrayList<Double>> data = parser.getData();
+
+			results[run - 1] = new double[SPECIES.length + 1][];
+			results[run - 1][0] = toArray(data.get(species.indexOf("time")));
+
+			for (int s = 0; s < SPECIES.length; ++s)
+			{
+				results[run - 1][s + 1] = toArray(data.get(species.indexOf(SPECIES[s])));
+			}
+
+			if (run < runs)
+			{
+				simulator.setupForNewRun(run + 1);
+			}
+		}
+
+		return results;
+	}
+
+	private static double[] toArray(ArrayList<Double> values)
+	{
+
+		double[] array = new double[values.size()];
+
+		for (int i = 0; i < array.length; ++i)
+		{
+			array[i] = values.get(i);
+		}
+
+		return array;
+	}
+
+	/**
+	 * @return the probability that a molecule is the species with the given
+	 *         index at the time
+	 */
+	double probability(int species, double time)
+	{
+
+		double a = Math.exp(-k1 * time);
+		double b = k1 / (k2 - k1) * (Math.exp(-k1 * time) - Math.exp(-k2 * time));
+
+		switch (species)
+		{
+		case 0:
+			return a;
+		case 1:
+			return b;
+		default:
+			return 1 - a - b;
+		}
+	}
+
+	/**
+	 * @return the mean of the species with the given index at the time
+	 */
+	double mean(int species, double time)
+	{
+
+		return initialAmount * probability(species, time);
+	}
+
+	/**
+	 * @return the standard deviation of the species with the given index at the
+	 *         time
+	 */
+	double deviation(int species, double time)
+	{
+
+		double p = probability(species, time);
+
+		return Math.sqrt(initialAmount * p * (1 - p));
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the means of Next Reaction Method runs of the chain A -> B -> C
+ * against the closed form solution. Firing the first reaction changes the
+ * propensity of the second one, so the firing times of the heap are rescaled,
+ * and the second reaction starts disabled, so it is drawn anew once enabled.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SimulatorSSANRMTest
+{
+
+	private static final int	RUNS	= 400;
+
+	private File				directory;
+
+	@Before
+	public void setUp() throws Exception
+	{
+
+		directory = Files.createTempDirectory("nrm").toFile();
+	}
+
+	@After
+	public void tearDown()
+	{
+
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testChainMeans() throws Exception
+	{
+
+		FirstOrderChain chain = new FirstOrderChain(100, 1.0, 0.5);
+		String filename = chain.write(directory);
+		String outputDirectory = directory.getPath();
+
+		SimulatorSSANRM simulator = new SimulatorSSANRM(filename, outputDirectory, RUNS, 4.0, Double.POSITIVE_INFINITY, 0.0, 0, 0.5, 1.0, new String[0], "amount");
+		double[][][] results = FirstOrderChain.simulate(simulator, outputDirectory, RUNS);
+
+		double[] times = results[0][0];
+		assertEquals(9, times.length);
+
+		for (int step = 0; step < times.length; ++step)
+		{
+
+			assertEquals(0.5 * step, times[step], 1e-9);
+
+			for (int s = 0; s < FirstOrderChain.SPECIES.length; ++s)
+			{
+
+				double sum = 0;
+
+				for (double[][] run : results)
+				{
+					sum += run[s + 1][step];
+				}
+
+				// six standard errors of the mean
+				double tolerance = 6 * chain.deviation(s, times[step]) / Math.sqrt(RUNS) + 1e-9;
+				assertEquals(chain.mean(s, times[step]), sum / RUNS, tolerance);
+			}
+		}
+	}
+
+	@Test
+	public void testConservation() throws Exception
+	{
+
+		FirstOrderChain chain = new FirstOrderChain(50, 2.0, 3.0);
+		String filename = chain.write(directory);
+		String outputDirectory = directory.getPath();
+
+		SimulatorSSANRM simulator = new SimulatorSSANRM(filename, outputDirectory, 20, 10.0, Double.POSITIVE_INFINITY, 0.0, 0, 1.0, 1.0, new String[0], "amount");
+
+		for (double[][] run : FirstOrderChain.simulate(simulator, outputDirectory, 20))
+		{
+
+			for (int step = 0; step < run[0].length; ++step)
+			{
+
+				assertTrue(run[1][step] >= 0 && run[2][step] >= 0 && run[3][step] >= 0);
+				assertEquals(50, run[1][step] + run[2][step] + run[3][step], 1e-9);
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares tau-leaping runs of the chain A -> B -> C against the closed form
+ * solution. With 10000 molecules the selected leaps cover hundreds of
+ * reactions. A leap of length tau shrinks the mean of A by the factor
+ * 1 - k1 tau instead of exp(-k1 tau), and the step selection keeps k1 tau
+ * below its error bound of 0.03, so the means may be off by up to 1.5 percent
+ * per unit of time on top of the sampling error.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SimulatorSSATauLeapTest
+{
+
+	private static final int	RUNS	= 20;
+
+	private File				directory;
+
+	@Before
+	public void setUp() throws Exception
+	{
+
+		directory = Files.createTempDirectory("tauleap").toFile();
+	}
+
+	@After
+	public void tearDown()
+	{
+
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testChainMeans() throws Exception
+	{
+
+		FirstOrderChain chain = new FirstOrderChain(10000, 1.0, 0.5);
+		String filename = chain.write(directory);
+		String outputDirectory = directory.getPath();
+
+		SimulatorSSATauLeap simulator = new SimulatorSSATauLeap(filename, outputDirectory, RUNS, 2.0, Double.POSITIVE_INFINITY, 0.0, 0, 0.5, 1.0, new String[0], "amount");
+		double[][][] results = FirstOrderChain.simulate(simulator, outputDirectory, RUNS);
+
+		double[] times = results[0][0];
+		assertEquals(5, times.length);
+
+		for (int step = 0; step < times.length; ++step)
+		{
+
+			assertEquals(0.5 * step, times[step], 1e-9);
+
+			for (int s = 0; s < FirstOrderChain.SPECIES.length; ++s)
+			{
+
+				double sum = 0;
+
+				for (double[][] run : results)
+				{
+					sum += run[s + 1][step];
+				}
+
+				double mean = chain.mean(s, times[step]);
+				double tolerance = 0.015 * times[step] * chain.initialAmount + 6 * chain.deviation(s, times[step]) / Math.sqrt(RUNS) + 1e-9;
+				assertEquals(mean, sum / RUNS, tolerance);
+			}
+		}
+	}
+
+	@Test
+	public void testConservation() throws Exception
+	{
+
+		// B is consumed quickly, so its reactions become critical as it runs out
+		FirstOrderChain chain = new FirstOrderChain(5000, 1.0, 5.0);
+		String filename = chain.write(directory);
+		String outputDirectory = directory.getPath();
+
+		SimulatorSSATauLeap simulator = new SimulatorSSATauLeap(filename, outputDirectory, RUNS, 12.0, Double.POSITIVE_INFINITY, 0.0, 0, 1.0, 1.0, new String[0], "amount");
+
+		for (double[][] run : FirstOrderChain.simulate(simulator, outputDirectory, RUNS))
+		{
+
+			assertEquals(13, run[0].length);
+
+			for (int step = 0; step < run[0].length; ++step)
+			{
+
+				assertTrue(run[1][step] >= 0 && run[2][step] >= 0 && run[3][step] >= 0);
+				assertEquals(5000, run[1][step] + run[2][step] + run[3][step], 1e-9);
+				assertEquals(Math.rint(run[1][step]), run[1][step], 0);
+				assertEquals(Math.rint(run[2][step]), run[2][step], 0);
+			}
+
+			// the expected number of molecules left outside C is 5000 * 1.25 * exp(-12)
+			assertTrue(run[1][12] + run[2][12] <= 5);
+		}
+	}
+}
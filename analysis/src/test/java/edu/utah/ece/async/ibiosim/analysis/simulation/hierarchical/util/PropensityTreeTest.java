@@ -0,0 +1,168 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the partial-sum tree against the linear scan over reaction
+ * propensities that the hierarchical SSA used before.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class PropensityTreeTest
+{
+
+  private static final double EPSILON = 1e-9;
+
+  /**
+   * The reaction selection of the linear scan: the first reaction whose
+   * running sum exceeds the threshold.
+   */
+  private static int linearSelect(double[] values, double threshold)
+  {
+    double sum = 0;
+    for (int i = 0; i < values.length; i++)
+    {
+      sum += values[i];
+      if (sum > threshold)
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static double linearSum(double[] values, int index)
+  {
+    double sum = 0;
+    for (int i = 0; i <= index; i++)
+    {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  @Test
+  public void testRandomUpdates()
+  {
+    Random random = new Random(7);
+    for (int size = 1; size <= 40; size++)
+    {
+      PropensityTree tree = new PropensityTree(size);
+      double[] values = new double[size];
+
+      for (int step = 0; step < 200; step++)
+      {
+        int index = random.nextInt(size);
+        // keep some reactions disabled
+        double value = random.nextInt(4) == 0 ? 0 : random.nextDouble() * 10;
+        values[index] = value;
+        tree.setValue(index, value);
+
+        assertEquals(value, tree.getValue(index), 0);
+        assertEquals(linearSum(values, size - 1), tree.getTotal(), EPSILON);
+        for (int i = 0; i < size; i++)
+        {
+          assertEquals(linearSum(values, i), tree.getPrefixSum(i), EPSILON);
+        }
+
+        double total = linearSum(values, size - 1);
+        if (total > 0)
+        {
+          for (int draw = 0; draw < 10; draw++)
+          {
+            double threshold = random.nextDouble() * total;
+            assertEquals(linearSelect(values, threshold), tree.select(threshold));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSelectSkipsDisabledReactions()
+  {
+    PropensityTree tree = new PropensityTree(5);
+    tree.setValue(1, 2);
+    tree.setValue(3, 3);
+
+    assertEquals(1, tree.select(0));
+    assertEquals(1, tree.select(1.999));
+    assertEquals(3, tree.select(2));
+    assertEquals(3, tree.select(4.999));
+  }
+
+  @Test
+  public void testSelectPastTotal()
+  {
+    PropensityTree tree = new PropensityTree(4);
+    tree.setValue(0, 1);
+    tree.setValue(2, 1);
+
+    // a threshold at or beyond the total falls back to the last enabled reaction
+    assertEquals(2, tree.select(2));
+    assertEquals(2, tree.select(2.5));
+  }
+
+  @Test
+  public void testAllDisabled()
+  {
+    PropensityTree tree = new PropensityTree(3);
+    assertEquals(-1, tree.select(0));
+
+    tree.setValue(1, 4);
+    tree.setValue(1, 0);
+    assertEquals(0, tree.getTotal(), 0);
+    assertEquals(-1, tree.select(0));
+
+    assertEquals(-1, new PropensityTree(0).select(0));
+  }
+
+  @Test
+  public void testRebuild()
+  {
+    Random random = new Random(11);
+    int size = 37;
+    PropensityTree incremental = new PropensityTree(size);
+    PropensityTree rebuilt = new PropensityTree(size);
+
+    for (int i = 0; i < size; i++)
+    {
+      double value = random.nextDouble();
+      incremental.setValue(i, value);
+      rebuilt.setValueNoUpdate(i, value);
+    }
+    rebuilt.rebuild();
+
+    assertEquals(incremental.getTotal(), rebuilt.getTotal(), EPSILON);
+    for (int i = 0; i < size; i++)
+    {
+      assertEquals(incremental.getPrefixSum(i), rebuilt.getPrefixSum(i), EPSILON);
+    }
+
+    // incremental updates keep working on top of a rebuilt tree
+    rebuilt.setValue(5, 3);
+    incremental.setValue(5, 3);
+    for (int i = 0; i < size; i++)
+    {
+      assertEquals(incremental.getPrefixSum(i), rebuilt.getPrefixSum(i), EPSILON);
+    }
+  }
+}
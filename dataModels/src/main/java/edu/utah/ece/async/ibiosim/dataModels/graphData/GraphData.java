@@ -69,6 +69,7 @@ import de.erichseifert.vectorgraphics2d.util.PageSize;
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
 import edu.utah.ece.async.ibiosim.dataModels.util.Message;
 import edu.utah.ece.async.ibiosim.dataModels.util.SEDMLutilities;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.BTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.CSVParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
@@ -122,6 +123,8 @@ public class GraphData extends CoreObservable {
 	public final static String CSV_DATA_TYPE = "csv.printer";
 
 	public final static String DAT_DATA_TYPE = "dat.printer";
+
+	public final static String BTSD_DATA_TYPE = "btsd.printer";
 	
 	public final static int JPG_FILE_TYPE = 0;
 	
@@ -697,61 +700,41 @@ public class GraphData extends CoreObservable {
 			return data;
 		}
 		if (label.contains("average") || label.contains("variance") || label.contains("deviation")) {
-			ArrayList<String> runs = new ArrayList<String>();
+			String runDir;
 			if (directory == null) {
-				String[] files = new File(outDir).list();
-				for (String f : files) {
-					if (f.contains(stem) && f.endsWith("." + printer_id.substring(0, printer_id.length() - 8))) {
-						runs.add(f);
-					}
-				}
+				runDir = outDir;
 			}
 			else {
-				String[] files = new File(outDir + File.separator + directory).list();
-				for (String f : files) {
-					if (f.contains(stem) && f.endsWith("." + printer_id.substring(0, printer_id.length() - 8))) {
-						runs.add(f);
-					}
-				}
-			}
-			boolean outputFile;
-			if (directory == null) {
-				outputFile = !(new File(outDir + File.separator + "running").exists());
-			}
-			else {
-				outputFile = !(new File(outDir + File.separator + directory + File.separator + "running").exists());
+				runDir = outDir + File.separator + directory;
 			}
+			int choice;
+			String statisticsFile;
 			if (label.contains("average")) {
-				if (directory == null) {
-					outputFile = outputFile && !(new File(outDir + File.separator + "mean.tsd").exists());
-				}
-				else {
-					outputFile = outputFile
-							&& !(new File(outDir + File.separator + directory + File.separator + "mean.tsd").exists());
-				}
-				return calculateAverageVarianceDeviation(runs, 0, directory, warn, outputFile);
+				choice = 0;
+				statisticsFile = runDir + File.separator + "mean.tsd";
 			}
 			else if (label.contains("variance")) {
-				if (directory == null) {
-					outputFile = outputFile && !(new File(outDir + File.separator + "variance.tsd").exists());
-				}
-				else {
-					outputFile = outputFile
-							&& !(new File(outDir + File.separator + directory + File.separator + "variance.tsd").exists());
-				}
-				return calculateAverageVarianceDeviation(runs, 1, directory, warn, outputFile);
+				choice = 1;
+				statisticsFile = runDir + File.separator + "variance.tsd";
 			}
 			else {
-				if (directory == null) {
-					outputFile = outputFile && !(new File(outDir + File.separator + "standard_deviation.tsd").exists());
-				}
-				else {
-					outputFile = outputFile
-							&& !(new File(outDir + File.separator + directory + File.separator + "standard_deviation.tsd")
-									.exists());
+				choice = 2;
+				statisticsFile = runDir + File.separator + "standard_deviation.tsd";
+			}
+			// the statistics of a finished simulation are written along with the
+			// runs, so they are read directly instead of parsing every run again
+			boolean running = new File(runDir + File.separator + "running").exists();
+			if (!running && new File(statisticsFile).exists()) {
+				return readData(statisticsFile, label, directory, warn);
+			}
+			ArrayList<String> runs = new ArrayList<String>();
+			String[] files = new File(runDir).list();
+			for (String f : files) {
+				if (f.contains(stem) && f.endsWith("." + printer_id.substring(0, printer_id.length() - 8))) {
+					runs.add(f);
 				}
-				return calculateAverageVarianceDeviation(runs, 2, directory, warn, outputFile);
 			}
+			return calculateAverageVarianceDeviation(runs, choice, directory, warn, !running);
 		}
 		
 		DTSDParser dtsdParser;
@@ -766,6 +749,11 @@ public class GraphData extends CoreObservable {
 			graphSpecies = dtsdParser.getSpecies();
 			data = dtsdParser.getData();
 		}
+		else if (file.endsWith(".btsd")) {
+			BTSDParser b = new BTSDParser(file);
+			graphSpecies = b.getSpecies();
+			data = b.getData();
+		}
 		else if(file.endsWith(".csv"))
 		{
 		  c = new CSVParser(file, warn);
@@ -1029,6 +1017,9 @@ public class GraphData extends CoreObservable {
 		{
       graphSpecies = (new DTSDParser(file)).getSpecies();
 		}
+		else if (file.endsWith(".btsd")) {
+			graphSpecies = new BTSDParser(file).getSpecies();
+		}
 		else if(file.endsWith(".csv"))
     {
       graphSpecies = new CSVParser(file, true).getSpecies();
@@ -276,9 +276,12 @@ public class GlobalConstants {
 	public static final String KISAO_GILLESPIE = "KISAO:0000241";
 	public static final String KISAO_GILLESPIE_DIRECT = "KISAO:0000029";
 	public static final String KISAO_SSA_CR = "KISAO:0000329";
+	public static final String KISAO_NEXT_REACTION = "KISAO:0000027";
+	public static final String KISAO_TAU_LEAPING = "KISAO:0000039";
 	public static final String KISAO_EULER = "KISAO:0000030";
 	public static final String KISAO_RUNGE_KUTTA_FEHLBERG = "KISAO:0000086";
 	public static final String KISAO_RUNGE_KUTTA_PRINCE_DORMAND = "KISAO:0000087";
+	public static final String KISAO_ROSENBROCK = "KISAO:0000033";
 	public static final String KISAO_LSODA = "KISAO:0000088";
 	public static final String KISAO_FBA = "KISAO:0000437";
 	public static final String KISAO_MINIMUM_STEP_SIZE = "KISAO:0000485";
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Reads the binary trajectory format (.btsd). A file starts with a header that
+ * holds the magic number, the format version, the number of columns, the number
+ * of rows per chunk and the ids of the columns, time first. The header is
+ * followed by chunks that hold the number of rows in the chunk and then, column
+ * after column, the values of those rows as big-endian doubles. Every chunk but
+ * the last one is full, and the last one stores its columns packed by its own
+ * number of rows, so the position of any row is computed directly. The file
+ * is memory-mapped and the values are only read when they are requested.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BTSDParser extends DataParser {
+
+	public static final int MAGIC = 0x42545344;
+
+	public static final int VERSION = 1;
+
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	private static final long MAX_SEGMENT_SIZE = 1 << 30;
+
+	private int columns;
+
+	private int chunkSize;
+
+	private int rows;
+
+	private int lastChunk;
+
+	private int lastChunkRows;
+
+	private long chunkBytes;
+
+	private int chunksPerSegment;
+
+	private MappedByteBuffer[] segments;
+
+	public BTSDParser(String filename) {
+		super(new ArrayList<String>(), null);
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+			try {
+				readHeader(file, filename);
+				map(file.getChannel(), file.getFilePointer());
+			}
+			finally {
+				file.close();
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(component, "Error Reading Data!" + "\nThere was an error reading the simulation output data.",
+					"Error Reading Data", JOptionPane.ERROR_MESSAGE);
+			rows = 0;
+			lastChunk = -1;
+			segments = new MappedByteBuffer[0];
+		}
+	}
+
+	/**
+	 * Returns the number of rows (time points) in the file.
+	 */
+	public int getNumberOfRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the value of the given column at the given row.
+	 */
+	public double getValue(int row, int column) {
+		int chunk = row / chunkSize;
+		int stride = chunk == lastChunk ? lastChunkRows : chunkSize;
+		ByteBuffer segment = segments[chunk / chunksPerSegment];
+		long offset = (chunk % chunksPerSegment) * chunkBytes + 4 + 8L * ((long) column * stride + row % chunkSize);
+		return segment.getDouble((int) offset);
+	}
+
+	/**
+	 * Copies every value of the given row into the given array.
+	 */
+	public void getRow(int row, double[] values) {
+		for (int i = 0; i < columns; i++) {
+			values[i] = getValue(row, i);
+		}
+	}
+
+	/**
+	 * Copies the values of the given column from row start (inclusive) to row end
+	 * (exclusive) into the given array.
+	 */
+	public void getColumn(int column, int start, int end, double[] values) {
+		for (int row = start; row < end; row++) {
+			values[row - start] = getValue(row, column);
+		}
+	}
+
+	/**
+	 * Returns the last row whose time is less than or equal to the given time, or
+	 * -1 if the time is before the first row.
+	 */
+	public int findRow(double time) {
+		int low = 0;
+		int high = rows - 1;
+		int result = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (getValue(mid, 0) <= time) {
+				result = mid;
+				low = mid + 1;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ArrayList<ArrayList<Double>> getData() {
+		if (data == null) {
+			data = new ArrayList<ArrayList<Double>>(columns);
+			for (int i = 0; i < columns; i++) {
+				ArrayList<Double> column = new ArrayList<Double>(rows);
+				for (int row = 0; row < rows; row++) {
+					column.add(getValue(row, i));
+				}
+				data.add(column);
+			}
+		}
+		return data;
+	}
+
+	private void readHeader(RandomAccessFile input, String filename) throws IOException {
+		if (input.readInt() != MAGIC) {
+			throw new IOException(filename + " is not a binary trajectory file.");
+		}
+		int version = input.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary trajectory version " + version + ".");
+		}
+		columns = input.readInt();
+		chunkSize = input.readInt();
+		for (int i = 0; i < columns; i++) {
+			species.add(input.readUTF());
+		}
+	}
+
+	private void map(FileChannel channel, long headerBytes) throws IOException {
+		chunkBytes = 4 + 8L * columns * chunkSize;
+		chunksPerSegment = (int) Math.max(1, MAX_SEGMENT_SIZE / chunkBytes);
+		long bodyBytes = channel.size() - headerBytes;
+		long chunks = (bodyBytes + chunkBytes - 1) / chunkBytes;
+		int numSegments = (int) ((chunks + chunksPerSegment - 1) / chunksPerSegment);
+
+		segments = new MappedByteBuffer[numSegments];
+		long segmentBytes = chunksPerSegment * chunkBytes;
+		for (int i = 0; i < numSegments; i++) {
+			long start = headerBytes + i * segmentBytes;
+			long length = Math.min(segmentBytes, channel.size() - start);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			segments[i].order(ByteOrder.BIG_ENDIAN);
+		}
+
+		rows = 0;
+		lastChunk = -1;
+		if (chunks > 0) {
+			lastChunk = (int) (chunks - 1);
+			ByteBuffer segment = segments[lastChunk / chunksPerSegment];
+			lastChunkRows = segment.getInt((int) ((lastChunk % chunksPerSegment) * chunkBytes));
+			rows = lastChunk * chunkSize + lastChunkRows;
+		}
+	}
+}
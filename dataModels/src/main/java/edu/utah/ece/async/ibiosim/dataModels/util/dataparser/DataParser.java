@@ -65,6 +65,7 @@ public class DataParser {
 	}
 
 	public void outputTSD(String filename) {
+		ArrayList<ArrayList<Double>> data = getData();
 		try {
 			BufferedWriter out = new BufferedWriter(new FileWriter(filename));
 			out.write("(");
@@ -105,6 +106,7 @@ public class DataParser {
 	}
 
 	public void outputCSV(String filename) {
+		ArrayList<ArrayList<Double>> data = getData();
 		try {
 			BufferedWriter out = new BufferedWriter(new FileWriter(filename));
 			if (species.size() > 0) {
@@ -131,6 +133,7 @@ public class DataParser {
 	}
 
 	public void outputDAT(String filename) {
+		ArrayList<ArrayList<Double>> data = getData();
 		try {
 			BufferedWriter out = new BufferedWriter(new FileWriter(filename));
 			out.write("#");
@@ -162,9 +165,10 @@ public class DataParser {
 	 * @return
 	 */
 	public int getNumSamples() {
-		if (this.data.size() == 0)
+		ArrayList<ArrayList<Double>> data = getData();
+		if (data.size() == 0)
 			return 0;
-		return this.data.get(0).size();
+		return data.get(0).size();
 	}
 
 	/**
@@ -174,6 +178,7 @@ public class DataParser {
 	 */
 	public HashMap<String, ArrayList<Double>> getHashMap() {
 		HashMap<String, ArrayList<Double>> out = new HashMap<String, ArrayList<Double>>();
+		ArrayList<ArrayList<Double>> data = getData();
 		for (int i = 0; i < data.size(); i++) {
 			out.put(species.get(i), data.get(i));
 		}
@@ -187,6 +192,7 @@ public class DataParser {
 	 */
 	public HashMap<String, Double> getHashMap(int frameIndex) {
 		HashMap<String, Double> out = new HashMap<String, Double>();
+		ArrayList<ArrayList<Double>> data = getData();
 		for (int i = 0; i < data.size(); i++) {
 			if (frameIndex < data.get(i).size()) {
 				out.put(species.get(i), data.get(i).get(frameIndex));
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates the mean and variance of every variable at every print point
+ * while the runs of a stochastic simulation are produced, using Welford's
+ * online algorithm. The first variable is the time, which is recorded but not
+ * averaged. Runs only need to be added once, so the statistics are available
+ * without parsing the run files again.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RunStatistics {
+
+	private final ArrayList<String> species;
+
+	private final int width;
+
+	private int size;
+
+	private double[] time;
+
+	private int[] count;
+
+	private double[][] mean;
+
+	private double[][] m2;
+
+	public RunStatistics(List<String> species) {
+		this.species = new ArrayList<String>(species);
+		this.width = species.size();
+		this.size = 0;
+		this.time = new double[16];
+		this.count = new int[16];
+		this.mean = new double[16][];
+		this.m2 = new double[16][];
+	}
+
+	public ArrayList<String> getSpecies() {
+		return species;
+	}
+
+	/**
+	 * Returns the number of print points seen so far.
+	 */
+	public int getNumberOfPoints() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of runs that reached the given print point.
+	 */
+	public int getCount(int point) {
+		return count[point];
+	}
+
+	/**
+	 * Adds the values printed by a run at the given print point. The first value
+	 * is the time.
+	 */
+	public void add(int point, double[] values) {
+		ensureCapacity(point + 1);
+		if (count[point] == 0) {
+			time[point] = values[0];
+		}
+		int n = ++count[point];
+		double[] pointMean = mean[point];
+		double[] pointM2 = m2[point];
+		for (int i = 1; i < width; i++) {
+			double delta = values[i] - pointMean[i];
+			pointMean[i] += delta / n;
+			pointM2[i] += delta * (values[i] - pointMean[i]);
+		}
+	}
+
+	/**
+	 * Combines the runs accumulated by another instance with the same variables
+	 * into this one.
+	 */
+	public void merge(RunStatistics other) {
+		ensureCapacity(other.size);
+		for (int point = 0; point < other.size; point++) {
+			int nb = other.count[point];
+			if (nb == 0) {
+				continue;
+			}
+			int na = count[point];
+			if (na == 0) {
+				time[point] = other.time[point];
+				System.arraycopy(other.mean[point], 0, mean[point], 0, width);
+				System.arraycopy(other.m2[point], 0, m2[point], 0, width);
+				count[point] = nb;
+				continue;
+			}
+			int n = na + nb;
+			for (int i = 1; i < width; i++) {
+				double delta = other.mean[point][i] - mean[point][i];
+				mean[point][i] += delta * nb / n;
+				m2[point][i] += other.m2[point][i] + delta * delta * ((double) na * nb / n);
+			}
+			count[point] = n;
+		}
+	}
+
+	public ArrayList<ArrayList<Double>> getMean() {
+		return getData(0);
+	}
+
+	/**
+	 * Returns the sample variance, which is zero for points reached by a single
+	 * run.
+	 */
+	public ArrayList<ArrayList<Double>> getVariance() {
+		return getData(1);
+	}
+
+	public ArrayList<ArrayList<Double>> getStandardDeviation() {
+		return getData(2);
+	}
+
+	/**
+	 * Writes mean.tsd, variance.tsd and standard_deviation.tsd to the given
+	 * directory.
+	 */
+	public void outputTSD(String directory) {
+		new DataParser(species, getMean()).outputTSD(directory + File.separator + "mean.tsd");
+		new DataParser(species, getVariance()).outputTSD(directory + File.separator + "variance.tsd");
+		new DataParser(species, getStandardDeviation()).outputTSD(directory + File.separator + "standard_deviation.tsd");
+	}
+
+	private ArrayList<ArrayList<Double>> getData(int choice) {
+		ArrayList<ArrayList<Double>> data = new ArrayList<ArrayList<Double>>();
+		for (int i = 0; i < width; i++) {
+			data.add(new ArrayList<Double>(size));
+		}
+		for (int point = 0; point < size; point++) {
+			if (count[point] == 0) {
+				continue;
+			}
+			data.get(0).add(time[point]);
+			for (int i = 1; i < width; i++) {
+				double value;
+				if (choice == 0) {
+					value = mean[point][i];
+				}
+				else {
+					value = count[point] > 1 ? m2[point][i] / (count[point] - 1) : 0;
+					if (choice == 2) {
+						value = Math.sqrt(value);
+					}
+				}
+				data.get(i).add(value);
+			}
+		}
+		return data;
+	}
+
+	private void ensureCapacity(int points) {
+		if (points > time.length) {
+			int capacity = Math.max(points, 2 * time.length);
+			time = Arrays.copyOf(time, capacity);
+			count = Arrays.copyOf(count, capacity);
+			mean = Arrays.copyOf(mean, capacity);
+			m2 = Arrays.copyOf(m2, capacity);
+		}
+		for (int point = size; point < points; point++) {
+			mean[point] = new double[width];
+			m2[point] = new double[width];
+		}
+		size = Math.max(size, points);
+	}
+}
@@ -13,13 +13,16 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
 
+import java.awt.GraphicsEnvironment;
 import java.io.*;
 import java.util.*;
 
 import javax.swing.*;
 
 /**
- * 
+ * Parses TSD files. The values are read into one primitive array per column
+ * and are only boxed when {@link #getData()} is called. Files can also be
+ * streamed one row at a time with a {@link RowReader}.
  *
  * @author 
  * @author Chris Myers
@@ -31,6 +34,9 @@ public class TSDParser extends DataParser {
 	private double minValue;
 	private double maxValue;
 
+	private double[][] columns;
+	private int rows;
+
 	public double getMinValue() {
 		return minValue;
 	}
@@ -40,164 +46,412 @@ public class TSDParser extends DataParser {
 	}
 
 	public TSDParser(String filename, boolean warn) {
-		super(new ArrayList<String>(), new ArrayList<ArrayList<Double>>());
+		super(new ArrayList<String>(), null);
 
 		// set the min and max such that they will be overwritten immediately
 		minValue = Double.POSITIVE_INFINITY;
 		maxValue = Double.NEGATIVE_INFINITY;
+		columns = new double[0][];
+		rows = 0;
 
+		RowReader reader = null;
 		try {
 			warning = warn;
-			boolean warning2 = warning;
-			boolean warning3 = warning;
-			FileInputStream fileInput = new FileInputStream(new File(filename));
-			ProgressMonitorInputStream prog = new ProgressMonitorInputStream(component, "Reading Reb2sac Output Data From "
-					+ new File(filename).getName(), fileInput);
-			InputStream input = new BufferedInputStream(prog);
-
-			boolean reading = true;
-			char cha = 0;
-			while (reading) {
-				String word = "";
-				boolean readWord = true;
-				boolean withinWord = false;
-				boolean moveToData = false;
-				while (readWord && !moveToData) {
-					int read = input.read();
-					if (read == -1) {
-						reading = false;
-						readWord = false;
-					}
-					cha = (char) read;
-					if (withinWord) {
-						if (cha == '\"') {
-							withinWord = false;
-							readWord = false;
-						}
-						else {
-							word += cha;
-						}
+			reader = new RowReader(filename);
+			species.addAll(reader.getSpecies());
+
+			int width = species.size();
+			int capacity = 1024;
+			columns = new double[width][capacity];
+			double[] row = new double[width];
+			while (reader.next(row)) {
+				if (rows == capacity) {
+					capacity *= 2;
+					for (int i = 0; i < width; i++) {
+						columns[i] = Arrays.copyOf(columns[i], capacity);
 					}
-					else {
-						if (Character.isWhitespace(cha) || cha == ',' || cha == '(') {
-						}
-						else if (cha == '\"') {
-							withinWord = true;
-						}
-						else if (cha == ')') {
-							moveToData = true;
-						}
-						else {
-							readWord = false;
-						}
+				}
+				columns[0][rows] = row[0];
+				for (int i = 1; i < width; i++) {
+					columns[i][rows] = row[i];
+					// add the value to the min and max if it isn't a time value
+					minValue = Math.min(minValue, row[i]);
+					maxValue = Math.max(maxValue, row[i]);
+				}
+				rows++;
+			}
+			for (int i = 0; i < width; i++) {
+				columns[i] = Arrays.copyOf(columns[i], rows);
+			}
+
+			if (reader.foundNaN() && !warning) {
+				showMessage("Found NAN in data." + "\nReplacing with 0s.", "NAN In Data", JOptionPane.WARNING_MESSAGE);
+				warning = true;
+			}
+			if (reader.foundInfinity() && !warn) {
+				showMessage("Found INF in data." + "\nReplacing with " + Double.MAX_VALUE + ".", "INF In Data", JOptionPane.WARNING_MESSAGE);
+			}
+			if (reader.foundNegativeInfinity() && !warn) {
+				showMessage("Found -INF in data." + "\nReplacing with " + (-1) * Double.MAX_VALUE + ".", "INF In Data",
+						JOptionPane.WARNING_MESSAGE);
+			}
+			if (Double.isInfinite(this.minValue) || Double.isInfinite(this.minValue)) {
+				this.minValue = Double.NaN;
+				this.maxValue = Double.NaN;
+			}
+		}
+		catch (RowSizeException e) {
+			showMessage(e.getMessage(), e.getTitle(), JOptionPane.ERROR_MESSAGE);
+			throw new ArrayIndexOutOfBoundsException();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			showMessage("Error Reading Data!" + "\nThere was an error reading the simulation output data.", "Error Reading Data",
+					JOptionPane.ERROR_MESSAGE);
+		}
+		finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rows (time points) that were read.
+	 */
+	public int getNumberOfRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the values of the given column. The returned array is not copied.
+	 */
+	public double[] getColumn(int index) {
+		return columns[index];
+	}
+
+	@Override
+	public ArrayList<ArrayList<Double>> getData() {
+		if (data == null) {
+			data = new ArrayList<ArrayList<Double>>(columns.length);
+			for (double[] column : columns) {
+				ArrayList<Double> list = new ArrayList<Double>(rows);
+				for (int i = 0; i < rows; i++) {
+					list.add(column[i]);
+				}
+				data.add(list);
+			}
+		}
+		return data;
+	}
+
+	private void showMessage(String message, String title, int type) {
+		if (!GraphicsEnvironment.isHeadless()) {
+			JOptionPane.showMessageDialog(component, message, title, type);
+		}
+		else {
+			System.err.println(title + ": " + message);
+		}
+	}
+
+	private static class RowSizeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String title;
+
+		RowSizeException(String message, String title) {
+			super(message);
+			this.title = title;
+		}
+
+		String getTitle() {
+			return title;
+		}
+	}
+
+	/**
+	 * Reads a TSD file one row at a time. The header is read when the reader is
+	 * created. Numbers are parsed directly from a reusable byte buffer, so
+	 * reading a row does not allocate unless a number cannot be converted
+	 * exactly by the fast path, in which case {@link Double#parseDouble} is used.
+	 */
+	public static class RowReader implements Closeable {
+
+		private static final int BUFFER_SIZE = 1 << 16;
+
+		private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+				1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+		private final InputStream input;
+
+		private final byte[] buffer;
+
+		private int position;
+
+		private int limit;
+
+		private byte[] token;
+
+		private final ArrayList<String> species;
+
+		private boolean foundNaN;
+
+		private boolean foundInfinity;
+
+		private boolean foundNegativeInfinity;
+
+		public RowReader(String filename) throws IOException {
+			input = new FileInputStream(new File(filename));
+			buffer = new byte[BUFFER_SIZE];
+			token = new byte[64];
+			species = new ArrayList<String>();
+			try {
+				readHeader();
+			}
+			catch (IOException e) {
+				input.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the ids of the columns, time first.
+		 */
+		public ArrayList<String> getSpecies() {
+			return species;
+		}
+
+		public boolean foundNaN() {
+			return foundNaN;
+		}
+
+		public boolean foundInfinity() {
+			return foundInfinity;
+		}
+
+		public boolean foundNegativeInfinity() {
+			return foundNegativeInfinity;
+		}
+
+		/**
+		 * Reads the next row into the given array, which must hold one value per
+		 * column. Returns false once every row has been read. A last row that is
+		 * cut short by the end of the file, as happens when a simulation is
+		 * stopped while writing, is dropped.
+		 */
+		public boolean next(double[] row) throws IOException {
+			int width = species.size();
+			int count = 0;
+			while (true) {
+				int cha = read();
+				if (cha == -1) {
+					return count > 0 && count == width;
+				}
+				if (cha == ')') {
+					if (count > 0) {
+						return endRow(count, width);
 					}
+					continue;
 				}
-				if (!word.equals("")) {
-					species.add(word);
+				if (isDelimiter(cha)) {
+					continue;
 				}
-				if (moveToData) {
-					for (int i = 0; i < species.size(); i++) {
-						data.add(new ArrayList<Double>());
+
+				int length = 0;
+				while (cha != -1 && !isDelimiter(cha)) {
+					if (length == token.length) {
+						token = Arrays.copyOf(token, 2 * length);
 					}
+					token[length++] = (byte) cha;
+					cha = read();
 				}
-				int counter = 0;
-				int dataPoints = 0;
-				while (moveToData) {
-					word = "";
-					readWord = true;
-					int read;
-					while (readWord) {
-						read = input.read();
-						cha = (char) read;
-						while (!Character.isWhitespace(cha) && cha != ',' && cha != ':' && cha != ';' && cha != '!' && cha != '?' && cha != '\"'
-								&& cha != '\'' && cha != '(' && cha != ')' && cha != '{' && cha != '}' && cha != '[' && cha != ']' && cha != '<'
-								&& cha != '>' && cha != '_' && cha != '*' && cha != '=' && read != -1) {
-							word += cha;
-							read = input.read();
-							cha = (char) read;
-						}
-						if (read == -1) {
-							reading = false;
-							moveToData = false;
+				if (count == width) {
+					throw new RowSizeException("Time point includes more data than number of species", "Extra Data");
+				}
+				row[count++] = parseToken(length);
+				if (cha == ')') {
+					return endRow(count, width);
+				}
+				if (cha == -1) {
+					return count > 0 && count == width;
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				input.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		private boolean endRow(int count, int width) throws RowSizeException {
+			if (count < width) {
+				throw new RowSizeException("Time point includes less data than number of species", "Missing Data");
+			}
+			return true;
+		}
+
+		private void readHeader() throws IOException {
+			StringBuilder word = new StringBuilder();
+			boolean withinWord = false;
+			while (true) {
+				int cha = read();
+				if (cha == -1) {
+					return;
+				}
+				if (withinWord) {
+					if (cha == '\"') {
+						withinWord = false;
+						if (word.length() > 0) {
+							species.add(word.toString());
+							word.setLength(0);
 						}
-						readWord = false;
 					}
-					int insert;
-					if (!word.equals("")) {
-						if (word.equals("nan")) {
-							if (!warning) {
-								JOptionPane.showMessageDialog(component, "Found NAN in data." + "\nReplacing with 0s.", "NAN In Data",
-										JOptionPane.WARNING_MESSAGE);
-								warning = true;
-							}
-							word = "0";
-						}
-						if (word.equals("inf")) {
-							if (!warning2) {
-								JOptionPane.showMessageDialog(component, "Found INF in data." + "\nReplacing with " + Double.MAX_VALUE + ".",
-										"INF In Data", JOptionPane.WARNING_MESSAGE);
-								warning2 = true;
-							}
-							word = "" + Double.MAX_VALUE;
-						}
-						if (word.equals("-inf")) {
-							if (!warning3) {
-								JOptionPane.showMessageDialog(component, "Found -INF in data." + "\nReplacing with " + (-1) * Double.MAX_VALUE + ".",
-										"INF In Data", JOptionPane.WARNING_MESSAGE);
-								warning3 = true;
-							}
-							word = "" + (-1) * Double.MAX_VALUE;
-						}
-						if (counter < species.size()) {
-							insert = counter;
-						}
-						else {
-							insert = counter % species.size();
-						}
-						word = word.replace("nan","NaN").replace("-NaN","NaN");
-						double dataPoint = Double.parseDouble(word);
-						(data.get(insert)).add(dataPoint);
-
-						// add the value to the min and max if it isn't a time
-						// value
-						if (dataPoints > 0) {
-							this.minValue = Math.min(this.minValue, dataPoint);
-							this.maxValue = Math.max(this.maxValue, dataPoint);
-						}
+					else {
+						word.append((char) cha);
+					}
+				}
+				else if (cha == '\"') {
+					withinWord = true;
+				}
+				else if (cha == ')') {
+					return;
+				}
+			}
+		}
 
-						counter++;
-						dataPoints++;
-						if (cha == ')') {
-							
-							if (dataPoints > species.size()) {
-								JOptionPane.showMessageDialog(component, "Time point includes more data than number of species", "Extra Data",
-										JOptionPane.ERROR_MESSAGE);
-								input.close();
-								throw new ArrayIndexOutOfBoundsException();
-							}
-							if (dataPoints < species.size()) {
-								JOptionPane.showMessageDialog(component, "Time point includes less data than number of species", "Missing Data",
-										JOptionPane.ERROR_MESSAGE);
-								input.close();
-								throw new ArrayIndexOutOfBoundsException();
-							}
-							dataPoints = 0;
-						}
+		private int read() throws IOException {
+			if (position == limit) {
+				limit = input.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		private static boolean isDelimiter(int cha) {
+			switch (cha) {
+			case ',':
+			case ':':
+			case ';':
+			case '!':
+			case '?':
+			case '\"':
+			case '\'':
+			case '(':
+			case ')':
+			case '{':
+			case '}':
+			case '[':
+			case ']':
+			case '<':
+			case '>':
+			case '_':
+			case '*':
+			case '=':
+				return true;
+			default:
+				return Character.isWhitespace(cha);
+			}
+		}
+
+		private boolean tokenEquals(int length, String word) {
+			if (length != word.length()) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (token[i] != word.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private double parseToken(int length) {
+			if (tokenEquals(length, "nan")) {
+				foundNaN = true;
+				return 0;
+			}
+			if (tokenEquals(length, "inf")) {
+				foundInfinity = true;
+				return Double.MAX_VALUE;
+			}
+			if (tokenEquals(length, "-inf")) {
+				foundNegativeInfinity = true;
+				return (-1) * Double.MAX_VALUE;
+			}
+
+			int i = 0;
+			boolean negative = false;
+			if (token[i] == '-' || token[i] == '+') {
+				negative = token[i] == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean hasDigits = false;
+			for (; i < length && token[i] >= '0' && token[i] <= '9'; i++) {
+				hasDigits = true;
+				if (mantissa != 0 || token[i] != '0') {
+					mantissa = 10 * mantissa + (token[i] - '0');
+					digits++;
+				}
+			}
+			if (i < length && token[i] == '.') {
+				for (i++; i < length && token[i] >= '0' && token[i] <= '9'; i++) {
+					hasDigits = true;
+					if (mantissa != 0 || token[i] != '0') {
+						mantissa = 10 * mantissa + (token[i] - '0');
+						digits++;
 					}
+					exponent--;
 				}
 			}
-			input.close();
-			prog.close();
-			fileInput.close();
-			if (Double.isInfinite(this.minValue) || Double.isInfinite(this.minValue)) {
-				this.minValue = Double.NaN;
-				this.maxValue = Double.NaN;
+			if (hasDigits && i < length && (token[i] == 'e' || token[i] == 'E')) {
+				i++;
+				boolean negativeExponent = false;
+				if (i < length && (token[i] == '-' || token[i] == '+')) {
+					negativeExponent = token[i] == '-';
+					i++;
+				}
+				int value = 0;
+				int start = i;
+				for (; i < length && token[i] >= '0' && token[i] <= '9' && value < 10000; i++) {
+					value = 10 * value + (token[i] - '0');
+				}
+				if (i == start) {
+					return parseSlow(length);
+				}
+				exponent += negativeExponent ? -value : value;
+			}
+
+			if (!hasDigits || i != length || digits > 18 || mantissa > (1L << 53)) {
+				return parseSlow(length);
+			}
+			double value = mantissa;
+			if (mantissa == 0) {
+				return negative ? -0.0 : 0.0;
 			}
+			if (exponent < -22 || exponent > 22) {
+				return parseSlow(length);
+			}
+			value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
 		}
-		catch (IOException e) {
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(component, "Error Reading Data!" + "\nThere was an error reading the simulation output data.",
-					"Error Reading Data", JOptionPane.ERROR_MESSAGE);
+
+		private double parseSlow(int length) {
+			String word = new String(token, 0, length);
+			word = word.replace("nan", "NaN").replace("-NaN", "NaN");
+			return Double.parseDouble(word);
 		}
 	}
 }
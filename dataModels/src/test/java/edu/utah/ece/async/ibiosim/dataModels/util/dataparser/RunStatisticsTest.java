@@ -0,0 +1,154 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the online statistics against the two-pass mean and sample variance
+ * over the same runs.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RunStatisticsTest {
+
+	private static final double EPSILON = 1e-8;
+
+	private static final List<String> SPECIES = Arrays.asList("time", "A", "B");
+
+	/**
+	 * Creates runs with the given number of print points each. The values are
+	 * offset so that the naive sum of squares would lose precision.
+	 */
+	private static double[][][] createRuns(Random random, int[] lengths) {
+		double[][][] runs = new double[lengths.length][][];
+		for (int run = 0; run < lengths.length; run++) {
+			runs[run] = new double[lengths[run]][];
+			for (int point = 0; point < lengths[run]; point++) {
+				runs[run][point] = new double[] { point * 0.5, 1e6 + random.nextInt(100), random.nextGaussian() };
+			}
+		}
+		return runs;
+	}
+
+	private static void addRuns(RunStatistics statistics, double[][][] runs, int from, int to) {
+		for (int run = from; run < to; run++) {
+			for (int point = 0; point < runs[run].length; point++) {
+				statistics.add(point, runs[run][point]);
+			}
+		}
+	}
+
+	private static void assertTwoPass(double[][][] runs, RunStatistics statistics) {
+		ArrayList<ArrayList<Double>> mean = statistics.getMean();
+		ArrayList<ArrayList<Double>> variance = statistics.getVariance();
+		ArrayList<ArrayList<Double>> deviation = statistics.getStandardDeviation();
+		int points = 0;
+		for (double[][] run : runs) {
+			points = Math.max(points, run.length);
+		}
+		assertEquals(points, statistics.getNumberOfPoints());
+		assertEquals(points, mean.get(0).size());
+
+		for (int point = 0; point < points; point++) {
+			int n = 0;
+			for (double[][] run : runs) {
+				if (point < run.length) {
+					n++;
+				}
+			}
+			assertEquals(n, statistics.getCount(point));
+			assertEquals(point * 0.5, mean.get(0).get(point), 0);
+			assertEquals(point * 0.5, variance.get(0).get(point), 0);
+
+			for (int i = 1; i < SPECIES.size(); i++) {
+				double sum = 0;
+				for (double[][] run : runs) {
+					if (point < run.length) {
+						sum += run[point][i];
+					}
+				}
+				double expectedMean = sum / n;
+				double squares = 0;
+				for (double[][] run : runs) {
+					if (point < run.length) {
+						squares += (run[point][i] - expectedMean) * (run[point][i] - expectedMean);
+					}
+				}
+				double expectedVariance = n > 1 ? squares / (n - 1) : 0;
+
+				assertEquals(expectedMean, mean.get(i).get(point), EPSILON * Math.abs(expectedMean));
+				assertEquals(expectedVariance, variance.get(i).get(point), EPSILON * Math.max(1, expectedVariance));
+				assertEquals(Math.sqrt(expectedVariance), deviation.get(i).get(point), EPSILON * Math.max(1, expectedVariance));
+			}
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		double[][][] runs = createRuns(new Random(3), new int[] { 20, 20, 20, 20, 20, 20, 20 });
+		RunStatistics statistics = new RunStatistics(SPECIES);
+		addRuns(statistics, runs, 0, runs.length);
+		assertTwoPass(runs, statistics);
+	}
+
+	@Test
+	public void testRunsOfDifferentLengths() {
+		// runs that stop early only count towards the points they reached
+		double[][][] runs = createRuns(new Random(5), new int[] { 40, 12, 40, 3, 25 });
+		RunStatistics statistics = new RunStatistics(SPECIES);
+		addRuns(statistics, runs, 0, runs.length);
+		assertTwoPass(runs, statistics);
+	}
+
+	@Test
+	public void testMerge() {
+		double[][][] runs = createRuns(new Random(9), new int[] { 30, 30, 10, 30, 30, 45, 30, 30, 1 });
+		RunStatistics merged = new RunStatistics(SPECIES);
+		int[] bounds = { 0, 1, 4, 4, 7, runs.length };
+		for (int part = 0; part + 1 < bounds.length; part++) {
+			RunStatistics worker = new RunStatistics(SPECIES);
+			addRuns(worker, runs, bounds[part], bounds[part + 1]);
+			merged.merge(worker);
+		}
+		assertTwoPass(runs, merged);
+	}
+
+	@Test
+	public void testMergeIntoEmpty() {
+		double[][][] runs = createRuns(new Random(13), new int[] { 8, 8, 8 });
+		RunStatistics worker = new RunStatistics(SPECIES);
+		addRuns(worker, runs, 0, runs.length);
+		RunStatistics merged = new RunStatistics(SPECIES);
+		merged.merge(worker);
+		assertTwoPass(runs, merged);
+	}
+
+	@Test
+	public void testSingleRun() {
+		RunStatistics statistics = new RunStatistics(SPECIES);
+		statistics.add(0, new double[] { 0, 4, 2 });
+		assertEquals(4, statistics.getMean().get(1).get(0), 0);
+		assertEquals(0, statistics.getVariance().get(1).get(0), 0);
+		assertEquals(0, statistics.getStandardDeviation().get(2).get(0), 0);
+	}
+}
@@ -105,8 +105,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
   private JTextField fileStem;
   private JLabel fileStemLabel;
 
-  private JTextField      initialTimeField, outputStartTimeField, limit, minStep, step, relErr, absErr, seed, runs;
-  private JLabel          initialTimeLabel, outputStartTimeLabel, limitLabel, minStepLabel, stepLabel, relErrorLabel, errorLabel, seedLabel, runsLabel;
+  private JTextField      initialTimeField, outputStartTimeField, limit, minStep, step, relErr, absErr, seed, runs, threads;
+  private JLabel          initialTimeLabel, outputStartTimeLabel, limitLabel, minStepLabel, stepLabel, relErrorLabel, errorLabel, seedLabel, runsLabel, threadsLabel;
 
   private JTextField interval;
   private JComboBox<String>     intervalLabel;
@@ -572,6 +572,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seed = new JTextField(biosimrc.get("biosim.sim.seed", ""), 15);
     runsLabel = new JLabel("Runs:");
     runs = new JTextField(biosimrc.get("biosim.sim.runs", ""), 15);
+    threadsLabel = new JLabel("Threads:");
+    threads = new JTextField(biosimrc.get("biosim.sim.threads", "1"), 15);
     JPanel inputHolder = new JPanel(new BorderLayout());
     JPanel inputHolderLeft;
     JPanel inputHolderRight;
@@ -623,8 +625,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     JPanel simOptionsHolder = new JPanel(new BorderLayout());
     JPanel simOptionsHolderLeft;
     JPanel simOptionsHolderRight;
-    simOptionsHolderLeft = new JPanel(new GridLayout(5, 2));
-    simOptionsHolderRight = new JPanel(new GridLayout(5, 2));
+    simOptionsHolderLeft = new JPanel(new GridLayout(6, 2));
+    simOptionsHolderRight = new JPanel(new GridLayout(6, 2));
     simOptionsHolderLeft.add(initialTimeLabel);
     simOptionsHolderLeft.add(initialTimeField);
     simOptionsHolderRight.add(outputStartTimeLabel);
@@ -645,6 +647,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     simOptionsHolderLeft.add(seed);
     simOptionsHolderRight.add(runsLabel);
     simOptionsHolderRight.add(runs);
+    simOptionsHolderLeft.add(threadsLabel);
+    simOptionsHolderLeft.add(threads);
     simOptionsHolder.add(simOptionsHolderLeft, "West");
     simOptionsHolder.add(simOptionsHolderRight, "Center");
     simulationOptions.add(simOptionsHolder);
@@ -862,7 +866,7 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     	String[] searchForRunFiles = new File(outDir).list();
     	for (String s : searchForRunFiles)
     	{
-    		if (s.length() > 3 && new File(outDir + File.separator + s).isFile() && (s.equals("mean.tsd") || s.equals("standard_deviation.tsd") || s.equals("variance.tsd")))
+    		if (s.length() > 3 && new File(outDir + File.separator + s).isFile() && (s.contains("mean.") || s.contains("standard_deviation.") || s.contains("variance.")))
     		{
     			new File(outDir + File.separator + s).delete();
     		}
@@ -925,14 +929,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     
     if (monteCarlo.isSelected() || ODE.isSelected())
     {
-      File[] files = new File(outDir).listFiles();
-      for (File f : files)
-      {
-        if (f.getName().contains("mean.") || f.getName().contains("standard_deviation.") || f.getName().contains("variance."))
-        {
-          f.delete();
-        }
-      }
+      // the statistics written by the simulator are kept so that the graph
+      // reads them instead of parsing every run again
       updateTSDGraph(refresh);
     }
     
@@ -1208,6 +1206,22 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
       return false;
     }
 
+    try
+    {
+      int numThreads = Integer.parseInt(threads.getText().trim());
+      if (numThreads < 1)
+      {
+        JOptionPane.showMessageDialog(Gui.frame, "Must Enter a Positive Integer into the Threads Field.", "Error", JOptionPane.ERROR_MESSAGE);
+        return false;
+      }
+      properties.getSimulationProperties().setThreads(numThreads);
+    }
+    catch (Exception e1)
+    {
+      JOptionPane.showMessageDialog(Gui.frame, "Must Enter a Positive Integer into the Threads Field.", "Error", JOptionPane.ERROR_MESSAGE);
+      return false;
+    }
+
     if (genRuns.isSelected())
     {
       properties.getSimulationProperties().setPrinter_id("null.printer");
@@ -1990,6 +2004,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
 
     runs.setText(String.valueOf(properties.getSimulationProperties().getRun()));
 
+    threads.setText(String.valueOf(properties.getSimulationProperties().getThreads()));
+
     if (properties.isOde())
     {
       ODE.setSelected(true);
@@ -2397,6 +2413,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seedLabel.setEnabled(false);
     runs.setEnabled(false);
     runsLabel.setEnabled(false);
+    threads.setEnabled(false);
+    threadsLabel.setEnabled(false);
     fileStem.setEnabled(false);
     fileStemLabel.setEnabled(false);
     minStepLabel.setEnabled(false);
@@ -2599,6 +2617,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seedLabel.setEnabled(false);
     runs.setEnabled(false);
     runsLabel.setEnabled(false);
+    threads.setEnabled(false);
+    threadsLabel.setEnabled(false);
     fileStem.setEnabled(false);
     fileStemLabel.setEnabled(false);
     minStepLabel.setEnabled(false);
@@ -2646,6 +2666,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seedLabel.setEnabled(false);
     runs.setEnabled(false);
     runsLabel.setEnabled(false);
+    threads.setEnabled(false);
+    threadsLabel.setEnabled(false);
     fileStem.setEnabled(true);
     fileStemLabel.setEnabled(true);
     minStepLabel.setEnabled(false);
@@ -2705,6 +2727,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seedLabel.setEnabled(true);
     runs.setEnabled(true);
     runsLabel.setEnabled(true);
+    threads.setEnabled(true);
+    threadsLabel.setEnabled(true);
     fileStem.setEnabled(true);
     fileStemLabel.setEnabled(true);
     minStepLabel.setEnabled(true);
@@ -2732,6 +2756,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     simulators.removeAllItems();
     simulators.addItem("SSA-Direct (Dynamic)");
     simulators.addItem("SSA-CR (Dynamic)");
+    simulators.addItem("SSA-NRM (Dynamic)");
+    simulators.addItem("SSA-Tau-Leap (Dynamic)");
     simulators.addItem("SSA-Direct (Hierarchical)");
     simulators.addItem("SSA-Direct (Flatten)");
     simulators.addItem("Hybrid-Hierarchical");
@@ -2781,6 +2807,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     seedLabel.setEnabled(true);
     runs.setEnabled(true);
     runsLabel.setEnabled(true);
+    threads.setEnabled(true);
+    threadsLabel.setEnabled(true);
     fileStem.setEnabled(true);
     fileStemLabel.setEnabled(true);
     minStepLabel.setEnabled(true);
@@ -2809,6 +2837,8 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     simulators.addItem("Runge-Kutta-Fehlberg (Dynamic)");
     simulators.addItem("Runge-Kutta-Fehlberg (Flatten)");
     simulators.addItem("Runge-Kutta-Fehlberg (Hierarchical)");
+    simulators.addItem("Rosenbrock (Dynamic)");
+    simulators.addItem("Rosenbrock (Hierarchical)");
     simulators.setSelectedItem("Runge-Kutta-Fehlberg (Dynamic)");
     if (Executables.reb2sacFound)
     {
@@ -3523,6 +3553,16 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("SSA-Direct Method (Java)");
         enableSSASimulator();
       }
+      else if (((String) simulators.getSelectedItem()).equals("SSA-NRM (Dynamic)"))
+      {
+        description.setText("SSA Next Reaction Method (Java)");
+        enableSSASimulator();
+      }
+      else if (((String) simulators.getSelectedItem()).equals("SSA-Tau-Leap (Dynamic)"))
+      {
+        description.setText("Adaptive Explicit Tau-Leaping (Java)");
+        enableSSASimulator();
+      }
       else if (((String) simulators.getSelectedItem()).equals("Runge-Kutta-Fehlberg (Dynamic)"))
       {
         description.setText("Runge-Kutta-Fehlberg Method (java)");
@@ -3533,6 +3573,16 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("Runge-Kutta-Fehlberg Method on Hierarchical Models (java)");
         enableODESimulator();
       }
+      else if (((String) simulators.getSelectedItem()).equals("Rosenbrock (Dynamic)"))
+      {
+        description.setText("Rosenbrock Method for Stiff Models (java)");
+        enableODESimulator();
+      }
+      else if (((String) simulators.getSelectedItem()).equals("Rosenbrock (Hierarchical)"))
+      {
+        description.setText("Rosenbrock Method for Stiff Hierarchical Models (java)");
+        enableODESimulator();
+      }
       else if (((String) simulators.getSelectedItem()).equals("Mixed-Hierarchical"))
       {
         description.setText("FBA+SSA+ODE Simulator");
@@ -3543,10 +3593,10 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("Runge-Kutta-Fehlberg Method on Flattened Models (java)");
         enableODESimulator();
       }
-      else if (((String) simulators.getSelectedItem()).equals("Hierarchical-Hybrid"))
+      else if (((String) simulators.getSelectedItem()).equals("Hybrid-Hierarchical"))
       {
         description.setText("Hybrid SSA/ODE on Hierarchical Models (java)");
-        enableSSASimulator();
+        enableODESimulator();
       }
       else if (((String) simulators.getSelectedItem()).contains("gillespie"))
       {
@@ -106,6 +106,42 @@ public class VerificationCommandLine {
 					Options.setMarkovianModelFlag();
 					System.out.println("Probabilistic LPNs.");
 				}
+				// Steady-state solver for probabilistic LPNs: power, gauss-seidel, sor or bicgstab.
+				else if (args[i].contains("-ssSolver=")) {
+					Options.setSteadyStateSolver(args[i].trim().substring(10));
+				}
+				else if (args[i].contains("-sorOmega=")) {
+					Options.setSORRelaxation(Double.parseDouble(args[i].trim().substring(10)));
+				}
+				// Multi-threaded reachability analysis, optionally with the number of threads.
+				else if (args[i].equals("-parallel")) {
+					Options.setParallelFlag();
+				}
+				else if (args[i].contains("-threads=")) {
+					Options.setParallelFlag();
+					Options.setThreadCount(Integer.parseInt(args[i].trim().substring(9)));
+				}
+				// Format of the reached state set: explicit, bdd, mdd, disk, bitstate or hashcompact, the number of bits
+				// of integers in BDDs, the directory and number of states kept in memory of the disk format, and the log2
+				// of the number of bits and the number of hash functions of bitstate hashing.
+				else if (args[i].contains("-stateFormat=")) {
+					Options.setStateFormat(args[i].trim().substring(13));
+				}
+				else if (args[i].contains("-bddIntBits=")) {
+					Options.setBddIntBits(Integer.parseInt(args[i].trim().substring(12)));
+				}
+				else if (args[i].contains("-diskStateDir=")) {
+					Options.setDiskStateDir(args[i].trim().substring(14));
+				}
+				else if (args[i].contains("-diskBufferSize=")) {
+					Options.setDiskBufferSize(Integer.parseInt(args[i].trim().substring(16)));
+				}
+				else if (args[i].contains("-bitstateBits=")) {
+					Options.setBitstateBits(Integer.parseInt(args[i].trim().substring(14)));
+				}
+				else if (args[i].contains("-bitstateHashes=")) {
+					Options.setBitstateHashes(Integer.parseInt(args[i].trim().substring(16)));
+				}
 				break;
 			default: // input LPN file(s)
 				if (!args[i].endsWith(".lpn")) {
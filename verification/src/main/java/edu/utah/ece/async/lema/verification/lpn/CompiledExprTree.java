@@ -0,0 +1,353 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.lpn;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import edu.utah.ece.async.lema.verification.platu.platuLpn.DualHashMap;
+
+/**
+ * An expression tree whose variables have been resolved to their positions in
+ * the variable vector of an LPN, so it can be evaluated directly against an
+ * int[] state vector. The result is the same as the one of
+ * {@link ExprTree#evaluateExpr(HashMap)} on the map built by
+ * {@link LPN#getAllVarsWithValuesAsString(int[])}, but no string is built or
+ * parsed. Trees using the rate of a continuous variable are kept as they are
+ * and evaluated on that map instead.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompiledExprTree {
+
+	private static final int NAN = 0;
+	private static final int CONSTANT = 1;
+	private static final int RANGE = 2;
+	private static final int BOOL_VAR = 3;
+	private static final int INT_VAR = 4;
+	private static final int INTERPRETED = 5;
+
+	private static final int BIT_AND = 10;
+	private static final int BIT_OR = 11;
+	private static final int BIT_NOT = 12;
+	private static final int BIT_XOR = 13;
+
+	private static final int NOT = 20;
+	private static final int AND = 21;
+	private static final int OR = 22;
+	private static final int EQ = 23;
+	private static final int IMPLIES = 24;
+	private static final int PLUS = 25;
+	private static final int MINUS = 26;
+	private static final int TIMES = 27;
+	private static final int DIV = 28;
+	private static final int MOD = 29;
+	private static final int POW = 30;
+	private static final int BIT = 31;
+	private static final int FLOOR = 32;
+	private static final int CEIL = 33;
+	private static final int MIN = 34;
+	private static final int MAX = 35;
+	private static final int IDIV = 36;
+	private static final int INT = 37;
+	private static final int LT = 38;
+	private static final int GT = 39;
+	private static final int LE = 40;
+	private static final int GE = 41;
+	private static final int UNKNOWN_OP = 42;
+
+	private static final Random random = new Random();
+
+	private final int kind;
+
+	private final int index;
+
+	private final double lvalue, uvalue;
+
+	private final CompiledExprTree r1, r2;
+
+	private final ExprTree tree;
+
+	private final DualHashMap<String, Integer> varIndexMap;
+
+	private CompiledExprTree(int kind, int index, double lvalue, double uvalue, CompiledExprTree r1,
+			CompiledExprTree r2, ExprTree tree, DualHashMap<String, Integer> varIndexMap) {
+		this.kind = kind;
+		this.index = index;
+		this.lvalue = lvalue;
+		this.uvalue = uvalue;
+		this.r1 = r1;
+		this.r2 = r2;
+		this.tree = tree;
+		this.varIndexMap = varIndexMap;
+	}
+
+	private CompiledExprTree(int kind, double value) {
+		this(kind, -1, value, value, null, null, null, null);
+	}
+
+	private CompiledExprTree(int kind, CompiledExprTree r1, CompiledExprTree r2) {
+		this(kind, -1, 0, 0, r1, r2, null, null);
+	}
+
+	/**
+	 * Compiles the given expression tree against the variable index map of its
+	 * LPN. Returns null if the tree is null.
+	 */
+	public static CompiledExprTree compile(ExprTree tree, DualHashMap<String, Integer> varIndexMap) {
+		if (tree == null)
+			return null;
+		if (usesRate(tree))
+			return new CompiledExprTree(INTERPRETED, -1, 0, 0, null, null, tree, varIndexMap);
+		return compileNode(tree, varIndexMap);
+	}
+
+	private static boolean usesRate(ExprTree tree) {
+		if (tree == null)
+			return false;
+		if ("rate".equals(tree.op))
+			return true;
+		return usesRate(tree.r1) || usesRate(tree.r2);
+	}
+
+	private static CompiledExprTree compileNode(ExprTree tree, DualHashMap<String, Integer> varIndexMap) {
+		switch (tree.isit) {
+		case 'b':
+		case 'i':
+			Integer varIndex = varIndexMap.get(tree.variable);
+			if (varIndex == null)
+				return new CompiledExprTree(NAN, Double.NaN);
+			return new CompiledExprTree(tree.isit == 'b' ? BOOL_VAR : INT_VAR, varIndex, 0, 0, null, null,
+					null, null);
+		case 'n':
+			if (tree.uvalue == tree.lvalue)
+				return new CompiledExprTree(CONSTANT, tree.uvalue);
+			return new CompiledExprTree(RANGE, -1, tree.lvalue, tree.uvalue, null, null, null, null);
+		case 't':
+			if (tree.uvalue == 1 && tree.lvalue == 1)
+				return new CompiledExprTree(CONSTANT, 1.0);
+			else if (tree.uvalue == 0 && tree.lvalue == 0)
+				return new CompiledExprTree(CONSTANT, 0.0);
+			return new CompiledExprTree(NAN, Double.NaN);
+		case 'w':
+			int bitOp = bitwiseOp(tree.op);
+			return new CompiledExprTree(bitOp, compileChild(tree.r1, varIndexMap),
+					compileChild(tree.r2, varIndexMap));
+		case 'a':
+		case 'r':
+		case 'l':
+			if (tree.op.equals("!")) {
+				// The negation applies to whichever child is present.
+				ExprTree child = tree.r1 != null ? tree.r1 : tree.r2;
+				if (child == null)
+					return new CompiledExprTree(NAN, Double.NaN);
+				return new CompiledExprTree(NOT, compileNode(child, varIndexMap), null);
+			}
+			int op = operator(tree.op);
+			return new CompiledExprTree(op, compileChild(tree.r1, varIndexMap),
+					compileChild(tree.r2, varIndexMap));
+		default:
+			return new CompiledExprTree(NAN, Double.NaN);
+		}
+	}
+
+	private static CompiledExprTree compileChild(ExprTree tree, DualHashMap<String, Integer> varIndexMap) {
+		if (tree == null)
+			return new CompiledExprTree(NAN, Double.NaN);
+		return compileNode(tree, varIndexMap);
+	}
+
+	private static int bitwiseOp(String op) {
+		if (op.equals("&"))
+			return BIT_AND;
+		else if (op.equals("|"))
+			return BIT_OR;
+		else if (op.equals("!"))
+			return BIT_NOT;
+		else if (op.equals("X"))
+			return BIT_XOR;
+		return UNKNOWN_OP;
+	}
+
+	private static int operator(String op) {
+		if (op.equals("&&"))
+			return AND;
+		else if (op.equals("||"))
+			return OR;
+		else if (op.equals("=="))
+			return EQ;
+		else if (op.equals("->"))
+			return IMPLIES;
+		else if (op.equals("+"))
+			return PLUS;
+		else if (op.equals("-"))
+			return MINUS;
+		else if (op.equals("*"))
+			return TIMES;
+		else if (op.equals("/"))
+			return DIV;
+		else if (op.equals("%"))
+			return MOD;
+		else if (op.equals("^"))
+			return POW;
+		else if (op.equals("[]"))
+			return BIT;
+		else if (op.equals("f"))
+			return FLOOR;
+		else if (op.equals("c"))
+			return CEIL;
+		else if (op.equals("m"))
+			return MIN;
+		else if (op.equals("M"))
+			return MAX;
+		else if (op.equals("i"))
+			return IDIV;
+		else if (op.equals("INT"))
+			return INT;
+		else if (op.equals("<"))
+			return LT;
+		else if (op.equals(">"))
+			return GT;
+		else if (op.equals("<="))
+			return LE;
+		else if (op.equals(">="))
+			return GE;
+		// Random distributions and unknown operators evaluate to NaN once their
+		// operands have been evaluated.
+		return UNKNOWN_OP;
+	}
+
+	/**
+	 * Evaluates the expression on the given variable vector.
+	 */
+	public double evaluateExpr(int[] vector) {
+		double left, right;
+		switch (kind) {
+		case NAN:
+			return Double.NaN;
+		case CONSTANT:
+			return lvalue;
+		case RANGE:
+			return ((uvalue - lvalue) * random.nextDouble()) + lvalue;
+		case BOOL_VAR:
+			return vector[index] == 1 ? 1.0 : 0.0;
+		case INT_VAR:
+			return vector[index];
+		case INTERPRETED:
+			HashMap<String, String> variables = new HashMap<String, String>();
+			for (int i = 0; i < vector.length; i++) {
+				variables.put(varIndexMap.getKey(i), vector[i] + "");
+			}
+			return tree.evaluateExpr(variables);
+		case NOT:
+			left = r1.evaluateExpr(vector);
+			if (left == 1.0)
+				return 0.0;
+			else if (left == 0.0)
+				return 1.0;
+			return Double.NaN;
+		default:
+			break;
+		}
+		left = r1.evaluateExpr(vector);
+		right = r2.evaluateExpr(vector);
+		switch (kind) {
+		case BIT_AND:
+			return ((int) left) & ((int) right);
+		case BIT_OR:
+			return ((int) left) | ((int) right);
+		case BIT_NOT:
+			return ~((int) left);
+		case BIT_XOR:
+			return ((int) left) ^ ((int) right);
+		case AND:
+			if (left == 1.0 && right == 1.0)
+				return 1.0;
+			else if (left == 0.0 || right == 0.0)
+				return 0.0;
+			return Double.NaN;
+		case OR:
+			if (left == 1.0 || right == 1.0)
+				return 1.0;
+			else if (left == 0.0 && right == 0.0)
+				return 0.0;
+			return Double.NaN;
+		case EQ:
+			return left == right ? 1.0 : 0.0;
+		case IMPLIES:
+			if (left == 0.0 && (right == 1.0 || right == 0.0))
+				return 1.0;
+			else if (left == 1.0 && right == 1.0)
+				return 1.0;
+			else if (left == 1.0 && right == 0.0)
+				return 0.0;
+			return Double.NaN;
+		case PLUS:
+			return left + right;
+		case MINUS:
+			return left - right;
+		case TIMES:
+			return left * right;
+		case DIV:
+			return left / right;
+		case MOD:
+			return left % right;
+		case POW:
+			return Math.pow(left, right);
+		case BIT:
+			return (((int) left) >> ((int) right)) & 1;
+		case FLOOR:
+			return Math.floor(left);
+		case CEIL:
+			return Math.ceil(left);
+		case MIN:
+			return Math.min(left, right);
+		case MAX:
+			return Math.max(left, right);
+		case IDIV:
+			return ((int) left) / ((int) right);
+		case INT:
+			return ((int) left);
+		case LT:
+			if (left < right)
+				return 1.0;
+			else if (left >= right)
+				return 0.0;
+			return Double.NaN;
+		case GT:
+			if (left > right)
+				return 1.0;
+			else if (left <= right)
+				return 0.0;
+			return Double.NaN;
+		case LE:
+			if (left <= right)
+				return 1.0;
+			else if (left > right)
+				return 0.0;
+			return Double.NaN;
+		case GE:
+			if (left >= right)
+				return 1.0;
+			else if (left < right)
+				return 0.0;
+			return Double.NaN;
+		default:
+			return Double.NaN;
+		}
+	}
+}
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.Set;
 
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+import edu.utah.ece.async.lema.verification.platu.platuLpn.DualHashMap;
 import edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence;
 import edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject.IntervalPair;
 import edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject.LPNContAndRate;
@@ -4372,6 +4373,14 @@ public class ExprTree {
 		return Double.NaN;
 	}
 
+	/**
+	 * Resolves the variables of this tree to their positions in the given
+	 * variable index map, so it can be evaluated on an int[] variable vector.
+	 */
+	public CompiledExprTree compile(DualHashMap<String, Integer> varIndexMap) {
+		return CompiledExprTree.compile(this, varIndexMap);
+	}
+
 	private static final int WORD = 1;
 
 	private static final int IMPLIES = 7;
@@ -881,6 +881,10 @@ public class LPN extends CoreObservable {
 			throw new IllegalStateException("Error opening file");
 		}
 
+		boolean cacheable = LPNCache.isCacheable(this, data);
+		if (cacheable && LPNCache.load(this, filename, data)) {
+			return;
+		}
 		parseProperty(data);
 		parsePlaces(data);
 		parseControlFlow(data);
@@ -902,6 +906,9 @@ public class LPN extends CoreObservable {
 		  throw new BioSimException("Invalid Expressions",
         "The input file contained invalid expressions.  See console for details.");
 		}
+		if (cacheable) {
+			LPNCache.save(this, filename, data);
+		}
 	}
 	
 	public void printDot(String filename) {
@@ -0,0 +1,531 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.lpn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A binary cache of the LPNs loaded from .lpn files. When a large .lpn file has
+ * been parsed, the places, transitions, variables and parsed expression trees of
+ * the LPN are written to a file with the same name followed by "c" (model.lpnc for
+ * model.lpn), together with the length and a hash of the text of the .lpn file. The
+ * next time the file is loaded, the LPN is read back from the cache in a single
+ * pass if the text still has the same length and hash, without the regular
+ * expression passes of LPN.load() and without parsing the expressions again.
+ * <p>
+ * Strings, variables and expression tree nodes are written once and referred to by
+ * number afterwards, so variable objects and sub-expressions that are shared in the
+ * parsed LPN are shared in the cached one too.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class LPNCache {
+
+	private static final int MAGIC = 0x4c504e43;
+
+	private static final int VERSION = 1;
+
+	/*
+	 * Length below which the text of an .lpn file is parsed faster than a cache is read.
+	 */
+	private static final int MIN_LENGTH = 1 << 16;
+
+	/*
+	 * Marks a null reference, and a string or object that is written for the first time.
+	 */
+	private static final int NULL = -2;
+
+	private static final int NEW = -1;
+
+	private static boolean enabled = true;
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns the use and the creation of cache files by LPN.load() on or off.
+	 */
+	public static void setEnabled(boolean enabled) {
+		LPNCache.enabled = enabled;
+	}
+
+	/**
+	 * Returns the name of the cache file of an .lpn file.
+	 */
+	public static String getCacheFile(String filename) {
+		return filename + "c";
+	}
+
+	/**
+	 * Determines whether the LPN loaded from the text of an .lpn file should be taken
+	 * from and stored in a cache. Only LPNs that are empty before they are loaded are,
+	 * since the cache holds the contents of the file only.
+	 */
+	static boolean isCacheable(LPN lpn, CharSequence data) {
+		return enabled && data.length() >= MIN_LENGTH && lpn.transitions.isEmpty() && lpn.places.isEmpty()
+				&& lpn.booleans.isEmpty() && lpn.integers.isEmpty() && lpn.continuous.isEmpty()
+				&& lpn.variables.isEmpty() && lpn.properties.isEmpty() && lpn.implicitPlaceMap.isEmpty();
+	}
+
+	/**
+	 * Loads an empty LPN from the cache of an .lpn file.
+	 * @param data - The text of the .lpn file.
+	 * @return True if the cache exists and was made from the same text, otherwise false,
+	 * in which case the LPN is still empty.
+	 */
+	static boolean load(LPN lpn, String filename, CharSequence data) {
+		File file = new File(getCacheFile(filename));
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != data.length()
+						|| in.readLong() != hash(data)) {
+					return false;
+				}
+				new Reader(in, lpn).readLpn();
+				return true;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			// A cache that cannot be read is ignored and the .lpn file is parsed instead.
+			clear(lpn);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the cache of an .lpn file that has just been loaded into lpn. The cache is
+	 * written to a temporary file first, so that an incomplete cache is never read.
+	 * @param data - The text of the .lpn file.
+	 */
+	static void save(LPN lpn, String filename, CharSequence data) {
+		File file = new File(getCacheFile(filename));
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(data.length());
+				out.writeLong(hash(data));
+				new Writer(out).writeLpn(lpn);
+			}
+			finally {
+				out.close();
+			}
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+			}
+		}
+		catch (IOException e) {
+			// The cache only speeds up loading, so the .lpn file is simply parsed next time.
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns a 64 bit FNV-1a hash of the text of an .lpn file.
+	 */
+	static long hash(CharSequence data) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < data.length(); i++) {
+			hash ^= data.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Empties an LPN whose loading from a cache has failed.
+	 */
+	private static void clear(LPN lpn) {
+		lpn.transitions = new HashMap<String, Transition>();
+		lpn.places = new HashMap<String, Place>();
+		lpn.implicitPlaceMap = new HashMap<String, String>();
+		lpn.booleans = new HashMap<String, Variable>();
+		lpn.continuous = new HashMap<String, Variable>();
+		lpn.integers = new HashMap<String, Variable>();
+		lpn.variables = new ArrayList<Variable>();
+		lpn.properties = new ArrayList<String>();
+		lpn.tranIndex = 0;
+		lpn.placeList = null;
+		lpn.allTransitions = null;
+	}
+
+	/**
+	 * Writes an LPN in the order Reader reads it.
+	 */
+	private static class Writer {
+
+		private final DataOutputStream out;
+
+		private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+
+		private final IdentityHashMap<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeLpn(LPN lpn) throws IOException {
+			out.writeInt(lpn.properties.size());
+			for (String property : lpn.properties) {
+				writeString(property);
+			}
+			writeVariables(lpn.booleans);
+			writeVariables(lpn.integers);
+			writeVariables(lpn.continuous);
+			out.writeInt(lpn.variables.size());
+			for (Variable var : lpn.variables) {
+				writeVariable(var);
+			}
+			out.writeInt(lpn.implicitPlaceMap.size());
+			for (Map.Entry<String, String> entry : lpn.implicitPlaceMap.entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+			out.writeInt(lpn.tranIndex);
+
+			// The places and transitions are numbered in the order they are written, so that
+			// the presets and postsets can refer to them.
+			IdentityHashMap<Place, Integer> placeIndex = new IdentityHashMap<Place, Integer>();
+			out.writeInt(lpn.places.size());
+			for (Map.Entry<String, Place> entry : lpn.places.entrySet()) {
+				Place place = entry.getValue();
+				placeIndex.put(place, placeIndex.size());
+				writeString(entry.getKey());
+				writeString(place.getName());
+				out.writeBoolean(place.isMarked());
+			}
+			IdentityHashMap<Transition, Integer> tranIndex = new IdentityHashMap<Transition, Integer>();
+			out.writeInt(lpn.transitions.size());
+			for (Map.Entry<String, Transition> entry : lpn.transitions.entrySet()) {
+				Transition tran = entry.getValue();
+				tranIndex.put(tran, tranIndex.size());
+				writeString(entry.getKey());
+				writeString(tran.getLabel());
+				out.writeInt(tran.getIndex());
+			}
+			for (Place place : lpn.places.values()) {
+				writeIndices(place.getPreset(), tranIndex);
+				writeIndices(place.getPostset(), tranIndex);
+			}
+			for (Transition tran : lpn.transitions.values()) {
+				writeIndices(tran.getPreset(), placeIndex);
+				writeIndices(tran.getPostset(), placeIndex);
+				out.writeBoolean(tran.isFail());
+				out.writeBoolean(tran.isPersistent());
+				writeString(tran.getEnabling());
+				writeTree(tran.getEnablingTree());
+				writeString(tran.getDelay());
+				writeTree(tran.getDelayTree());
+				writeString(tran.getPriority());
+				writeTree(tran.getPriorityTree());
+				writeAssignments(tran.getBoolAssignments(), tran.getBoolAssignTrees());
+				writeAssignments(tran.getIntAssignments(), tran.getIntAssignTrees());
+				writeAssignments(tran.getContAssignments(), tran.getContAssignTrees());
+				writeAssignments(tran.getRateAssignments(), tran.getRateAssignTrees());
+			}
+		}
+
+		private void writeVariables(HashMap<String, Variable> vars) throws IOException {
+			out.writeInt(vars.size());
+			for (Map.Entry<String, Variable> entry : vars.entrySet()) {
+				writeString(entry.getKey());
+				writeVariable(entry.getValue());
+			}
+		}
+
+		private <T> void writeIndices(T[] array, Map<T, Integer> index) throws IOException {
+			out.writeInt(array.length);
+			for (T element : array) {
+				out.writeInt(index.get(element));
+			}
+		}
+
+		private void writeAssignments(HashMap<String, String> assignments, HashMap<String, ExprTree> trees)
+				throws IOException {
+			if (assignments == null) {
+				out.writeInt(NULL);
+				return;
+			}
+			out.writeInt(assignments.size());
+			for (Map.Entry<String, String> entry : assignments.entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+				writeTree(trees == null ? null : trees.get(entry.getKey()));
+			}
+		}
+
+		private void writeString(String str) throws IOException {
+			if (str == null) {
+				out.writeInt(NULL);
+				return;
+			}
+			Integer id = strings.get(str);
+			if (id != null) {
+				out.writeInt(id);
+				return;
+			}
+			strings.put(str, strings.size());
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(NEW);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Writes a reference to an object that has been written already, or returns false
+		 * if the object is new, in which case the caller writes it.
+		 */
+		private boolean writeReference(Object obj) throws IOException {
+			if (obj == null) {
+				out.writeInt(NULL);
+				return true;
+			}
+			Integer id = objects.get(obj);
+			if (id != null) {
+				out.writeInt(id);
+				return true;
+			}
+			objects.put(obj, objects.size());
+			out.writeInt(NEW);
+			return false;
+		}
+
+		private void writeVariable(Variable var) throws IOException {
+			if (writeReference(var)) {
+				return;
+			}
+			writeString(var.getName());
+			writeString(var.getType());
+			writeString(var.getInitValue());
+			writeString(var.getInitRate());
+			writeString(var.getPort());
+		}
+
+		private void writeTree(ExprTree tree) throws IOException {
+			if (writeReference(tree)) {
+				return;
+			}
+			writeString(tree.op);
+			out.writeChar(tree.isit);
+			out.writeDouble(tree.lvalue);
+			out.writeDouble(tree.uvalue);
+			writeString(tree.variable);
+			out.writeDouble(tree.real);
+			out.writeBoolean(tree.logical);
+			writeTree(tree.r1);
+			writeTree(tree.r2);
+		}
+	}
+
+	/**
+	 * Reads an LPN written by Writer into an empty LPN.
+	 */
+	private static class Reader {
+
+		private final DataInputStream in;
+
+		private final LPN lpn;
+
+		private final ArrayList<String> strings = new ArrayList<String>();
+
+		private final ArrayList<Object> objects = new ArrayList<Object>();
+
+		/*
+		 * The expression trees of the LPN are parsed by trees created with new ExprTree(lpn),
+		 * and their nodes are created as copies of this one.
+		 */
+		private ExprTree template;
+
+		Reader(DataInputStream in, LPN lpn) {
+			this.in = in;
+			this.lpn = lpn;
+		}
+
+		void readLpn() throws IOException {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				lpn.properties.add(readString());
+			}
+			readVariables(lpn.booleans);
+			readVariables(lpn.integers);
+			readVariables(lpn.continuous);
+			size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				lpn.variables.add(readVariable());
+			}
+			size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				String key = readString();
+				lpn.implicitPlaceMap.put(key, readString());
+			}
+			lpn.tranIndex = in.readInt();
+			template = new ExprTree(lpn);
+
+			Place[] placeArray = new Place[in.readInt()];
+			for (int i = 0; i < placeArray.length; i++) {
+				String key = readString();
+				placeArray[i] = new Place(readString(), in.readBoolean());
+				lpn.places.put(key, placeArray[i]);
+			}
+			Transition[] tranArray = new Transition[in.readInt()];
+			for (int i = 0; i < tranArray.length; i++) {
+				String key = readString();
+				tranArray[i] = new Transition(readString(), in.readInt(), lpn);
+				lpn.transitions.put(key, tranArray[i]);
+			}
+			for (Place place : placeArray) {
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					place.addPreset(tranArray[in.readInt()]);
+				}
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					place.addPostset(tranArray[in.readInt()]);
+				}
+			}
+			for (Transition tran : tranArray) {
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					tran.addPreset(placeArray[in.readInt()]);
+				}
+				size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					tran.addPostset(placeArray[in.readInt()]);
+				}
+				tran.setFail(in.readBoolean());
+				tran.setPersistent(in.readBoolean());
+				String enabling = readString();
+				tran.setEnabling(enabling, readTree());
+				String delay = readString();
+				tran.setDelay(delay, readTree());
+				String priority = readString();
+				tran.setPriority(priority, readTree());
+				readAssignments(tran.getBoolAssignments(), tran.getBoolAssignTrees());
+				readAssignments(tran.getIntAssignments(), tran.getIntAssignTrees());
+				readAssignments(tran.getContAssignments(), tran.getContAssignTrees());
+				readAssignments(tran.getRateAssignments(), tran.getRateAssignTrees());
+			}
+			lpn.placeList = null;
+			lpn.allTransitions = null;
+		}
+
+		private void readVariables(HashMap<String, Variable> vars) throws IOException {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				String key = readString();
+				vars.put(key, readVariable());
+			}
+		}
+
+		private void readAssignments(HashMap<String, String> assignments, HashMap<String, ExprTree> trees)
+				throws IOException {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				String var = readString();
+				assignments.put(var, readString());
+				ExprTree tree = readTree();
+				if (tree != null) {
+					trees.put(var, tree);
+				}
+			}
+		}
+
+		private String readString() throws IOException {
+			int id = in.readInt();
+			if (id == NULL) {
+				return null;
+			}
+			if (id != NEW) {
+				return strings.get(id);
+			}
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			String str = new String(bytes, StandardCharsets.UTF_8);
+			strings.add(str);
+			return str;
+		}
+
+		private Variable readVariable() throws IOException {
+			int id = in.readInt();
+			if (id == NULL) {
+				return null;
+			}
+			if (id != NEW) {
+				return (Variable) objects.get(id);
+			}
+			// The variable is numbered before its fields are read, as it is when it is written.
+			int position = objects.size();
+			objects.add(null);
+			String name = readString();
+			String type = readString();
+			String initValue = readString();
+			String initRate = readString();
+			Variable var = new Variable(name, type, initValue, readString());
+			var.addInitRate(initRate);
+			objects.set(position, var);
+			return var;
+		}
+
+		private ExprTree readTree() throws IOException {
+			int id = in.readInt();
+			if (id == NULL) {
+				return null;
+			}
+			if (id != NEW) {
+				return (ExprTree) objects.get(id);
+			}
+			ExprTree tree = new ExprTree(template);
+			objects.add(tree);
+			tree.op = readString();
+			tree.isit = in.readChar();
+			tree.lvalue = in.readDouble();
+			tree.uvalue = in.readDouble();
+			tree.variable = readString();
+			tree.real = in.readDouble();
+			tree.logical = in.readBoolean();
+			tree.r1 = readTree();
+			tree.r2 = readTree();
+			return tree;
+		}
+	}
+}
@@ -313,6 +313,30 @@ public class Transition extends CoreObservable {
 		}
 	}
 
+	/**
+	 * Sets the enabling condition to an expression that has been parsed already.
+	 */
+	void setEnabling(String enabling, ExprTree enablingTree) {
+		this.enabling = enabling;
+		this.enablingTree = enablingTree;
+	}
+
+	/**
+	 * Sets the delay to an expression that has been parsed already.
+	 */
+	void setDelay(String delay, ExprTree delayTree) {
+		this.delay = delay;
+		this.delayTree = delayTree;
+	}
+
+	/**
+	 * Sets the priority to an expression that has been parsed already.
+	 */
+	void setPriority(String priority, ExprTree priorityTree) {
+		this.priority = priority;
+		this.priorityTree = priorityTree;
+	}
+
 	public void setName(String newName) {
 		this.label = newName;
 	}
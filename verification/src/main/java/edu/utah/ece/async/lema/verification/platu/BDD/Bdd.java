@@ -0,0 +1,520 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.BDD;
+
+import java.util.Arrays;
+
+/**
+ * A reduced ordered BDD manager. Nodes are kept in parallel int arrays and are
+ * identified by their position in them; 0 and 1 are the false and true
+ * terminals. A unique table makes every node canonical, and a direct-mapped
+ * computed table caches the results of recent operations. The variable of a
+ * node is also its level, so variable 0 is the top of every BDD.
+ * <p>
+ * Nodes are never freed implicitly. The user calls {@link #gc(int[])} with
+ * every BDD it still needs, which returns the others to a free list.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class Bdd {
+
+	public static final int FALSE = 0;
+
+	public static final int TRUE = 1;
+
+	private static final int FREE = -1;
+
+	private static final int AND = 0;
+	private static final int OR = 1;
+	private static final int NOT = 2;
+	private static final int EXISTS = 3;
+	private static final int REL_PROD = 4;
+	private static final int REPLACE = 5;
+
+	private static final int MAX_CACHE_SIZE = 1 << 22;
+
+	private final int varCount;
+
+	private int[] var;
+
+	private int[] low;
+
+	private int[] high;
+
+	private int[] next;
+
+	private int[] buckets;
+
+	private int allocated;
+
+	private int freeList = -1;
+
+	private int liveNodes;
+
+	private int peakNodes;
+
+	private int nodesAtLastGc;
+
+	private int[] cacheOp;
+
+	private int[] cacheA;
+
+	private int[] cacheB;
+
+	private int[] cacheC;
+
+	private int[] cacheResult;
+
+	private int replaceId = 0;
+
+	public Bdd(int varCount) {
+		this(varCount, 1 << 16);
+	}
+
+	public Bdd(int varCount, int initialNodes) {
+		this.varCount = varCount;
+		int capacity = 16;
+		while (capacity < initialNodes) {
+			capacity <<= 1;
+		}
+		var = new int[capacity];
+		low = new int[capacity];
+		high = new int[capacity];
+		next = new int[capacity];
+		buckets = new int[capacity];
+		Arrays.fill(buckets, -1);
+		// The terminals sit below every variable.
+		var[FALSE] = varCount;
+		var[TRUE] = varCount;
+		next[FALSE] = -1;
+		next[TRUE] = -1;
+		allocated = 2;
+		liveNodes = 2;
+		peakNodes = 2;
+		nodesAtLastGc = 2;
+		allocateCache(Math.min(MAX_CACHE_SIZE, capacity));
+	}
+
+	public int getVarCount() {
+		return varCount;
+	}
+
+	/**
+	 * Returns the BDD of the given variable.
+	 */
+	public int ithVar(int v) {
+		return mk(v, FALSE, TRUE);
+	}
+
+	/**
+	 * Returns the BDD of the negation of the given variable.
+	 */
+	public int nithVar(int v) {
+		return mk(v, TRUE, FALSE);
+	}
+
+	public int var(int f) {
+		return var[f];
+	}
+
+	public int low(int f) {
+		return low[f];
+	}
+
+	public int high(int f) {
+		return high[f];
+	}
+
+	/**
+	 * Returns the node (v, lo, hi), creating it if it does not exist yet.
+	 */
+	public int mk(int v, int lo, int hi) {
+		if (lo == hi)
+			return lo;
+		int bucket = hash(v, lo, hi) & (buckets.length - 1);
+		for (int node = buckets[bucket]; node != -1; node = next[node]) {
+			if (var[node] == v && low[node] == lo && high[node] == hi)
+				return node;
+		}
+		int node;
+		if (freeList != -1) {
+			node = freeList;
+			freeList = next[node];
+		}
+		else {
+			if (allocated == var.length) {
+				grow();
+				bucket = hash(v, lo, hi) & (buckets.length - 1);
+			}
+			node = allocated++;
+		}
+		var[node] = v;
+		low[node] = lo;
+		high[node] = hi;
+		next[node] = buckets[bucket];
+		buckets[bucket] = node;
+		liveNodes++;
+		if (liveNodes > peakNodes)
+			peakNodes = liveNodes;
+		return node;
+	}
+
+	public int and(int f, int g) {
+		if (f == FALSE || g == FALSE)
+			return FALSE;
+		if (f == TRUE || f == g)
+			return g;
+		if (g == TRUE)
+			return f;
+		if (f > g) {
+			int tmp = f;
+			f = g;
+			g = tmp;
+		}
+		int slot = lookup(AND, f, g, 0);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		int v = Math.min(var[f], var[g]);
+		int lo = and(var[f] == v ? low[f] : f, var[g] == v ? low[g] : g);
+		int hi = and(var[f] == v ? high[f] : f, var[g] == v ? high[g] : g);
+		return store(slot, AND, f, g, 0, mk(v, lo, hi));
+	}
+
+	public int or(int f, int g) {
+		if (f == TRUE || g == TRUE)
+			return TRUE;
+		if (f == FALSE || f == g)
+			return g;
+		if (g == FALSE)
+			return f;
+		if (f > g) {
+			int tmp = f;
+			f = g;
+			g = tmp;
+		}
+		int slot = lookup(OR, f, g, 0);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		int v = Math.min(var[f], var[g]);
+		int lo = or(var[f] == v ? low[f] : f, var[g] == v ? low[g] : g);
+		int hi = or(var[f] == v ? high[f] : f, var[g] == v ? high[g] : g);
+		return store(slot, OR, f, g, 0, mk(v, lo, hi));
+	}
+
+	public int not(int f) {
+		if (f == FALSE)
+			return TRUE;
+		if (f == TRUE)
+			return FALSE;
+		int slot = lookup(NOT, f, 0, 0);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		return store(slot, NOT, f, 0, 0, mk(var[f], not(low[f]), not(high[f])));
+	}
+
+	public int diff(int f, int g) {
+		return and(f, not(g));
+	}
+
+	public int ite(int f, int g, int h) {
+		return or(and(f, g), and(not(f), h));
+	}
+
+	public int biimp(int f, int g) {
+		return ite(f, g, not(g));
+	}
+
+	/**
+	 * Returns the conjunction of the positive literals of the given variables,
+	 * which is how sets of variables are passed to the quantification operations.
+	 */
+	public int cube(int[] vars) {
+		int[] sorted = vars.clone();
+		Arrays.sort(sorted);
+		int result = TRUE;
+		for (int i = sorted.length - 1; i >= 0; i--) {
+			result = mk(sorted[i], FALSE, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Existentially quantifies the variables of the given cube out of f.
+	 */
+	public int exists(int f, int cube) {
+		if (f == FALSE || f == TRUE)
+			return f;
+		while (cube != TRUE && var[cube] < var[f]) {
+			cube = high[cube];
+		}
+		if (cube == TRUE)
+			return f;
+		int slot = lookup(EXISTS, f, cube, 0);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		int result;
+		if (var[f] == var[cube]) {
+			int lo = exists(low[f], high[cube]);
+			result = lo == TRUE ? TRUE : or(lo, exists(high[f], high[cube]));
+		}
+		else {
+			result = mk(var[f], exists(low[f], cube), exists(high[f], cube));
+		}
+		return store(slot, EXISTS, f, cube, 0, result);
+	}
+
+	/**
+	 * Returns the existential quantification of the variables of the given cube
+	 * out of the conjunction of f and g, without building the conjunction first.
+	 */
+	public int relProd(int f, int g, int cube) {
+		if (f == FALSE || g == FALSE)
+			return FALSE;
+		if (f == TRUE && g == TRUE)
+			return TRUE;
+		if (f == TRUE || f == g)
+			return exists(g, cube);
+		if (g == TRUE)
+			return exists(f, cube);
+		int v = Math.min(var[f], var[g]);
+		while (cube != TRUE && var[cube] < v) {
+			cube = high[cube];
+		}
+		if (cube == TRUE)
+			return and(f, g);
+		if (f > g) {
+			int tmp = f;
+			f = g;
+			g = tmp;
+		}
+		int slot = lookup(REL_PROD, f, g, cube);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		int f0 = var[f] == v ? low[f] : f;
+		int f1 = var[f] == v ? high[f] : f;
+		int g0 = var[g] == v ? low[g] : g;
+		int g1 = var[g] == v ? high[g] : g;
+		int result;
+		if (var[cube] == v) {
+			int lo = relProd(f0, g0, high[cube]);
+			result = lo == TRUE ? TRUE : or(lo, relProd(f1, g1, high[cube]));
+		}
+		else {
+			result = mk(v, relProd(f0, g0, cube), relProd(f1, g1, cube));
+		}
+		return store(slot, REL_PROD, f, g, cube, result);
+	}
+
+	/**
+	 * Renames the variables of f. The map gives the new variable of every
+	 * variable, and must be used with the same array as long as the computed
+	 * table is not cleared, since results are cached by the identity of the map.
+	 */
+	public int replace(int f, int[] map) {
+		int id = replaceIdOf(map);
+		return replace(f, map, id);
+	}
+
+	private int[] lastMap;
+
+	private int replaceIdOf(int[] map) {
+		if (map != lastMap) {
+			lastMap = map;
+			replaceId++;
+		}
+		return replaceId;
+	}
+
+	private int replace(int f, int[] map, int id) {
+		if (f == FALSE || f == TRUE)
+			return f;
+		int slot = lookup(REPLACE, f, id, 0);
+		if (slot < 0)
+			return cacheResult[-slot - 1];
+		int lo = replace(low[f], map, id);
+		int hi = replace(high[f], map, id);
+		int v = map[var[f]];
+		int result;
+		if (v < var[lo] && v < var[hi])
+			result = mk(v, lo, hi);
+		else
+			result = ite(ithVar(v), hi, lo);
+		return store(slot, REPLACE, f, id, 0, result);
+	}
+
+	/**
+	 * Returns the number of assignments to count variables that satisfy f,
+	 * assuming f only depends on those variables.
+	 */
+	public double satCount(int f, int count) {
+		double[] fraction = new double[allocated];
+		Arrays.fill(fraction, -1.0);
+		return satFraction(f, fraction) * Math.pow(2.0, count);
+	}
+
+	private double satFraction(int f, double[] fraction) {
+		if (f == FALSE)
+			return 0.0;
+		if (f == TRUE)
+			return 1.0;
+		if (fraction[f] >= 0.0)
+			return fraction[f];
+		double result = (satFraction(low[f], fraction) + satFraction(high[f], fraction)) / 2.0;
+		fraction[f] = result;
+		return result;
+	}
+
+	public int nodeCount(int f) {
+		boolean[] visited = new boolean[allocated];
+		int count = 0;
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = f;
+		while (top > 0) {
+			int node = stack[--top];
+			if (node == FALSE || node == TRUE || visited[node])
+				continue;
+			visited[node] = true;
+			count++;
+			if (top + 2 > stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[top++] = low[node];
+			stack[top++] = high[node];
+		}
+		return count;
+	}
+
+	public int getLiveNodes() {
+		return liveNodes;
+	}
+
+	public int getPeakNodes() {
+		return peakNodes;
+	}
+
+	/**
+	 * Returns true if enough nodes were created since the last garbage collection
+	 * to make another one worthwhile.
+	 */
+	public boolean needsGc() {
+		return liveNodes > 2 * nodesAtLastGc && liveNodes > (1 << 16);
+	}
+
+	/**
+	 * Frees every node that is not reachable from the given roots and clears the
+	 * computed table.
+	 */
+	public void gc(int[] roots) {
+		boolean[] marked = new boolean[allocated];
+		marked[FALSE] = true;
+		marked[TRUE] = true;
+		int[] stack = new int[64];
+		int top = 0;
+		for (int root : roots) {
+			if (top == stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[top++] = root;
+		}
+		while (top > 0) {
+			int node = stack[--top];
+			if (marked[node])
+				continue;
+			marked[node] = true;
+			if (top + 2 > stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			stack[top++] = low[node];
+			stack[top++] = high[node];
+		}
+		Arrays.fill(buckets, -1);
+		freeList = -1;
+		liveNodes = 2;
+		for (int node = allocated - 1; node >= 2; node--) {
+			if (marked[node]) {
+				int bucket = hash(var[node], low[node], high[node]) & (buckets.length - 1);
+				next[node] = buckets[bucket];
+				buckets[bucket] = node;
+				liveNodes++;
+			}
+			else {
+				var[node] = FREE;
+				next[node] = freeList;
+				freeList = node;
+			}
+		}
+		nodesAtLastGc = liveNodes;
+		Arrays.fill(cacheOp, -1);
+	}
+
+	private void grow() {
+		int capacity = var.length << 1;
+		var = Arrays.copyOf(var, capacity);
+		low = Arrays.copyOf(low, capacity);
+		high = Arrays.copyOf(high, capacity);
+		next = Arrays.copyOf(next, capacity);
+		buckets = new int[capacity];
+		Arrays.fill(buckets, -1);
+		for (int node = 2; node < allocated; node++) {
+			if (var[node] == FREE)
+				continue;
+			int bucket = hash(var[node], low[node], high[node]) & (capacity - 1);
+			next[node] = buckets[bucket];
+			buckets[bucket] = node;
+		}
+		if (cacheOp.length < MAX_CACHE_SIZE)
+			allocateCache(Math.min(MAX_CACHE_SIZE, capacity));
+	}
+
+	private void allocateCache(int size) {
+		cacheOp = new int[size];
+		cacheA = new int[size];
+		cacheB = new int[size];
+		cacheC = new int[size];
+		cacheResult = new int[size];
+		Arrays.fill(cacheOp, -1);
+	}
+
+	/**
+	 * Looks the operation up in the computed table. Returns -(slot + 1) on a hit,
+	 * so the result is in cacheResult[slot], and the slot to store the result in
+	 * on a miss.
+	 */
+	private int lookup(int op, int a, int b, int c) {
+		int slot = hash(op * 31 + a, b, c) & (cacheOp.length - 1);
+		if (cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b && cacheC[slot] == c)
+			return -slot - 1;
+		return slot;
+	}
+
+	private int store(int slot, int op, int a, int b, int c, int result) {
+		// The table may have been reallocated by a node table growth in between.
+		slot &= cacheOp.length - 1;
+		cacheOp[slot] = op;
+		cacheA[slot] = a;
+		cacheB[slot] = b;
+		cacheC[slot] = c;
+		cacheResult[slot] = result;
+		return result;
+	}
+
+	private static int hash(int a, int b, int c) {
+		int h = a * 0x9e3779b1 + b * 0x85ebca6b + c * 0xc2b2ae35;
+		h ^= h >>> 15;
+		h *= 0x2c1b3c6d;
+		h ^= h >>> 12;
+		return h;
+	}
+}
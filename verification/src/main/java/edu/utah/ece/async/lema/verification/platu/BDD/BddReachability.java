@@ -0,0 +1,739 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.BDD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+import edu.utah.ece.async.lema.verification.lpn.CompiledExprTree;
+import edu.utah.ece.async.lema.verification.lpn.ExprTree;
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.lpn.Transition;
+import edu.utah.ece.async.lema.verification.platu.platuLpn.DualHashMap;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Symbolic reachability analysis of untimed LPNs with BDDs. A global state is
+ * encoded by one bit per place of every LPN, one bit per Boolean variable, a
+ * fixed number of two's complement bits per integer variable and one bit per
+ * persistent transition, which remembers whether the transition was enabled in
+ * the transition vector of its local state. Variables are shared by name, as
+ * they are when StateGraph.fire updates the other LPNs. Continuous variables
+ * keep their initial values.
+ * <p>
+ * Every state bit has a current and a next BDD variable next to each other. The
+ * order of the state elements is computed with the FORCE heuristic, which moves
+ * the places and variables used by the same transition close to each other.
+ * Enabling conditions, rates and assignments are turned into BDDs by
+ * enumerating the values of the variables they depend on, and the image of a
+ * set of states is computed one transition at a time with a relational product.
+ * The search stops at the first deadlock, enabled failure transition or
+ * integer overflow.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BddReachability {
+
+	private static final long MAX_VALUATIONS = 1L << 20;
+
+	private static final int FORCE_ITERATIONS = 32;
+
+	private final StateGraph[] sgList;
+
+	private final State[] initStateArray;
+
+	private final int intBits;
+
+	private int elementCount;
+
+	private final List<Integer> widths = new ArrayList<Integer>();
+
+	private final List<Integer> initialValues = new ArrayList<Integer>();
+
+	private int[] width;
+
+	private int[] firstBit;
+
+	private int stateBitCount;
+
+	private int[][] placeElement;
+
+	private int[][] persistentElement;
+
+	private final HashMap<String, Integer> varElement = new HashMap<String, Integer>();
+
+	private final List<Transition> transitions = new ArrayList<Transition>();
+
+	private Bdd bdd;
+
+	private int[] nextToCurrent;
+
+	private int[] enabled;
+
+	private int[] relation;
+
+	private int[] quantifiedCube;
+
+	private int[] overflow;
+
+	private String[] overflowVars;
+
+	private int reached = Bdd.FALSE;
+
+	private int iterations = 0;
+
+	private double stateCount = 0;
+
+	private String failure;
+
+	/**
+	 * Prepares the analysis of the LPNs of the given state graphs from the given
+	 * initial local states, with intBits bits per integer variable.
+	 */
+	public BddReachability(StateGraph[] sgList, State[] initStateArray, int intBits) {
+		this.sgList = sgList;
+		this.initStateArray = initStateArray;
+		this.intBits = intBits;
+	}
+
+	/**
+	 * Explores the reachable state space. Returns true if no failure was found.
+	 */
+	public boolean search() {
+		collectElements();
+		assignBits(orderElements(buildHyperedges()));
+		bdd = new Bdd(2 * stateBitCount);
+		nextToCurrent = new int[2 * stateBitCount];
+		for (int v = 0; v < nextToCurrent.length; v++) {
+			nextToCurrent[v] = v & ~1;
+		}
+		buildTransitionRelations();
+		int dead = Bdd.TRUE;
+		for (int i = 0; i < transitions.size(); i++) {
+			dead = bdd.and(dead, bdd.not(enabled[i]));
+		}
+		int init = initialState();
+		reached = init;
+		int frontier = init;
+		if (!check(frontier, dead)) {
+			stateCount = bdd.satCount(reached, stateBitCount);
+			return false;
+		}
+		while (frontier != Bdd.FALSE) {
+			iterations++;
+			int image = Bdd.FALSE;
+			for (int i = 0; i < transitions.size(); i++) {
+				int successors = bdd.relProd(frontier, relation[i], quantifiedCube[i]);
+				image = bdd.or(image, bdd.replace(successors, nextToCurrent));
+			}
+			frontier = bdd.diff(image, reached);
+			reached = bdd.or(reached, frontier);
+			if (!check(frontier, dead)) {
+				stateCount = bdd.satCount(reached, stateBitCount);
+				return false;
+			}
+			if (bdd.needsGc())
+				bdd.gc(roots(frontier, dead));
+		}
+		stateCount = bdd.satCount(reached, stateBitCount);
+		return true;
+	}
+
+	public double getStateCount() {
+		return stateCount;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public int getPeakNodes() {
+		return bdd == null ? 0 : bdd.getPeakNodes();
+	}
+
+	public int getReachedNodes() {
+		return bdd == null ? 0 : bdd.nodeCount(reached);
+	}
+
+	public int getStateBitCount() {
+		return stateBitCount;
+	}
+
+	/**
+	 * Returns the message of the failure found by the search, or null.
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Checks newly reached states for integer overflows, enabled failure
+	 * transitions and deadlocks. Returns false and records the failure if one is
+	 * found.
+	 */
+	private boolean check(int states, int dead) {
+		if (states == Bdd.FALSE)
+			return true;
+		for (int i = 0; i < transitions.size(); i++) {
+			if (overflow[i] != Bdd.FALSE && bdd.and(states, overflow[i]) != Bdd.FALSE) {
+				failure = "*** BDD analysis aborted: firing " + transitions.get(i).getFullLabel() + " assigns "
+						+ overflowVars[i] + " a value out of the range of " + intBits
+						+ " bit integers. Increase the number of bits with -bddIntBits.";
+				return false;
+			}
+		}
+		for (int i = 0; i < transitions.size(); i++) {
+			if (transitions.get(i).isFail() && bdd.and(states, enabled[i]) != Bdd.FALSE) {
+				failure = "*** Verification failed: failure transition " + transitions.get(i).getFullLabel()
+						+ " is enabled.";
+				return false;
+			}
+		}
+		if (bdd.and(states, dead) != Bdd.FALSE) {
+			failure = "*** Verification failed: deadlock.";
+			return false;
+		}
+		return true;
+	}
+
+	private int[] roots(int frontier, int dead) {
+		int count = transitions.size();
+		int[] roots = new int[3 + 4 * count];
+		roots[0] = reached;
+		roots[1] = frontier;
+		roots[2] = dead;
+		for (int i = 0; i < count; i++) {
+			roots[3 + 4 * i] = enabled[i];
+			roots[4 + 4 * i] = relation[i];
+			roots[5 + 4 * i] = quantifiedCube[i];
+			roots[6 + 4 * i] = overflow[i];
+		}
+		return roots;
+	}
+
+	/**
+	 * Creates the state elements: the places of every LPN, the Boolean and
+	 * integer variables, and the enabled flags of the persistent transitions.
+	 */
+	private void collectElements() {
+		placeElement = new int[sgList.length][];
+		persistentElement = new int[sgList.length][];
+		for (int k = 0; k < sgList.length; k++) {
+			LPN lpn = sgList[k].getLpn();
+			int[] marking = initStateArray[k].getMarking();
+			placeElement[k] = new int[marking.length];
+			for (int p = 0; p < marking.length; p++) {
+				placeElement[k][p] = newElement(1, marking[p] == 0 ? 0 : 1);
+			}
+			int[] vector = initStateArray[k].getVariableVector();
+			DualHashMap<String, Integer> varIndexMap = lpn.getVarIndexMap();
+			for (int i = 0; i < vector.length; i++) {
+				String name = varIndexMap.getKey(i);
+				if (name == null || varElement.containsKey(name))
+					continue;
+				int bits;
+				if (lpn.isBoolean(name))
+					bits = 1;
+				else if (lpn.isInteger(name))
+					bits = intBits;
+				else
+					continue;
+				if (vector[i] < minValue(bits) || vector[i] > maxValue(bits))
+					throw new IllegalStateException("The initial value " + vector[i] + " of " + name
+							+ " does not fit in " + bits + " bits. Increase the number of bits with -bddIntBits.");
+				varElement.put(name, newElement(bits, vector[i]));
+			}
+			Transition[] lpnTransitions = lpn.getAllTransitions();
+			boolean[] tranVector = initStateArray[k].getTranVector();
+			persistentElement[k] = new int[tranVector.length];
+			Arrays.fill(persistentElement[k], -1);
+			for (Transition tran : lpnTransitions) {
+				transitions.add(tran);
+				if (tran.isPersistent())
+					persistentElement[k][tran.getIndex()] = newElement(1, tranVector[tran.getIndex()] ? 1 : 0);
+			}
+		}
+		elementCount = widths.size();
+		width = new int[elementCount];
+		for (int e = 0; e < elementCount; e++) {
+			width[e] = widths.get(e);
+		}
+	}
+
+	private int newElement(int bits, int initialValue) {
+		widths.add(bits);
+		initialValues.add(initialValue);
+		return widths.size() - 1;
+	}
+
+	/**
+	 * Returns one hyperedge per transition, made of the elements the transition
+	 * reads or writes.
+	 */
+	private List<int[]> buildHyperedges() {
+		List<int[]> hyperedges = new ArrayList<int[]>();
+		for (Transition tran : transitions) {
+			LPN lpn = tran.getLpn();
+			int k = lpn.getLpnIndex();
+			TreeSet<Integer> edge = new TreeSet<Integer>();
+			for (int p : lpn.getPresetIndex(tran.getLabel())) {
+				edge.add(placeElement[k][p]);
+			}
+			for (int p : lpn.getPostsetIndex(tran.getLabel())) {
+				edge.add(placeElement[k][p]);
+			}
+			addSupport(edge, lpn.getEnablingTree(tran.getLabel()));
+			addSupport(edge, lpn.getTransitionRateTree(tran.getLabel()));
+			for (Entry<String, ExprTree> assignment : assignments(tran).entrySet()) {
+				edge.add(varElement.get(assignment.getKey()));
+				addSupport(edge, assignment.getValue());
+			}
+			if (persistentElement[k][tran.getIndex()] >= 0)
+				edge.add(persistentElement[k][tran.getIndex()]);
+			if (edge.size() > 1) {
+				int[] elements = new int[edge.size()];
+				int i = 0;
+				for (int e : edge) {
+					elements[i++] = e;
+				}
+				hyperedges.add(elements);
+			}
+		}
+		return hyperedges;
+	}
+
+	private void addSupport(TreeSet<Integer> edge, ExprTree tree) {
+		if (tree == null)
+			return;
+		for (String name : tree.getVars()) {
+			Integer e = varElement.get(name);
+			if (e != null)
+				edge.add(e);
+		}
+	}
+
+	/**
+	 * Orders the elements with the FORCE heuristic: every element is moved to the
+	 * average center of gravity of its hyperedges, and the elements are sorted by
+	 * their new positions, as long as the total span of the hyperedges shrinks.
+	 */
+	private int[] orderElements(List<int[]> hyperedges) {
+		int[] order = new int[elementCount];
+		for (int e = 0; e < elementCount; e++) {
+			order[e] = e;
+		}
+		int[] rank = new int[elementCount];
+		long bestSpan = span(order, rank, hyperedges);
+		final double[] position = new double[elementCount];
+		for (int iteration = 0; iteration < FORCE_ITERATIONS; iteration++) {
+			double[] sum = new double[elementCount];
+			int[] count = new int[elementCount];
+			for (int[] edge : hyperedges) {
+				double center = 0;
+				for (int e : edge) {
+					center += rank[e];
+				}
+				center /= edge.length;
+				for (int e : edge) {
+					sum[e] += center;
+					count[e]++;
+				}
+			}
+			Integer[] sorted = new Integer[elementCount];
+			for (int e = 0; e < elementCount; e++) {
+				position[e] = count[e] > 0 ? sum[e] / count[e] : rank[e];
+				sorted[e] = order[e];
+			}
+			// The sort is stable, so ties keep their previous order.
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer e1, Integer e2) {
+					return Double.compare(position[e1], position[e2]);
+				}
+			});
+			int[] newOrder = new int[elementCount];
+			for (int i = 0; i < elementCount; i++) {
+				newOrder[i] = sorted[i];
+			}
+			int[] newRank = new int[elementCount];
+			long newSpan = span(newOrder, newRank, hyperedges);
+			if (newSpan >= bestSpan)
+				break;
+			bestSpan = newSpan;
+			order = newOrder;
+			rank = newRank;
+		}
+		return order;
+	}
+
+	/**
+	 * Fills rank with the bit position of every element in the given order and
+	 * returns the sum of the spans of the hyperedges.
+	 */
+	private long span(int[] order, int[] rank, List<int[]> hyperedges) {
+		int bit = 0;
+		for (int e : order) {
+			rank[e] = bit;
+			bit += width[e];
+		}
+		long span = 0;
+		for (int[] edge : hyperedges) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (int e : edge) {
+				min = Math.min(min, rank[e]);
+				max = Math.max(max, rank[e] + width[e] - 1);
+			}
+			span += max - min;
+		}
+		return span;
+	}
+
+	private void assignBits(int[] order) {
+		firstBit = new int[elementCount];
+		int bit = 0;
+		for (int e : order) {
+			firstBit[e] = bit;
+			bit += width[e];
+		}
+		stateBitCount = bit;
+	}
+
+	private int initialState() {
+		int init = Bdd.TRUE;
+		for (int e = 0; e < elementCount; e++) {
+			init = bdd.and(init, valueOf(e, initialValues.get(e), false));
+		}
+		return init;
+	}
+
+	/**
+	 * Builds the enabling condition and the transition relation of every
+	 * transition. A transition relation relates the current values of the places
+	 * and variables the transition changes to their next values, and the enabled
+	 * flags of the persistent transitions of the LPNs it changes to their values
+	 * after StateGraph.updateTranVector.
+	 */
+	private void buildTransitionRelations() {
+		int count = transitions.size();
+		enabled = new int[count];
+		relation = new int[count];
+		quantifiedCube = new int[count];
+		overflow = new int[count];
+		overflowVars = new String[count];
+		for (int i = 0; i < count; i++) {
+			enabled[i] = enabledCondition(transitions.get(i));
+		}
+		for (int i = 0; i < count; i++) {
+			Transition tran = transitions.get(i);
+			LPN lpn = tran.getLpn();
+			int k = lpn.getLpnIndex();
+			String label = tran.getLabel();
+			TreeSet<Integer> changed = new TreeSet<Integer>();
+			int rel = enabled[i];
+			int[] preset = lpn.getPresetIndex(label);
+			int[] postset = lpn.getPostsetIndex(label);
+			for (int p : preset) {
+				changed.add(placeElement[k][p]);
+			}
+			for (int p : postset) {
+				changed.add(placeElement[k][p]);
+			}
+			for (int p : preset) {
+				if (!contains(postset, p))
+					rel = bdd.and(rel, valueOf(placeElement[k][p], 0, true));
+			}
+			for (int p : postset) {
+				rel = bdd.and(rel, valueOf(placeElement[k][p], 1, true));
+			}
+			overflow[i] = Bdd.FALSE;
+			LinkedHashMap<String, ExprTree> assignments = assignments(tran);
+			for (Entry<String, ExprTree> assignment : assignments.entrySet()) {
+				int x = varElement.get(assignment.getKey());
+				changed.add(x);
+				int before = overflow[i];
+				rel = bdd.and(rel, assignmentRelation(k, x, assignment.getValue(), i));
+				if (overflow[i] != before)
+					overflowVars[i] = overflowVars[i] == null ? assignment.getKey()
+							: overflowVars[i] + ", " + assignment.getKey();
+			}
+			if (overflow[i] != Bdd.FALSE)
+				overflow[i] = bdd.and(overflow[i], enabled[i]);
+			int[] currentToNext = currentToNext(changed);
+			TreeSet<Integer> quantified = new TreeSet<Integer>(changed);
+			for (int j = 0; j < sgList.length; j++) {
+				int changedLpn;
+				if (j == k)
+					changedLpn = Bdd.TRUE;
+				else
+					changedLpn = valuesChanged(sgList[j].getLpn(), assignments);
+				if (changedLpn == Bdd.FALSE)
+					continue;
+				for (Transition other : sgList[j].getLpn().getAllTransitions()) {
+					int e = persistentElement[j][other.getIndex()];
+					if (e < 0)
+						continue;
+					quantified.add(e);
+					int kept = bit(e, false);
+					if (j == k && (other == tran || tran.getConflictSetTransIndices().contains(other.getIndex())))
+						kept = Bdd.FALSE;
+					int updated = persistentUpdate(other, kept, currentToNext);
+					if (changedLpn != Bdd.TRUE)
+						updated = bdd.ite(changedLpn, updated, bit(e, false));
+					rel = bdd.and(rel, bdd.biimp(bit(e, true), updated));
+				}
+			}
+			relation[i] = rel;
+			int[] cubeVars = new int[0];
+			for (int e : quantified) {
+				int start = cubeVars.length;
+				cubeVars = Arrays.copyOf(cubeVars, start + width[e]);
+				for (int b = 0; b < width[e]; b++) {
+					cubeVars[start + b] = 2 * (firstBit[e] + b);
+				}
+			}
+			quantifiedCube[i] = bdd.cube(cubeVars);
+		}
+	}
+
+	/**
+	 * Returns the condition under which tran is enabled, as in
+	 * StateGraph.isEnabled.
+	 */
+	private int enabledCondition(Transition tran) {
+		LPN lpn = tran.getLpn();
+		int k = lpn.getLpnIndex();
+		String label = tran.getLabel();
+		int enabling = notZero(k, lpn.getEnablingTree(label), tran);
+		int persistent = persistentElement[k][tran.getIndex()];
+		if (persistent >= 0)
+			enabling = bdd.or(enabling, bit(persistent, false));
+		int condition = bdd.and(enabling, notZero(k, lpn.getTransitionRateTree(label), tran));
+		for (int p : lpn.getPresetIndex(label)) {
+			condition = bdd.and(condition, bit(placeElement[k][p], false));
+		}
+		return condition;
+	}
+
+	/**
+	 * Returns the next value of the enabled flag of the persistent transition tran,
+	 * as computed by StateGraph.updateTranVector after the firing. The flag keeps
+	 * the given value when the enabling condition of tran is false, and currentToNext
+	 * renames the elements changed by the firing to their next values.
+	 */
+	private int persistentUpdate(Transition tran, int kept, int[] currentToNext) {
+		LPN lpn = tran.getLpn();
+		int k = lpn.getLpnIndex();
+		String label = tran.getLabel();
+		int enablingFalse = bdd.not(notZero(k, lpn.getEnablingTree(label), tran));
+		int condition = notZero(k, lpn.getTransitionRateTree(label), tran);
+		for (int p : lpn.getPresetIndex(label)) {
+			condition = bdd.and(condition, bit(placeElement[k][p], false));
+		}
+		return bdd.ite(bdd.replace(enablingFalse, currentToNext), kept, bdd.replace(condition, currentToNext));
+	}
+
+	/**
+	 * Returns the condition under which the firing changes the value of a variable
+	 * of the given LPN, so StateGraph.fire updates its local state.
+	 */
+	private int valuesChanged(LPN lpn, LinkedHashMap<String, ExprTree> assignments) {
+		DualHashMap<String, Integer> varIndexMap = lpn.getVarIndexMap();
+		int changed = Bdd.FALSE;
+		for (String name : assignments.keySet()) {
+			if (!varIndexMap.containsKey(name))
+				continue;
+			int x = varElement.get(name);
+			for (int b = 0; b < width[x]; b++) {
+				int current = bdd.ithVar(2 * (firstBit[x] + b));
+				int next = bdd.ithVar(2 * (firstBit[x] + b) + 1);
+				changed = bdd.or(changed, bdd.not(bdd.biimp(current, next)));
+			}
+		}
+		return changed;
+	}
+
+	private int[] currentToNext(TreeSet<Integer> elements) {
+		int[] map = new int[2 * stateBitCount];
+		for (int v = 0; v < map.length; v++) {
+			map[v] = v;
+		}
+		for (int e : elements) {
+			for (int b = 0; b < width[e]; b++) {
+				map[2 * (firstBit[e] + b)] = 2 * (firstBit[e] + b) + 1;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the Boolean and integer assignments of tran to encoded variables.
+	 * Integer assignments come after Boolean ones, so they win if a variable has
+	 * both, as in StateGraph.fire.
+	 */
+	private LinkedHashMap<String, ExprTree> assignments(Transition tran) {
+		LinkedHashMap<String, ExprTree> assignments = new LinkedHashMap<String, ExprTree>();
+		for (Entry<String, ExprTree> assignment : tran.getBoolAssignTrees().entrySet()) {
+			if (assignment.getValue() != null && varElement.containsKey(assignment.getKey()))
+				assignments.put(assignment.getKey(), assignment.getValue());
+		}
+		for (Entry<String, ExprTree> assignment : tran.getIntAssignTrees().entrySet()) {
+			if (assignment.getValue() != null && varElement.containsKey(assignment.getKey()))
+				assignments.put(assignment.getKey(), assignment.getValue());
+		}
+		return assignments;
+	}
+
+	/**
+	 * Returns the set of valuations on which the expression does not evaluate to
+	 * zero. A null expression is never zero.
+	 */
+	private int notZero(int k, ExprTree tree, Transition tran) {
+		if (tree == null)
+			return Bdd.TRUE;
+		final CompiledExprTree compiled = CompiledExprTree.compile(tree, sgList[k].getLpn().getVarIndexMap());
+		return enumerate(k, tree, tran, new Leaf() {
+			@Override
+			int apply(int[] vector, int path) {
+				return compiled.evaluateExpr(vector) != 0.0 ? path : Bdd.FALSE;
+			}
+		});
+	}
+
+	/**
+	 * Returns the relation between the current values of the variables of the
+	 * assignment and the next value of the assigned element x. Valuations whose
+	 * result does not fit in x are added to the overflow condition of the
+	 * transition instead.
+	 */
+	private int assignmentRelation(int k, final int x, ExprTree tree, final int tranIndex) {
+		final CompiledExprTree compiled = CompiledExprTree.compile(tree, sgList[k].getLpn().getVarIndexMap());
+		return enumerate(k, tree, transitions.get(tranIndex), new Leaf() {
+			@Override
+			int apply(int[] vector, int path) {
+				int next = valueOf(x, (int) compiled.evaluateExpr(vector), true);
+				if (next == Bdd.FALSE) {
+					overflow[tranIndex] = bdd.or(overflow[tranIndex], path);
+					return Bdd.FALSE;
+				}
+				return bdd.and(path, next);
+			}
+		});
+	}
+
+	private abstract static class Leaf {
+		abstract int apply(int[] vector, int path);
+	}
+
+	/**
+	 * Enumerates the values of the encoded variables of the LPN that the
+	 * expression depends on, and returns the disjunction of the results of the
+	 * leaf on every valuation. The other variables keep their initial values.
+	 */
+	private int enumerate(int k, ExprTree tree, Transition tran, Leaf leaf) {
+		DualHashMap<String, Integer> varIndexMap = sgList[k].getLpn().getVarIndexMap();
+		List<int[]> support = new ArrayList<int[]>();
+		long valuations = 1;
+		for (String name : new TreeSet<String>(tree.getVars())) {
+			Integer e = varElement.get(name);
+			Integer index = varIndexMap.get(name);
+			if (e == null || index == null)
+				continue;
+			support.add(new int[] { e, index });
+			valuations *= 1L << width[e];
+			if (valuations > MAX_VALUATIONS)
+				throw new IllegalStateException("An expression of " + tran.getFullLabel() + " depends on more than "
+						+ MAX_VALUATIONS + " variable values. Decrease the number of bits with -bddIntBits.");
+		}
+		// Build the valuations from the top of the order down.
+		Collections.sort(support, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] e1, int[] e2) {
+				return Integer.compare(firstBit[e1[0]], firstBit[e2[0]]);
+			}
+		});
+		int[] elements = new int[support.size()];
+		int[] indices = new int[support.size()];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = support.get(i)[0];
+			indices[i] = support.get(i)[1];
+		}
+		int[] vector = initStateArray[k].getVariableVector().clone();
+		return enumerate(elements, indices, 0, Bdd.TRUE, vector, leaf);
+	}
+
+	private int enumerate(int[] elements, int[] indices, int depth, int path, int[] vector, Leaf leaf) {
+		if (depth == elements.length)
+			return leaf.apply(vector, path);
+		int e = elements[depth];
+		int result = Bdd.FALSE;
+		for (int value = minValue(width[e]); value <= maxValue(width[e]); value++) {
+			vector[indices[depth]] = value;
+			int subPath = bdd.and(path, valueOf(e, value, false));
+			result = bdd.or(result, enumerate(elements, indices, depth + 1, subPath, vector, leaf));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the BDD of element e having the given value, on its current or next
+	 * bits, or FALSE if the value does not fit in the element.
+	 */
+	private int valueOf(int e, int value, boolean next) {
+		int bits = width[e];
+		if (value < minValue(bits) || value > maxValue(bits))
+			return Bdd.FALSE;
+		int result = Bdd.TRUE;
+		// The most significant bit comes first in the order.
+		for (int b = bits - 1; b >= 0; b--) {
+			int v = 2 * (firstBit[e] + b) + (next ? 1 : 0);
+			if (((value >> (bits - 1 - b)) & 1) == 1)
+				result = bdd.mk(v, Bdd.FALSE, result);
+			else
+				result = bdd.mk(v, result, Bdd.FALSE);
+		}
+		return result;
+	}
+
+	private int bit(int e, boolean next) {
+		return bdd.ithVar(2 * firstBit[e] + (next ? 1 : 0));
+	}
+
+	private static int minValue(int bits) {
+		return bits == 1 ? 0 : -(1 << (bits - 1));
+	}
+
+	private static int maxValue(int bits) {
+		return bits == 1 ? 1 : (1 << (bits - 1)) - 1;
+	}
+
+	private static boolean contains(int[] array, int value) {
+		for (int v : array) {
+			if (v == value)
+				return true;
+		}
+		return false;
+	}
+}
@@ -18,7 +18,18 @@ import java.util.*;
 import edu.utah.ece.async.lema.verification.platu.stategraph.*;
 
 /**
- * 
+ * A manager of multi-valued decision diagrams over tuples of local state
+ * indices, one level per module. Every node is created through a unique table
+ * per level, so isomorphic nodes are shared and equal sets are the same node.
+ * The empty set is null. Union results are kept in an operation cache of
+ * bounded size, where a new entry replaces the old one of its slot.
+ * <p>
+ * Nodes count the nodes and users referring to them. The users of the sets
+ * returned by {@link #add(mddNode, int[])}, {@link #union(mddNode, mddNode)}
+ * and {@link #doLocalFirings(StateGraph[], State[])} own a reference
+ * and give it back with {@link #remove(mddNode)}. Nodes without references are
+ * freed by {@link #gc()}, which is also run by add and remove once many of them
+ * have accumulated.
  *
  * @author 
  * @author Chris Myers
@@ -26,158 +37,312 @@ import edu.utah.ece.async.lema.verification.platu.stategraph.*;
  * @version %I%
  */
 public class Mdd {
-	static mddNode terminal = new mddNode();
+	private static final int MIN_CACHE_SIZE = 1 << 12;
+	private static final int MAX_CACHE_SIZE = 1 << 20;
+	private static final int MIN_GC_NODES = 1 << 14;
+
+	final mddNode terminal;
 
-	//private int stateCount;
 	private HashMap<mddNode, mddNode>[] nodeTbl;
-	private HashMap<State, HashSet<State>>[] localFirings;
+	private int nodeCount;
+	private int deadNodes;
 	private int peakNodes;
 	int height;
-	
+
+	private mddNode[] cacheLeft;
+	private mddNode[] cacheRight;
+	private mddNode[] cacheResult;
+
 	/*
 	 * Initialize MDD with the number of modules in the design model.
 	 */
 	@SuppressWarnings("unchecked")
 	public Mdd(int numMods) {
-		Mdd.terminal.level = numMods;
-		//stateCount = 0;
 		height = numMods;
+		terminal = new mddNode(numMods, new int[0], new mddNode[0]);
 		nodeTbl = new HashMap[height];
-		localFirings = new HashMap[height+1];
-		for(int i = 0; i < this.height; i++) { 
+		for(int i = 0; i < this.height; i++)
 			nodeTbl[i] = new HashMap<mddNode, mddNode>();
-			localFirings[i] = new HashMap<State, HashSet<State>>();
-		}
-			
+		nodeCount = 0;
+		deadNodes = 0;
 		peakNodes = 0;
+		allocateCache(MIN_CACHE_SIZE);
+	}
+
+	public int getHeight() {
+		return height;
 	}
-	
-	public static mddNode newNode() {
-		return new mddNode(0);
+
+	public mddNode getTerminal() {
+		return terminal;
+	}
+
+	/*
+	 * Return the unique node at the given level with the given edges. The values must be sorted and the
+	 * children must not be null. Return null if there is no edge.
+	 */
+	public mddNode node(int level, int[] values, mddNode[] children) {
+		if (values.length == 0)
+			return null;
+		mddNode candidate = new mddNode(level, values, children);
+		mddNode existing = nodeTbl[level].get(candidate);
+		if (existing != null)
+			return existing;
+		nodeTbl[level].put(candidate, candidate);
+		for (mddNode child : children)
+			ref(child);
+		nodeCount++;
+		deadNodes++;
+		if (nodeCount > peakNodes)
+			peakNodes = nodeCount;
+		if (nodeCount > 2 * cacheResult.length && cacheResult.length < MAX_CACHE_SIZE)
+			allocateCache(2 * cacheResult.length);
+		return candidate;
 	}
-	
+
 	/*
-	 * Return a MDD node that is the root of MDD representing the union of states encoded in MDD 'target' and MDD 'source'
+	 * Return a MDD node that is the root of MDD representing the union of states encoded in MDD 'target' and MDD 'source'.
+	 * The caller owns a reference to the result.
 	 */
 	public mddNode union(mddNode target, mddNode source) {
-		HashMap<mddNode, HashMap<mddNode, mddNode>> unionCache = new HashMap<mddNode, HashMap<mddNode, mddNode>>();
-		mddNode unionResult = target.union(source, nodeTbl, unionCache);
-		return unionResult;
-	}
-	
-
-	
-   	/*
-	 * create a MDD for stateArray. The nodes in the created MDD are added into the nodeTbl.
-	 */	
-	public boolean add(mddNode target, int[] idxArray) {					
-		target = target.add(idxArray, nodeTbl, 20);
-
-		int curNodes = 0;
-		for(int i = 0; i < this.height; i++) 
-			curNodes += nodeTbl[i].size();
-		
-		if(curNodes > peakNodes)
-			peakNodes = curNodes;
-
-		//stateCount++;
-		return true;
-	}	
-	
-	public boolean add(mddNode target, int[] idxArray, boolean sharing) {
-		if(sharing==true)
-			target.add(idxArray, nodeTbl, 20);
-		else
-			target.add(idxArray);
+		mddNode result = unionRec(target, source);
+		ref(result);
+		return result;
+	}
 
-		return true;
+	/*
+	 * Return the union without taking a reference, for the searches that do not free nodes while they run.
+	 */
+	mddNode unionRec(mddNode a, mddNode b) {
+		if (a == null || a == b)
+			return b;
+		if (b == null)
+			return a;
+		if (a == terminal || b == terminal)
+			return terminal;
+		mddNode.numCalls++;
+		if (a.hashCode() > b.hashCode()) {
+			mddNode tmp = a;
+			a = b;
+			b = tmp;
+		}
+		int slot = (a.hashCode() * 31 + b.hashCode()) & (cacheResult.length - 1);
+		if (cacheLeft[slot] == a && cacheRight[slot] == b)
+			return cacheResult[slot];
+		int[] values = new int[a.values.length + b.values.length];
+		mddNode[] children = new mddNode[values.length];
+		int i = 0, j = 0, size = 0;
+		while (i < a.values.length || j < b.values.length) {
+			if (j == b.values.length || (i < a.values.length && a.values[i] < b.values[j])) {
+				values[size] = a.values[i];
+				children[size++] = a.children[i++];
+			}
+			else if (i == a.values.length || b.values[j] < a.values[i]) {
+				values[size] = b.values[j];
+				children[size++] = b.children[j++];
+			}
+			else {
+				values[size] = a.values[i];
+				children[size++] = unionRec(a.children[i++], b.children[j++]);
+			}
+		}
+		mddNode result = node(a.level, Arrays.copyOf(values, size), Arrays.copyOf(children, size));
+		// The recursive calls may have grown the cache.
+		slot = (a.hashCode() * 31 + b.hashCode()) & (cacheResult.length - 1);
+		cacheLeft[slot] = a;
+		cacheRight[slot] = b;
+		cacheResult[slot] = result;
+		mddNode.cacheNodes++;
+		return result;
 	}
-	
-	
-	public void compress(mddNode target) {
-		target.compress(nodeTbl);
-	}
-	
-	
-	public mddNode doLocalFirings(StateGraph[] curLpnArray, State[] curStateArray, mddNode reachSet) {
-		mddNode result = Mdd.newNode();
-		@SuppressWarnings("unchecked")
-		LinkedList<State>[] nextSetArray = (new LinkedList[curLpnArray.length]);
-		for(int i = 0; i < curLpnArray.length; i++)
-			nextSetArray[i] = new LinkedList<State>();
-		
-		// Do firings of local LPN transition.
-		mddNode newResult = result.doLocalFirings(curLpnArray, curStateArray, nextSetArray, reachSet, nodeTbl);
-		
-		if(newResult == result)
-			return result;
-		this.remove(result);
-		return newResult;
-	}
-	
-	
+
+	/*
+	 * Return the MDD of the union of 'target' and the tuple idxArray. The reference of the caller to target
+	 * is moved to the result.
+	 */
+	public mddNode add(mddNode target, int[] idxArray) {
+		mddNode result = union(target, path(idxArray));
+		remove(target);
+		return result;
+	}
+
+	/*
+	 * Return the MDD with the single tuple idxArray.
+	 */
+	public mddNode path(int[] idxArray) {
+		mddNode result = terminal;
+		for (int level = height - 1; level >= 0; level--)
+			result = node(level, new int[] { idxArray[level] }, new mddNode[] { result });
+		return result;
+	}
+
+	/*
+	 * Take a reference to target.
+	 */
+	public void ref(mddNode target) {
+		if (target == null || target == terminal)
+			return;
+		if (target.refCount++ == 0)
+			deadNodes--;
+	}
+
+	/*
+	 * Give back a reference to target.
+	 */
 	public void remove(mddNode target) {
-		target.remove(nodeTbl);
-		if(target.refCount<=0)
-			nodeTbl[0].remove(target);
+		if (target == null || target == terminal)
+			return;
+		if (--target.refCount == 0) {
+			deadNodes++;
+			if (deadNodes > MIN_GC_NODES && 2 * deadNodes > nodeCount)
+				gc();
+		}
 	}
-	
+
+	/*
+	 * Free every node that has no reference. The levels are swept from the top, so the children of a
+	 * freed node are swept after it, and the operation cache is cleared.
+	 */
+	public void gc() {
+		for (int level = 0; level < height; level++) {
+			Iterator<mddNode> it = nodeTbl[level].keySet().iterator();
+			while (it.hasNext()) {
+				mddNode node = it.next();
+				if (node.refCount > 0)
+					continue;
+				it.remove();
+				nodeCount--;
+				for (mddNode child : node.children) {
+					if (child != terminal)
+						child.refCount--;
+				}
+			}
+		}
+		deadNodes = 0;
+		Arrays.fill(cacheLeft, null);
+		Arrays.fill(cacheRight, null);
+		Arrays.fill(cacheResult, null);
+	}
+
+	private void allocateCache(int size) {
+		cacheLeft = new mddNode[size];
+		cacheRight = new mddNode[size];
+		cacheResult = new mddNode[size];
+	}
+
+	/*
+	 * Return the set of states reachable from curStateArray by firing local transitions only. The set is
+	 * the whole local closure, so it may include states the search has reached before. The caller owns
+	 * a reference to the result.
+	 */
+	public mddNode doLocalFirings(StateGraph[] curLpnArray, State[] curStateArray) {
+		MddSaturation saturation = new MddSaturation(this, curLpnArray, curStateArray, true);
+		int[] idxArray = new int[curLpnArray.length];
+		for(int i = 0; i < curLpnArray.length; i++)
+			idxArray[i] = curLpnArray[i].addState(curStateArray[i]).getIndex();
+		mddNode result = saturation.saturate(path(idxArray));
+		ref(result);
+		return result;
+	}
+
 	/*
 	 * Check if there is a path in MDD that corresponds to stateArray. Return true if so.
 	 */
 	public static boolean contains(mddNode target, int[] idxArray) {
-		if(target == null)
-			return false;
-		return target.contains(idxArray)==Mdd.terminal;
+		mddNode curNode = target;
+		while (curNode != null && curNode.level < idxArray.length)
+			curNode = curNode.getSucc(idxArray[curNode.level]);
+		return curNode != null;
 	}
-	
+
+	/*
+	 * Return the first tuple of curNode in lexicographic order, or null if it is empty.
+	 */
 	public int[] next(mddNode curNode) {
 		if(curNode == null)
 			return null;
-		return curNode.next(height);
+		int[] result = new int[height];
+		first(curNode, result);
+		return result;
 	}
-	
+
+	/*
+	 * Return the tuple of curNode that follows curIdxArray in lexicographic order, or null if there is none.
+	 */
 	public int[] next(mddNode curNode, int[] curIdxArray) {
 		if(curIdxArray == null)
-			return curNode.next(height);
-		return curNode.next(height, curIdxArray);
+			return next(curNode);
+		if(curNode == null)
+			return null;
+		int[] result = new int[height];
+		return next(curNode, curIdxArray, result) ? result : null;
 	}
-	
+
+	private void first(mddNode curNode, int[] result) {
+		while (curNode != terminal) {
+			result[curNode.level] = curNode.values[0];
+			curNode = curNode.children[0];
+		}
+	}
+
+	private boolean next(mddNode curNode, int[] curIdxArray, int[] result) {
+		if (curNode == terminal)
+			return false;
+		int i = Arrays.binarySearch(curNode.values, curIdxArray[curNode.level]);
+		if (i >= 0) {
+			if (next(curNode.children[i], curIdxArray, result)) {
+				result[curNode.level] = curIdxArray[curNode.level];
+				return true;
+			}
+			i++;
+		}
+		else
+			i = -i - 1;
+		if (i == curNode.values.length)
+			return false;
+		result[curNode.level] = curNode.values[i];
+		first(curNode.children[i], result);
+		return true;
+	}
+
 	public static double numberOfStates(mddNode target) {
-		HashSet<mddNode> uniqueNodes = new HashSet<mddNode>();
-		double paths = target.pathCount(uniqueNodes);
+		if (target == null)
+			return 0;
+		return pathCount(target, new HashMap<mddNode, Double>());
+	}
+
+	private static double pathCount(mddNode curNode, HashMap<mddNode, Double> counts) {
+		if (curNode.values.length == 0)
+			return 1;
+		Double cached = counts.get(curNode);
+		if (cached != null)
+			return cached;
+		double paths = 0;
+		for (mddNode child : curNode.children)
+			paths += pathCount(child, counts);
+		counts.put(curNode, paths);
 		return paths;
 	}
-	
+
+	/*
+	 * Returns the number of nodes in the unique tables, including the ones that are not freed yet.
+	 */
 	public int nodeCnt() {
-		int curNodes = 0;
-		for(int i = 0; i < this.height; i++) 
-			curNodes += nodeTbl[i].size();
-		return curNodes;
+		return nodeCount;
 	}
-	
-	public HashMap<State, HashSet<State>>[] getLocalFiringTbl() {
-		return localFirings;
-	}
-	
+
 	/*
 	 * Returns the largest number of MDD nodes created when this MDD is live.
 	 */
 	public int peakNodeCnt() {
 		return peakNodes;
 	}
-	
+
 	public void check()
 	{
 		for(int i = 0; i < this.height; i++) {
-			Set entries = nodeTbl[i].entrySet();
-			Iterator it = entries.iterator();
-			while (it.hasNext()) {
-				Map.Entry entry = (Map.Entry) it.next();
-				mddNode tmp = (mddNode)entry.getKey();
+			for (mddNode tmp : nodeTbl[i].keySet())
 				System.out.println("nodeTbl@" + i + " >>> " + tmp + ": level = " + tmp.level + ", refCount = " + tmp.refCount);
-	    		  //+ ", " + tmp.nodeMapSize);
-			}
 		}
 	}
 }
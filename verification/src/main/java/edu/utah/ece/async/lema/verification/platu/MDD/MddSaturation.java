@@ -0,0 +1,345 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.MDD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.lpn.Transition;
+import edu.utah.ece.async.lema.verification.platu.common.IntTupleTable;
+import edu.utah.ece.async.lema.verification.platu.main.Options;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Computes the reachable global states of a set of state graphs as an
+ * {@link Mdd} with the saturation algorithm. The level of a module in the MDD
+ * is its LPN index and its values are local state indices. Every transition is
+ * an event that only reads and changes the levels of its own LPN and of the
+ * LPNs that read the variables it assigns, so it is applied at the highest of
+ * these levels, the top of the event. A node is saturated once its children
+ * are saturated and it is closed under the events with their top at its level.
+ * <p>
+ * The next-state function of an event is built while the search runs. The
+ * tuple of local states on the levels of the event is looked up in a table of
+ * the event, and on a miss the transition is fired by its state graph and the
+ * tuple of next local states is stored in the table. The levels that an event
+ * does not touch are kept as they are by its image.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class MddSaturation {
+
+	private final Mdd mddMgr;
+	private final StateGraph[] sgList;
+	private final int[] initIdxArray;
+	private final ArrayList<Event>[] eventsByTop;
+	private final HashMap<mddNode, mddNode> satCache;
+	private String failure;
+	private int tranFiringCnt;
+
+	/*
+	 * Next-state function of a transition on the local states of its levels.
+	 */
+	private static class Event {
+		final Transition tran;
+		final int[] levels;
+		final int lpnPos;
+		final IntTupleTable curTuples;
+		final ArrayList<int[]> nextTuples;
+
+		Event(Transition tran, int[] levels, int lpnPos) {
+			this.tran = tran;
+			this.levels = levels;
+			this.lpnPos = lpnPos;
+			this.curTuples = new IntTupleTable(levels.length, 64);
+			this.nextTuples = new ArrayList<int[]>();
+		}
+	}
+
+	/**
+	 * Creates the events of all transitions of the state graphs, or only of the
+	 * local transitions if localOnly is set. The destination LPNs of the
+	 * transitions must be known unless localOnly is set.
+	 */
+	@SuppressWarnings("unchecked")
+	public MddSaturation(Mdd mddMgr, StateGraph[] sgList, State[] initStateArray, boolean localOnly) {
+		this.mddMgr = mddMgr;
+		this.sgList = sgList;
+		this.initIdxArray = new int[sgList.length];
+		for (int i = 0; i < sgList.length; i++)
+			initIdxArray[i] = sgList[i].addState(initStateArray[i]).getIndex();
+		this.eventsByTop = new ArrayList[sgList.length];
+		for (int i = 0; i < sgList.length; i++)
+			eventsByTop[i] = new ArrayList<Event>();
+		for (int i = 0; i < sgList.length; i++) {
+			for (Transition tran : sgList[i].getLpn().getAllTransitions()) {
+				if (localOnly && !tran.isLocal())
+					continue;
+				int[] levels = new int[] { i };
+				if (!tran.isLocal()) {
+					for (LPN dstLpn : tran.getDstLpnList()) {
+						int dstIdx = dstLpn.getLpnIndex();
+						if (Arrays.binarySearch(levels, dstIdx) < 0) {
+							levels = Arrays.copyOf(levels, levels.length + 1);
+							levels[levels.length - 1] = dstIdx;
+							Arrays.sort(levels);
+						}
+					}
+				}
+				eventsByTop[levels[0]].add(new Event(tran, levels, Arrays.binarySearch(levels, i)));
+			}
+		}
+		this.satCache = new HashMap<mddNode, mddNode>();
+		this.failure = null;
+		this.tranFiringCnt = 0;
+	}
+
+	/**
+	 * Returns the set of states reachable from the states of root. Nodes are
+	 * not freed while the search runs, the caller takes a reference to the
+	 * result. If a failure is found, the search stops and the result only
+	 * holds the states reached so far.
+	 */
+	public mddNode saturate(mddNode root) {
+		return saturateNode(root);
+	}
+
+	private mddNode saturateNode(mddNode p) {
+		if (p == null || p == mddMgr.terminal)
+			return p;
+		mddNode cached = satCache.get(p);
+		if (cached != null)
+			return cached;
+		mddNode q = saturateChildren(p);
+		ArrayList<Event> events = eventsByTop[p.level];
+		boolean changed = !events.isEmpty();
+		while (changed && failure == null) {
+			changed = false;
+			for (Event event : events) {
+				mddNode img = saturateChildren(image(event, q));
+				mddNode newQ = mddMgr.unionRec(q, img);
+				if (newQ != q) {
+					q = newQ;
+					changed = true;
+				}
+				if (failure != null)
+					break;
+			}
+		}
+		satCache.put(p, q);
+		satCache.put(q, q);
+		return q;
+	}
+
+	/*
+	 * Return the node of p with saturated children.
+	 */
+	private mddNode saturateChildren(mddNode p) {
+		if (p == null || p == mddMgr.terminal)
+			return p;
+		mddNode[] children = new mddNode[p.children.length];
+		for (int i = 0; i < children.length; i++)
+			children[i] = saturateNode(p.children[i]);
+		return mddMgr.node(p.level, p.values, children);
+	}
+
+	/*
+	 * Return the states reached by firing the event once from the states of q, where q is at the top level
+	 * of the event.
+	 */
+	private mddNode image(Event event, mddNode q) {
+		mddNode result = null;
+		ArrayList<int[]> curTuples = tuples(event, q, 0, new HashMap<mddNode, ArrayList<int[]>>());
+		for (int[] curTuple : curTuples) {
+			int[] nextTuple = nextTuple(event, curTuple);
+			if (failure != null)
+				return result;
+			if (nextTuple == null)
+				continue;
+			mddNode next = replace(event, q, 0, curTuple, nextTuple, new HashMap<mddNode, mddNode>());
+			result = mddMgr.unionRec(result, next);
+		}
+		return result;
+	}
+
+	/*
+	 * Return the tuples of local states that the paths of node have on the levels of the event, starting
+	 * with the level at position pos.
+	 */
+	private ArrayList<int[]> tuples(Event event, mddNode node, int pos, HashMap<mddNode, ArrayList<int[]>> memo) {
+		ArrayList<int[]> result = memo.get(node);
+		if (result != null)
+			return result;
+		result = new ArrayList<int[]>();
+		int length = event.levels.length - pos;
+		if (node.level == event.levels[pos]) {
+			for (int i = 0; i < node.values.length; i++) {
+				if (pos == event.levels.length - 1) {
+					result.add(new int[] { node.values[i] });
+					continue;
+				}
+				for (int[] suffix : tuples(event, node.children[i], pos + 1, memo)) {
+					int[] tuple = new int[length];
+					tuple[0] = node.values[i];
+					System.arraycopy(suffix, 0, tuple, 1, length - 1);
+					result.add(tuple);
+				}
+			}
+		}
+		else {
+			// A level that the event does not touch, so the tuples of the children are merged.
+			IntTupleTable seen = new IntTupleTable(length, 16);
+			for (mddNode child : node.children) {
+				for (int[] tuple : tuples(event, child, pos, memo)) {
+					if (seen.add(tuple) == 1)
+						result.add(tuple);
+				}
+			}
+		}
+		memo.put(node, result);
+		return result;
+	}
+
+	/*
+	 * Return the paths of node with curTuple on the levels of the event from position pos on, where the
+	 * local states of the event are replaced by nextTuple.
+	 */
+	private mddNode replace(Event event, mddNode node, int pos, int[] curTuple, int[] nextTuple,
+			HashMap<mddNode, mddNode> memo) {
+		if (memo.containsKey(node))
+			return memo.get(node);
+		mddNode result;
+		if (node.level == event.levels[pos]) {
+			mddNode child = node.getSucc(curTuple[pos]);
+			if (child != null && pos < event.levels.length - 1)
+				child = replace(event, child, pos + 1, curTuple, nextTuple, memo);
+			result = child == null ? null
+					: mddMgr.node(node.level, new int[] { nextTuple[pos] }, new mddNode[] { child });
+		}
+		else {
+			int[] values = new int[node.values.length];
+			mddNode[] children = new mddNode[node.values.length];
+			int size = 0;
+			for (int i = 0; i < node.values.length; i++) {
+				mddNode child = replace(event, node.children[i], pos, curTuple, nextTuple, memo);
+				if (child != null) {
+					values[size] = node.values[i];
+					children[size++] = child;
+				}
+			}
+			result = mddMgr.node(node.level, Arrays.copyOf(values, size), Arrays.copyOf(children, size));
+		}
+		memo.put(node, result);
+		return result;
+	}
+
+	/*
+	 * Return the local states on the levels of the event after firing it from curTuple, or null if it is
+	 * not enabled there.
+	 */
+	private int[] nextTuple(Event event, int[] curTuple) {
+		int id = event.curTuples.indexOf(curTuple);
+		if (id >= 0)
+			return event.nextTuples.get(id);
+		int lpnIdx = event.levels[event.lpnPos];
+		StateGraph sg = sgList[lpnIdx];
+		State curState = sg.getState(curTuple[event.lpnPos]);
+		LinkedList<Transition> curEnabled = sg.getEnabled(curState);
+		int[] nextTuple = null;
+		if (curEnabled.contains(event.tran)) {
+			if (event.tran.isFail()) {
+				failure = "*** Verification failed: failure transition " + event.tran.getFullLabel() + " is enabled.";
+				return null;
+			}
+			int[] curIdxArray = initIdxArray.clone();
+			for (int i = 0; i < event.levels.length; i++)
+				curIdxArray[event.levels[i]] = curTuple[i];
+			State[] nextStateArray = sg.fire(sgList, curIdxArray, event.tran);
+			tranFiringCnt++;
+			nextTuple = new int[event.levels.length];
+			for (int i = 0; i < event.levels.length; i++) {
+				int level = event.levels[i];
+				nextTuple[i] = nextStateArray[level].getIndex();
+				if (Options.getReportDisablingError() && !Options.getMarkovianModelFlag()
+						&& nextTuple[i] != curTuple[i]) {
+					Transition disabledTran = event.tran.disablingError(
+							sgList[level].getEnabled(sgList[level].getState(curTuple[i])),
+							sgList[level].getEnabled(nextStateArray[level]));
+					if (disabledTran != null) {
+						failure = "*** Verification failed: disabling error: " + disabledTran.getFullLabel()
+								+ " is disabled by " + event.tran.getFullLabel() + ".";
+						return null;
+					}
+				}
+			}
+		}
+		event.curTuples.put(curTuple);
+		event.nextTuples.add(nextTuple);
+		return nextTuple;
+	}
+
+	/**
+	 * Returns true if a state of reached enables no transition.
+	 */
+	public boolean hasDeadlock(mddNode reached) {
+		if (reached == null)
+			return false;
+		@SuppressWarnings("unchecked")
+		HashMap<Integer, Boolean>[] deadStates = new HashMap[sgList.length];
+		for (int i = 0; i < sgList.length; i++)
+			deadStates[i] = new HashMap<Integer, Boolean>();
+		return hasDeadlock(reached, deadStates, new HashMap<mddNode, Boolean>());
+	}
+
+	private boolean hasDeadlock(mddNode node, HashMap<Integer, Boolean>[] deadStates, HashMap<mddNode, Boolean> memo) {
+		if (node == mddMgr.terminal)
+			return true;
+		Boolean cached = memo.get(node);
+		if (cached != null)
+			return cached;
+		boolean deadlock = false;
+		for (int i = 0; i < node.values.length && !deadlock; i++) {
+			Boolean dead = deadStates[node.level].get(node.values[i]);
+			if (dead == null) {
+				dead = sgList[node.level].getEnabled(node.values[i]).isEmpty();
+				deadStates[node.level].put(node.values[i], dead);
+			}
+			deadlock = dead && hasDeadlock(node.children[i], deadStates, memo);
+		}
+		memo.put(node, deadlock);
+		return deadlock;
+	}
+
+	/**
+	 * Returns the message of the failure found by the search, or null.
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Returns the number of transition firings, which is the number of
+	 * distinct local state tuples the events were fired from.
+	 */
+	public int getFiringCount() {
+		return tranFiringCnt;
+	}
+}
@@ -13,6 +13,7 @@
  *******************************************************************************/
 package edu.utah.ece.async.lema.verification.platu.common;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 import edu.utah.ece.async.lema.verification.platu.common.PlatuObj;
@@ -30,12 +31,12 @@ public class IndexObjMap<T extends PlatuObj> {
 	protected HashMap<T, T> uniqueObjTbl;
 	// TODO: (temp) str2ObjTbl is not used. 
 //	protected HashMap<String, T> str2ObjTbl;
-	protected HashMap<Integer, T> idx2ObjTbl;
+	protected ArrayList<T> idx2ObjTbl;
 	
 	public IndexObjMap() {
 		uniqueObjTbl = new HashMap<T, T>();
 //		str2ObjTbl = new HashMap<String, T>();
-		idx2ObjTbl = new HashMap<Integer, T>();
+		idx2ObjTbl = new ArrayList<T>();
 	}
 
 	public T add(T obj) {
@@ -61,7 +62,7 @@ public class IndexObjMap<T extends PlatuObj> {
 			e.printStackTrace();
 		}
 		obj.setIndex(idx);
-		this.idx2ObjTbl.put(idx, obj);
+		this.idx2ObjTbl.add(obj);
 		return obj;
 	}
 	
@@ -69,7 +70,9 @@ public class IndexObjMap<T extends PlatuObj> {
 //		return this.str2ObjTbl.get(label);
 //	}
 	
-	public T get(Integer index) {
+	public T get(int index) {
+		if (index < 0 || index >= this.idx2ObjTbl.size())
+			return null;
 		return this.idx2ObjTbl.get(index);
 	}
 	
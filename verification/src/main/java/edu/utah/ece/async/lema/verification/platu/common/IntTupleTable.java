@@ -0,0 +1,191 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.common;
+
+import java.util.Arrays;
+
+/**
+ * A set of integer tuples of a fixed length. The tuples are packed one after the
+ * other into a single int array and are identified by their position in it, so
+ * the i-th tuple added gets the id i. Lookups use an open-addressing hash table
+ * with linear probing whose slots hold tuple ids, so no object is allocated per
+ * tuple.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IntTupleTable extends SetIntTuple {
+
+	private static final int EMPTY = -1;
+
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private final int tupleLength;
+
+	private int[] tuples;
+
+	private int[] slots;
+
+	private int mask;
+
+	private int size;
+
+	public IntTupleTable(int tupleLength) {
+		this(tupleLength, 1024);
+	}
+
+	public IntTupleTable(int tupleLength, int initialCapacity) {
+		this.tupleLength = tupleLength;
+		int capacity = 16;
+		while (capacity < 2 * initialCapacity && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, EMPTY);
+		this.mask = capacity - 1;
+		this.tuples = new int[Math.max(1, initialCapacity * tupleLength)];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds the tuple and returns 1 if it was not in the table yet, 0 otherwise.
+	 */
+	@Override
+	public int add(int[] IntArray) {
+		int oldSize = this.size;
+		put(IntArray);
+		return this.size > oldSize ? 1 : 0;
+	}
+
+	/**
+	 * Adds the tuple if it is not in the table yet and returns its id.
+	 */
+	public int put(int[] IntArray) {
+		int slot = findSlot(IntArray);
+		if (this.slots[slot] != EMPTY)
+			return this.slots[slot];
+		int id = this.size;
+		ensureTupleCapacity((long) (id + 1) * this.tupleLength);
+		System.arraycopy(IntArray, 0, this.tuples, id * this.tupleLength, this.tupleLength);
+		this.slots[slot] = id;
+		this.size++;
+		// Keep the load factor at or below one half.
+		if (2 * this.size > this.slots.length)
+			rehash();
+		return id;
+	}
+
+	/**
+	 * Returns the id of the tuple, or -1 if it is not in the table.
+	 */
+	public int indexOf(int[] IntArray) {
+		return this.slots[findSlot(IntArray)];
+	}
+
+	@Override
+	public boolean contains(int[] IntArray) {
+		return indexOf(IntArray) != EMPTY;
+	}
+
+	/**
+	 * Copies the tuple with the given id into IntArray.
+	 */
+	public void get(int id, int[] IntArray) {
+		System.arraycopy(this.tuples, id * this.tupleLength, IntArray, 0, this.tupleLength);
+	}
+
+	/**
+	 * Returns the element at the given position of the tuple with the given id.
+	 */
+	public int get(int id, int position) {
+		return this.tuples[id * this.tupleLength + position];
+	}
+
+	public int getTupleLength() {
+		return this.tupleLength;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public String stats() {
+		long bytes = 4L * this.tuples.length + 4L * this.slots.length;
+		return "States in state table: " + this.size + ", table memory: " + (bytes / 1000000) + " MB";
+	}
+
+	private int findSlot(int[] IntArray) {
+		int slot = hash(IntArray, 0) & this.mask;
+		while (this.slots[slot] != EMPTY && !matches(this.slots[slot], IntArray)) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	private boolean matches(int id, int[] IntArray) {
+		int offset = id * this.tupleLength;
+		for (int i = 0; i < this.tupleLength; i++) {
+			if (this.tuples[offset + i] != IntArray[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Hashes tupleLength values of source starting at offset. The values are
+	 * combined and then mixed with the MurmurHash3 finalizer, so tuples that
+	 * differ in a single low bit still spread over the whole table.
+	 */
+	private int hash(int[] source, int offset) {
+		int h = 0;
+		for (int i = 0; i < this.tupleLength; i++) {
+			h = 31 * h + source[offset + i];
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private void rehash() {
+		if (this.slots.length >= (1 << 30))
+			throw new IllegalStateException("State table is full: " + this.size + " states.");
+		int capacity = this.slots.length << 1;
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, EMPTY);
+		this.mask = capacity - 1;
+		for (int id = 0; id < this.size; id++) {
+			int slot = hash(this.tuples, id * this.tupleLength) & this.mask;
+			while (this.slots[slot] != EMPTY) {
+				slot = (slot + 1) & this.mask;
+			}
+			this.slots[slot] = id;
+		}
+	}
+
+	private void ensureTupleCapacity(long length) {
+		if (length <= this.tuples.length)
+			return;
+		if (length > MAX_ARRAY_SIZE)
+			throw new IllegalStateException("State table is full: " + this.size + " states.");
+		long capacity = Math.min(MAX_ARRAY_SIZE, Math.max(length, 2L * this.tuples.length));
+		this.tuples = Arrays.copyOf(this.tuples, (int) capacity);
+	}
+}
@@ -17,7 +17,6 @@ package edu.utah.ece.async.lema.verification.platu.common;
 import java.util.*;
 
 import edu.utah.ece.async.lema.verification.platu.MDD.*;
-import edu.utah.ece.async.lema.verification.platu.main.Options;
 
 /**
  * 
@@ -31,70 +30,24 @@ public class MddTable extends SetIntTuple {
 
 	protected Mdd mddMgr = null;
 	mddNode ReachSet;
-	mddNode buffer;
 
-	long nextMemUpBound;
 	int Size;
-	static boolean UseBuffer = true;
-	static boolean MDDBUF_MODE = true;
-	static int gcIntervalMin = 0;
 
 	public MddTable(int TupleLength) {
 		mddMgr = new Mdd(TupleLength*4);
 		this.ReachSet = null;
-		if (UseBuffer == true)
-			this.buffer = Mdd.newNode();
-		else
-			this.buffer = null;
-
-		nextMemUpBound = 500000000;
 		this.Size = 0;
-		MddTable.MDDBUF_MODE = Options.getStateFormat() == "mddbuf";
 	}
 
+	/*
+	 * The nodes of the MDD are shared and freed by its reference counts, so the tuples are added to
+	 * the reached set directly.
+	 */
 	@Override
 	public int add(int[] IntArray) {	
-		long curUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-
 		//int[] byteVec = toByteArray(IntArray);
 		int[] byteVec = MddTable.encode(IntArray);
-		
-		if(MddTable.UseBuffer == true && MddTable.MDDBUF_MODE==true) {
-			mddMgr.add(this.buffer, byteVec, false);
-			
-			boolean overThreshold = (Options.getMemUpperBound() - curUsedMem / 1000000) < 200;
-			if (overThreshold) {
-				mddMgr.compress(this.buffer);
-				if (this.ReachSet == null) 
-					this.ReachSet = this.buffer;
-				else {
-					mddNode newReachSet = mddMgr.union(this.ReachSet, this.buffer);
-					if (newReachSet != this.ReachSet) {
-						mddMgr.remove(this.ReachSet);
-						this.ReachSet = newReachSet;
-					}	
-					
-					if (newReachSet != this.ReachSet) {
-						mddMgr.remove(this.ReachSet);
-						this.ReachSet = newReachSet;
-					}
-				}
-				mddMgr.remove(this.buffer);
-				this.buffer = Mdd.newNode();
-				Runtime.getRuntime().gc();
-				MddTable.UseBuffer = false;
-				System.out.println("*** stop buffering");
-			}
-		}
-		else {
-			if(this.ReachSet==null)
-				this.ReachSet = Mdd.newNode();
-			mddMgr.add(this.ReachSet, byteVec, true);
-			if((Options.getMemUpperBound() - curUsedMem / 1000000) > 400) 
-				MddTable.UseBuffer = true;
-			
-		}
-			
+		this.ReachSet = mddMgr.add(this.ReachSet, byteVec);
 		this.Size++;
 		return  0;
 	}
@@ -104,14 +57,7 @@ public class MddTable extends SetIntTuple {
 		//int[] byteVec = toByteArray(IntArray);
 		int[] byteVec = MddTable.encode(IntArray);
 
-		boolean existing = Mdd.contains(this.ReachSet, byteVec);
-		if (existing == true)
-			return true;
-
-		if (this.buffer != null)
-			return Mdd.contains(this.buffer, byteVec);
-
-		return false;
+		return Mdd.contains(this.ReachSet, byteVec);
 	}
 
 	@Override
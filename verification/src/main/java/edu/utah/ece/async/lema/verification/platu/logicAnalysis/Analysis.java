@@ -17,6 +17,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +28,13 @@ import java.util.List;
 import java.util.Observable;
 import java.util.PriorityQueue;
 import java.util.Stack;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import edu.utah.ece.async.ibiosim.dataModels.util.Message;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
@@ -36,8 +44,10 @@ import edu.utah.ece.async.lema.verification.lpn.LPN;
 import edu.utah.ece.async.lema.verification.lpn.Place;
 import edu.utah.ece.async.lema.verification.lpn.Transition;
 import edu.utah.ece.async.lema.verification.lpn.LpnDecomposition.LpnProcess;
+import edu.utah.ece.async.lema.verification.platu.BDD.BddReachability;
 import edu.utah.ece.async.lema.verification.platu.MDD.MDT;
 import edu.utah.ece.async.lema.verification.platu.MDD.Mdd;
+import edu.utah.ece.async.lema.verification.platu.MDD.MddSaturation;
 import edu.utah.ece.async.lema.verification.platu.MDD.mddNode;
 import edu.utah.ece.async.lema.verification.platu.common.IndexObjMap;
 import edu.utah.ece.async.lema.verification.platu.main.Options;
@@ -240,7 +250,7 @@ public class Analysis extends CoreObservable{
 		// Set of PrjStates that have been seen before. Set class documentation
 		// for how it behaves. Timing Change.
 //		HashMap<PrjState, PrjState> prjStateSet = generateStateSet();
-		StateSetInterface prjStateSet = generateStateSet();
+		StateSetInterface prjStateSet = generateStateSet(sgList);
 		
 		PrjState initPrjState;		
 		// Create the appropriate type for the PrjState depending on whether timing is 
@@ -589,6 +599,12 @@ public class Analysis extends CoreObservable{
 			+ ", max_stack_depth: " + max_stack_depth 
 			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
 			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		if (prjStateSet instanceof DiskStateSet)
+			System.out.println("---> disk state set: " + ((DiskStateSet) prjStateSet).stats());
+		else if (prjStateSet instanceof BitStateSet)
+			System.out.println("---> approximate search, bitstate: " + ((BitStateSet) prjStateSet).stats());
+		else if (prjStateSet instanceof HashCompactStateSet)
+			System.out.println("---> approximate search, hash compaction: " + ((HashCompactStateSet) prjStateSet).stats());
 		if(Options.getTimingAnalysisFlag()){// && !failure){
 			if(!failure){
 				if(Options.get_displayResults()){
@@ -665,6 +681,227 @@ public class Analysis extends CoreObservable{
 //		//---------------		
 		return prjStateSet;
 	}
+
+	/**
+	 * Explores the untimed global state space like {@link #search_dfs(StateGraph[], State[])}, but with
+	 * Options.getThreadCount() threads. Every thread expands global states from its own work queue by firing
+	 * their enabled transitions with StateGraph.fire, and idle threads steal states from the queues of the
+	 * others. Reached states are kept in a {@link ConcurrentIndexedStateSet}. The same failure transition,
+	 * disabling error and deadlock checks as in search_dfs are made on every state and firing, and the search
+	 * stops at the first failure found by any thread. No global state graph is built.
+	 */
+	public StateSetInterface search_parallel(final StateGraph[] sgList, final State[] initStateArray) {
+		System.out.println("-------- Reachability Analysis ---------");
+		System.out.println("---> calling function search_parallel with " + Options.getThreadCount() + " threads");
+		double peakUsedMem = 0;
+		double peakTotalMem = 0;
+		constructDstLpnList(sgList);
+		if (Options.getDebugMode())
+			printDstLpnList(sgList);
+		ParallelSearch search = new ParallelSearch(sgList, Options.getThreadCount());
+		search.start(initStateArray);
+		int samples = 0;
+		while (!search.awaitTermination(100)) {
+			long curTotalMem = Runtime.getRuntime().totalMemory();
+			long curUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+			if (curTotalMem > peakTotalMem)
+				peakTotalMem = curTotalMem;
+			if (curUsedMem > peakUsedMem)
+				peakUsedMem = curUsedMem;
+			samples++;
+			if (samples % 100 == 0) {
+				System.out.println("---> # LPN transition firings: " + search.getTranFiringCnt()
+						+ ", # of prjStates found: " + search.getStateSet().size()
+						+ " used memory: " + (float) curUsedMem / 1000000
+						+ " free memory: "
+						+ (float) Runtime.getRuntime().freeMemory() / 1000000);
+			}
+		}
+		search.shutdown();
+		long tranFiringCnt = search.getTranFiringCnt();
+		double totalStateCnt = search.getStateSet().size();
+		System.out.println("---> final numbers: # LPN transition firings: "	+ tranFiringCnt 
+			+ ", # of prjStates found: " + totalStateCnt
+			+ ", # of threads: " + Options.getThreadCount()
+			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
+			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		if (Options.getOutputLogFlag()) 
+			writePerformanceResultsToLogFile(false, (int) tranFiringCnt, totalStateCnt, peakTotalMem / 1000000, peakUsedMem / 1000000);
+		return search.getStateSet();
+	}
+
+	/**
+	 * Shared state of a parallel reachability analysis. The number of pending expansion tasks is counted
+	 * so the end of the search can be detected without letting the waiting thread run tasks itself.
+	 */
+	private static class ParallelSearch {
+		
+		private final StateGraph[] sgList;
+		
+		private final ConcurrentIndexedStateSet stateSet;
+		
+		private final ForkJoinPool pool;
+		
+		private final AtomicLong pendingTasks = new AtomicLong();
+		
+		private final CountDownLatch done = new CountDownLatch(1);
+		
+		private final LongAdder tranFiringCnt = new LongAdder();
+		
+		private final AtomicReference<String> failure = new AtomicReference<String>();
+		
+		private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		private boolean interrupted = false;
+		
+		ParallelSearch(StateGraph[] sgList, int threadCount) {
+			this.sgList = sgList;
+			this.stateSet = new ConcurrentIndexedStateSet(sgList, threadCount);
+			this.pool = new ForkJoinPool(threadCount);
+		}
+		
+		void start(State[] initStateArray) {
+			stateSet.add(initStateArray);
+			pendingTasks.incrementAndGet();
+			pool.execute(new ExpandTask(this, initStateArray));
+		}
+		
+		boolean awaitTermination(long millis) {
+			try {
+				return done.await(millis, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				// Stop the tasks and keep waiting for them to return.
+				interrupted = true;
+				fail("*** Verification was interrupted.", System.out);
+				return false;
+			}
+		}
+		
+		void shutdown() {
+			pool.shutdownNow();
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			Throwable cause = error.get();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			if (cause != null)
+				throw new IllegalStateException(cause);
+		}
+		
+		/**
+		 * Records the first failure found and prints it. Failures found later by other threads are dropped.
+		 */
+		void fail(String message, PrintStream out) {
+			if (failure.compareAndSet(null, message))
+				out.println(message);
+		}
+		
+		boolean isStopped() {
+			return failure.get() != null || error.get() != null;
+		}
+		
+		void fork(State[] stateArray) {
+			pendingTasks.incrementAndGet();
+			new ExpandTask(this, stateArray).fork();
+		}
+		
+		void taskDone() {
+			if (pendingTasks.decrementAndGet() == 0)
+				done.countDown();
+		}
+		
+		/**
+		 * Fires every enabled transition of the given global state and returns one of the new global states
+		 * found, which the calling task expands next. The other new states are forked as tasks of their own.
+		 * Returns null if no new state was found or a failure was detected.
+		 */
+		State[] expand(State[] curStateArray) {
+			int numLpns = sgList.length;
+			List<LinkedList<Transition>> curEnabledArray = new ArrayList<LinkedList<Transition>>(numLpns);
+			for (int i = 0; i < numLpns; i++) {
+				LinkedList<Transition> curEnabled = StateGraph.getEnabledFromTranVector(curStateArray[i]);
+				Transition firedFailure = failureTranIsEnabled(curEnabled);
+				if (firedFailure != null) {
+					fail("*** Verification failed: failure transition " + firedFailure.getFullLabel() 
+							+ " is enabled.", System.out);
+					return null;
+				}
+				curEnabledArray.add(curEnabled);
+			}
+			State[] continueWith = null;
+			for (int i = 0; i < numLpns; i++) {
+				for (Transition firedTran : curEnabledArray.get(i)) {
+					if (isStopped())
+						return null;
+					State[] nextStateArray = sgList[i].fire(sgList, curStateArray, firedTran);
+					tranFiringCnt.increment();
+					if (Options.getReportDisablingError() && !Options.getMarkovianModelFlag()) {
+						for (int j = 0; j < numLpns; j++) {
+							Transition disabledTran = firedTran.disablingError(curEnabledArray.get(j),
+									StateGraph.getEnabledFromTranVector(nextStateArray[j]));
+							if (disabledTran != null) {
+								fail("Disabling Error: " + disabledTran.getFullLabel() + " is disabled by " 
+										+ firedTran.getFullLabel(), System.err);
+								return null;
+							}
+						}
+					}
+					if (Analysis.deadLock(sgList, nextStateArray)) {
+						fail("*** Verification failed: deadlock.", System.out);
+						return null;
+					}
+					if (stateSet.add(nextStateArray)) {
+						if (continueWith == null)
+							continueWith = nextStateArray;
+						else
+							fork(nextStateArray);
+					}
+				}
+			}
+			return continueWith;
+		}
+		
+		long getTranFiringCnt() {
+			return tranFiringCnt.sum();
+		}
+		
+		ConcurrentIndexedStateSet getStateSet() {
+			return stateSet;
+		}
+	}
+	
+	private static class ExpandTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ParallelSearch search;
+		
+		private final State[] stateArray;
+		
+		ExpandTask(ParallelSearch search, State[] stateArray) {
+			this.search = search;
+			this.stateArray = stateArray;
+		}
+		
+		@Override
+		protected void compute() {
+			try {
+				State[] curStateArray = stateArray;
+				while (curStateArray != null && !search.isStopped()) {
+					curStateArray = search.expand(curStateArray);
+				}
+			}
+			catch (Throwable e) {
+				search.error.compareAndSet(null, e);
+			}
+			finally {
+				search.taskDone();
+			}
+		}
+	}
 	
 //	private boolean failureCheck(LinkedList<Transition> curEnabled) {
 //		boolean failureTranIsEnabled = false;
@@ -707,10 +944,11 @@ public class Analysis extends CoreObservable{
 	 * Generates the appropriate version of a HashSet<PrjState> for storing
 	 * the "already seen" set of project states.
 	 * @return
-	 * 		Returns a HashSet<PrjState>, a StateSet, or a ProbGlobalStateSet
+	 * 		Returns a HashSet<PrjState>, a StateSet, a ProbGlobalStateSet, an IndexedStateSet, a DiskStateSet,
+	 * 				a BitStateSet, or a HashCompactStateSet
 	 * 				depending on the type.
 	 */
-	private static StateSetInterface generateStateSet(){
+	private static StateSetInterface generateStateSet(StateGraph[] sgList){
 		
 		boolean timed = Options.getTimingAnalysisFlag();
 		boolean subsets = Zone.getSubsetFlag();
@@ -722,6 +960,22 @@ public class Analysis extends CoreObservable{
 		else if(timed && (subsets || supersets)){
 			return new TimedStateSet();
 		}
+		else if(!timed && !Options.getOutputSgFlag() && Options.getStateFormat().equals("disk")){
+			// The states that do not fit in memory are kept in files.
+			return new DiskStateSet(sgList, new File(Options.getDiskStateDir()), Options.getDiskBufferSize());
+		}
+		else if(!timed && !Options.getOutputSgFlag() && Options.getStateFormat().equals("bitstate")){
+			// Only bits of the states are kept, so some states may be missed.
+			return new BitStateSet(sgList, Options.getBitstateBits(), Options.getBitstateHashes());
+		}
+		else if(!timed && !Options.getOutputSgFlag() && Options.getStateFormat().equals("hashcompact")){
+			// Only fingerprints of the states are kept, so some states may be missed.
+			return new HashCompactStateSet(sgList);
+		}
+		else if(!timed && !Options.getOutputSgFlag()){
+			// Untimed global states are identified by the indices of their local states. 
+			return new IndexedStateSet(sgList);
+		}
 		
 		return new HashSetWrapper();
 	}
@@ -1463,7 +1717,7 @@ public class Analysis extends CoreObservable{
 				
 		HashSet<PrjState> stateStack = new HashSet<PrjState>();
 		Stack<LinkedList<Transition>> lpnTranStack = new Stack<LinkedList<Transition>>();
-		StateSetInterface prjStateSet = generateStateSet();
+		StateSetInterface prjStateSet = generateStateSet(sgList);
 		PrjState initPrjState;
 		// Create the appropriate type for the PrjState depending on whether timing is 
 		// being used or not. 
@@ -3216,9 +3470,6 @@ public class Analysis extends CoreObservable{
 		long peakUsedMem = 0;
 		long peakTotalMem = 0;
 		long peakMddNodeCnt = 0;
-		int memUpBound = 500; // Set an upper bound of memory in MB usage to
-								// trigger MDD compression.
-		boolean compressed = false;
 		boolean failure = false;
 		int tranFiringCnt = 0;
 		int totalStates = 1;
@@ -3229,19 +3480,16 @@ public class Analysis extends CoreObservable{
 		Stack<LinkedList<Transition>> lpnTranStack = new Stack<LinkedList<Transition>>();
 		Stack<Integer> curIndexStack = new Stack<Integer>();
 
-		mddNode reachAll = null;
-		mddNode reach = Mdd.newNode();
+		mddNode reach = null;
 		
 		int[] localIdxArray = Analysis.getLocalStateIdxArray(lpnList, initStateArray, true);
-		mddMgr.add(reach, localIdxArray, compressed);
+		reach = mddMgr.add(reach, localIdxArray);
 		
 		stateStack.push(initStateArray);
 		LpnTranList initEnabled = lpnList[0].getEnabled(initStateArray[0]);
 		lpnTranStack.push(initEnabled.clone());
 		curIndexStack.push(0);
 		
-		int numMddCompression = 0;
-		
 		main_while_loop: while (failure == false && stateStack.empty() == false) {
 
 			long curTotalMem = Runtime.getRuntime().totalMemory();
@@ -3269,25 +3517,6 @@ public class Analysis extends CoreObservable{
 						+ " used memory: " + (float) curUsedMem / 1000000
 						+ " free memory: "
 						+ (float) Runtime.getRuntime().freeMemory() / 1000000);
-
-					if (curUsedMem >= memUpBound * 1000000) {
-						mddMgr.compress(reach);
-						numMddCompression++;
-						if (reachAll == null)
-							reachAll = reach;
-						else {
-							mddNode newReachAll = mddMgr.union(reachAll, reach);
-							if (newReachAll != reachAll) {
-								mddMgr.remove(reachAll);
-								reachAll = newReachAll;
-							}
-						}
-						mddMgr.remove(reach);
-						reach = Mdd.newNode();
-
-						if(memUpBound < 1500)
-							memUpBound *= numMddCompression;
-					}
 			}
 
 			State[] curStateArray = stateStack.peek();
@@ -3363,14 +3592,8 @@ public class Analysis extends CoreObservable{
 			 */
 			localIdxArray = Analysis.getLocalStateIdxArray(lpnList, nextStateArray, true);
 
-			Boolean existingState = false;
-			if (reachAll != null && Mdd.contains(reachAll, localIdxArray) == true)
-				existingState = true;
-			else if (Mdd.contains(reach, localIdxArray) == true)
-				existingState = true;
-			
-			if (existingState == false) {
-				mddMgr.add(reach, localIdxArray, compressed);
+			if (Mdd.contains(reach, localIdxArray) == false) {
+				reach = mddMgr.add(reach, localIdxArray);
 				//newStateCnt++;
 				stateStack.push(nextStateArray);
 				lpnTranStack.push((LpnTranList) nextEnabledArray.get(0).clone());
@@ -3380,6 +3603,7 @@ public class Analysis extends CoreObservable{
 		}
 
 		double totalStateCnt = Mdd.numberOfStates(reach);
+		peakMddNodeCnt = mddMgr.peakNodeCnt();
 		
 		System.out.println("---> run statistics: \n"
 				+ "# LPN transition firings: "	+ tranFiringCnt + "\n" 
@@ -3415,8 +3639,6 @@ public class Analysis extends CoreObservable{
 		long peakUsedMem = 0;
 		long peakTotalMem = 0;
 		long peakMddNodeCnt = 0;
-		int memUpBound = 1000; // Set an upper bound of memory in MB usage to
-								// trigger MDD compression.
 		boolean failure = false;
 
 		MDT state2Explore = new MDT(arraySize);
@@ -3427,9 +3649,7 @@ public class Analysis extends CoreObservable{
 		Stack<Integer> searchDepth = new Stack<Integer>();
 		searchDepth.push(1);
 		
-		boolean compressed = false;
-		mddNode reachAll = null;
-		mddNode reach = Mdd.newNode();
+		mddNode reach = null;
 
 		main_while_loop: 
 		while (failure == false	&& state2Explore.empty() == false) {
@@ -3458,21 +3678,6 @@ public class Analysis extends CoreObservable{
 						+ " used memory: " + (float) curUsedMem / 1000000
 						+ " free memory: "
 						+ (float) Runtime.getRuntime().freeMemory() / 1000000);
-
-				if (curUsedMem >= memUpBound * 1000000) {
-					mddMgr.compress(reach);
-					if (reachAll == null)
-						reachAll = reach;
-					else {
-						mddNode newReachAll = mddMgr.union(reachAll, reach);
-						if (newReachAll != reachAll) {
-							mddMgr.remove(reachAll);
-							reachAll = newReachAll;
-						}
-					}
-					mddMgr.remove(reach);
-					reach = Mdd.newNode();
-				}
 			}
 			
 			State[] curStateArray = state2Explore.pop();
@@ -3483,7 +3688,7 @@ public class Analysis extends CoreObservable{
 				searchDepth.push(states2ExploreCurLevel-1);
 			
 			int[] localIdxArray = Analysis.getLocalStateIdxArray(lpnList, curStateArray, false);
-			mddMgr.add(reach, localIdxArray, compressed);
+			reach = mddMgr.add(reach, localIdxArray);
 					
 			int nextStates2Explore = 0;
 			for (int index = arraySize - 1; index >= 0; index--) {
@@ -3528,16 +3733,13 @@ public class Analysis extends CoreObservable{
 					localIdxArray = Analysis.getLocalStateIdxArray(lpnList, nextStateArray, false);
 
 					Boolean existingState = false;
-					if (reachAll != null && Mdd.contains(reachAll, localIdxArray) == true)
-						existingState = true;
-					else if (Mdd.contains(reach, localIdxArray) == true)
+					if (Mdd.contains(reach, localIdxArray) == true)
 						existingState = true;
 					else if(state2Explore.contains(nextStateArray)==true)
 						existingState = true;
 
 					if (existingState == false) {
 						totalStates++;
-						//mddMgr.add(reach, localIdxArray, compressed);
 						state2Explore.push(nextStateArray);
 						nextStates2Explore++;
 					}
@@ -3546,6 +3748,7 @@ public class Analysis extends CoreObservable{
 			if(nextStates2Explore > 0)
 				searchDepth.push(nextStates2Explore);
 		}
+		peakMddNodeCnt = mddMgr.peakNodeCnt();
 
 		System.out.println("-------------------------------------\n"
 						+ "---> run statistics: \n"
@@ -3561,6 +3764,96 @@ public class Analysis extends CoreObservable{
 		return null;
 	}
 
+	/**
+	 * Explores the untimed global state space symbolically with the saturation algorithm. Global states are
+	 * tuples of local state indices kept in the MDD of this analysis, and every transition is fired on the
+	 * levels of its own LPN and of its destination LPNs only. The search stops at the first enabled failure
+	 * transition or disabling error, and the reached states are checked for deadlocks at the end.
+	 * 
+	 * @return the number of reachable global states, or -1 if the search failed.
+	 */
+	public double search_mdd_saturation(final StateGraph[] sgList, final State[] initStateArray) {
+		System.out.println("-------- Reachability Analysis ---------");
+		System.out.println("---> calling function search_mdd_saturation");
+		constructDstLpnList(sgList);
+		if (Options.getDebugMode())
+			printDstLpnList(sgList);
+		MddSaturation saturation = new MddSaturation(mddMgr, sgList, initStateArray, false);
+		int[] initIdxArray = new int[sgList.length];
+		for (int i = 0; i < sgList.length; i++)
+			initIdxArray[i] = sgList[i].addState(initStateArray[i]).getIndex();
+		mddNode reach = saturation.saturate(mddMgr.path(initIdxArray));
+		mddMgr.ref(reach);
+		// Nodes are not freed during saturation, so memory is highest at the end.
+		long peakUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		long peakTotalMem = Runtime.getRuntime().totalMemory();
+		String failure = saturation.getFailure();
+		if (failure == null && saturation.hasDeadlock(reach))
+			failure = "*** Verification failed: deadlock.";
+		if (failure != null) {
+			System.out.println(failure);
+			if(Options.get_displayResults()){
+			  message.setErrorDialog("Error", failure);
+			  this.notifyObservers(message);
+			}
+		}
+		double totalStateCnt = Mdd.numberOfStates(reach);
+		int reachNodeCnt = mddMgr.nodeCnt();
+		mddMgr.remove(reach);
+		System.out.println("---> final numbers: # of prjStates found: " + totalStateCnt
+			+ ", # LPN transition firings: " + saturation.getFiringCount()
+			+ ", total MDD nodes: " + reachNodeCnt
+			+ ", peak MDD nodes: " + mddMgr.peakNodeCnt()
+			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
+			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		if (Options.getOutputLogFlag()) 
+			writePerformanceResultsToLogFile(false, saturation.getFiringCount(), totalStateCnt, peakTotalMem / 1000000, peakUsedMem / 1000000);
+		return failure == null ? totalStateCnt : -1;
+	}
+
+	/**
+	 * Explores the untimed global state space symbolically with BDDs, as a breadth-first search over sets of
+	 * states. Markings, Boolean and integer variables and the enabled flags of persistent transitions are
+	 * encoded in bits, with Options.getBddIntBits() bits per integer variable. The search stops at the first
+	 * deadlock or enabled failure transition. Disabling errors are not checked.
+	 * 
+	 * @return the number of reachable global states, or -1 if the search failed.
+	 */
+	public double search_bdd(final StateGraph[] sgList, final State[] initStateArray) {
+		System.out.println("-------- Reachability Analysis ---------");
+		System.out.println("---> calling function search_bdd");
+		BddReachability bddSearch = new BddReachability(sgList, initStateArray, Options.getBddIntBits());
+		boolean success;
+		try {
+			success = bddSearch.search();
+		}
+		catch (IllegalStateException e) {
+			System.out.println("*** BDD analysis aborted: " + e.getMessage());
+			return -1;
+		}
+		// The BDD nodes are only freed by their own garbage collection, so memory is highest at the end.
+		long peakUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		long peakTotalMem = Runtime.getRuntime().totalMemory();
+		if (!success) {
+			System.out.println(bddSearch.getFailure());
+			if(Options.get_displayResults()){
+			  message.setErrorDialog("Error", bddSearch.getFailure());
+			  this.notifyObservers(message);
+			}
+		}
+		double totalStateCnt = bddSearch.getStateCount();
+		System.out.println("---> final numbers: # of prjStates found: " + totalStateCnt
+			+ ", # of BFS iterations: " + bddSearch.getIterations()
+			+ ", # of state bits: " + bddSearch.getStateBitCount()
+			+ ", BDD nodes of reached states: " + bddSearch.getReachedNodes()
+			+ ", peak BDD nodes: " + bddSearch.getPeakNodes()
+			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
+			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		if (Options.getOutputLogFlag()) 
+			writePerformanceResultsToLogFile(false, 0, totalStateCnt, peakTotalMem / 1000000, peakUsedMem / 1000000);
+		return success ? totalStateCnt : -1;
+	}
+
 
 	public LinkedList<Transition> search_bfs(final StateGraph[] sgList, final State[] initStateArray) {
 		System.out.println("---> starting search_bfs");
@@ -3568,16 +3861,13 @@ public class Analysis extends CoreObservable{
 		long peakUsedMem = 0;
 		long peakTotalMem = 0;
 		long peakMddNodeCnt = 0;
-		int memUpBound = 1000; 	// Set an upper bound of memory in MB usage to
-								// trigger MDD compression.
 		
 		int arraySize = sgList.length;
 
 		for (int i = 0; i < arraySize; i++)
 			sgList[i].addState(initStateArray[i]);
 		
-		mddNode reachSet = null;
-		mddNode reach = Mdd.newNode();
+		mddNode reach = null;
 		MDT frontier = new MDT(arraySize);
 		MDT image = new MDT(arraySize);
 
@@ -3614,21 +3904,6 @@ public class Analysis extends CoreObservable{
 						+ " used memory: " + (float) curUsedMem / 1000000
 						+ " free memory: "
 						+ (float) Runtime.getRuntime().freeMemory() / 1000000);
-				
-				if (curUsedMem >= memUpBound * 1000000) {
-					mddMgr.compress(reach);
-					if (reachSet == null)
-						reachSet = reach;
-					else {
-						mddNode newReachSet = mddMgr.union(reachSet, reach);
-						if (newReachSet != reachSet) {
-							mddMgr.remove(reachSet);
-							reachSet = newReachSet;
-						}
-					}
-					mddMgr.remove(reach);
-					reach = Mdd.newNode();
-				}
 			
 			while(frontier.empty() == false) {
 				boolean deadlock = true;
@@ -3639,7 +3914,7 @@ public class Analysis extends CoreObservable{
 				{
 				 curStateArray = frontier.pop();
 				int[] localIdxArray = Analysis.getLocalStateIdxArray(sgList, curStateArray, false);
-				mddMgr.add(reach, localIdxArray, false);
+				reach = mddMgr.add(reach, localIdxArray);
 				totalStates++;
 				
 				for (int i = 0; i < arraySize; i++) {
@@ -3667,7 +3942,7 @@ public class Analysis extends CoreObservable{
 						}
 						
 						localIdxArray = Analysis.getLocalStateIdxArray(sgList, nextStateArray, false);
-						if (Mdd.contains(reachSet, localIdxArray) == false && Mdd.contains(reach, localIdxArray) == false && frontier.contains(nextStateArray) == false) {
+						if (Mdd.contains(reach, localIdxArray) == false && frontier.contains(nextStateArray) == false) {
 							if(image.contains(nextStateArray)==false) {
 							image.push(nextStateArray);
 							imageSize++;
@@ -3736,9 +4011,10 @@ public class Analysis extends CoreObservable{
 		for (int i = 0; i < arraySize; i++)
 			nextSetArray.add(i,new LinkedList<State>());
 
-		mddNode initMdd = mddMgr.doLocalFirings(lpnList, initStateArray, null);
+		mddNode initMdd = mddMgr.doLocalFirings(lpnList, initStateArray);
 		mddNode curMdd = initMdd;
 		reachSet = curMdd;
+		mddMgr.ref(reachSet);
 		mddNode nextMdd = null;
 
 		int[] curStateArray = null;
@@ -3767,14 +4043,9 @@ public class Analysis extends CoreObservable{
 				if (nextMdd == null)
 					break bfsWhileLoop;
 
-				if (exploredSet == null)
-					exploredSet = curMdd;
-				else {
-					mddNode newExplored = mddMgr.union(exploredSet, curMdd);
-					if (newExplored != exploredSet)
-						mddMgr.remove(exploredSet);
-					exploredSet = newExplored;
-				}
+				mddNode newExplored = mddMgr.union(exploredSet, curMdd);
+				mddMgr.remove(exploredSet);
+				exploredSet = newExplored;
 
 				mddMgr.remove(curMdd);
 				curMdd = nextMdd;
@@ -3855,19 +4126,17 @@ public class Analysis extends CoreObservable{
 					if (reachSet != null && Mdd.contains(reachSet, nextIdxArray) == true)
 						continue;
 
-					mddNode newNextMdd = mddMgr.doLocalFirings(lpnList, nextStateArray, reachSet);
+					mddNode newNextMdd = mddMgr.doLocalFirings(lpnList, nextStateArray);
 
 					mddNode newReachSet = mddMgr.union(reachSet, newNextMdd);
-					if (newReachSet != reachSet)
-						mddMgr.remove(reachSet);
+					mddMgr.remove(reachSet);
 					reachSet = newReachSet;
 
 					if (nextMdd == null)
 						nextMdd = newNextMdd;
 					else {
 						mddNode tmpNextMdd = mddMgr.union(nextMdd, newNextMdd);
-						if (tmpNextMdd != nextMdd)
-							mddMgr.remove(nextMdd);
+						mddMgr.remove(nextMdd);
 						nextMdd = tmpNextMdd;
 						mddMgr.remove(newNextMdd);
 					}
@@ -3903,7 +4172,7 @@ public class Analysis extends CoreObservable{
 		int max_stack_depth = 0;
 		int iterations = 0;
 		boolean useMdd = true;
-		mddNode reach = Mdd.newNode();
+		mddNode reach = null;
 				
 		//init por
 		edu.utah.ece.async.lema.verification.platu.por1.AmpleSet ampleClass = new edu.utah.ece.async.lema.verification.platu.por1.AmpleSet();
@@ -3945,7 +4214,7 @@ public class Analysis extends CoreObservable{
 
 		if (useMdd) {
 			int[] initIdxArray = Analysis.getIdxArray(initStateArray);
-			mddMgr.add(reach, initIdxArray, true);
+			reach = mddMgr.add(reach, initIdxArray);
 		}
 		else 
 			prjStateSet.add(initPrjState);
@@ -4099,7 +4368,7 @@ public class Analysis extends CoreObservable{
 			if (isExisting == false) {				
 				if (useMdd == true) {
 					
-					mddMgr.add(reach, nextIdxArray, true);
+					reach = mddMgr.add(reach, nextIdxArray);
 				}
 				else
 					prjStateSet.add(nextPrjState);
@@ -4290,7 +4559,7 @@ public class Analysis extends CoreObservable{
 		int iterations = 0;
 		//boolean useMdd = true;
 		boolean useMdd = false;
-		mddNode reach = Mdd.newNode();
+		mddNode reach = null;
 				
 		//init por
 		AmpleSet ampleClass = new AmpleSet();
@@ -4331,7 +4600,7 @@ public class Analysis extends CoreObservable{
 
 		if (useMdd) {
 			int[] initIdxArray = Analysis.getIdxArray(initStateArray);
-			mddMgr.add(reach, initIdxArray, true);
+			reach = mddMgr.add(reach, initIdxArray);
 		}
 		else 
 			prjStateSet.add(initPrjState);
@@ -4483,7 +4752,7 @@ public class Analysis extends CoreObservable{
 			if (isExisting == false) {			
 				if (useMdd == true) {
 					
-					mddMgr.add(reach, nextIdxArray, true);
+					reach = mddMgr.add(reach, nextIdxArray);
 				}
 				else
 					prjStateSet.add(nextPrjState);
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Iterator;
+
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * An approximate set of reached global states for bit-state hashing. A global
+ * state is not stored, only the bits chosen by k hash functions of its tuple of
+ * local state indices are set in a large bit array. A new state whose bits
+ * happen to be set already is taken for a reached state and is not explored,
+ * so the search may miss states but never reports a state that cannot be
+ * reached. The probability of such an omission grows with the fraction of bits
+ * set and is reported by {@link #stats()}.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BitStateSet implements StateSetInterface {
+
+	private final StateGraph[] sgList;
+
+	private final int[] tuple;
+
+	private final long[] bits;
+
+	private final long bitMask;
+
+	private final int hashCount;
+
+	private long bitsSet;
+
+	private int size;
+
+	/*
+	 * Sum over the added states of the expected number of new states omitted before each one.
+	 */
+	private double expectedOmissions;
+
+	/**
+	 * Creates a set with 2^log2Bits bits and hashCount bits per state.
+	 */
+	public BitStateSet(StateGraph[] sgList, int log2Bits, int hashCount) {
+		this.sgList = sgList;
+		this.tuple = new int[sgList.length];
+		this.bits = new long[(int) Math.max(1, (1L << log2Bits) >>> 6)];
+		this.bitMask = 64L * bits.length - 1;
+		this.hashCount = hashCount;
+		this.bitsSet = 0;
+		this.size = 0;
+		this.expectedOmissions = 0;
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		long hash = IndexedStateSet.hash(IndexedStateSet.toTuple(sgList, state, tuple));
+		long step = Long.rotateLeft(hash, 32) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = (hash + i * step) & bitMask;
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		double omission = omissionProbability();
+		long hash = IndexedStateSet.hash(IndexedStateSet.toTuple(sgList, state, tuple));
+		long step = Long.rotateLeft(hash, 32) | 1;
+		boolean added = false;
+		for (int i = 0; i < hashCount; i++) {
+			long bit = (hash + i * step) & bitMask;
+			int word = (int) (bit >>> 6);
+			if ((bits[word] & (1L << bit)) == 0) {
+				bits[word] |= 1L << bit;
+				bitsSet++;
+				added = true;
+			}
+		}
+		if (!added)
+			return false;
+		size++;
+		// A new state is found after a geometric number of omitted ones.
+		expectedOmissions += omission / (1 - omission);
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the probability that the next new state is taken for a reached state.
+	 */
+	public double omissionProbability() {
+		return Math.pow((double) bitsSet / (bitMask + 1), hashCount);
+	}
+
+	public String stats() {
+		return "# of bits: " + (bitMask + 1) + ", # of hash functions: " + hashCount
+				+ ", fraction of bits set: " + (float) bitsSet / (bitMask + 1)
+				+ ", omission probability: " + (float) omissionProbability()
+				+ ", estimated # of omitted states: " + (long) expectedOmissions
+				+ ", estimated coverage: " + (float) (size / (size + expectedOmissions));
+	}
+
+	@Override
+	public String toString() {
+		return stats();
+	}
+
+	/**
+	 * The states are not stored, so they cannot be enumerated.
+	 */
+	@Override
+	public Iterator<PrjState> iterator() {
+		throw new UnsupportedOperationException("Bit-state hashing does not store the reached states.");
+	}
+}
@@ -21,11 +21,19 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.utah.ece.async.lema.verification.lpn.LPN;
 import edu.utah.ece.async.lema.verification.lpn.Transition;
 import edu.utah.ece.async.lema.verification.platu.common.Pair;
 import edu.utah.ece.async.lema.verification.platu.main.Options;
+import edu.utah.ece.async.lema.verification.platu.platuLpn.LpnTranList;
 import edu.utah.ece.async.lema.verification.platu.platuLpn.VarSet;
 import edu.utah.ece.async.lema.verification.platu.stategraph.State;
 import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
@@ -39,6 +47,12 @@ import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
  * @version %I%
  */
 public class CompositionalAnalysis {  
+	/**
+	 * Number of states checked against a set of constraints by one task when the
+	 * constraints are applied in parallel.
+	 */
+	private static final int MATCH_CHUNK_SIZE = 256;
+	
 	public CompositionalAnalysis(){
 	}
 	
@@ -2397,9 +2411,18 @@ public class CompositionalAnalysis {
 //	}
 	
 	/**
-     * Constructs the compositional state graphs.
+     * Constructs the compositional state graphs. The state graphs are explored and the
+     * constraints are applied by Options.getThreadCount() threads when the parallel flag is set.
      */
 	public static void compositionalFindSG(StateGraph[] sgArray){
+		compositionalFindSG(sgArray, Options.getParallelFlag() ? Options.getThreadCount() : 1);
+	}
+	
+	/**
+     * Constructs the compositional state graphs, exploring them and applying the constraints of
+     * each iteration with a pool of threadCount threads that is kept for the whole fixpoint computation.
+     */
+	private static void compositionalFindSG(StateGraph[] sgArray, int threadCount){
 //		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 //		try {
 //			br.readLine();
@@ -2503,43 +2526,75 @@ public class CompositionalAnalysis {
 //			lpnList[idx++] = sg.getLpn();
 //		}
 		constructDstLpnList(sgArray);
-		// Run initial findSG
-		for (StateGraph sg : sgArray) {
-			int result = 0;			
-			if(Options.getStickySemantics()){
-//				result = sg.constrStickyFindSG(sg.getInitialState(), emptyTranList);
-			}
-			else{
-				result = sg.constrFindSG(sg.getInitialState());
-			}
-			newTransitions += result;
-		}
 
 		long peakUsed = 0;
 		long peakTotal = 0;
 
 		List<Constraint> newConstraintSet = new ArrayList<Constraint>();
 		List<Constraint> oldConstraintSet = new ArrayList<Constraint>();
-		while(newTransitions > 0){
-			iter++;
-			newTransitions = 0;
-			for(StateGraph sg : sgArray){
-				sg.genConstraints();
-				sg.genFrontier();
+		IterationStats totalStats = new IterationStats();
+		ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+		try {
+			// Run initial findSG
+			if(executor == null){
+				for (StateGraph sg : sgArray) {
+					int result = 0;			
+					if(Options.getStickySemantics()){
+//						result = sg.constrStickyFindSG(sg.getInitialState(), emptyTranList);
+					}
+					else{
+						result = sg.constrFindSG(sg.getInitialState());
+					}
+					newTransitions += result;
+				}
 			}
-			// Extract and apply constraints generated from srcSG to sg. 
-			for(StateGraph sg : sgArray){
-				for(StateGraph srcSG : inputSrcMap.get(sg)){
-					extractConstraints(sg, srcSG, newConstraintSet, oldConstraintSet);
-					newTransitions += applyConstraintSet(sg, srcSG, newConstraintSet, oldConstraintSet);			
+			else{
+				Exploration exploration = new Exploration(executor);
+				for (StateGraph sg : sgArray) {
+					// TODO: Need to consider the "Sticky sematics"
+					if(!Options.getStickySemantics())
+						exploration.explore(sg, sg.getInitialState());
 				}
+				newTransitions = exploration.await();
 			}
-			long curTotalMem = Runtime.getRuntime().totalMemory();
-			if(curTotalMem > peakTotal)
-				peakTotal = curTotalMem;
-			long curUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-			if(curUsedMem > peakUsed)
-				peakUsed = curUsedMem;
+			while(newTransitions > 0){
+				iter++;
+				IterationStats stats = new IterationStats();
+				long iterStart = System.nanoTime();
+				for(StateGraph sg : sgArray){
+					sg.genConstraints();
+					sg.genFrontier();
+				}
+				if(executor == null){
+					newTransitions = 0;
+					// Extract and apply constraints generated from srcSG to sg. 
+					for(StateGraph sg : sgArray){
+						for(StateGraph srcSG : inputSrcMap.get(sg)){
+							extractConstraints(sg, srcSG, newConstraintSet, oldConstraintSet);
+							stats.checks += countChecks(sg, newConstraintSet, oldConstraintSet);
+							newTransitions += applyConstraintSet(sg, srcSG, newConstraintSet, oldConstraintSet);			
+						}
+					}
+				}
+				else{
+					newTransitions = parallelApplyConstraintSets(sgArray, inputSrcMap, executor, stats);
+				}
+				stats.totalNanos = System.nanoTime() - iterStart;
+				stats.newTransitions = newTransitions;
+				totalStats.add(stats);
+				if(Options.getVerbosity() > 0)
+					System.out.println("   --> Iteration " + iter + ": " + stats);
+				long curTotalMem = Runtime.getRuntime().totalMemory();
+				if(curTotalMem > peakTotal)
+					peakTotal = curTotalMem;
+				long curUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+				if(curUsedMem > peakUsed)
+					peakUsed = curUsedMem;
+			}
+		}
+		finally {
+			if(executor != null)
+				executor.shutdown();
 		}
 		System.out.println();
 		int numStates = 0;
@@ -2560,6 +2615,7 @@ public class CompositionalAnalysis {
 //		System.out.println("   --> # transitions: " + numTrans);
 		System.out.println("   --> # constraints: " + numConstr);
 		System.out.println("   --> # iterations: " + iter);
+		System.out.println("   --> Constraint application (" + threadCount + (threadCount == 1 ? " thread" : " threads") + "): " + totalStats);
 		System.out.println("\n   --> Peak used memory: " + peakUsed/1000000F + " MB");
 		System.out.println("   --> Peak total memory: " + peakTotal/1000000F + " MB");
 		System.out.println("   --> Final used memory: " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())/1000000F + " MB");
@@ -2573,194 +2629,11 @@ public class CompositionalAnalysis {
 	}
 	
 	/**
-     * Constructs the compositional state graphs.
+     * Constructs the compositional state graphs, applying the constraints with
+     * Options.getThreadCount() threads.
      */
 	public static void parallelCompositionalFindSG(List<StateGraph> designUnitSet){
-//		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-//		try {
-//			br.readLine();
-//		} catch (IOException e) {
-//			e.printStackTrace();
-//		}
-		
-		int iter = 0;
-		int newTransitions = 0;
-		long start = System.currentTimeMillis();
-		HashMap<StateGraph, StateGraph[]> inputSrcMap = new HashMap<StateGraph, StateGraph[]>();
-		
-		for (StateGraph sg : designUnitSet) {
-			LPN lpn = sg.getLpn();
-			
-            // Add initial state to state graph
-			State init = sg.genInitialState();
-			sg.setInitialState(init);
-			sg.addState(init);
-			sg.addFrontierState(init);
-			
-			Set<String> inputSet = lpn.getAllInputs().keySet();
-			Set<String> outputSet = lpn.getAllOutputs().keySet();
-			int size = 0;
-			
-			// Find lpn interfaces
-			for(StateGraph sg2 : designUnitSet){				
-				if(sg == sg2) continue;
-				
-				Set<String> outputs = sg2.getLpn().getAllOutputs().keySet();
-				for(String output : outputs){
-					if (inputSet.contains(output)){
-						size++;
-						break;
-					}
-				}
-			}
-
-			List<int[]> thisInterfaceList = new ArrayList<int[]>(designUnitSet.size() + 1);
-			List<int[]> otherInterfaceList = new ArrayList<int[]>(designUnitSet.size() + 1);
-			for(int i = 0; i < designUnitSet.size() + 1; i++){
-				thisInterfaceList.add(null);
-				otherInterfaceList.add(null);
-			}
-			
-			StateGraph[] srcArray = new StateGraph[size];
-			
-			if(size > 0){
-				int index = 0;
-				for(StateGraph sg2 : designUnitSet){	
-					LPN lpn2 = sg2.getLpn();
-					if(sg == sg2) continue;
-					
-					boolean src = false;
-					//int interfaceSize = 0;
-					Set<String> outputs = lpn2.getAllOutputs().keySet();
-					for(String output : outputs){
-						if (inputSet.contains(output)){
-							//interfaceSize++;
-							src = true;
-						}
-					}
-
-					if(src){
-						Set<String> inputs = lpn2.getAllInputs().keySet();
-						for(String input : inputs){
-							if (outputSet.contains(input)){
-								//interfaceSize++;
-							}
-						}
-						
-						for(String input : inputs){
-							if (inputSet.contains(input)){
-								//interfaceSize++;
-							}
-						}
-						
-						for(String output : outputs){
-							if (outputSet.contains(output)){
-								//interfaceSize++;
-							}
-						}
-						
-						//int[] thisIndexList = new int[interfaceSize];
-						//int[] otherIndexList = new int[interfaceSize];
-						// TODO: (future) need to add getThisIndexArray in LhpnFile
-						/*
-						lpn.genIndexLists(thisIndexList, otherIndexList, lpn2);
-						
-						thisInterfaceList.set(lpn2.ID, thisIndexList);
-						otherInterfaceList.set(lpn2.ID, otherIndexList);
-						*/
-						srcArray[index] = sg2;
-						index++;
-					}
-				}
-			}
-			lpn.setThisIndexList(thisInterfaceList);
-			lpn.setOtherIndexList(otherInterfaceList);
-			inputSrcMap.put(sg, srcArray);
-		}
-		
-		LPN[] lpnList = new LPN[designUnitSet.size()];
-
-		int idx = 0;
-		for (StateGraph sg : designUnitSet) {
-			lpnList[idx] = sg.getLpn();
-			idx++;
-		}	
-		
-		// Run initial findSG
-		for (StateGraph sg : designUnitSet) {
-			int result = sg.constrFindSG(sg.getInitialState());
-			newTransitions += result;
-		}
-
-		long peakUsed = 0;
-		long peakTotal = 0;
-
-		CompositionalThread[] threadArray = new CompositionalThread[designUnitSet.size()];
-		while(newTransitions > 0){
-			iter++;
-			newTransitions = 0;
-			
-			for(StateGraph sg : designUnitSet){
-				sg.genConstraints();
-				sg.genFrontier();
-			}
-			
-			int t = 0;
-			for(StateGraph sg : designUnitSet){
-				CompositionalThread newThread = new CompositionalThread(sg, inputSrcMap.get(sg), iter);
-			    newThread.start();
-			    threadArray[t++] = newThread;
-			}
-
-			for(CompositionalThread p : threadArray){
-				try {
-					p.join();
-					newTransitions += p.getNewTransitions();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			
-			long curTotalMem = Runtime.getRuntime().totalMemory();
-			if(curTotalMem > peakTotal)
-				peakTotal = curTotalMem;
-			
-			long curUsedMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-			if(curUsedMem > peakUsed)
-				peakUsed = curUsedMem;
-		}
-		
-		System.out.println();
-		
-		int numStates = 0;
-		int numTrans = 0;
-		int numConstr = 0;
-		for (StateGraph sg : designUnitSet) {
-			System.out.print("   ");
-			sg.printStates();
-			
-			numStates += sg.reachSize();
-			//numTrans += sg.numTransitions();
-			numConstr += sg.numConstraints();
-		}
-		
-		System.out.println("\n   --> # states: " + numStates);
-		System.out.println("   --> # transitions: " + numTrans);
-		System.out.println("   --> # constraints: " + numConstr);
-		System.out.println("   --> # iterations: " + iter);
-		
-		System.out.println("\n   --> Peak used memory: " + peakUsed/1000000F + " MB");
-		System.out.println("   --> Peak total memory: " + peakTotal/1000000F + " MB");
-		System.out.println("   --> Final used memory: " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())/1000000F + " MB");
-		
-		long elapsedTimeMillis = System.currentTimeMillis()-start; 
-		float elapsedTimeSec = elapsedTimeMillis/1000F;
-		System.out.println("   --> Elapsed time: " + elapsedTimeSec + " sec");
-		
-		if(elapsedTimeSec > 60){
-			float elapsedTime = elapsedTimeSec/60;
-			System.out.println("   --> Elapsed time: " + elapsedTime + " min");
-		}	
+		compositionalFindSG(designUnitSet.toArray(new StateGraph[designUnitSet.size()]), Options.getThreadCount());
 	}
 	
 	/**
@@ -2803,6 +2676,137 @@ public class CompositionalAnalysis {
 		return newTransitions;
 	}
 	
+	/**
+	 * Applies the constraints of every state graph in sgArray with the executor, which gives
+	 * the same state graphs as applyConstraintSet() on each pair of state graphs in turn. The
+	 * states each set of constraints is checked against are split into chunks of
+	 * MATCH_CHUNK_SIZE states, and the compatible states of the chunks are found and have the
+	 * constraints applied in parallel. The new states of the state graphs are then added and
+	 * explored by an Exploration, one task per state rather than per state graph. The state
+	 * graphs have the same states and transitions as the serial ones, but their states may
+	 * be numbered differently.
+	 * @return Number of new transitions.
+	 */
+	private static int parallelApplyConstraintSets(StateGraph[] sgArray, HashMap<StateGraph, List<StateGraph>> inputSrcMap,
+			ExecutorService executor, IterationStats stats){
+		long start = System.nanoTime();
+		List<List<Future<List<ConstraintMatch>>>> matchFutures = new ArrayList<List<Future<List<ConstraintMatch>>>>(sgArray.length);
+		for(StateGraph sg : sgArray){
+			List<Future<List<ConstraintMatch>>> sgMatchFutures = new ArrayList<Future<List<ConstraintMatch>>>();
+			// The state sets do not change before the next iteration, new states go to the entry set. 
+			List<State> stateSet = new ArrayList<State>(sg.getStateSet());
+			List<State> frontierStateSet = new ArrayList<State>(sg.getFrontierStateSet());
+			LPN lpn = sg.getLpn();
+			for(StateGraph srcSG : inputSrcMap.get(sg)){
+				List<Constraint> newConstraintSet = new ArrayList<Constraint>();
+				List<Constraint> oldConstraintSet = new ArrayList<Constraint>();
+				extractConstraints(sg, srcSG, newConstraintSet, oldConstraintSet);
+				stats.checks += countChecks(sg, newConstraintSet, oldConstraintSet);
+				int[] thisIndexList = lpn.getThisIndexArray(srcSG.getLpn().getLpnIndex());
+				int[] otherIndexList = lpn.getOtherIndexArray(srcSG.getLpn().getLpnIndex());
+				if(newConstraintSet.size() > 0){
+					submitMatches(executor, sgMatchFutures, stateSet, newConstraintSet, thisIndexList, otherIndexList);
+					submitMatches(executor, sgMatchFutures, frontierStateSet, newConstraintSet, thisIndexList, otherIndexList);
+				}
+				if(oldConstraintSet.size() > 0)
+					submitMatches(executor, sgMatchFutures, frontierStateSet, oldConstraintSet, thisIndexList, otherIndexList);
+			}
+			matchFutures.add(sgMatchFutures);
+		}
+		try {
+			for(List<Future<List<ConstraintMatch>>> sgMatchFutures : matchFutures){
+				for(Future<List<ConstraintMatch>> future : sgMatchFutures)
+					future.get();
+			}
+			stats.matchNanos = System.nanoTime() - start;
+			// Each new matched state is explored by its own tasks while the rest are being added.
+			Exploration exploration = new Exploration(executor);
+			int newTransitions = 0;
+			for(int i = 0; i < sgArray.length; i++){
+				StateGraph sg = sgArray[i];
+				for(Future<List<ConstraintMatch>> future : matchFutures.get(i)){
+					for(ConstraintMatch match : future.get()){
+						State nextState = sg.addState(match.newState);
+						if(nextState == match.newState){
+							// The transition to a new state is added once its exploration is known to succeed.
+							sg.addFrontierState(nextState);
+							match.descent = exploration.explore(sg, nextState);
+							continue;
+						}
+						sg.addStateTran(match.compatibleState, match.constraint.getLpnTransition(), nextState);
+						newTransitions++;
+					}
+				}
+			}
+			newTransitions += exploration.await();
+			// Like addConstrainedState(), a state whose exploration found a disabling error gets no transition.
+			for(int i = 0; i < sgArray.length; i++){
+				StateGraph sg = sgArray[i];
+				for(Future<List<ConstraintMatch>> future : matchFutures.get(i)){
+					for(ConstraintMatch match : future.get()){
+						if(match.descent == null || match.descent.failed())
+							continue;
+						sg.addStateTran(match.compatibleState, match.constraint.getLpnTransition(), match.newState);
+						newTransitions++;
+					}
+				}
+			}
+			stats.exploreNanos = System.nanoTime() - start - stats.matchNanos;
+			return newTransitions;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+	
+	/**
+	 * Rethrows the exception a task failed with, wrapping it if it is checked.
+	 */
+	private static RuntimeException rethrow(Throwable cause){
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		throw new IllegalStateException(cause);
+	}
+	
+	/**
+	 * Submits a task for each chunk of states that finds the states of the chunk compatible
+	 * with the constraints and creates the states the constraints lead to.
+	 */
+	private static void submitMatches(ExecutorService executor, List<Future<List<ConstraintMatch>>> futures, final List<State> states, 
+			final List<Constraint> constraintSet, final int[] thisIndexList, final int[] otherIndexList){
+		for(int start = 0; start < states.size(); start += MATCH_CHUNK_SIZE){
+			final int from = start;
+			final int to = Math.min(start + MATCH_CHUNK_SIZE, states.size());
+			futures.add(executor.submit(new Callable<List<ConstraintMatch>>(){
+				@Override
+				public List<ConstraintMatch> call() {
+					List<ConstraintMatch> matches = new ArrayList<ConstraintMatch>();
+					for(State currentState : states.subList(from, to)){
+						for(Constraint c : constraintSet){
+							if(compatible(currentState, c, thisIndexList, otherIndexList))
+								matches.add(new ConstraintMatch(currentState, c, constrainedState(currentState, c)));
+						}
+					}
+					return matches;
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * Gives the number of compatibility checks applyConstraintSet() makes with these constraints.
+	 */
+	private static long countChecks(StateGraph sg, List<Constraint> newConstraintSet, List<Constraint> oldConstraintSet){
+		return (long) sg.getStateSet().size() * newConstraintSet.size()
+				+ (long) sg.getFrontierStateSet().size() * (newConstraintSet.size() + oldConstraintSet.size());
+	}
+	
 	/**
      * Extracts applicable constraints from a StateGraph.
      * @param sg - The state graph the constraints are to be applied.
@@ -2846,7 +2850,13 @@ public class CompositionalAnalysis {
      * @return Number of new transitions.
      */
 	private static int createNewState(StateGraph sg, State compatibleState, Constraint c){
-		int newTransitions = 0;
+		return addConstrainedState(sg, compatibleState, c, constrainedState(compatibleState, c));
+	}
+	
+	/**
+     * Creates the state a constraint leads to from a compatible state. The state graph is not changed.
+     */
+	private static State constrainedState(State compatibleState, Constraint c){
 		State newState = new State(compatibleState);
 		int[] newVector = newState.getVariableVector();		
 		//List<VarNode> variableList = c.getVariableList();
@@ -2861,6 +2871,15 @@ public class CompositionalAnalysis {
 			newVector[index] = valueList.get(i);
 		}
 		updateTranVectorByConstraint(newState.getLpn(), newState.getTranVector(), newState.getMarking(), newVector);
+		return newState;
+	}
+	
+	/**
+     * Inserts a state created by constrainedState() into the state graph.  If the state is new, then findSG is called.
+     * @return Number of new transitions.
+     */
+	private static int addConstrainedState(StateGraph sg, State compatibleState, Constraint c, State newState){
+		int newTransitions = 0;
 		State nextState = sg.addState(newState);
 		if(nextState == newState){
 			int result = 0;
@@ -2960,4 +2979,152 @@ public class CompositionalAnalysis {
 			}
 		}
 	}
+	
+	/**
+	 * A state compatible with a constraint and the state the constraint leads to from it.
+	 */
+	private static class ConstraintMatch {
+		final State compatibleState;
+		final Constraint constraint;
+		final State newState;
+		/** The exploration from newState, if the match added it to its state graph. */
+		Exploration.Descent descent;
+		
+		ConstraintMatch(State compatibleState, Constraint constraint, State newState){
+			this.compatibleState = compatibleState;
+			this.constraint = constraint;
+			this.newState = newState;
+		}
+	}
+	
+	/**
+	 * Explores state graphs from their new states like constrFindSG(), with one executor task
+	 * per state. A task fires the enabled transitions of its state and submits a task for each
+	 * new state this reaches. The state table of a state graph is shared by its tasks, and only
+	 * the task that adds a state to it explores the state, so each state is explored once. The
+	 * tasks never wait for each other, so the pool can run them with any number of threads.
+	 * Like constrFindSG(), the exploration from a state stops once a transition is found to be
+	 * disabled by another one, and the transitions it found are not counted.
+	 */
+	private static class Exploration {
+		private final ExecutorService executor;
+		private final List<Descent> descents = new ArrayList<Descent>();
+		private int pendingTasks = 0;
+		private Throwable failure = null;
+		
+		/**
+		 * The tasks descending from one explored state.
+		 */
+		static class Descent {
+			private final AtomicBoolean failed = new AtomicBoolean();
+			private final AtomicInteger newTransitions = new AtomicInteger();
+			
+			/**
+			 * @return True if a disabling error was found, in which case constrFindSG() would have returned -1.
+			 */
+			boolean failed(){
+				return failed.get();
+			}
+		}
+		
+		Exploration(ExecutorService executor){
+			this.executor = executor;
+		}
+		
+		/**
+		 * Explores sg from a state that has just been added to it.
+		 * @return The descent whose outcome is known once await() returns.
+		 */
+		Descent explore(StateGraph sg, State state){
+			Descent descent = new Descent();
+			descents.add(descent);
+			LpnTranList enabled = sg.getEnabled(state);
+			if(!enabled.isEmpty())
+				submit(sg, state, enabled, descent);
+			return descent;
+		}
+		
+		/**
+		 * Waits for the tasks of the exploration.
+		 * @return Number of new transitions of the descents that did not fail.
+		 */
+		synchronized int await() throws InterruptedException {
+			while(pendingTasks > 0)
+				wait();
+			if(failure != null)
+				throw rethrow(failure);
+			int newTransitions = 0;
+			for(Descent descent : descents){
+				if(!descent.failed())
+					newTransitions += descent.newTransitions.get();
+			}
+			return newTransitions;
+		}
+		
+		private void submit(final StateGraph sg, final State state, final LpnTranList enabled, final Descent descent){
+			synchronized(this){
+				pendingTasks++;
+			}
+			executor.execute(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						if(descent.failed())
+							return;
+						List<State> nextStates = new ArrayList<State>();
+						List<LpnTranList> nextEnabledTransitions = new ArrayList<LpnTranList>();
+						int result = sg.constrExpand(state, enabled, nextStates, nextEnabledTransitions);
+						if(result < 0){
+							descent.failed.set(true);
+							return;
+						}
+						descent.newTransitions.addAndGet(result);
+						for(int i = 0; i < nextStates.size(); i++)
+							submit(sg, nextStates.get(i), nextEnabledTransitions.get(i), descent);
+					}
+					catch (Throwable e) {
+						synchronized(Exploration.this){
+							if(failure == null)
+								failure = e;
+						}
+					}
+					finally {
+						synchronized(Exploration.this){
+							if(--pendingTasks == 0)
+								Exploration.this.notifyAll();
+						}
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Timing and throughput of the constraint application of an iteration, or of all of them.
+	 */
+	private static class IterationStats {
+		long checks;
+		long newTransitions;
+		long totalNanos;
+		long matchNanos;
+		long exploreNanos;
+		
+		void add(IterationStats other){
+			checks += other.checks;
+			newTransitions += other.newTransitions;
+			totalNanos += other.totalNanos;
+			matchNanos += other.matchNanos;
+			exploreNanos += other.exploreNanos;
+		}
+		
+		@Override
+		public String toString(){
+			String str = newTransitions + " new transitions, " + checks + " constraint checks in " + totalNanos/1e9F + " sec";
+			if(totalNanos > 0)
+				str += " (" + (long) (checks/(totalNanos/1e9)) + " checks/sec)";
+			if(matchNanos > 0)
+				str += ", matching: " + matchNanos/1e9F + " sec, exploring: " + exploreNanos/1e9F + " sec";
+			return str;
+		}
+	}
 }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.utah.ece.async.lema.verification.platu.common.IntTupleTable;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * A thread-safe version of {@link IndexedStateSet} for the parallel reachability
+ * analysis. The tuples of local state indices are spread over a number of
+ * {@link IntTupleTable} segments by their hash, and each segment is locked on its
+ * own, so threads adding different states rarely wait for each other.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ConcurrentIndexedStateSet implements StateSetInterface {
+
+	private final StateGraph[] sgList;
+
+	private final IntTupleTable[] segments;
+
+	private final int segmentMask;
+
+	/**
+	 * Creates a set whose number of segments is the smallest power of two that is
+	 * at least four times the given number of threads.
+	 */
+	public ConcurrentIndexedStateSet(StateGraph[] sgList, int threadCount) {
+		this.sgList = sgList;
+		int segmentCount = 1;
+		while (segmentCount < 4 * threadCount && segmentCount < (1 << 12)) {
+			segmentCount <<= 1;
+		}
+		this.segments = new IntTupleTable[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			this.segments[i] = new IntTupleTable(sgList.length);
+		}
+		this.segmentMask = segmentCount - 1;
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		return contains(state.toStateArray());
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		return add(state.toStateArray());
+	}
+
+	public boolean contains(State[] stateArray) {
+		int[] tuple = toTuple(stateArray);
+		IntTupleTable segment = segments[segmentOf(tuple)];
+		synchronized (segment) {
+			return segment.contains(tuple);
+		}
+	}
+
+	/**
+	 * Adds the global state made of the given local states and returns true if it
+	 * was not in the set yet.
+	 */
+	public boolean add(State[] stateArray) {
+		int[] tuple = toTuple(stateArray);
+		IntTupleTable segment = segments[segmentOf(tuple)];
+		synchronized (segment) {
+			return segment.add(tuple) == 1;
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (IntTupleTable segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Iterates over the states of one segment after the other. It must not be used
+	 * while states are being added.
+	 */
+	@Override
+	public Iterator<PrjState> iterator() {
+		return new Iterator<PrjState>() {
+			private int segment = 0;
+
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (segment < segments.length && next >= segments[segment].size()) {
+					segment++;
+					next = 0;
+				}
+				return segment < segments.length;
+			}
+
+			@Override
+			public PrjState next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				State[] stateArray = new State[sgList.length];
+				for (int i = 0; i < sgList.length; i++) {
+					stateArray[i] = sgList[i].getState(segments[segment].get(next, i));
+				}
+				next++;
+				return new PrjState(stateArray);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder line = new StringBuilder("[");
+		for (PrjState state : this) {
+			if (line.length() > 1)
+				line.append(", ");
+			line.append(state.toString());
+		}
+		return line.append("]").toString();
+	}
+
+	private int[] toTuple(State[] stateArray) {
+		int[] tuple = new int[stateArray.length];
+		for (int i = 0; i < stateArray.length; i++) {
+			State localState = stateArray[i];
+			if (sgList[i].getState(localState.getIndex()) != localState)
+				localState = sgList[i].addState(localState);
+			tuple[i] = localState.getIndex();
+		}
+		return tuple;
+	}
+
+	/**
+	 * Picks the segment from the high bits of the tuple hash, since the segments
+	 * themselves index their slots with the low bits.
+	 */
+	private int segmentOf(int[] tuple) {
+		int h = 0;
+		for (int value : tuple) {
+			h = 31 * h + value;
+		}
+		h *= 0x9e3779b9;
+		return (h >>> 20) & segmentMask;
+	}
+}
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.utah.ece.async.lema.verification.platu.common.IntTupleTable;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Stores the reached global states as tuples of local state indices, like
+ * {@link IndexedStateSet}, but keeps only the most recently added states in
+ * memory. When the in-memory buffer is full, its states are sorted by a 40 bit
+ * fingerprint and written in one batch to a run file on disk, which is then
+ * memory-mapped for look-ups. Each run has a Bloom filter on the fingerprints,
+ * so most states that are not in a run do not touch its file. Once there are
+ * too many runs, the smaller ones are merged into one. A state is new if it is
+ * neither in the buffer nor in a run, so the answers are exact and the search
+ * never visits a state twice.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class DiskStateSet implements StateSetInterface {
+
+	/*
+	 * Number of runs above which runs are merged.
+	 */
+	private static final int MAX_RUNS = 8;
+
+	/*
+	 * Largest run file, so that a run can be mapped as a whole.
+	 */
+	private static final long MAX_RUN_BYTES = Integer.MAX_VALUE;
+
+	/*
+	 * Number of bits of the fingerprints. When the buffer is sorted, the position of a state
+	 * in the buffer is packed below its fingerprint, and the sign bit stays clear.
+	 */
+	private static final int KEY_BITS = 40;
+
+	private static final int INDEX_BITS = 63 - KEY_BITS;
+
+	private static final int BLOOM_BITS_PER_STATE = 10;
+
+	private static final int BLOOM_PROBES = 4;
+
+	private final StateGraph[] sgList;
+
+	private final File directory;
+
+	private final int bufferSize;
+
+	private final int[] tuple;
+
+	/*
+	 * Size of a record of a run: the fingerprint followed by the tuple.
+	 */
+	private final int recordSize;
+
+	private IntTupleTable buffer;
+
+	private ArrayList<Run> runs;
+
+	private int size;
+
+	public DiskStateSet(StateGraph[] sgList, File directory, int bufferSize) {
+		this.sgList = sgList;
+		this.directory = directory;
+		this.tuple = new int[sgList.length];
+		this.recordSize = 8 + 4 * sgList.length;
+		this.bufferSize = (int) Math.min(Math.min(bufferSize, 1 << INDEX_BITS), MAX_RUN_BYTES / recordSize);
+		this.buffer = new IntTupleTable(sgList.length);
+		this.runs = new ArrayList<Run>();
+		this.size = 0;
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		return contains(IndexedStateSet.toTuple(sgList, state, tuple));
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		int[] stateTuple = IndexedStateSet.toTuple(sgList, state, tuple);
+		if (contains(stateTuple))
+			return false;
+		buffer.add(stateTuple);
+		size++;
+		if (buffer.size() >= bufferSize)
+			spill();
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public String stats() {
+		long bytes = 0;
+		for (Run run : runs)
+			bytes += run.count * recordSize;
+		return "# of buffered states: " + buffer.size() + ", # of runs: " + runs.size()
+				+ ", run files: " + bytes / 1000000 + " MB";
+	}
+
+	/**
+	 * Closes and deletes the run files. The set is empty afterwards.
+	 */
+	public void close() {
+		for (Run run : runs)
+			run.delete();
+		runs.clear();
+		buffer = new IntTupleTable(sgList.length);
+		size = 0;
+	}
+
+	@Override
+	public Iterator<PrjState> iterator() {
+		return new Iterator<PrjState>() {
+			private int runIdx = -1;
+			private long next = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (runIdx < runs.size() && next == (runIdx < 0 ? buffer.size() : runs.get(runIdx).count)) {
+					runIdx++;
+					next = 0;
+				}
+				return runIdx < runs.size();
+			}
+
+			@Override
+			public PrjState next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				int[] stateTuple = new int[sgList.length];
+				if (runIdx < 0)
+					buffer.get((int) next, stateTuple);
+				else
+					runs.get(runIdx).get(next, stateTuple);
+				next++;
+				State[] stateArray = new State[sgList.length];
+				for (int i = 0; i < sgList.length; i++)
+					stateArray[i] = sgList[i].getState(stateTuple[i]);
+				return new PrjState(stateArray);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private boolean contains(int[] stateTuple) {
+		if (buffer.contains(stateTuple))
+			return true;
+		long key = fingerprint(stateTuple);
+		for (Run run : runs) {
+			if (run.contains(key, stateTuple))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the buffered states to a new run sorted by fingerprint and empties the buffer.
+	 */
+	private void spill() {
+		int count = buffer.size();
+		long[] order = new long[count];
+		int[] stateTuple = new int[sgList.length];
+		for (int i = 0; i < count; i++) {
+			buffer.get(i, stateTuple);
+			order[i] = (fingerprint(stateTuple) << INDEX_BITS) | i;
+		}
+		Arrays.sort(order);
+		try {
+			File file = File.createTempFile("states", ".run", directory);
+			file.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try {
+				for (long entry : order) {
+					buffer.get((int) (entry & ((1L << INDEX_BITS) - 1)), stateTuple);
+					out.writeLong(entry >>> INDEX_BITS);
+					for (int value : stateTuple)
+						out.writeInt(value);
+				}
+			}
+			finally {
+				out.close();
+			}
+			runs.add(new Run(file, count));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the reached states to " + directory + ".", e);
+		}
+		buffer = new IntTupleTable(sgList.length, count);
+		if (runs.size() > MAX_RUNS)
+			merge();
+	}
+
+	/**
+	 * Merges the smallest runs into one, as long as the merged run can still be mapped.
+	 */
+	private void merge() {
+		ArrayList<Run> sorted = new ArrayList<Run>(runs);
+		Collections.sort(sorted, new Comparator<Run>() {
+			@Override
+			public int compare(Run first, Run second) {
+				return Long.compare(first.count, second.count);
+			}
+		});
+		ArrayList<Run> merged = new ArrayList<Run>();
+		long count = 0;
+		for (Run run : sorted) {
+			if ((count + run.count) * recordSize > MAX_RUN_BYTES)
+				break;
+			merged.add(run);
+			count += run.count;
+		}
+		if (merged.size() < 2)
+			return;
+		long[] next = new long[merged.size()];
+		int[] stateTuple = new int[sgList.length];
+		try {
+			File file = File.createTempFile("states", ".run", directory);
+			file.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try {
+				for (long written = 0; written < count; written++) {
+					// Take the record with the smallest fingerprint among the heads of the runs.
+					int min = -1;
+					for (int i = 0; i < merged.size(); i++) {
+						if (next[i] < merged.get(i).count
+								&& (min < 0 || merged.get(i).key(next[i]) < merged.get(min).key(next[min])))
+							min = i;
+					}
+					Run run = merged.get(min);
+					out.writeLong(run.key(next[min]));
+					run.get(next[min]++, stateTuple);
+					for (int value : stateTuple)
+						out.writeInt(value);
+				}
+			}
+			finally {
+				out.close();
+			}
+			Run result = new Run(file, count);
+			for (Run run : merged) {
+				runs.remove(run);
+				run.delete();
+			}
+			runs.add(result);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot merge the reached states in " + directory + ".", e);
+		}
+	}
+
+	/**
+	 * Returns a fingerprint of the tuple with KEY_BITS bits.
+	 */
+	private static long fingerprint(int[] stateTuple) {
+		return IndexedStateSet.hash(stateTuple) >>> (64 - KEY_BITS);
+	}
+
+	/**
+	 * A file of records sorted by fingerprint, mapped into memory, with a Bloom filter
+	 * on its fingerprints.
+	 */
+	private class Run {
+		final File file;
+		final long count;
+		final RandomAccessFile raf;
+		final MappedByteBuffer map;
+		final long[] bloom;
+		final long bloomBits;
+
+		Run(File file, long count) throws IOException {
+			this.file = file;
+			this.count = count;
+			this.raf = new RandomAccessFile(file, "r");
+			this.map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, count * recordSize);
+			this.bloom = new long[(int) Math.max(1, (count * BLOOM_BITS_PER_STATE + 63) / 64)];
+			this.bloomBits = 64L * bloom.length;
+			for (long i = 0; i < count; i++) {
+				long key = key(i);
+				for (int probe = 0; probe < BLOOM_PROBES; probe++) {
+					long bit = bloomBit(key, probe);
+					bloom[(int) (bit >>> 6)] |= 1L << bit;
+				}
+			}
+		}
+
+		long key(long record) {
+			return map.getLong((int) (record * recordSize));
+		}
+
+		void get(long record, int[] stateTuple) {
+			int position = (int) (record * recordSize) + 8;
+			for (int i = 0; i < stateTuple.length; i++)
+				stateTuple[i] = map.getInt(position + 4 * i);
+		}
+
+		boolean contains(long key, int[] stateTuple) {
+			for (int probe = 0; probe < BLOOM_PROBES; probe++) {
+				long bit = bloomBit(key, probe);
+				if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0)
+					return false;
+			}
+			// Find the first record with the fingerprint and compare the tuples of all of them.
+			long low = 0;
+			long high = count;
+			while (low < high) {
+				long middle = (low + high) >>> 1;
+				if (key(middle) < key)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			for (long record = low; record < count && key(record) == key; record++) {
+				int position = (int) (record * recordSize) + 8;
+				int i = 0;
+				while (i < stateTuple.length && map.getInt(position + 4 * i) == stateTuple[i])
+					i++;
+				if (i == stateTuple.length)
+					return true;
+			}
+			return false;
+		}
+
+		private long bloomBit(long key, int probe) {
+			long hash = key * 0x9e3779b97f4a7c15L + probe * 0xc2b2ae3d27d4eb4fL;
+			hash ^= hash >>> 29;
+			return (hash >>> 1) % bloomBits;
+		}
+
+		void delete() {
+			try {
+				raf.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (!file.delete())
+				file.deleteOnExit();
+		}
+	}
+}
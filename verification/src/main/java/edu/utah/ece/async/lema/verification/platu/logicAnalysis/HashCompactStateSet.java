@@ -0,0 +1,148 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Iterator;
+
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * An approximate set of reached global states for hash compaction. Only a 64
+ * bit fingerprint of the tuple of local state indices of a global state is
+ * kept, in an open addressing table of longs. Two states with the same
+ * fingerprint are taken for the same state, so the search may miss states, but
+ * with n states the probability that this happens at all is at most n^2/2^65,
+ * which is reported by {@link #stats()}.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class HashCompactStateSet implements StateSetInterface {
+
+	/*
+	 * Marks an empty slot. A fingerprint that equals it is replaced by EMPTY + 1.
+	 */
+	private static final long EMPTY = 0;
+
+	private static final int MAX_SLOTS = 1 << 30;
+
+	private final StateGraph[] sgList;
+
+	private final int[] tuple;
+
+	private long[] table;
+
+	private int mask;
+
+	private int size;
+
+	public HashCompactStateSet(StateGraph[] sgList) {
+		this.sgList = sgList;
+		this.tuple = new int[sgList.length];
+		this.table = new long[1 << 10];
+		this.mask = table.length - 1;
+		this.size = 0;
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		long fingerprint = fingerprint(state);
+		int slot = slot(fingerprint);
+		while (table[slot] != EMPTY) {
+			if (table[slot] == fingerprint)
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		if (size == mask)
+			throw new IllegalStateException("The hash compaction table is full.");
+		if (!insert(fingerprint(state)))
+			return false;
+		if (++size > table.length / 4 * 3 && table.length < MAX_SLOTS)
+			grow();
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an upper bound on the probability that two of the states have the same
+	 * fingerprint, that is that some state was omitted.
+	 */
+	public double omissionProbability() {
+		return Math.min(1, (double) size * size / Math.pow(2, 65));
+	}
+
+	public String stats() {
+		return "# of slots: " + table.length + ", table size: " + 8L * table.length / 1000000 + " MB"
+				+ ", omission probability: " + (float) omissionProbability();
+	}
+
+	@Override
+	public String toString() {
+		return stats();
+	}
+
+	/**
+	 * The states are not stored, so they cannot be enumerated.
+	 */
+	@Override
+	public Iterator<PrjState> iterator() {
+		throw new UnsupportedOperationException("Hash compaction does not store the reached states.");
+	}
+
+	private long fingerprint(PrjState state) {
+		long fingerprint = IndexedStateSet.hash(IndexedStateSet.toTuple(sgList, state, tuple));
+		return fingerprint == EMPTY ? EMPTY + 1 : fingerprint;
+	}
+
+	/**
+	 * The slot is taken from the fingerprint, since only the fingerprints are left when the
+	 * table grows.
+	 */
+	private int slot(long fingerprint) {
+		return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+	}
+
+	private boolean insert(long fingerprint) {
+		int slot = slot(fingerprint);
+		while (table[slot] != EMPTY) {
+			if (table[slot] == fingerprint)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = fingerprint;
+		return true;
+	}
+
+	private void grow() {
+		long[] oldTable = table;
+		table = new long[oldTable.length * 2];
+		mask = table.length - 1;
+		for (long fingerprint : oldTable) {
+			if (fingerprint != EMPTY)
+				insert(fingerprint);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.utah.ece.async.lema.verification.platu.common.IntTupleTable;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Stores the reached global states as tuples of local state indices in an
+ * {@link IntTupleTable}. A local state is cached by the state graph of its LPN,
+ * which gives it a unique index, so a global state is identified by the indices
+ * of its local states and no PrjState has to be kept. The PrjStates returned by
+ * the iterator are rebuilt from the state graphs and hold no next global states,
+ * so this set is only used when the global state graph is not kept.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IndexedStateSet implements StateSetInterface {
+
+	private final StateGraph[] sgList;
+
+	private final IntTupleTable table;
+
+	private final int[] tuple;
+
+	public IndexedStateSet(StateGraph[] sgList) {
+		this.sgList = sgList;
+		this.table = new IntTupleTable(sgList.length);
+		this.tuple = new int[sgList.length];
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		return table.contains(toTuple(sgList, state, tuple));
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		return table.add(toTuple(sgList, state, tuple)) == 1;
+	}
+
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	public String stats() {
+		return table.stats();
+	}
+
+	@Override
+	public Iterator<PrjState> iterator() {
+		return new Iterator<PrjState>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < table.size();
+			}
+
+			@Override
+			public PrjState next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				State[] stateArray = new State[sgList.length];
+				for (int i = 0; i < sgList.length; i++) {
+					stateArray[i] = sgList[i].getState(table.get(next, i));
+				}
+				next++;
+				return new PrjState(stateArray);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder line = new StringBuilder("[");
+		for (PrjState state : this) {
+			if (line.length() > 1)
+				line.append(", ");
+			line.append(state.toString());
+		}
+		return line.append("]").toString();
+	}
+
+	/**
+	 * Fills the tuple with the indices of the local states. A local state that was
+	 * not obtained from the cache of its state graph is added to it first, so its
+	 * index is the one of the cached copy.
+	 */
+	static int[] toTuple(StateGraph[] sgList, PrjState state, int[] tuple) {
+		State[] stateArray = state.toStateArray();
+		for (int i = 0; i < stateArray.length; i++) {
+			State localState = stateArray[i];
+			if (sgList[i].getState(localState.getIndex()) != localState)
+				localState = sgList[i].addState(localState);
+			tuple[i] = localState.getIndex();
+		}
+		return tuple;
+	}
+
+	/**
+	 * Returns a 64 bit hash of the tuple whose bits are all well mixed, so that any
+	 * part of it can be used as a fingerprint of the tuple.
+	 */
+	static long hash(int[] tuple) {
+		long hash = 0xcbf29ce484222325L;
+		for (int value : tuple) {
+			hash ^= value;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
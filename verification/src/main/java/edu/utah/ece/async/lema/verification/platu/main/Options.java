@@ -13,6 +13,8 @@
  *******************************************************************************/
 package edu.utah.ece.async.lema.verification.platu.main;
 
+import java.io.File;
+
 /**
  * 
  *
@@ -80,6 +82,22 @@ public class Options {
 	}
 	private static String tranRatePorDef = "full";
 	
+	/**
+	 * Solvers for the steady-state analysis of Markovian models. 
+	 */
+	public static enum steadyStateSolverDef {
+		POWER, // Power iteration on the embedded discrete-time chain
+		GAUSS_SEIDEL, // Gauss-Seidel sweeps on the generator matrix
+		SOR, // Successive over-relaxation with the factor given by sorRelaxation
+		BICGSTAB // BiCGStab Krylov method with a Jacobi preconditioner
+	}
+	private static String steadyStateSolver = "gauss-seidel";
+	
+	/*
+	 * Relaxation factor used by the SOR steady-state solver.
+	 */
+	private static double sorRelaxation = 1.05;
+	
 	/*
 	 * Cycle closing method for partial order reduction
 	 */
@@ -167,7 +185,10 @@ public class Options {
 		AIG,			// AIG
 		BINARY_TREE,		// Binary tree
 		DECOMPOSED, 	// decompose a global state into a set of triples of global vectors and two local states sharing variables.
-		NATIVE_HASH			// hash table in C/C++
+		NATIVE_HASH,			// hash table in C/C++
+		DISK,		// sorted runs of state vectors in memory-mapped files
+		BITSTATE,	// bit-state hashing, approximate
+		HASHCOMPACT	// 64 bit fingerprints of states, approximate
 	}
 	private static String stateFormat = "explicit";
 	
@@ -176,6 +197,28 @@ public class Options {
 	 */
 	private static boolean parallelFlag = false;
 	
+	/*
+	 * Number of threads used by the parallel reachability analysis.
+	 */
+	private static int threadCount = Runtime.getRuntime().availableProcessors();
+	
+	/*
+	 * Number of bits of every integer variable in the BDD state format.
+	 */
+	private static int bddIntBits = 8;
+	
+	/*
+	 * Directory of the run files and number of states kept in memory in the disk state format.
+	 */
+	private static String diskStateDir = System.getProperty("java.io.tmpdir");
+	private static int diskBufferSize = 1 << 20;
+	
+	/*
+	 * Log2 of the number of bits and number of hash functions in the bitstate state format.
+	 */
+	private static int bitstateBits = 30;
+	private static int bitstateHashes = 3;
+	
 	/*
 	 * Memory upper bound for a verification run. The unit is MB.
 	 */
@@ -384,6 +427,15 @@ public class Options {
     	else if (format.equals("mddbuf")){
     		stateFormat = format;
     	}
+    	else if (format.equals("disk")){
+    		stateFormat = format;
+    	}
+    	else if (format.equals("bitstate")){
+    		stateFormat = format;
+    	}
+    	else if (format.equals("hashcompact")){
+    		stateFormat = format;
+    	}
     	else{
     		System.out.println("warning: invalid STATE_FORMAT option - default is \"explicit\"");
     	}
@@ -401,6 +453,84 @@ public class Options {
 		return parallelFlag;
 	}
 	
+	public static void setThreadCount(int count){
+		if (count > 0) {
+			threadCount = count;
+		}
+		else {
+			System.out.println("warning: invalid number of threads - default is the number of available processors");
+		}
+	}
+	
+	public static int getThreadCount(){
+		return threadCount;
+	}
+	
+	public static void setBddIntBits(int bits){
+		if (bits >= 2 && bits <= 30) {
+			bddIntBits = bits;
+		}
+		else {
+			System.out.println("warning: invalid number of BDD integer bits - default is 8");
+		}
+	}
+	
+	public static int getBddIntBits(){
+		return bddIntBits;
+	}
+	
+	public static void setDiskStateDir(String dir){
+		if (new File(dir).isDirectory()) {
+			diskStateDir = dir;
+		}
+		else {
+			System.out.println("warning: invalid directory for the disk state format - default is " + diskStateDir);
+		}
+	}
+	
+	public static String getDiskStateDir(){
+		return diskStateDir;
+	}
+	
+	public static void setDiskBufferSize(int size){
+		if (size > 0) {
+			diskBufferSize = size;
+		}
+		else {
+			System.out.println("warning: invalid number of buffered states - default is " + diskBufferSize);
+		}
+	}
+	
+	public static int getDiskBufferSize(){
+		return diskBufferSize;
+	}
+	
+	public static void setBitstateBits(int bits){
+		if (bits >= 10 && bits <= 36) {
+			bitstateBits = bits;
+		}
+		else {
+			System.out.println("warning: invalid log2 of the number of bits for bitstate hashing - default is 30");
+		}
+	}
+	
+	public static int getBitstateBits(){
+		return bitstateBits;
+	}
+	
+	public static void setBitstateHashes(int count){
+		if (count >= 1 && count <= 16) {
+			bitstateHashes = count;
+		}
+		else {
+			System.out.println("warning: invalid number of hash functions for bitstate hashing - default is 3");
+		}
+	}
+	
+	public static int getBitstateHashes(){
+		return bitstateHashes;
+	}
+	
 	public static void setNewParser(){
 		newParser = true;
 	}
@@ -518,6 +648,27 @@ public class Options {
 	public static void setTranRatePorDef(String tranRatePorDef) {
 		Options.tranRatePorDef = tranRatePorDef;
 	}
+
+	public static void setSteadyStateSolver(String solver) {
+		if (solver.equals("power") || solver.equals("gauss-seidel") || solver.equals("sor") || solver.equals("bicgstab")) {
+			steadyStateSolver = solver;
+		}
+		else {
+			System.out.println("warning: invalid steady-state solver - default is \"gauss-seidel\"");
+		}
+	}
+	
+	public static String getSteadyStateSolver() {
+		return steadyStateSolver;
+	}
+	
+	public static void setSORRelaxation(double omega) {
+		sorRelaxation = omega;
+	}
+	
+	public static double getSORRelaxation() {
+		return sorRelaxation;
+	}
 	
 	
 }
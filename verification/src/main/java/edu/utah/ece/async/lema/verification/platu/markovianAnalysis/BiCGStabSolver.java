@@ -0,0 +1,137 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.markovianAnalysis;
+
+/**
+ * Solves pi * Q = 0 with the BiCGStab Krylov method and a Jacobi preconditioner.
+ * The balance equation of the initial state is replaced by the normalization
+ * condition, which makes the system nonsingular for an irreducible chain.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BiCGStabSolver extends SteadyStateSolver {
+
+	@Override
+	public String getName() {
+		return "BiCGStab";
+	}
+
+	@Override
+	public boolean solve(SparseGeneratorMatrix matrix, double[] pi, double tolerance) {
+		int size = matrix.size();
+		double[] r = new double[size];
+		double[] rHat = new double[size];
+		double[] p = new double[size];
+		double[] v = new double[size];
+		double[] s = new double[size];
+		double[] t = new double[size];
+		double[] y = new double[size];
+		double[] z = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			pi[i] = 1.0 / size;
+		}
+		multiply(matrix, pi, r);
+		for (int i = 0; i < size; i++) {
+			r[i] = (i == 0 ? 1.0 : 0.0) - r[i];
+		}
+		System.arraycopy(r, 0, rHat, 0, size);
+		double rho = 1.0;
+		double alpha = 1.0;
+		double omega = 1.0;
+		boolean converged = norm(r) <= tolerance;
+		iterations = 0;
+		while (!converged && iterations < MAX_ITERATIONS) {
+			iterations++;
+			double rhoNext = dot(rHat, r);
+			if (rhoNext == 0.0) {
+				break;
+			}
+			double beta = (rhoNext / rho) * (alpha / omega);
+			for (int i = 0; i < size; i++) {
+				p[i] = r[i] + beta * (p[i] - omega * v[i]);
+			}
+			precondition(matrix, p, y);
+			multiply(matrix, y, v);
+			alpha = rhoNext / dot(rHat, v);
+			for (int i = 0; i < size; i++) {
+				s[i] = r[i] - alpha * v[i];
+			}
+			if (norm(s) <= tolerance) {
+				for (int i = 0; i < size; i++) {
+					pi[i] += alpha * y[i];
+				}
+				converged = true;
+				break;
+			}
+			precondition(matrix, s, z);
+			multiply(matrix, z, t);
+			omega = dot(t, s) / dot(t, t);
+			for (int i = 0; i < size; i++) {
+				pi[i] += alpha * y[i] + omega * z[i];
+				r[i] = s[i] - omega * t[i];
+			}
+			converged = norm(r) <= tolerance;
+			if (omega == 0.0) {
+				break;
+			}
+			rho = rhoNext;
+		}
+		for (int i = 0; i < size; i++) {
+			pi[i] = Math.max(0.0, pi[i]);
+		}
+		normalize(pi);
+		residual = matrix.getResidual(pi);
+		return converged;
+	}
+
+	/**
+	 * Computes result = A * x, where row 0 of A sums the probabilities and every
+	 * other row is the balance equation of its state.
+	 */
+	private static void multiply(SparseGeneratorMatrix matrix, double[] x, double[] result) {
+		double[] exitRates = matrix.getExitRates();
+		double sum = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			sum += x[i];
+			if (i != 0) {
+				result[i] = matrix.getInflow(x, i) - exitRates[i] * x[i];
+			}
+		}
+		result[0] = sum;
+	}
+
+	private static void precondition(SparseGeneratorMatrix matrix, double[] x, double[] result) {
+		double[] exitRates = matrix.getExitRates();
+		result[0] = x[0];
+		for (int i = 1; i < x.length; i++) {
+			result[i] = -x[i] / exitRates[i];
+		}
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+}
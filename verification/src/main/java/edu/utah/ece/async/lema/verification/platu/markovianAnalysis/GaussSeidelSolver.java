@@ -0,0 +1,69 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.markovianAnalysis;
+
+/**
+ * Solves pi * Q = 0 with Gauss-Seidel sweeps, or successive over-relaxation
+ * when the relaxation factor is not 1. Each sweep sets the probability of a
+ * state to its inflow divided by its exit rate, using the values already
+ * updated in the same sweep, and the distribution is normalized after every
+ * sweep.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class GaussSeidelSolver extends SteadyStateSolver {
+
+	private double omega;
+
+	public GaussSeidelSolver(double omega) {
+		this.omega = omega;
+	}
+
+	@Override
+	public String getName() {
+		return omega == 1.0 ? "Gauss-Seidel" : "SOR (omega = " + omega + ")";
+	}
+
+	@Override
+	public boolean solve(SparseGeneratorMatrix matrix, double[] pi, double tolerance) {
+		int size = matrix.size();
+		double[] exitRates = matrix.getExitRates();
+		double[] previous = new double[size];
+		for (int i = 0; i < size; i++) {
+			pi[i] = 1.0 / size;
+		}
+		boolean converged = false;
+		iterations = 0;
+		while (!converged && iterations < MAX_ITERATIONS) {
+			iterations++;
+			System.arraycopy(pi, 0, previous, 0, size);
+			for (int i = 0; i < size; i++) {
+				double prob = matrix.getInflow(pi, i) / exitRates[i];
+				pi[i] = Math.max(0.0, omega * prob + (1 - omega) * pi[i]);
+			}
+			normalize(pi);
+			converged = true;
+			for (int i = 0; i < size && converged; i++) {
+				if (Math.abs(pi[i] - previous[i]) > tolerance * pi[i]) {
+					converged = false;
+				}
+			}
+		}
+		residual = matrix.getResidual(pi);
+		return converged;
+	}
+}
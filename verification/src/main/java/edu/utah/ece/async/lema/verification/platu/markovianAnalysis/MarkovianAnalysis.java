@@ -25,6 +25,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.lema.verification.lpn.ExprTree;
 import edu.utah.ece.async.lema.verification.lpn.Transition;
 import edu.utah.ece.async.lema.verification.lpn.Translator;
+import edu.utah.ece.async.lema.verification.platu.main.Options;
 import edu.utah.ece.async.lema.verification.platu.project.PrjState;
 import edu.utah.ece.async.lema.verification.platu.stategraph.State;
 
@@ -96,6 +97,9 @@ public class MarkovianAnalysis implements Runnable{
 		boolean converged = false;
 		int counter = 0;
 		computeTransitionRateSum();
+		if (!stop && solveSteadyState(tolerance, initial)) {
+			return true;
+		}
 		// Set initial probability and period for all global states.		
 		if (!stop) {
 			for (PrjState m : globalStateSet.keySet()) {
@@ -227,6 +231,43 @@ public class MarkovianAnalysis implements Runnable{
 //		System.out.println("------------------------------------------------------------------------");
 //	}
 
+	/**
+	 * Computes the steady-state probabilities with the solver selected in {@link Options}. Returns false,
+	 * leaving the probabilities to the power iteration, if power iteration is selected, if the states reachable
+	 * from the initial state do not form an irreducible chain, or if the solver does not converge.
+	 */
+	private boolean solveSteadyState(double tolerance, PrjState initial) {
+		SteadyStateSolver solver = SteadyStateSolver.getSolver(Options.getSteadyStateSolver());
+		if (solver == null) {
+			return false;
+		}
+		SparseGeneratorMatrix matrix = new SparseGeneratorMatrix(globalStateSet, initial);
+		if (!matrix.isIrreducible()) {
+			System.out.println("Steady-state solver: chain is not irreducible, using power iteration.");
+			return false;
+		}
+		double[] pi = new double[matrix.size()];
+		if (matrix.size() == 1) {
+			pi[0] = 1.0;
+		}
+		else if (!solver.solve(matrix, pi, tolerance)) {
+			System.out.println("Steady-state solver: " + solver.getName() + " did not converge after " 
+					+ solver.getIterations() + " iterations (residual = " + solver.getResidual() + "), using power iteration.");
+			return false;
+		}
+		else {
+			System.out.println("Steady-state solver: " + solver.getName() + " converged after " 
+					+ solver.getIterations() + " iterations (residual = " + solver.getResidual() + ").");
+		}
+		for (PrjState m : globalStateSet.keySet()) {
+			((ProbGlobalState) m).setCurrentProb(0.0);
+		}
+		for (int i = 0; i < matrix.size(); i++) {
+			((ProbGlobalState) matrix.getState(i)).setCurrentProb(pi[i]);
+		}
+		return true;
+	}
+
 	private void computeTransitionRateSum() {
 		//System.out.println("--------------- Transition Rate Sum -------------");
 		for (PrjState curGlobalSt : globalStateSet.keySet()) {
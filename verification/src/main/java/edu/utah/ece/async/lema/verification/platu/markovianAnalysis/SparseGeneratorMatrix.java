@@ -0,0 +1,169 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.markovianAnalysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import edu.utah.ece.async.lema.verification.lpn.Transition;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+
+/**
+ * The generator matrix of the Markov chain formed by the global states that are
+ * reachable from a given initial state. The states are numbered in breadth-first
+ * order starting with the initial state. Row i holds the rates of the transitions
+ * that enter state i in compressed sparse row form, which is the layout needed to
+ * solve pi * Q = 0 one state at a time. Self loops do not change the
+ * distribution and are not stored.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SparseGeneratorMatrix {
+
+	private PrjState[] states;
+
+	private int[] rowStart;
+
+	private int[] columns;
+
+	private double[] rates;
+
+	private double[] exitRates;
+
+	private boolean irreducible;
+
+	public SparseGeneratorMatrix(ProbGlobalStateSet globalStateSet, PrjState initial) {
+		HashMap<PrjState, Integer> indices = new HashMap<PrjState, Integer>();
+		ArrayList<PrjState> order = new ArrayList<PrjState>();
+		ArrayList<int[]> edges = new ArrayList<int[]>();
+		ArrayList<Double> edgeRates = new ArrayList<Double>();
+		PrjState start = globalStateSet.get(initial) != null ? globalStateSet.get(initial) : initial;
+		indices.put(start, 0);
+		order.add(start);
+		for (int i = 0; i < order.size(); i++) {
+			PrjState curGlobalSt = order.get(i);
+			for (Transition outTran : curGlobalSt.getNextGlobalStateMap().keySet()) {
+				PrjState nextGlobalSt = curGlobalSt.getNextGlobalStateMap().get(outTran);
+				Integer next = indices.get(nextGlobalSt);
+				if (next == null) {
+					next = order.size();
+					indices.put(nextGlobalSt, next);
+					order.add(nextGlobalSt);
+				}
+				if (next != i) {
+					edges.add(new int[] { i, next });
+					edgeRates.add(((ProbGlobalState) curGlobalSt).getOutgoingTranRate(outTran));
+				}
+			}
+		}
+		int size = order.size();
+		states = order.toArray(new PrjState[size]);
+		rowStart = new int[size + 1];
+		columns = new int[edges.size()];
+		rates = new double[edges.size()];
+		exitRates = new double[size];
+		for (int[] edge : edges) {
+			rowStart[edge[1] + 1]++;
+		}
+		for (int i = 0; i < size; i++) {
+			rowStart[i + 1] += rowStart[i];
+		}
+		int[] fill = new int[size];
+		for (int e = 0; e < edges.size(); e++) {
+			int from = edges.get(e)[0];
+			int to = edges.get(e)[1];
+			double rate = edgeRates.get(e);
+			int entry = rowStart[to] + fill[to]++;
+			columns[entry] = from;
+			rates[entry] = rate;
+			exitRates[from] += rate;
+		}
+		irreducible = reachesInitialState();
+	}
+
+	/**
+	 * Returns the number of states.
+	 */
+	public int size() {
+		return states.length;
+	}
+
+	/**
+	 * Returns the global state with the given index.
+	 */
+	public PrjState getState(int index) {
+		return states[index];
+	}
+
+	/**
+	 * Returns true if every state can reach every other state, in which case the
+	 * chain has a unique steady-state distribution.
+	 */
+	public boolean isIrreducible() {
+		return irreducible;
+	}
+
+	double[] getExitRates() {
+		return exitRates;
+	}
+
+	/**
+	 * Returns the probability flow into state i for the distribution pi.
+	 */
+	double getInflow(double[] pi, int i) {
+		double inflow = 0.0;
+		for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+			inflow += rates[j] * pi[columns[j]];
+		}
+		return inflow;
+	}
+
+	/**
+	 * Returns the 1-norm of pi * Q, which is zero for the steady-state
+	 * distribution.
+	 */
+	public double getResidual(double[] pi) {
+		double residual = 0.0;
+		for (int i = 0; i < states.length; i++) {
+			residual += Math.abs(getInflow(pi, i) - exitRates[i] * pi[i]);
+		}
+		return residual;
+	}
+
+	/**
+	 * Every state is reachable from the initial state by construction, so the
+	 * chain is irreducible if the initial state is reachable from every state.
+	 */
+	private boolean reachesInitialState() {
+		boolean[] visited = new boolean[states.length];
+		int[] queue = new int[states.length];
+		int head = 0;
+		int tail = 0;
+		visited[0] = true;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int i = queue[head++];
+			for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+				if (!visited[columns[j]]) {
+					visited[columns[j]] = true;
+					queue[tail++] = columns[j];
+				}
+			}
+		}
+		return tail == states.length;
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.markovianAnalysis;
+
+import edu.utah.ece.async.lema.verification.platu.main.Options;
+
+/**
+ * Computes the steady-state distribution of an irreducible Markov chain given
+ * by its generator matrix. Solvers record the number of iterations they used and
+ * the residual of the distribution they return.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public abstract class SteadyStateSolver {
+
+	public static final int MAX_ITERATIONS = 100000;
+
+	protected int iterations;
+
+	protected double residual;
+
+	/**
+	 * Returns the solver with the given name, or null for "power", which selects
+	 * the power iteration performed by {@link MarkovianAnalysis}.
+	 */
+	public static SteadyStateSolver getSolver(String name) {
+		if (name.equals("gauss-seidel")) {
+			return new GaussSeidelSolver(1.0);
+		}
+		else if (name.equals("sor")) {
+			return new GaussSeidelSolver(Options.getSORRelaxation());
+		}
+		else if (name.equals("bicgstab")) {
+			return new BiCGStabSolver();
+		}
+		return null;
+	}
+
+	/**
+	 * Computes the steady-state distribution of the given chain into pi. The
+	 * tolerance bounds the relative change of every probability for iterative
+	 * sweeps and the relative residual for Krylov methods. Returns false if the
+	 * solver did not converge.
+	 */
+	public abstract boolean solve(SparseGeneratorMatrix matrix, double[] pi, double tolerance);
+
+	public abstract String getName();
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public double getResidual() {
+		return residual;
+	}
+
+	protected static void normalize(double[] pi) {
+		double sum = 0.0;
+		for (double p : pi) {
+			sum += p;
+		}
+		for (int i = 0; i < pi.length; i++) {
+			pi[i] /= sum;
+		}
+	}
+}
@@ -37,6 +37,8 @@ import edu.utah.ece.async.lema.verification.lpn.LPN;
 import edu.utah.ece.async.lema.verification.lpn.Translator;
 import edu.utah.ece.async.lema.verification.platu.logicAnalysis.Analysis;
 import edu.utah.ece.async.lema.verification.platu.logicAnalysis.CompositionalAnalysis;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.DiskStateSet;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.StateSetInterface;
 import edu.utah.ece.async.lema.verification.platu.main.Options;
 import edu.utah.ece.async.lema.verification.platu.markovianAnalysis.MarkovianAnalysis;
 import edu.utah.ece.async.lema.verification.platu.markovianAnalysis.PerfromTransientMarkovAnalysisThread;
@@ -268,8 +270,23 @@ public class Project extends CoreObservable{
 		dfsStateExploration.addObservable(this);
 		if (!Options.getMarkovianModelFlag()) {
 			if (Options.getPOR().toLowerCase().equals("off")) {
-				// DFS state exploration without any state reduction.
-				dfsStateExploration.search_dfs(sgArray, initStateArray);
+				// DFS state exploration without any state reduction. The parallel search is untimed and
+				// does not build the global state graph, so it is not used for timing or drawn state graphs.
+				// The BDD and MDD state formats explore the untimed state space symbolically. The disk state
+				// format keeps the states found by the untimed DFS in files, and the bitstate and hashcompact
+				// formats keep only hashes of them.
+				if (Options.getStateFormat().equals("bdd") && !Options.getTimingAnalysisFlag())
+					dfsStateExploration.search_bdd(sgArray, initStateArray);
+				else if (Options.getStateFormat().equals("mdd") && !Options.getTimingAnalysisFlag())
+					dfsStateExploration.search_mdd_saturation(sgArray, initStateArray);
+				else if (Options.getParallelFlag() && !Options.getTimingAnalysisFlag() && !Options.getOutputSgFlag())
+					dfsStateExploration.search_parallel(sgArray, initStateArray);
+				else {
+					StateSetInterface reached = dfsStateExploration.search_dfs(sgArray, initStateArray);
+					// The run files of the disk state format are no longer needed.
+					if (reached instanceof DiskStateSet)
+						((DiskStateSet) reached).close();
+				}
 			}
 			if (Options.getPOR().toLowerCase().equals("tb")) {
 				dfsStateExploration.searchPOR_taceback(sgArray, initStateArray);
@@ -25,7 +25,10 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
+import edu.utah.ece.async.lema.verification.lpn.CompiledExprTree;
+import edu.utah.ece.async.lema.verification.lpn.ExprTree;
 import edu.utah.ece.async.lema.verification.lpn.LPN;
 import edu.utah.ece.async.lema.verification.lpn.Place;
 import edu.utah.ece.async.lema.verification.lpn.Transition;
@@ -66,6 +69,11 @@ public class StateGraph {
 
 	protected State init = null;
     protected IndexObjMap<State> stateCache;
+    /**
+     * The states of stateCache, looked up without locking the state graph so that the
+     * threads exploring it only lock it to add new states.
+     */
+    private final ConcurrentHashMap<State, State> stateTable = new ConcurrentHashMap<State, State>();
     //protected IndexObjMap<State> localStateCache;
     protected HashMap<State, State> state2LocalMap;
     /**
@@ -83,6 +91,11 @@ public class StateGraph {
     protected List<Constraint> frontierConstraintSet = new LinkedList<Constraint>();
     protected Set<Constraint> constraintSet = new HashSet<Constraint>();
     protected LPN lpn;
+    /**
+     * Enabling conditions, rates and assignments of the transitions of lpn compiled against its
+     * variable vector, indexed by transition index. They are built the first time they are needed.
+     */
+    private volatile CompiledTransition[] compiledTransitions;
     protected static Set<Entry<Transition, State>> emptySet = new HashSet<Entry<Transition, State>>(0);
     
     public StateGraph(LPN lpn) {
@@ -113,63 +126,74 @@ public class StateGraph {
      * @return Number of new transitions.
      */
     public int constrFindSG(final State baseState){
-    	boolean newStateFlag = false;
-    	int ptr = 1;
         int newTransitions = 0;
         Stack<State> stStack = new Stack<State>();
         Stack<LpnTranList> tranStack = new Stack<LpnTranList>();
         // TODO: What if we just read tranVector from baseState?
-        LpnTranList currentEnabledTransitions = getEnabled(baseState);
         stStack.push(baseState);
-        tranStack.push(currentEnabledTransitions);
-        while (true){
-            ptr--;
-            State currentState = stStack.pop();
-            currentEnabledTransitions = tranStack.pop();
-            for (Transition firedTran : currentEnabledTransitions) {
-            	//System.out.println("firedTran: " + firedTran.getLabel() + "(" + firedTran.getLpn().getLabel() + ")");
-              	State newState = constrFire(firedTran,currentState);
-                State nextState = addState(newState);
-                newStateFlag = false;
-            	if(nextState == newState){
-            		addFrontierState(nextState);
-            		newStateFlag = true;
+        tranStack.push(getEnabled(baseState));
+        while (!stStack.isEmpty()){
+        	int result = constrExpand(stStack.pop(), tranStack.pop(), stStack, tranStack);
+        	if (result < 0)
+        		return -1;
+        	newTransitions += result;
+        }
+        return newTransitions;
+    }
+    
+    /**
+     * Fires the enabled transitions of a state, which is one step of constrFindSG().
+     * Also generates new constraints from the state transitions. The new states that
+     * have enabled transitions are added to nextStates, and their enabled transitions
+     * to nextEnabledTransitions. Several threads may expand states of the same state graph.
+     * @param currentState - State to expand
+     * @param currentEnabledTransitions - Enabled transitions of currentState
+     * @return Number of new transitions, or -1 if a transition is disabled by another one.
+     */
+    public int constrExpand(final State currentState, LpnTranList currentEnabledTransitions,
+    		List<State> nextStates, List<LpnTranList> nextEnabledTransitions){
+    	boolean newStateFlag = false;
+        int newTransitions = 0;
+        for (Transition firedTran : currentEnabledTransitions) {
+        	//System.out.println("firedTran: " + firedTran.getLabel() + "(" + firedTran.getLpn().getLabel() + ")");
+          	State newState = constrFire(firedTran,currentState);
+            State nextState = addState(newState);
+            newStateFlag = false;
+        	if(nextState == newState){
+        		addFrontierState(nextState);
+        		newStateFlag = true;
+        	}
+//        	StateTran stTran = new StateTran(currentState, firedTran, state);
+        	if(nextState != currentState){
+//        		this.addStateTran(currentState, nextState, firedTran);
+        		this.addStateTran(currentState, firedTran, nextState);
+        		newTransitions++;
+        		// TODO: (original) check that a variable was changed before creating a constraint
+            	if(!firedTran.isLocal()){
+            		for(LPN lpn : firedTran.getDstLpnList()){
+            			//TODO: No need to generate constraint for the lpn where firedTran lives. 
+            			if (firedTran.getLpn().equals(lpn))
+            				continue;
+                  		Constraint c = new Constraint(currentState, nextState, firedTran, lpn);
+                  		// The state graph of lpn may be explored by another thread at the same time.
+                  		lpn.getStateGraph().synchronizedAddConstraint(c);
+        			}
             	}
-//            	StateTran stTran = new StateTran(currentState, firedTran, state);
-            	if(nextState != currentState){
-//            		this.addStateTran(currentState, nextState, firedTran);
-            		this.addStateTran(currentState, firedTran, nextState);
-            		newTransitions++;
-            		// TODO: (original) check that a variable was changed before creating a constraint
-	            	if(!firedTran.isLocal()){
-	            		for(LPN lpn : firedTran.getDstLpnList()){
-	            			//TODO: No need to generate constraint for the lpn where firedTran lives. 
-	            			if (firedTran.getLpn().equals(lpn))
-	            				continue;
-	                  		Constraint c = new Constraint(currentState, nextState, firedTran, lpn);
-	                  		lpn.getStateGraph().addConstraint(c);
-	        			}
-	            	}
-        		}
-            	if(!newStateFlag) 
-            		continue;            	
-            	LpnTranList nextEnabledTransitions = getEnabled(nextState);
-                if (nextEnabledTransitions.isEmpty()) 
-                	continue;                
-                Transition disabledTran = firedTran.disablingError(currentEnabledTransitions, nextEnabledTransitions);
-                if(disabledTran != null) {
-                    System.out.println("Verification failed: " +disabledTran.getFullLabel() + " is disabled by " + 
-                    			firedTran.getFullLabel());
-                    currentState.setFailure();
-                    return -1;
-                }                
-                stStack.push(nextState);
-                tranStack.push(nextEnabledTransitions);
-                ptr++;
-            }
-            if (ptr == 0) {
-                break;
-            }
+    		}
+        	if(!newStateFlag) 
+        		continue;            	
+        	LpnTranList nextEnabled = getEnabled(nextState);
+            if (nextEnabled.isEmpty()) 
+            	continue;                
+            Transition disabledTran = firedTran.disablingError(currentEnabledTransitions, nextEnabled);
+            if(disabledTran != null) {
+                System.out.println("Verification failed: " +disabledTran.getFullLabel() + " is disabled by " + 
+                			firedTran.getFullLabel());
+                currentState.setFailure();
+                return -1;
+            }                
+            nextStates.add(nextState);
+            nextEnabledTransitions.add(nextEnabled);
         }
         return newTransitions;
     }
@@ -258,7 +282,7 @@ public class StateGraph {
     	return this.stateSet;
     }
     
-    public void addFrontierState(State st){
+    public synchronized void addFrontierState(State st){
     	this.entryStateSet.add(st);
     }
     
@@ -439,9 +463,13 @@ public class StateGraph {
             throw new NullPointerException();
         }
     	
-    	if(enabledSetTbl.containsKey(curState) == true){
+    	LpnTranList cachedEnabled;
+    	synchronized (this.enabledSetTbl) {
+    		cachedEnabled = this.enabledSetTbl.get(curState);
+    	}
+    	if(cachedEnabled != null){
     		// TODO: need to return a clone?
-    		return enabledSetTbl.get(curState).clone();
+    		return cachedEnabled.clone();
     	}
     	
         LpnTranList curEnabled = new LpnTranList();
@@ -453,7 +481,9 @@ public class StateGraph {
                 	curEnabled.addFirst(tran);
              } 
         }
-        this.enabledSetTbl.put(curState, curEnabled);
+        synchronized (this.enabledSetTbl) {
+        	this.enabledSetTbl.put(curState, curEnabled);
+        }
         return curEnabled;
     }
 
@@ -494,6 +524,82 @@ public class StateGraph {
 	}
 	
 
+	/**
+	 * Returns true if tran has an enabling condition and it evaluates to false on the given variable vector.
+	 */
+	private boolean enablingConditionIsFalse(Transition tran, int[] varValuesVector) {
+		CompiledExprTree enablingTree = getCompiledTransition(tran).enablingTree;
+		return enablingTree != null && enablingTree.evaluateExpr(varValuesVector) == 0.0;
+	}
+
+	/**
+	 * Returns true if tran has an exponential delay and its rate evaluates to zero on the given variable vector.
+	 */
+	private boolean rateIsZero(Transition tran, int[] varValuesVector) {
+		CompiledExprTree rateTree = getCompiledTransition(tran).rateTree;
+		return rateTree != null && rateTree.evaluateExpr(varValuesVector) == 0.0;
+	}
+
+	/**
+	 * Evaluates the Boolean and integer assignments of firedTran on curVector and stores the new values
+	 * in newVector.
+	 */
+	private void applyAssignments(Transition firedTran, int[] curVector, int[] newVector) {
+		CompiledTransition compiled = getCompiledTransition(firedTran);
+		for (int i = 0; i < compiled.assignedVars.length; i++) {
+			newVector[compiled.assignedVars[i]] = (int) compiled.assignTrees[i].evaluateExpr(curVector);
+		}
+	}
+
+	private CompiledTransition getCompiledTransition(Transition tran) {
+		CompiledTransition[] compiled = this.compiledTransitions;
+		if (compiled == null) {
+			compiled = compileTransitions();
+			this.compiledTransitions = compiled;
+		}
+		return compiled[tran.getIndex()];
+	}
+
+	private CompiledTransition[] compileTransitions() {
+		DualHashMap<String, Integer> varIndexMap = this.lpn.getVarIndexMap();
+		Transition[] transitions = this.lpn.getAllTransitions();
+		int size = 0;
+		for (Transition tran : transitions) {
+			size = Math.max(size, tran.getIndex() + 1);
+		}
+		CompiledTransition[] compiled = new CompiledTransition[size];
+		for (Transition tran : transitions) {
+			String tranName = tran.getLabel();
+			CompiledTransition compiledTran = new CompiledTransition();
+			compiledTran.enablingTree = CompiledExprTree.compile(this.lpn.getEnablingTree(tranName), varIndexMap);
+			compiledTran.rateTree = CompiledExprTree.compile(this.lpn.getTransitionRateTree(tranName), varIndexMap);
+			// Integer assignments come after Boolean ones, so they win if a variable has both.
+			List<Integer> assignedVars = new ArrayList<Integer>();
+			List<CompiledExprTree> assignTrees = new ArrayList<CompiledExprTree>();
+			for (Entry<String, ExprTree> assignment : tran.getBoolAssignTrees().entrySet()) {
+				Integer varIndex = varIndexMap.get(assignment.getKey());
+				if (varIndex != null && assignment.getValue() != null) {
+					assignedVars.add(varIndex);
+					assignTrees.add(assignment.getValue().compile(varIndexMap));
+				}
+			}
+			for (Entry<String, ExprTree> assignment : tran.getIntAssignTrees().entrySet()) {
+				Integer varIndex = varIndexMap.get(assignment.getKey());
+				if (varIndex != null && assignment.getValue() != null) {
+					assignedVars.add(varIndex);
+					assignTrees.add(assignment.getValue().compile(varIndexMap));
+				}
+			}
+			compiledTran.assignedVars = new int[assignedVars.size()];
+			for (int i = 0; i < assignedVars.size(); i++) {
+				compiledTran.assignedVars[i] = assignedVars.get(i);
+			}
+			compiledTran.assignTrees = assignTrees.toArray(new CompiledExprTree[assignTrees.size()]);
+			compiled[tran.getIndex()] = compiledTran;
+		}
+		return compiled;
+	}
+
 	private boolean isEnabled(Transition tran, State curState) {	   	
 			int[] varValuesVector = curState.getVariableVector();
 			String tranName = tran.getLabel();
@@ -501,16 +607,14 @@ public class StateGraph {
 			if (Options.getDebugMode()) {
 //				System.out.println("Checking " + tran);
 			}				
-			if (this.lpn.getEnablingTree(tranName) != null 
-					&& this.lpn.getEnablingTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(varValuesVector)) == 0.0
+			if (enablingConditionIsFalse(tran, varValuesVector)
 					&& !(tran.isPersistent() && curState.getTranVector()[tranIndex])) {
 				if (Options.getDebugMode()) {
 //					System.out.println(tran.getName() + " " + "Enabling condition is false");
 				}	
 				return false;
 			}
-			if (this.lpn.getTransitionRateTree(tranName) != null 
-					&& this.lpn.getTransitionRateTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(varValuesVector)) == 0.0) {
+			if (rateIsZero(tran, varValuesVector)) {
 				if (Options.getDebugMode()) {
 //					System.out.println("Rate is zero");
 				}					
@@ -559,17 +663,23 @@ public class StateGraph {
     /**
      * Add the module state mState to the local cache, and also add its local portion to
      * the local portion cache, and build the mapping between the mState and lState for fast lookup
-     * in the future.
+     * in the future. States already in the cache are found without locking the state graph.
      * @param mState
      * @return State
      */
     public State addState(State mState) {
-    	State cachedState = this.stateCache.add(mState);
-    	State lState = this.state2LocalMap.get(cachedState);
-    	if(lState == null) {
-    		lState = cachedState.getLocalState();
-    		//lState = this.localStateCache.add(lState);
-    		this.state2LocalMap.put(cachedState, lState);
+    	State cachedState = this.stateTable.get(mState);
+    	if(cachedState != null)
+    		return cachedState;
+    	synchronized (this) {
+    		cachedState = this.stateCache.add(mState);
+    		State lState = this.state2LocalMap.get(cachedState);
+    		if(lState == null) {
+    			lState = cachedState.getLocalState();
+    			//lState = this.localStateCache.add(lState);
+    			this.state2LocalMap.put(cachedState, lState);
+    		}
+    		this.stateTable.put(cachedState, cachedState);
     	}
     	return cachedState;
     }
@@ -577,15 +687,15 @@ public class StateGraph {
     /*
      * Get the local portion of mState from the cache..
      */
-    public State getLocalState(State mState) {
+    public synchronized State getLocalState(State mState) {
     	return this.state2LocalMap.get(mState);
     }
 
-    public State getState(int stateIdx) {
+    public synchronized State getState(int stateIdx) {
     	return this.stateCache.get(stateIdx);
     }
     
-    public void addStateTran(State curSt, Transition firedTran, State nextSt) {
+    public synchronized void addStateTran(State curSt, Transition firedTran, State nextSt) {
     	HashMap<Transition, State> nextMap = this.nextStateMap.get(curSt);
     	if(nextMap == null)  {
     		nextMap = new HashMap<Transition,State>();
@@ -599,7 +709,7 @@ public class StateGraph {
 //    		printNextStateForGivenState(curSt, "StateGraph.java -> addStateTran(State, Transition, State)");    	
     }
     
-    public State getNextState(State curSt, Transition firedTran) {
+    public synchronized State getNextState(State curSt, Transition firedTran) {
     	HashMap<Transition, State> nextMap = this.nextStateMap.get(curSt);
     	if(nextMap == null)
     		return null;   	
@@ -636,6 +746,7 @@ public class StateGraph {
     	this.frontierStateSet = null;
     	this.entryStateSet = null;
     	this.stateCache = null;
+    	this.stateTable.clear();
     }
     
     public State genInitialState() {	
@@ -815,18 +926,7 @@ public class StateGraph {
         //  State vector update
         int[] newVariableVector = curState.getVariableVector().clone();
         int[] curVector = curState.getVariableVector();
-        HashMap<String, String> currentValuesAsString = this.lpn.getAllVarsWithValuesAsString(curVector);
-        for (String key : currentValuesAsString.keySet()) {
-        	if (this.lpn.getBoolAssignTree(firedTran.getLabel(), key) != null) {
-        		int newValue = (int)this.lpn.getBoolAssignTree(firedTran.getLabel(), key).evaluateExpr(currentValuesAsString);
-        		newVariableVector[this.lpn.getVarIndexMap().get(key)] = newValue;
-        	}
-        	
-        	if (this.lpn.getIntAssignTree(firedTran.getLabel(), key) != null) {
-        		int newValue = (int)this.lpn.getIntAssignTree(firedTran.getLabel(), key).evaluateExpr(currentValuesAsString);
-        		newVariableVector[this.lpn.getVarIndexMap().get(key)] = newValue;
-        	}
-        } 
+        applyAssignments(firedTran, curVector, newVariableVector);
         
 //        // Update rates      
 //        final int OLD_ZERO = 0; 	// Case 0 in description.
@@ -1042,8 +1142,7 @@ public class StateGraph {
     		if (Options.getDebugMode()) {
 //    			System.out.println("Checking " + tranName);
     		}
-    		if (this.lpn.getEnablingTree(tranName) != null 
-    				&& this.lpn.getEnablingTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(newVariableVector)) == 0.0) {
+    		if (enablingConditionIsFalse(tran, newVariableVector)) {
     			if (Options.getDebugMode()) {
 //    				System.out.println(tran.getName() + " " + "Enabling condition is false");    			
     			}					
@@ -1051,8 +1150,7 @@ public class StateGraph {
     				tranVectorAfterFiring[tranIndex] = false;
     			continue;
     		}
-    		if (this.lpn.getTransitionRateTree(tranName) != null 
-    				&& this.lpn.getTransitionRateTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(newVariableVector)) == 0.0) {
+    		if (rateIsZero(tran, newVariableVector)) {
     			if (Options.getDebugMode()) {
 //    				System.out.println("Rate is zero");
     			}
@@ -1117,16 +1215,14 @@ public class StateGraph {
     		int tranIndex = tran.getIndex();
     		if (Options.getDebugMode())
 				System.out.println("Checking " + tranName);
-    		if (this.lpn.getEnablingTree(tranName) != null 
-    				&& this.lpn.getEnablingTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(newVectorArray)) == 0.0) {
+    		if (enablingConditionIsFalse(tran, newVectorArray)) {
     			if (Options.getDebugMode())
 					System.out.println(tran.getLabel() + " " + "Enabling condition is false");    			
     			if (enabledTranAfterFiring[tranIndex] && !tran.isPersistent())
     				enabledTranAfterFiring[tranIndex] = false;
     			continue;
     		}
-    		if (this.lpn.getTransitionRateTree(tranName) != null 
-    				&& this.lpn.getTransitionRateTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(newVectorArray)) == 0.0) {
+    		if (rateIsZero(tran, newVectorArray)) {
     			if (Options.getDebugMode())
 					System.out.println("Rate is zero");
     			continue;
@@ -1212,16 +1308,7 @@ public class StateGraph {
         System.arraycopy(oldVector, 0, newVectorArray, 0, size);
         
         int[] curVector = curState.getVariableVector();
-        for (String key : this.lpn.getAllVarsWithValuesAsString(curVector).keySet()) {
-        	if (this.lpn.getBoolAssignTree(firedTran.getLabel(), key) != null) {
-        		int newValue = (int)this.lpn.getBoolAssignTree(firedTran.getLabel(), key).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(curVector));
-        		newVectorArray[this.lpn.getVarIndexMap().get(key)] = newValue;
-        	}
-        	if (this.lpn.getIntAssignTree(firedTran.getLabel(), key) != null) {
-        		int newValue = (int)this.lpn.getIntAssignTree(firedTran.getLabel(), key).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(curVector));
-        		newVectorArray[this.lpn.getVarIndexMap().get(key)] = newValue;
-        	}
-        }       
+        applyAssignments(firedTran, curVector, newVectorArray);
         // Enabled transition vector update
         /* Hao's code
         //boolean[] newEnabledTranArray = curState.getTranVector();
@@ -2213,9 +2300,7 @@ public class StateGraph {
 			
 			boolean needToUpdate = true;
         	String tranName = t.getLabel();
-    		if (this.lpn.getEnablingTree(tranName) != null 
-    				&& this.lpn.getEnablingTree(tranName)
-    					.evaluateExpr(this.lpn.getAllVarsWithValuesAsString(vector)) == 0.0) {
+    		if (enablingConditionIsFalse(t, vector)) {
     		   	if (previouslyEnabled[tranIndex] && !t.isPersistent())
     				previouslyEnabled[tranIndex] = false;
     			continue;
@@ -2272,11 +2357,11 @@ public class StateGraph {
 				presetNotMarked = false;
 				continue;
 			}
-			if (this.lpn.getEnablingTree(tranName) != null && this.lpn.getEnablingTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(initialVector)) == 0.0) {
+			if (enablingConditionIsFalse(transition, initialVector)) {
 				initEnabledTrans[i] = false;
 				continue;
 			}
-			else if (this.lpn.getTransitionRateTree(tranName) != null && this.lpn.getTransitionRateTree(tranName).evaluateExpr(this.lpn.getAllVarsWithValuesAsString(initialVector)) == 0.0) {
+			else if (rateIsZero(transition, initialVector)) {
 				initEnabledTrans[i] = false;
 				continue;
 			}
@@ -2303,4 +2388,11 @@ public class StateGraph {
 		System.out.println("--------------End Of Next State Map----------------------");
 
 	}
+
+	private static class CompiledTransition {
+		CompiledExprTree enablingTree;
+		CompiledExprTree rateTree;
+		int[] assignedVars;
+		CompiledExprTree[] assignTrees;
+	}
 }
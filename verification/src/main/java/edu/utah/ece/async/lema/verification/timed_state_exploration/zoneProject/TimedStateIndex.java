@@ -0,0 +1,289 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence;
+
+/**
+ * A TimedStateIndex holds the TimedPrjStates of a StateSet that share the same
+ * un-timed portion and answers subset and superset queries on their zones without
+ * comparing every pair of DBMs. The states are kept sorted by the sum of the entries
+ * of their zones. Since a zone that is a subset of another zone has a smaller or
+ * equal sum, only a range of the states needs to be considered by a query. Within
+ * that range the bounding boxes of the zones (the upper and lower bounds of the
+ * timers) are compared before the full DBMs are.
+ *
+ * @author 
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class TimedStateIndex extends AbstractCollection<TimedPrjState>{
+
+	/*
+	 * Abstraction Function : The TimedStateIndex is the collection of the states of
+	 * 		the entries in _entries.
+	 */
+
+	/*
+	 * Representation Invariant : The _entries are sorted by their weight and each entry
+	 * 		caches the weight and the bounding box of the zones of its state. All the
+	 * 		states have the same un-timed portion.
+	 */
+
+	private ArrayList<IndexEntry> _entries;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public TimedStateIndex(){
+		_entries = new ArrayList<IndexEntry>();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size(){
+		return _entries.size();
+	}
+
+	/**
+	 * Adds a state to the index. The state is assumed to have the same un-timed portion
+	 * as the states already in the index. No subset or superset checks are made.
+	 * @param s
+	 * 		The state to add.
+	 * @return
+	 * 		True.
+	 */
+	@Override
+	public boolean add(TimedPrjState s){
+		IndexEntry entry = new IndexEntry(s);
+
+		// Insert after the entries with a smaller or equal weight.
+		int position = upperPosition(entry._weight);
+		_entries.add(position, entry);
+
+		return true;
+	}
+
+	/**
+	 * Finds a state of the index whose zones are supersets of (or equal to) the zones of s.
+	 * @param s
+	 * 		The state to look for.
+	 * @return
+	 * 		A state t of the index such that s.subsetZone(t) is true, or null if there is
+	 * 		no such state.
+	 */
+	public TimedPrjState findSuperset(TimedPrjState s){
+		IndexEntry query = new IndexEntry(s);
+
+		// Only the states with a weight at least that of s may contain s.
+		for(int i=lowerPosition(query._weight); i<_entries.size(); i++){
+			IndexEntry entry = _entries.get(i);
+			if(query.boxSubset(entry) && s.subsetZone(entry._state)){
+				return entry._state;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds a state of the index that is equal to s.
+	 * @param s
+	 * 		The state to look for.
+	 * @return
+	 * 		A state t of the index with t.equals(s), or null if there is no such state.
+	 */
+	public TimedPrjState findEqual(TimedPrjState s){
+		IndexEntry query = new IndexEntry(s);
+
+		// Equal states have equal weights.
+		int end = upperPosition(query._weight);
+		for(int i=lowerPosition(query._weight); i<end; i++){
+			IndexEntry entry = _entries.get(i);
+			if(s.equals(entry._state)){
+				return entry._state;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes the states of the index whose zones are subsets of (or equal to) the zones
+	 * of s.
+	 * @param s
+	 * 		The state to compare against.
+	 * @return
+	 * 		The states that were removed.
+	 */
+	public ArrayList<TimedPrjState> removeSubsets(TimedPrjState s){
+		IndexEntry query = new IndexEntry(s);
+		ArrayList<TimedPrjState> removed = new ArrayList<TimedPrjState>();
+
+		// Only the states with a weight at most that of s may be contained in s. The kept
+		// entries are moved down over the removed ones.
+		int end = upperPosition(query._weight);
+		int kept = 0;
+		for(int i=0; i<end; i++){
+			IndexEntry entry = _entries.get(i);
+			if(entry.boxSubset(query) && s.supersetZone(entry._state)){
+				removed.add(entry._state);
+			}
+			else{
+				_entries.set(kept++, entry);
+			}
+		}
+
+		if(!removed.isEmpty()){
+			_entries.subList(kept, end).clear();
+		}
+
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<TimedPrjState> iterator(){
+		final Iterator<IndexEntry> entryIterator = _entries.iterator();
+
+		return new Iterator<TimedPrjState>(){
+
+			@Override
+			public boolean hasNext() {
+				return entryIterator.hasNext();
+			}
+
+			@Override
+			public TimedPrjState next() {
+				return entryIterator.next()._state;
+			}
+
+			@Override
+			public void remove() {
+				entryIterator.remove();
+			}
+		};
+	}
+
+	/**
+	 * Gives the position of the first entry with a weight that is greater than or
+	 * equal to weight.
+	 */
+	private int lowerPosition(long weight){
+		int low = 0;
+		int high = _entries.size();
+
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(_entries.get(middle)._weight < weight){
+				low = middle + 1;
+			}
+			else{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Gives the position of the first entry with a weight that is greater than weight.
+	 */
+	private int upperPosition(long weight){
+		int low = 0;
+		int high = _entries.size();
+
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(_entries.get(middle)._weight <= weight){
+				low = middle + 1;
+			}
+			else{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * A state together with the weight and the bounding box of its zones.
+	 */
+	private static class IndexEntry{
+
+		TimedPrjState _state;
+
+		/* The sum of the entries of the Zones of the state. */
+		long _weight;
+
+		/* The bounding boxes of the Zones of the state one after the other. Other
+		 * kinds of Equivalence do not contribute to the weight or the bounding box. */
+		int[] _box;
+
+		IndexEntry(TimedPrjState s){
+			_state = s;
+
+			Equivalence[] zones = s.toZoneArray();
+			int[][] boxes = new int[zones.length][];
+			int length = 0;
+			for(int i=0; i<zones.length; i++){
+				if(zones[i] instanceof Zone){
+					Zone z = (Zone) zones[i];
+					_weight += z.getWeight();
+					boxes[i] = z.getBoundingBox();
+					length += boxes[i].length;
+				}
+			}
+
+			_box = new int[length];
+			int offset = 0;
+			for(int[] box : boxes){
+				if(box != null){
+					System.arraycopy(box, 0, _box, offset, box.length);
+					offset += box.length;
+				}
+			}
+		}
+
+		/**
+		 * Determines if the bounding boxes allow the zones of this entry to be subsets of
+		 * the zones of the other entry. Zones with different timers are never subsets of
+		 * each other, so bounding boxes of different sizes are rejected right away.
+		 */
+		boolean boxSubset(IndexEntry other){
+			if(_box.length != other._box.length){
+				return false;
+			}
+
+			for(int i=0; i<_box.length; i++){
+				if(_box[i] > other._box[i]){
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+}
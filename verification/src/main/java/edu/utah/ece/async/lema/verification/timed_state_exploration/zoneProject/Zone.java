@@ -157,8 +157,9 @@ public class Zone implements Equivalence{
 	
 	public static final int INFINITY = Integer.MAX_VALUE;
 	
-	/* The lower and upper bounds of the times as well as the dbm. */
-	private int[][] _matrix;
+	/* The lower and upper bounds of the times as well as the dbm. The matrix is stored
+	 * row by row, so the entry in row i and column j is _matrix[i*matrixSize() + j]. */
+	private int[] _matrix;
 	
 	/* Maps the index to the timer. The index is row/column of the DBM sub-matrix.
 	 * Logically the zero timer is given index -1.
@@ -236,6 +237,14 @@ public class Zone implements Equivalence{
 	 */
 	private static boolean _supersetFlag = true;
 	
+	/*
+	 * Turns on and off the check of the incremental closure.
+	 * True means that every DBM closed incrementally is compared to the DBM
+	 * closed by the full Floyd-Warshall algorithm.
+	 * False means that the incremental closure is trusted.
+	 */
+	private static boolean _checkClosureFlag = false;
+	
 	
 	/**
 	 * Gets the value of the subset flag.
@@ -275,6 +284,26 @@ public class Zone implements Equivalence{
 		_supersetFlag = useSupersets;
 	}
 	
+	/**
+	 * Gets the value of the closure check flag.
+	 * @return
+	 * 		True if incremental closures are checked, false otherwise.
+	 */
+	public static boolean getCheckClosureFlag(){
+		return _checkClosureFlag;
+	}
+	
+	/**
+	 * Sets the closure check flag.
+	 * @param checkClosure
+	 * 		The value of the closure check flag. Set to true if the
+	 * 		incremental closures are to be checked against the full
+	 * 		closure, false otherwise.
+	 */
+	public static void setCheckClosureFlag(boolean checkClosure){
+		_checkClosureFlag = checkClosure;
+	}
+	
 	/**
 	 * Construct a zone that has the given timers.
 	 * @param timers 
@@ -390,7 +419,7 @@ public class Zone implements Equivalence{
 		newIndex.put(0, 0);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 
 		// Copy the DBM
 		for(int i=0; i<dbmSize(); i++)
@@ -482,7 +511,7 @@ public class Zone implements Equivalence{
 		
 		_indexToTimerPair = enabledTransitionsArrayList.toArray(new LPNTransitionPair[0]);
 		
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		for(int i=1; i<dbmSize(); i++)
 		{
@@ -556,7 +585,7 @@ public class Zone implements Equivalence{
 		initialize_indexToTimerPair(localStates);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		// Set the lower bound/ upper bounds of the timers and the rates.
 		initializeLowerUpperBounds(getAllNames(), localStates);
@@ -604,7 +633,7 @@ public class Zone implements Equivalence{
 		initialize_indexToTimerPair(localStates);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		// Set the lower bound/ upper bounds of the timers and the rates.
 		initializeLowerUpperBounds(getAllNames(), localStates);
@@ -648,7 +677,7 @@ public class Zone implements Equivalence{
 //		
 //		Arrays.sort(_indexToTimerPair);
 //		
-//		_matrix = new int[matrixSize()][matrixSize()];
+//		_matrix = new int[matrixSize()*matrixSize()];
 //		
 //		for(int i=1; i<dbmSize(); i++){
 //			setDbmEntry(i, j, value)
@@ -1146,7 +1175,7 @@ public class Zone implements Equivalence{
 	 */
 	private Zone()
 	{
-		_matrix = new int[0][0];
+		_matrix = new int[0];
 		_indexToTimerPair = new LPNTransitionPair[0];
 		_hashCode = -1;
 		_lpnList = new LPN[0];
@@ -1284,18 +1313,17 @@ public class Zone implements Equivalence{
 	 */
 	public int getUpperBoundbydbmIndex(int index)
 	{
-		return _matrix[0][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))];
 	}
 	
 	
 	public int getUpperBound(int index){
-		return _matrix[0][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))];
 	}
 	
 	@Override
 	public int getUpperBoundTrue(int index){
-		return _matrix[dbmIndexToMatrixIndex(0)]
-				[dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(0), dbmIndexToMatrixIndex(index))];
 	}
 	
 	public int getUnwarpedUpperBound(LPNContinuousPair lcpair){
@@ -1311,13 +1339,12 @@ public class Zone implements Equivalence{
 	}
 	
 	public int getLowerBound(int index){
-		return _matrix[dbmIndexToMatrixIndex(index)][0];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)];
 	}
 	
 	@Override
 	public int getLowerBoundTrue(int index){
-		return _matrix[dbmIndexToMatrixIndex(index)]
-				[dbmIndexToMatrixIndex(0)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index), dbmIndexToMatrixIndex(0))];
 	}
 	
 	/**
@@ -1350,7 +1377,7 @@ public class Zone implements Equivalence{
 	 */
 	public void setUpperBoundbydbmIndex(int index, int value)
 	{
-		_matrix[0][dbmIndexToMatrixIndex(index)] = value;
+		_matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))] = value;
 	}
 	
 	/**
@@ -1447,7 +1474,7 @@ public class Zone implements Equivalence{
 	 */
 	public int getLowerBoundbydbmIndex(int index)
 	{
-		return _matrix[dbmIndexToMatrixIndex(index)][0];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)];
 	}
 	
 	public int getLowerBoundForRate(LPNTransitionPair contVar){
@@ -1512,7 +1539,7 @@ public class Zone implements Equivalence{
 	 */
 	public void setLowerBoundbydbmIndex(int index, int value)
 	{
-		_matrix[dbmIndexToMatrixIndex(index)][0] = -1*value;
+		_matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)] = -1*value;
 	}
 	
 	/**
@@ -1833,6 +1860,21 @@ public class Zone implements Equivalence{
 		return i+1;
 	}
 	
+	/**
+	 * Converts a row and a column of _matrix to the index of the entry in the
+	 * flat _matrix array.
+	 * @param row
+	 * 			The row index of _matrix.
+	 * @param col
+	 * 			The column index of _matrix.
+	 * @return
+	 * 			The index of the entry in _matrix.
+	 */
+	private int matrixIndex(int row, int col)
+	{
+		return row*matrixSize() + col;
+	}
+	
 	/**
 	 * Retrieves an entry of the DBM using the DBM's addressing.
 	 * @param i
@@ -1845,7 +1887,7 @@ public class Zone implements Equivalence{
 	@Override
 	public int getDbmEntry(int i, int j)
 	{
-		return _matrix[dbmIndexToMatrixIndex(i)][dbmIndexToMatrixIndex(j)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(j))];
 	}
 	
 	/**
@@ -1876,7 +1918,7 @@ public class Zone implements Equivalence{
 	 */
 	private void setDbmEntry(int i, int j, int value)
 	{
-		_matrix[dbmIndexToMatrixIndex(i)][dbmIndexToMatrixIndex(j)] = value;
+		_matrix[matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(j))] = value;
 	}
 	
 	/**
@@ -2084,21 +2126,57 @@ public class Zone implements Equivalence{
 		}
 		
 		// Check if the matrix is the same 
-		for(int i=0; i<_matrix.length; i++)
+		if(!Arrays.equals(this._matrix, otherZone._matrix))
 		{
-			for(int j=0; j<_matrix[0].length; j++)
-			{
-				if(!(this._matrix[i][j] == otherZone._matrix[i][j]))
-				{
-					return false;
-				}
-			}
+			return false;
 		}
 		
 		
 		return true;
 	}
-	
+
+	/**
+	 * Gives the bounding box of the zone, that is the upper bounds and the negated
+	 * lower bounds of all the timers. If this zone is a subset of another zone
+	 * with the same timers, each entry of its bounding box is less than or equal to
+	 * the corresponding entry of the other bounding box.
+	 * @return
+	 * 		The first row of the DBM followed by the first column of the DBM.
+	 */
+	int[] getBoundingBox()
+	{
+		int size = matrixSize();
+		int[] box = new int[2*size];
+
+		int zeroRow = dbmIndexToMatrixIndex(0);
+		for(int i=0; i<size; i++)
+		{
+			box[i] = _matrix[matrixIndex(zeroRow, i)];
+			box[size + i] = _matrix[matrixIndex(i, zeroRow)];
+		}
+
+		return box;
+	}
+
+	/**
+	 * Gives the sum of all the entries of the matrix. If this zone is a subset of
+	 * another zone with the same timers, its weight is less than or equal to the weight
+	 * of the other zone.
+	 * @return
+	 * 		The sum of the bounds and the DBM entries.
+	 */
+	long getWeight()
+	{
+		long weight = 0;
+
+		for(int i=0; i<_matrix.length; i++)
+		{
+			weight += _matrix[i];
+		}
+
+		return weight;
+	}
+
 	/**
 	 * Determines if this zone is a subset of Zone otherZone.
 	 * @param otherZone 
@@ -2140,11 +2218,8 @@ public class Zone implements Equivalence{
 				// of the other Zone.
 				for(int i=0; i<_matrix.length; i++)
 				{
-					for(int j=0; j<_matrix[0].length; j++)
-					{
-						if(!(this._matrix[i][j] <= otherZone._matrix[i][j])){
-							return false;
-						}
+					if(!(this._matrix[i] <= otherZone._matrix[i])){
+						return false;
 					}
 				}
 				
@@ -2190,10 +2265,7 @@ public class Zone implements Equivalence{
 	{
 		int newHashCode = Arrays.hashCode(_indexToTimerPair);
 		
-		for(int i=0; i<_matrix.length; i++)
-		{
-			newHashCode ^= Arrays.hashCode(_matrix[i]);
-		}
+		newHashCode ^= Arrays.hashCode(_matrix);
 		
 		return Math.abs(newHashCode);
 	}
@@ -2224,28 +2296,209 @@ public class Zone implements Equivalence{
 	@Override
 	public void recononicalize()
 	{
-		for(int k=0; k<dbmSize(); k++)
+		closeDbm(_matrix);
+	}
+	
+	/**
+	 * Performs the Floyd's least pairs algorithm on the DBM portion of a matrix
+	 * laid out like _matrix. This takes cubic time in the size of the DBM, so the
+	 * operations that change a closed DBM in a few entries use the incremental
+	 * closures instead.
+	 * @param matrix
+	 * 			The matrix to close.
+	 */
+	private void closeDbm(int[] matrix)
+	{
+		int size = matrixSize();
+		for(int k=1; k<size; k++)
 		{
-			for (int i=0; i<dbmSize(); i++)
+			int rowk = k*size;
+			for(int i=1; i<size; i++)
 			{
-				for(int j=0; j<dbmSize(); j++)
+				int rowi = i*size;
+				int dik = matrix[rowi + k];
+				if(dik != INFINITY)
 				{
-					if(getDbmEntry(i, k) != INFINITY && getDbmEntry(k, j) != INFINITY
-							&& getDbmEntry(i, j) > getDbmEntry(i, k) + getDbmEntry(k, j))
+					for(int j=1; j<size; j++)
 					{
-						setDbmEntry(i, j, getDbmEntry(i, k) + getDbmEntry(k, j));
-					}
-					
-					if( (i==j) && getDbmEntry(i, j) != 0)
-					{
-						throw new DiagonalNonZeroException("Entry (" + i + ", " + j + ")" +
-								" became " + getDbmEntry(i, j) + ".");
+						int dkj = matrix[rowk + j];
+						if(dkj != INFINITY && matrix[rowi + j] > dik + dkj)
+						{
+							matrix[rowi + j] = dik + dkj;
+						}
 					}
 				}
+				
+				if(matrix[rowi + i] != 0)
+				{
+					throw new DiagonalNonZeroException("Entry (" + (i-1) + ", " + (i-1) + ")" +
+							" became " + matrix[rowi + i] + ".");
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Tightens an entry of a closed DBM and closes the DBM again. Only the paths
+	 * through the tightened entry can become shorter, so this takes quadratic
+	 * time in the size of the DBM. The entry is left as it is if it is already
+	 * at most the given value.
+	 * @param i
+	 * 			The row of the DBM.
+	 * @param j
+	 * 			The column of the DBM.
+	 * @param value
+	 * 			The new bound for the (i, j) entry.
+	 */
+	private void tightenDbmEntry(int i, int j, int value)
+	{
+		if(getDbmEntry(i, j) <= value)
+		{
+			return;
+		}
+		
+		int[] unclosed = null;
+		if(_checkClosureFlag)
+		{
+			unclosed = Arrays.copyOf(_matrix, _matrix.length);
+			unclosed[matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(j))] = value;
+		}
+		
+		int size = matrixSize();
+		int mi = dbmIndexToMatrixIndex(i);
+		int mj = dbmIndexToMatrixIndex(j);
+		
+		// Keep the column of i and the row of j, the loop below may change them
+		// when the new bound creates a negative cycle.
+		int[] toI = new int[size];
+		int[] fromJ = new int[size];
+		for(int a=1; a<size; a++)
+		{
+			toI[a] = _matrix[a*size + mi];
+			fromJ[a] = _matrix[mj*size + a];
+		}
+		
+		for(int a=1; a<size; a++)
+		{
+			if(toI[a] == INFINITY)
+			{
+				continue;
+			}
+			int rowa = a*size;
+			int toJ = toI[a] + value;
+			for(int b=1; b<size; b++)
+			{
+				if(fromJ[b] != INFINITY && _matrix[rowa + b] > toJ + fromJ[b])
+				{
+					_matrix[rowa + b] = toJ + fromJ[b];
+				}
+			}
+		}
+		
+		checkDiagonal();
+		checkClosure(unclosed);
+	}
+	
+	/**
+	 * Closes the DBM after the entries of the zero row have been replaced by
+	 * advance. The other entries are the ones of a closed DBM from which time
+	 * was allowed to elapse, so only the paths that start at the zero timer can
+	 * become shorter and this takes quadratic time in the size of the DBM.
+	 */
+	private void recononicalizeAfterAdvance()
+	{
+		int[] unclosed = _checkClosureFlag ? Arrays.copyOf(_matrix, _matrix.length) : null;
+		
+		int size = matrixSize();
+		int row0 = size;
+		
+		// Close the zero row.
+		int[] newRow = new int[size];
+		for(int j=1; j<size; j++)
+		{
+			int best = _matrix[row0 + j];
+			for(int k=1; k<size; k++)
+			{
+				int d0k = _matrix[row0 + k];
+				int dkj = _matrix[k*size + j];
+				if(d0k != INFINITY && dkj != INFINITY && best > d0k + dkj)
+				{
+					best = d0k + dkj;
+				}
+			}
+			newRow[j] = best;
+		}
+		System.arraycopy(newRow, 1, _matrix, row0 + 1, size - 1);
+		
+		// Close the paths through the zero timer.
+		for(int i=2; i<size; i++)
+		{
+			int rowi = i*size;
+			int di0 = _matrix[rowi + 1];
+			if(di0 == INFINITY)
+			{
+				continue;
+			}
+			for(int j=1; j<size; j++)
+			{
+				if(newRow[j] != INFINITY && _matrix[rowi + j] > di0 + newRow[j])
+				{
+					_matrix[rowi + j] = di0 + newRow[j];
+				}
+			}
+		}
+		
+		checkDiagonal();
+		checkClosure(unclosed);
+	}
+	
+	/**
+	 * Checks that the diagonal of the DBM is zero.
+	 */
+	private void checkDiagonal()
+	{
+		int size = matrixSize();
+		for(int i=1; i<size; i++)
+		{
+			if(_matrix[i*size + i] != 0)
+			{
+				throw new DiagonalNonZeroException("Entry (" + (i-1) + ", " + (i-1) + ")" +
+						" became " + _matrix[i*size + i] + ".");
+			}
+		}
+	}
+	
+	/**
+	 * Compares the DBM to the full closure of a matrix when the closure check
+	 * flag is set.
+	 * @param unclosed
+	 * 			The matrix before the incremental closure, or null if the closure
+	 * 			is not checked.
+	 */
+	private void checkClosure(int[] unclosed)
+	{
+		if(unclosed == null)
+		{
+			return;
+		}
+		closeDbm(unclosed);
+		if(!Arrays.equals(unclosed, _matrix))
+		{
+			throw new IllegalStateException("The incremental closure of the zone " +
+					"differs from its full closure.");
+		}
+	}
+	
+	/**
+	 * Determines if the zone has continuous variables with a non-zero rate.
+	 * @return
+	 * 			True if a row/column of the DBM is a continuous variable, false otherwise.
+	 */
+	private boolean hasContinuousVariables()
+	{
+		return _indexToTimerPair.length > 1 && _indexToTimerPair[1] instanceof LPNContinuousPair;
+	}
+	
 	/**
 	 * Determines if a timer associated with a given transitions has reached its lower bound.
 	 * @param t
@@ -2279,8 +2532,8 @@ public class Zone implements Equivalence{
 
 		// Note : Make sure that the lower bound is stored as a negative number
 		// and that the inequality is correct.
-		return _matrix[0][dbmIndexToMatrixIndex(index)] <=
-			_matrix[1][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))] <=
+			_matrix[matrixIndex(1, dbmIndexToMatrixIndex(index))];
 	}
 	
 	/* (non-Javadoc)
@@ -2368,12 +2621,21 @@ public class Zone implements Equivalence{
 		// Warping can wreck the newly assigned values so correct them.
 		newZone.correctNewAssignemnts(newAssignValues);
 		
-		newZone.recononicalize();
+		// Without continuous variables the new zone is already closed: the old timers
+		// come from a closed zone and the new timers are copies of the zero timer.
+		if(newZone.hasContinuousVariables())
+		{
+			newZone.recononicalize();
+		}
+		else if(_checkClosureFlag)
+		{
+			newZone.checkClosure(Arrays.copyOf(newZone._matrix, newZone._matrix.length));
+		}
 		
 		newZone.advance(localStates);
 		
 		// Recanonicalize
-		newZone.recononicalize();
+		newZone.recononicalizeAfterAdvance();
 		
 		
 		newZone.checkZoneMaxSize();
@@ -2457,7 +2719,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Create the new matrix.
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// TODO: For simplicity, make a copy of the current zone and perform the
 		// restriction and re-canonicalization. Later add a copy re-canonicalization
@@ -2466,7 +2728,6 @@ public class Zone implements Equivalence{
 		Zone tempZone = this.clone();
 		
 		tempZone.restrictTimer(index);
-		tempZone.recononicalize();
 		
 		// Copy the tempZone to the new zone.
 		for(int i=0; i<tempZone.dbmSize(); i++)
@@ -2488,8 +2749,8 @@ public class Zone implements Equivalence{
 				int newIndexj = j==0 ? 0 : 
 					Arrays.binarySearch(newZone._indexToTimerPair, tempZone._indexToTimerPair[j]);
 				
-				newZone._matrix[Zone.dbmIndexToMatrixIndex(newIndexi)]
-						[Zone.dbmIndexToMatrixIndex(newIndexj)]
+				newZone._matrix[newZone.matrixIndex(Zone.dbmIndexToMatrixIndex(newIndexi),
+						Zone.dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -2693,7 +2954,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Create the new matrix.
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// TODO: For simplicity, make a copy of the current zone and perform the
 		// restriction and re-canonicalization. Later add a copy re-canonicalization
@@ -2702,7 +2963,6 @@ public class Zone implements Equivalence{
 		Zone tempZone = this.clone();
 		
 		tempZone.restrictTimer(index);
-		tempZone.recononicalize();
 		
 		// Copy the tempZone to the new zone.
 		for(int i=0; i<tempZone.dbmSize(); i++)
@@ -2726,8 +2986,8 @@ public class Zone implements Equivalence{
 					Arrays.binarySearch(newZone._indexToTimerPair,
 							tempZone._indexToTimerPair[j]);
 				
-				newZone._matrix[Zone.dbmIndexToMatrixIndex(newIndexi)]
-						[Zone.dbmIndexToMatrixIndex(newIndexj)]
+				newZone._matrix[newZone.matrixIndex(Zone.dbmIndexToMatrixIndex(newIndexi),
+						Zone.dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -3466,7 +3726,7 @@ public class Zone implements Equivalence{
 	{
 		for(int i=0; i<dbmSize(); i++)
 		{
-			_matrix[dbmIndexToMatrixIndex(0)][dbmIndexToMatrixIndex(i)] = 
+			_matrix[matrixIndex(dbmIndexToMatrixIndex(0), dbmIndexToMatrixIndex(i))] = 
 				getUpperBoundbydbmIndex(i);
 		}
 		
@@ -3546,8 +3806,8 @@ public class Zone implements Equivalence{
 				int newIndexj = j==0 ? 0 : 
 					Arrays.binarySearch(_indexToTimerPair, tempZone._indexToTimerPair[j]);
 
-				_matrix[dbmIndexToMatrixIndex(newIndexi)]
-						[dbmIndexToMatrixIndex(newIndexj)]
+				_matrix[matrixIndex(dbmIndexToMatrixIndex(newIndexi),
+						dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -3650,8 +3910,8 @@ public class Zone implements Equivalence{
 //					-1*getDbmEntry(0,
 //							dbmIndexToMatrixIndex(i)));
 			
-			int lower = -1*_matrix[dbmIndexToMatrixIndex(i)][0];
-			int upper = _matrix[0][dbmIndexToMatrixIndex(i)];
+			int lower = -1*_matrix[matrixIndex(dbmIndexToMatrixIndex(i), 0)];
+			int upper = _matrix[matrixIndex(0, dbmIndexToMatrixIndex(i))];
 			int newRate;
 			
 //			if(upper == 0){
@@ -3773,7 +4033,7 @@ public class Zone implements Equivalence{
 //		}
 //		
 //		// Calculate the size of the matrix and create it.
-//		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+//		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 //		
 //		
 //		// Copy over the old matrix for all variables except
@@ -3878,7 +4138,7 @@ public class Zone implements Equivalence{
 		/*
 		 * Copy over the old matrix values and new constraints.
 		 */
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 	    
 		for(int i =0; i< this.dbmSize(); i++){
 			
@@ -3892,10 +4152,10 @@ public class Zone implements Equivalence{
 			}
 			
 			// Copy upper and lower bounds for the variable.
-			newZone._matrix[dbmIndexToMatrixIndex(newi)][0] =
-					this._matrix[dbmIndexToMatrixIndex(i)][0];
-			newZone._matrix[0][dbmIndexToMatrixIndex(newi)] =
-					this._matrix[0][dbmIndexToMatrixIndex(i)];
+			newZone._matrix[newZone.matrixIndex(dbmIndexToMatrixIndex(newi), 0)] =
+					this._matrix[this.matrixIndex(dbmIndexToMatrixIndex(i), 0)];
+			newZone._matrix[newZone.matrixIndex(0, dbmIndexToMatrixIndex(newi))] =
+					this._matrix[this.matrixIndex(0, dbmIndexToMatrixIndex(i))];
 			
 			
 			// Copy the DBM Entry
@@ -4537,15 +4797,7 @@ public class Zone implements Equivalence{
 		
 		Zone clonedZone = new Zone();
 		
-		clonedZone._matrix = new int[this.matrixSize()][this.matrixSize()];
-		
-		for(int i=0; i<this.matrixSize(); i++)
-		{
-			for(int j=0; j<this.matrixSize(); j++)
-			{
-				clonedZone._matrix[i][j] = this._matrix[i][j];
-			}
-		}
+		clonedZone._matrix = Arrays.copyOf(this._matrix, this._matrix.length);
 		
 //		clonedZone._indexToTimerPair = Arrays.copyOf(_indexToTimerPair, _indexToTimerPair.length);
 		
@@ -4565,7 +4817,7 @@ public class Zone implements Equivalence{
 	}
 	
 	/**
-	 * Restricts the lower bound of a timer.
+	 * Restricts the lower bound of a timer and closes the DBM again.
 	 * 
 	 * @param timer
 	 * 			The timer to tighten the lower bound.
@@ -4574,8 +4826,7 @@ public class Zone implements Equivalence{
 	{
 		//int dbmIndex = Arrays.binarySearch(_indexToTimer, timer);
 		
-		_matrix[dbmIndexToMatrixIndex(timer)][dbmIndexToMatrixIndex(0)]
-		                                            = getLowerBoundbydbmIndex(timer);
+		tightenDbmEntry(timer, 0, getLowerBoundbydbmIndex(timer));
 	}
 	
 	/**
@@ -6387,7 +6638,7 @@ public class Zone implements Equivalence{
 		Arrays.sort(newZone._indexToTimerPair);
 		
 		// Create matrix.
-		newZone._matrix = new int[newZone._indexToTimerPair.length+1][newZone._indexToTimerPair.length+1];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// Convert the current transitions to a collection of transitions.
 		HashSet<LPNTransitionPair> oldTransitionSet = new HashSet<LPNTransitionPair>();
@@ -6481,7 +6732,7 @@ public class Zone implements Equivalence{
 		Arrays.sort(newZone._indexToTimerPair);
 
 		// Create matrix.
-		newZone._matrix = new int[newZone._indexToTimerPair.length+1][newZone._indexToTimerPair.length+1];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 
 		// Convert the current transitions to a collection of transitions.
 		HashSet<LPNTransitionPair> oldTransitionSet = new HashSet<LPNTransitionPair>();
@@ -6607,7 +6858,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Copy over the DBM
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		int offseti = 0;
 		int offsetj = 0;
@@ -6623,7 +6874,7 @@ public class Zone implements Equivalence{
 					offsetj++;
 				}
 				
-				newZone._matrix[i][j] = this._matrix[i+offseti][j+offsetj];
+				newZone._matrix[newZone.matrixIndex(i, j)] = this._matrix[this.matrixIndex(i+offseti, j+offsetj)];
 			}
 		}
 		
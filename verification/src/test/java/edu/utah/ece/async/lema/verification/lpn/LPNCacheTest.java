@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.lpn;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Compares the LPNs read back from an .lpnc cache with the LPNs parsed from the
+ * text of the .lpn file.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class LPNCacheTest {
+
+	private static final int STAGES = 1000;
+
+	private File directory;
+
+	private String filename;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("lpn").toFile();
+		filename = new File(directory, "pipeline.lpn").getPath();
+		createLpn().save(filename);
+		LPNCache.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		LPNCache.setEnabled(true);
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	/**
+	 * Creates a pipeline of stages that is large enough for its text to be cached. Each
+	 * stage has a place, a transition with an enabling, a delay and assignments, and a
+	 * Boolean output.
+	 */
+	private static LPN createLpn() {
+		LPN lpn = new LPN();
+		lpn.addInternal("n", "integer", "0");
+		for (int k = 0; k <= STAGES; k++)
+			lpn.addPlace("p" + k, k == 0);
+		for (int k = 0; k < STAGES; k++) {
+			String t = "t" + k;
+			lpn.addOutput("x" + k, "false");
+			lpn.addTransition(t);
+			lpn.addMovement("p" + k, t);
+			lpn.addMovement(t, "p" + (k + 1));
+			lpn.addEnabling(t, "(n<" + (k + 5) + ")&~x" + k);
+			lpn.changeDelay(t, "uniform(" + k % 7 + "," + (k % 7 + 3) + ")");
+			lpn.addBoolAssign(t, "x" + k, "TRUE");
+			lpn.addIntAssign(t, "n", "n+" + (k % 3 + 1));
+		}
+		return lpn;
+	}
+
+	private static String read(String filename) throws IOException {
+		StringBuffer data = new StringBuffer();
+		BufferedReader in = new BufferedReader(new FileReader(filename));
+		String str;
+		while ((str = in.readLine()) != null)
+			data.append(str + "\n");
+		in.close();
+		return data.toString();
+	}
+
+	private static String describe(ExprTree tree) {
+		return tree == null ? "null" : tree.toString();
+	}
+
+	private static <T> String describe(Map<String, T> map) {
+		if (map == null)
+			return "null";
+		TreeMap<String, String> sorted = new TreeMap<String, String>();
+		for (Map.Entry<String, T> entry : map.entrySet())
+			sorted.put(entry.getKey(), entry.getValue() instanceof ExprTree ? describe((ExprTree) entry.getValue())
+					: String.valueOf(entry.getValue()));
+		return sorted.toString();
+	}
+
+	private static String describe(Variable var) {
+		return var.getName() + " " + var.getType() + " " + var.getInitValue() + " " + var.getInitRate() + " "
+				+ var.getPort();
+	}
+
+	/**
+	 * Describes the places, transitions and variables of an LPN in an order that does
+	 * not depend on the order of its hash maps.
+	 */
+	private static String describe(LPN lpn) {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, Place> entry : lpn.places.entrySet()) {
+			Place place = entry.getValue();
+			ArrayList<String> preset = new ArrayList<String>();
+			for (Transition t : place.getPreset())
+				preset.add(t.getLabel());
+			ArrayList<String> postset = new ArrayList<String>();
+			for (Transition t : place.getPostset())
+				postset.add(t.getLabel());
+			Collections.sort(preset);
+			Collections.sort(postset);
+			lines.add("place " + entry.getKey() + " " + place.getName() + " " + place.isMarked() + " " + preset + " "
+					+ postset);
+		}
+		for (Map.Entry<String, Transition> entry : lpn.transitions.entrySet()) {
+			Transition tran = entry.getValue();
+			ArrayList<String> preset = new ArrayList<String>();
+			for (Place p : tran.getPreset())
+				preset.add(p.getName());
+			ArrayList<String> postset = new ArrayList<String>();
+			for (Place p : tran.getPostset())
+				postset.add(p.getName());
+			Collections.sort(preset);
+			Collections.sort(postset);
+			lines.add("transition " + entry.getKey() + " " + tran.getLabel() + " " + tran.getIndex() + " " + preset
+					+ " " + postset + " " + tran.isFail() + " " + tran.isPersistent());
+			lines.add("  enabling " + tran.getEnabling() + " " + describe(tran.getEnablingTree()));
+			lines.add("  delay " + tran.getDelay() + " " + describe(tran.getDelayTree()));
+			lines.add("  priority " + tran.getPriority() + " " + describe(tran.getPriorityTree()));
+			lines.add("  bool " + describe(tran.getBoolAssignments()) + " " + describe(tran.getBoolAssignTrees()));
+			lines.add("  int " + describe(tran.getIntAssignments()) + " " + describe(tran.getIntAssignTrees()));
+			lines.add("  cont " + describe(tran.getContAssignments()) + " " + describe(tran.getContAssignTrees()));
+			lines.add("  rate " + describe(tran.getRateAssignments()) + " " + describe(tran.getRateAssignTrees()));
+		}
+		for (Map.Entry<String, Variable> entry : lpn.booleans.entrySet())
+			lines.add("boolean " + entry.getKey() + " " + describe(entry.getValue()));
+		for (Map.Entry<String, Variable> entry : lpn.integers.entrySet())
+			lines.add("integer " + entry.getKey() + " " + describe(entry.getValue()));
+		for (Map.Entry<String, Variable> entry : lpn.continuous.entrySet())
+			lines.add("continuous " + entry.getKey() + " " + describe(entry.getValue()));
+		for (Variable var : lpn.variables)
+			lines.add("variable " + describe(var));
+		lines.add("properties " + lpn.properties);
+		lines.add("implicit places " + new TreeMap<String, String>(lpn.implicitPlaceMap));
+		lines.add("transition index " + lpn.tranIndex);
+		Collections.sort(lines);
+		StringBuilder result = new StringBuilder();
+		for (String line : lines)
+			result.append(line).append('\n');
+		return result.toString();
+	}
+
+	private String parse() throws BioSimException {
+		LPNCache.setEnabled(false);
+		LPN lpn = new LPN();
+		lpn.load(filename);
+		LPNCache.setEnabled(true);
+		return describe(lpn);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException, BioSimException {
+		String data = read(filename);
+		assertTrue(LPNCache.isCacheable(new LPN(), data));
+		String expected = parse();
+		File cache = new File(LPNCache.getCacheFile(filename));
+		assertFalse(cache.exists());
+
+		// The first load parses the text and writes the cache, the second one reads it.
+		LPN parsed = new LPN();
+		parsed.load(filename);
+		assertTrue(cache.isFile());
+		assertEquals(expected, describe(parsed));
+		LPN cached = new LPN();
+		assertTrue(LPNCache.load(cached, filename, data));
+		assertEquals(expected, describe(cached));
+		LPN loaded = new LPN();
+		loaded.load(filename);
+		assertEquals(expected, describe(loaded));
+
+		// Variables shared by the maps of the parsed LPN are shared in the cached one.
+		for (Variable var : cached.variables) {
+			if (cached.booleans.containsKey(var.getName()))
+				assertSame(var, cached.booleans.get(var.getName()));
+			if (cached.integers.containsKey(var.getName()))
+				assertSame(var, cached.integers.get(var.getName()));
+		}
+	}
+
+	@Test
+	public void testChangedText() throws IOException, BioSimException {
+		new LPN().load(filename);
+		String data = read(filename);
+		LPN lpn = new LPN();
+		assertFalse(LPNCache.load(lpn, filename, data + "#\n"));
+		assertTrue(LPNCache.isCacheable(lpn, data));
+		assertFalse(LPNCache.load(lpn, filename, data.replace("uniform(1,4)", "uniform(2,4)")));
+		assertTrue(LPNCache.isCacheable(lpn, data));
+		assertTrue(LPNCache.load(lpn, filename, data));
+	}
+
+	@Test
+	public void testCorruptCache() throws IOException, BioSimException {
+		String expected = parse();
+		new LPN().load(filename);
+		File cache = new File(LPNCache.getCacheFile(filename));
+		RandomAccessFile file = new RandomAccessFile(cache, "rw");
+		file.setLength(file.length() / 2);
+		file.close();
+
+		String data = read(filename);
+		LPN lpn = new LPN();
+		assertFalse(LPNCache.load(lpn, filename, data));
+		assertTrue(LPNCache.isCacheable(lpn, data));
+		lpn.load(filename);
+		assertEquals(expected, describe(lpn));
+		LPN cached = new LPN();
+		assertTrue(LPNCache.load(cached, filename, data));
+		assertEquals(expected, describe(cached));
+	}
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.BDD;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the BDD operations against truth tables. With six variables, the
+ * truth table of a function is a 64 bit mask whose bit a is the value of the
+ * function for the assignment a, in which variable v has the value of bit v.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BddTest {
+
+	private static final int VARS = 6;
+
+	private static final int ASSIGNMENTS = 1 << VARS;
+
+	/**
+	 * Returns the truth table of the BDD f.
+	 */
+	private static long table(Bdd bdd, int f) {
+		long table = 0;
+		for (int a = 0; a < ASSIGNMENTS; a++) {
+			int node = f;
+			while (node != Bdd.FALSE && node != Bdd.TRUE)
+				node = ((a >> bdd.var(node)) & 1) == 0 ? bdd.low(node) : bdd.high(node);
+			if (node == Bdd.TRUE)
+				table |= 1L << a;
+		}
+		return table;
+	}
+
+	private static long varTable(int v) {
+		long table = 0;
+		for (int a = 0; a < ASSIGNMENTS; a++) {
+			if (((a >> v) & 1) != 0)
+				table |= 1L << a;
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the truth table of the existential quantification of the given
+	 * variables out of the function with the given truth table.
+	 */
+	private static long existsTable(long table, int[] vars) {
+		for (int v : vars) {
+			long result = 0;
+			for (int a = 0; a < ASSIGNMENTS; a++) {
+				if (((table >>> a) & 1) != 0 || ((table >>> (a ^ (1 << v))) & 1) != 0)
+					result |= 1L << a;
+			}
+			table = result;
+		}
+		return table;
+	}
+
+	/**
+	 * Builds random functions together with their truth tables, so that each
+	 * operation is checked on its own operands.
+	 */
+	private static void randomFunctions(Bdd bdd, Random random, int count, ArrayList<Integer> nodes, ArrayList<Long> tables) {
+		for (int v = 0; v < VARS; v++) {
+			nodes.add(bdd.ithVar(v));
+			tables.add(varTable(v));
+		}
+		nodes.add(Bdd.FALSE);
+		tables.add(0L);
+		nodes.add(Bdd.TRUE);
+		tables.add(-1L);
+		while (nodes.size() < count) {
+			int i = random.nextInt(nodes.size());
+			int j = random.nextInt(nodes.size());
+			int k = random.nextInt(nodes.size());
+			int f = nodes.get(i), g = nodes.get(j), h = nodes.get(k);
+			long tf = tables.get(i), tg = tables.get(j), th = tables.get(k);
+			int result;
+			long expected;
+			switch (random.nextInt(6)) {
+			case 0:
+				result = bdd.and(f, g);
+				expected = tf & tg;
+				break;
+			case 1:
+				result = bdd.or(f, g);
+				expected = tf | tg;
+				break;
+			case 2:
+				result = bdd.not(f);
+				expected = ~tf;
+				break;
+			case 3:
+				result = bdd.diff(f, g);
+				expected = tf & ~tg;
+				break;
+			case 4:
+				result = bdd.ite(f, g, h);
+				expected = (tf & tg) | (~tf & th);
+				break;
+			default:
+				result = bdd.biimp(f, g);
+				expected = ~(tf ^ tg);
+				break;
+			}
+			assertEquals(expected, table(bdd, result));
+			nodes.add(result);
+			tables.add(expected);
+		}
+	}
+
+	@Test
+	public void testOperations() {
+		// a small node table is grown several times
+		Bdd bdd = new Bdd(VARS, 16);
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		ArrayList<Long> tables = new ArrayList<Long>();
+		randomFunctions(bdd, new Random(23), 2000, nodes, tables);
+
+		// The unique table makes equal functions the same node.
+		for (int i = 0; i < nodes.size(); i++) {
+			for (int j = i + 1; j < nodes.size(); j++)
+				assertEquals(tables.get(i).equals(tables.get(j)), nodes.get(i).equals(nodes.get(j)));
+		}
+	}
+
+	@Test
+	public void testQuantification() {
+		Bdd bdd = new Bdd(VARS);
+		Random random = new Random(29);
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		ArrayList<Long> tables = new ArrayList<Long>();
+		randomFunctions(bdd, random, 300, nodes, tables);
+
+		for (int step = 0; step < 500; step++) {
+			int i = random.nextInt(nodes.size());
+			int j = random.nextInt(nodes.size());
+			int[] vars = new int[random.nextInt(VARS + 1)];
+			for (int v = 0; v < vars.length; v++)
+				vars[v] = random.nextInt(VARS);
+			int cube = bdd.cube(vars);
+
+			assertEquals(existsTable(tables.get(i), vars), table(bdd, bdd.exists(nodes.get(i), cube)));
+			assertEquals(existsTable(tables.get(i) & tables.get(j), vars),
+					table(bdd, bdd.relProd(nodes.get(i), nodes.get(j), cube)));
+			assertEquals(bdd.exists(bdd.and(nodes.get(i), nodes.get(j)), cube),
+					bdd.relProd(nodes.get(i), nodes.get(j), cube));
+		}
+	}
+
+	@Test
+	public void testReplace() {
+		Bdd bdd = new Bdd(VARS);
+		Random random = new Random(31);
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		ArrayList<Long> tables = new ArrayList<Long>();
+		randomFunctions(bdd, random, 300, nodes, tables);
+
+		// Reversing the order makes replace() rebuild the nodes with ite().
+		int[][] maps = { { 1, 0, 3, 2, 5, 4 }, { 5, 4, 3, 2, 1, 0 }, { 2, 3, 4, 5, 0, 1 } };
+		for (int[] map : maps) {
+			for (int i = 0; i < nodes.size(); i++) {
+				long expected = 0;
+				for (int a = 0; a < ASSIGNMENTS; a++) {
+					int b = 0;
+					for (int v = 0; v < VARS; v++)
+						b |= ((a >> map[v]) & 1) << v;
+					if (((tables.get(i) >>> b) & 1) != 0)
+						expected |= 1L << a;
+				}
+				assertEquals(expected, table(bdd, bdd.replace(nodes.get(i), map)));
+			}
+		}
+	}
+
+	@Test
+	public void testSatCount() {
+		Bdd bdd = new Bdd(VARS);
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		ArrayList<Long> tables = new ArrayList<Long>();
+		randomFunctions(bdd, new Random(37), 300, nodes, tables);
+		for (int i = 0; i < nodes.size(); i++)
+			assertEquals(Long.bitCount(tables.get(i)), bdd.satCount(nodes.get(i), VARS), 0);
+	}
+
+	@Test
+	public void testGc() {
+		Bdd bdd = new Bdd(VARS, 16);
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		ArrayList<Long> tables = new ArrayList<Long>();
+		randomFunctions(bdd, new Random(41), 1000, nodes, tables);
+
+		int[] roots = new int[10];
+		long[] rootTables = new long[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			int index = nodes.size() - 1 - 7 * i;
+			roots[i] = nodes.get(index);
+			rootTables[i] = tables.get(index);
+		}
+		int before = bdd.getLiveNodes();
+		bdd.gc(roots);
+		int after = bdd.getLiveNodes();
+		assertTrue(after < before);
+		assertEquals(before, bdd.getPeakNodes());
+
+		// The roots keep their functions and every node below them.
+		for (int i = 0; i < roots.length; i++) {
+			assertEquals(rootTables[i], table(bdd, roots[i]));
+			assertTrue(bdd.nodeCount(roots[i]) + 2 <= after);
+		}
+
+		// Freed nodes are reused, and the rebuilt unique table still finds the live ones.
+		ArrayList<Integer> rebuilt = new ArrayList<Integer>();
+		ArrayList<Long> rebuiltTables = new ArrayList<Long>();
+		randomFunctions(bdd, new Random(41), 1000, rebuilt, rebuiltTables);
+		for (int i = 0; i < rebuilt.size(); i++)
+			assertEquals(rebuiltTables.get(i).longValue(), table(bdd, rebuilt.get(i)));
+		for (int i = 0; i < roots.length; i++) {
+			int index = nodes.size() - 1 - 7 * i;
+			assertEquals(roots[i], rebuilt.get(index).intValue());
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.MDD;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.Analysis;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Checks the number of states found by saturation against the explicit depth
+ * first search and against the known state count of small LPNs.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class MddSaturationTest {
+
+	/**
+	 * Creates the state graphs of the LPNs a and b, and of the LPN c if counter is
+	 * set. a sets its output x once and then cycles between two places. b waits
+	 * for x and then cycles too, so a and b have 7 reachable states. c counts up
+	 * and down between 0 and 4 on its own, which multiplies them by 5.
+	 */
+	private static StateGraph[] createStateGraphs(boolean counter) {
+		LPN a = new LPN();
+		a.setLabel("a");
+		a.addOutput("x", "false");
+		a.addPlace("a0", true);
+		a.addPlace("a1", false);
+		a.addPlace("a2", false);
+		addTransition(a, "ta0", "a0", "a1");
+		a.addBoolAssign("ta0", "x", "TRUE");
+		addTransition(a, "ta1", "a1", "a2");
+		addTransition(a, "ta2", "a2", "a1");
+
+		LPN b = new LPN();
+		b.setLabel("b");
+		b.addInput("x", "false");
+		b.addPlace("b0", true);
+		b.addPlace("b1", false);
+		b.addPlace("b2", false);
+		addTransition(b, "tb0", "b0", "b1");
+		b.addEnabling("tb0", "x");
+		addTransition(b, "tb1", "b1", "b2");
+		addTransition(b, "tb2", "b2", "b1");
+
+		LPN[] lpns;
+		if (counter) {
+			LPN c = new LPN();
+			c.setLabel("c");
+			c.addInternal("i", "integer", "0");
+			c.addPlace("c0", true);
+			addTransition(c, "inc", "c0", "c0");
+			c.addEnabling("inc", "i<4");
+			c.addIntAssign("inc", "i", "i+1");
+			addTransition(c, "dec", "c0", "c0");
+			c.addEnabling("dec", "i>0");
+			c.addIntAssign("dec", "i", "i-1");
+			lpns = new LPN[] { a, b, c };
+		}
+		else
+			lpns = new LPN[] { a, b };
+
+		StateGraph[] sgArray = new StateGraph[lpns.length];
+		for (int i = 0; i < lpns.length; i++) {
+			lpns[i].setLpnIndex(i);
+			sgArray[i] = new StateGraph(lpns[i]);
+			lpns[i].addStateGraph(sgArray[i]);
+		}
+		return sgArray;
+	}
+
+	private static void addTransition(LPN lpn, String name, String preset, String postset) {
+		lpn.addTransition(name);
+		lpn.addMovement(preset, name);
+		lpn.addMovement(name, postset);
+	}
+
+	/**
+	 * Returns the initial states. The initial value of x is the same in a and b.
+	 */
+	private static State[] initialStates(StateGraph[] sgArray) {
+		State[] initStateArray = new State[sgArray.length];
+		for (int i = 0; i < sgArray.length; i++)
+			initStateArray[i] = sgArray[i].addState(sgArray[i].genInitialState());
+		return initStateArray;
+	}
+
+	private static double saturationCount(boolean counter) {
+		StateGraph[] sgArray = createStateGraphs(counter);
+		return new Analysis(sgArray).search_mdd_saturation(sgArray, initialStates(sgArray));
+	}
+
+	private static int dfsCount(boolean counter) {
+		StateGraph[] sgArray = createStateGraphs(counter);
+		return new Analysis(sgArray).search_dfs(sgArray, initialStates(sgArray)).size();
+	}
+
+	@Test
+	public void testSharedVariable() {
+		assertEquals(7, dfsCount(false));
+		assertEquals(7, saturationCount(false), 0);
+	}
+
+	@Test
+	public void testIndependentCounter() {
+		assertEquals(35, dfsCount(true));
+		assertEquals(35, saturationCount(true), 0);
+	}
+
+	@Test
+	public void testLocalFirings() {
+		// The local transitions of a and b cannot fire before x is set, so only c moves.
+		StateGraph[] sgArray = createStateGraphs(true);
+		State[] initStateArray = initialStates(sgArray);
+		Mdd mdd = new Mdd(sgArray.length);
+		mddNode local = mdd.doLocalFirings(sgArray, initStateArray);
+		assertEquals(5, Mdd.numberOfStates(local), 0);
+		int[] initIdxArray = new int[sgArray.length];
+		for (int i = 0; i < sgArray.length; i++)
+			initIdxArray[i] = initStateArray[i].getIndex();
+		assertTrue(Mdd.contains(local, initIdxArray));
+	}
+}
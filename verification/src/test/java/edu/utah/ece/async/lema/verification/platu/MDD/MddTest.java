@@ -0,0 +1,181 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.MDD;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the MDD sets of local state tuples against a list of the tuples.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class MddTest {
+
+	private static final int HEIGHT = 4;
+
+	private static final int VALUES = 5;
+
+	private static final Comparator<int[]> LEXICOGRAPHIC = new Comparator<int[]>() {
+		@Override
+		public int compare(int[] first, int[] second) {
+			for (int i = 0; i < first.length; i++) {
+				if (first[i] != second[i])
+					return first[i] < second[i] ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+
+	private static List<int[]> randomTuples(Random random, int count) {
+		List<int[]> tuples = new ArrayList<int[]>();
+		for (int i = 0; i < count; i++) {
+			int[] tuple = new int[HEIGHT];
+			for (int level = 0; level < HEIGHT; level++)
+				tuple[level] = random.nextInt(VALUES);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * Returns the distinct tuples in lexicographic order.
+	 */
+	private static List<int[]> sorted(List<int[]> tuples) {
+		List<int[]> result = new ArrayList<int[]>(tuples);
+		Collections.sort(result, LEXICOGRAPHIC);
+		for (int i = result.size() - 1; i > 0; i--) {
+			if (LEXICOGRAPHIC.compare(result.get(i - 1), result.get(i)) == 0)
+				result.remove(i);
+		}
+		return result;
+	}
+
+	private static mddNode addAll(Mdd mdd, mddNode target, List<int[]> tuples) {
+		for (int[] tuple : tuples)
+			target = mdd.add(target, tuple);
+		return target;
+	}
+
+	private static void assertSet(Mdd mdd, List<int[]> expected, mddNode node) {
+		List<int[]> tuples = sorted(expected);
+		assertEquals(tuples.size(), Mdd.numberOfStates(node), 0);
+		// next() enumerates the tuples in lexicographic order
+		int[] tuple = null;
+		for (int[] expectedTuple : tuples) {
+			tuple = mdd.next(node, tuple);
+			assertArrayEquals(expectedTuple, tuple);
+			assertTrue(Mdd.contains(node, expectedTuple));
+		}
+		assertNull(mdd.next(node, tuple));
+	}
+
+	@Test
+	public void testAdd() {
+		Random random = new Random(43);
+		Mdd mdd = new Mdd(HEIGHT);
+		List<int[]> tuples = randomTuples(random, 300);
+		mddNode node = addAll(mdd, null, tuples);
+		assertSet(mdd, tuples, node);
+
+		for (int[] tuple : randomTuples(random, 300)) {
+			boolean expected = false;
+			for (int[] added : tuples)
+				expected |= Arrays.equals(added, tuple);
+			assertEquals(expected, Mdd.contains(node, tuple));
+		}
+	}
+
+	@Test
+	public void testUnion() {
+		Random random = new Random(47);
+		Mdd mdd = new Mdd(HEIGHT);
+		List<int[]> first = randomTuples(random, 100);
+		List<int[]> second = randomTuples(random, 100);
+		mddNode firstNode = addAll(mdd, null, first);
+		mddNode secondNode = addAll(mdd, null, second);
+
+		List<int[]> both = new ArrayList<int[]>(first);
+		both.addAll(second);
+		mddNode union = mdd.union(firstNode, secondNode);
+		assertSet(mdd, both, union);
+		assertSame(union, mdd.union(secondNode, firstNode));
+		assertSame(firstNode, mdd.union(firstNode, null));
+		assertSame(firstNode, mdd.union(firstNode, firstNode));
+	}
+
+	@Test
+	public void testUniqueTable() {
+		Random random = new Random(53);
+		Mdd mdd = new Mdd(HEIGHT);
+		List<int[]> tuples = randomTuples(random, 200);
+		mddNode forward = addAll(mdd, null, tuples);
+		List<int[]> shuffled = new ArrayList<int[]>(tuples);
+		Collections.shuffle(shuffled, random);
+		mddNode backward = addAll(mdd, null, shuffled);
+
+		// The same set is the same node, whatever the order the tuples were added in.
+		assertSame(forward, backward);
+		assertSame(mdd.path(tuples.get(0)), mdd.path(tuples.get(0).clone()));
+
+		// Isomorphic subgraphs are shared: the set of all tuples needs one node per level.
+		List<int[]> all = new ArrayList<int[]>();
+		for (int i = 0; i < (int) Math.pow(VALUES, HEIGHT); i++) {
+			int[] tuple = new int[HEIGHT];
+			for (int level = 0, rest = i; level < HEIGHT; level++, rest /= VALUES)
+				tuple[level] = rest % VALUES;
+			all.add(tuple);
+		}
+		Mdd full = new Mdd(HEIGHT);
+		mddNode fullNode = addAll(full, null, all);
+		full.gc();
+		assertEquals(HEIGHT, full.nodeCnt());
+		assertSet(full, all, fullNode);
+	}
+
+	@Test
+	public void testGc() {
+		Random random = new Random(59);
+		Mdd mdd = new Mdd(HEIGHT);
+		List<int[]> kept = randomTuples(random, 150);
+		mddNode keptNode = addAll(mdd, null, kept);
+		List<int[]> dropped = randomTuples(random, 150);
+		mddNode droppedNode = addAll(mdd, null, dropped);
+
+		mdd.gc();
+		int live = mdd.nodeCnt();
+		mdd.remove(droppedNode);
+		mdd.gc();
+		assertTrue(mdd.nodeCnt() < live);
+		assertEquals(1, keptNode.getRefCount());
+		assertSet(mdd, kept, keptNode);
+
+		// The nodes of the kept set are still in the unique table.
+		assertSame(keptNode, addAll(mdd, null, kept));
+
+		mdd.remove(keptNode);
+		mdd.remove(keptNode);
+		mdd.gc();
+		assertEquals(0, mdd.nodeCnt());
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.common;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the packed tuple table against a hash map keyed by the tuple
+ * contents.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IntTupleTableTest {
+
+	private static List<Integer> asList(int[] tuple) {
+		List<Integer> list = new ArrayList<Integer>(tuple.length);
+		for (int value : tuple)
+			list.add(value);
+		return list;
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		Random random = new Random(17);
+		int length = 5;
+		// a small initial capacity forces several rehashes and tuple array growths
+		IntTupleTable table = new IntTupleTable(length, 4);
+		HashMap<List<Integer>, Integer> expected = new HashMap<List<Integer>, Integer>();
+		List<int[]> added = new ArrayList<int[]>();
+
+		for (int step = 0; step < 20000; step++) {
+			int[] tuple = new int[length];
+			for (int i = 0; i < length; i++)
+				tuple[i] = random.nextInt(4);
+			Integer id = expected.get(asList(tuple));
+			boolean isNew = id == null;
+			if (isNew) {
+				id = expected.size();
+				expected.put(asList(tuple), id);
+				added.add(tuple);
+			}
+			assertEquals(isNew, table.indexOf(tuple) == -1);
+			assertEquals(isNew ? 1 : 0, table.add(tuple));
+			assertEquals(id.intValue(), table.put(tuple));
+			assertTrue(table.contains(tuple));
+			assertEquals(expected.size(), table.size());
+		}
+
+		int[] copy = new int[length];
+		for (int id = 0; id < added.size(); id++) {
+			table.get(id, copy);
+			assertArrayEquals(added.get(id), copy);
+			for (int i = 0; i < length; i++)
+				assertEquals(added.get(id)[i], table.get(id, i));
+			assertEquals(id, table.indexOf(added.get(id)));
+		}
+	}
+
+	@Test
+	public void testTuplesDifferingInOneBit() {
+		IntTupleTable table = new IntTupleTable(3);
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i, table.put(new int[] { 0, 0, i }));
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i, table.indexOf(new int[] { 0, 0, i }));
+		assertFalse(table.contains(new int[] { 0, 1, 0 }));
+		assertFalse(table.contains(new int[] { 0, 0, -1 }));
+	}
+
+	@Test
+	public void testAddedTupleIsCopied() {
+		IntTupleTable table = new IntTupleTable(2);
+		int[] tuple = { 1, 2 };
+		table.put(tuple);
+		tuple[1] = 3;
+		assertTrue(table.contains(new int[] { 1, 2 }));
+		assertFalse(table.contains(tuple));
+	}
+}
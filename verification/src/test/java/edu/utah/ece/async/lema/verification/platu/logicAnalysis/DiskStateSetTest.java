@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Compares DiskStateSet against a hash set of global states, with a buffer small
+ * enough that the states are spilled to many runs and the runs are merged.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class DiskStateSetTest {
+
+	private static final int LOCAL_STATES = 30;
+
+	private File directory;
+
+	private StateGraph[] sgList;
+
+	private State[][] localStates;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("states").toFile();
+		sgList = new StateGraph[3];
+		localStates = new State[sgList.length][LOCAL_STATES];
+		for (int i = 0; i < sgList.length; i++) {
+			LPN lpn = new LPN();
+			sgList[i] = new StateGraph(lpn);
+			for (int j = 0; j < LOCAL_STATES; j++)
+				localStates[i][j] = sgList[i].addState(new State(lpn, new int[] { j }, new int[0], new boolean[0]));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	private PrjState randomState(Random random) {
+		State[] stateArray = new State[sgList.length];
+		for (int i = 0; i < sgList.length; i++)
+			stateArray[i] = localStates[i][random.nextInt(LOCAL_STATES)];
+		return new PrjState(stateArray);
+	}
+
+	@Test
+	public void testAddAndContains() {
+		DiskStateSet set = new DiskStateSet(sgList, directory, 16);
+		HashSet<PrjState> expected = new HashSet<PrjState>();
+		Random random = new Random(7);
+		for (int n = 0; n < 5000; n++) {
+			PrjState state = randomState(random);
+			assertEquals(expected.contains(state), set.contains(state));
+			assertEquals(expected.add(state), set.add(state));
+			assertTrue(set.contains(state));
+			assertEquals(expected.size(), set.size());
+		}
+		for (int n = 0; n < 1000; n++) {
+			PrjState state = randomState(random);
+			assertEquals(expected.contains(state), set.contains(state));
+		}
+		set.close();
+	}
+
+	@Test
+	public void testIterator() {
+		DiskStateSet set = new DiskStateSet(sgList, directory, 16);
+		HashSet<PrjState> expected = new HashSet<PrjState>();
+		Random random = new Random(11);
+		for (int n = 0; n < 3000; n++) {
+			PrjState state = randomState(random);
+			expected.add(state);
+			set.add(state);
+		}
+		HashSet<PrjState> iterated = new HashSet<PrjState>();
+		int count = 0;
+		for (PrjState state : set) {
+			iterated.add(state);
+			count++;
+		}
+		assertEquals(expected.size(), count);
+		assertEquals(expected, iterated);
+		set.close();
+		assertEquals(0, set.size());
+		assertFalse(set.iterator().hasNext());
+		assertEquals(0, directory.listFiles().length);
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.Analysis;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.StateSetInterface;
+import edu.utah.ece.async.lema.verification.platu.main.Options;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Compares the queries of TimedStateIndex against linear scans of the timed states
+ * reached by an exact zone based search.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class TimedStateIndexTest {
+
+	@Before
+	public void setUp() {
+		Options.setTimingAnalsysisType("zone");
+	}
+
+	@After
+	public void tearDown() {
+		Options.setTimingAnalsysisType("off");
+		Zone.setSubsetFlag(true);
+		Zone.setSupersetFlag(true);
+	}
+
+	/**
+	 * Creates the state graphs of two timed LPNs. a cycles between two places and
+	 * sets its output x on the way. b waits for x and then cycles too.
+	 */
+	private static StateGraph[] createStateGraphs() {
+		LPN a = new LPN();
+		a.setLabel("a");
+		a.addOutput("x", "false");
+		a.addPlace("a0", true);
+		a.addPlace("a1", false);
+		addTransition(a, "ta0", "a0", "a1", "uniform(1,3)");
+		a.addBoolAssign("ta0", "x", "TRUE");
+		addTransition(a, "ta1", "a1", "a0", "uniform(2,4)");
+
+		LPN b = new LPN();
+		b.setLabel("b");
+		b.addInput("x", "false");
+		b.addPlace("b0", true);
+		b.addPlace("b1", false);
+		addTransition(b, "tb0", "b0", "b1", "uniform(0,2)");
+		b.addEnabling("tb0", "x");
+		addTransition(b, "tb1", "b1", "b0", "uniform(1,5)");
+
+		LPN[] lpns = { a, b };
+		StateGraph[] sgArray = new StateGraph[lpns.length];
+		for (int i = 0; i < lpns.length; i++) {
+			lpns[i].setLpnIndex(i);
+			sgArray[i] = new StateGraph(lpns[i]);
+			lpns[i].addStateGraph(sgArray[i]);
+		}
+		return sgArray;
+	}
+
+	private static void addTransition(LPN lpn, String name, String preset, String postset, String delay) {
+		lpn.addTransition(name);
+		lpn.addMovement(preset, name);
+		lpn.addMovement(name, postset);
+		lpn.changeDelay(name, delay);
+	}
+
+	private static StateSetInterface search() {
+		StateGraph[] sgArray = createStateGraphs();
+		State[] initStateArray = new State[sgArray.length];
+		for (int i = 0; i < sgArray.length; i++)
+			initStateArray[i] = sgArray[i].addState(sgArray[i].genInitialState());
+		return new Analysis(sgArray).search_dfs(sgArray, initStateArray);
+	}
+
+	/**
+	 * Runs an exact search, which keeps every zone reached, and groups the timed
+	 * states by their un-timed portion.
+	 */
+	private static HashMap<PrjState, List<TimedPrjState>> exactStates() {
+		Zone.setSubsetFlag(false);
+		Zone.setSupersetFlag(false);
+		HashMap<PrjState, List<TimedPrjState>> groups = new HashMap<PrjState, List<TimedPrjState>>();
+		for (PrjState state : search()) {
+			TimedPrjState timed = (TimedPrjState) state;
+			PrjState untimed = timed.getUntimedPrjState();
+			List<TimedPrjState> group = groups.get(untimed);
+			if (group == null) {
+				group = new ArrayList<TimedPrjState>();
+				groups.put(untimed, group);
+			}
+			group.add(timed);
+		}
+		return groups;
+	}
+
+	private static TimedStateIndex index(List<TimedPrjState> states) {
+		TimedStateIndex index = new TimedStateIndex();
+		for (TimedPrjState s : states)
+			index.add(s);
+		return index;
+	}
+
+	@Test
+	public void testFind() {
+		HashMap<PrjState, List<TimedPrjState>> groups = exactStates();
+		assertEquals(5, groups.size());
+		for (List<TimedPrjState> group : groups.values()) {
+			// Index all but the last state, so that some queries have no answer.
+			List<TimedPrjState> indexed = group.subList(0, group.size() - 1);
+			TimedStateIndex index = index(indexed);
+			assertEquals(indexed.size(), index.size());
+			for (TimedPrjState s : group) {
+				boolean superset = false;
+				boolean equal = false;
+				for (TimedPrjState t : indexed) {
+					superset |= s.subsetZone(t);
+					equal |= s.equals(t);
+				}
+				TimedPrjState found = index.findSuperset(s);
+				assertEquals(superset, found != null);
+				if (found != null)
+					assertTrue(s.subsetZone(found));
+				found = index.findEqual(s);
+				assertEquals(equal, found != null);
+				if (found != null)
+					assertEquals(s, found);
+			}
+		}
+	}
+
+	@Test
+	public void testRemoveSubsets() {
+		for (List<TimedPrjState> group : exactStates().values()) {
+			for (TimedPrjState s : group) {
+				TimedStateIndex index = index(group);
+				HashSet<TimedPrjState> expected = new HashSet<TimedPrjState>();
+				for (TimedPrjState t : group)
+					if (s.supersetZone(t))
+						expected.add(t);
+				ArrayList<TimedPrjState> removed = index.removeSubsets(s);
+				assertEquals(expected, new HashSet<TimedPrjState>(removed));
+				assertEquals(group.size() - removed.size(), index.size());
+				for (TimedPrjState t : index)
+					assertFalse(expected.contains(t));
+			}
+		}
+	}
+
+	@Test
+	public void testSubsetSearch() {
+		HashSet<PrjState> exact = new HashSet<PrjState>(exactStates().keySet());
+		Zone.setSubsetFlag(true);
+		Zone.setSupersetFlag(true);
+		HashSet<PrjState> untimed = new HashSet<PrjState>();
+		for (PrjState state : search())
+			untimed.add(((TimedPrjState) state).getUntimedPrjState());
+		assertEquals(exact, untimed);
+	}
+}
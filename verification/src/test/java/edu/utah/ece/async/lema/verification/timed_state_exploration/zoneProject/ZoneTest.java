@@ -0,0 +1,131 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.Analysis;
+import edu.utah.ece.async.lema.verification.platu.logicAnalysis.StateSetInterface;
+import edu.utah.ece.async.lema.verification.platu.main.Options;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Runs the zone based timed search with the closure check turned on, so that
+ * every DBM closed incrementally while transitions fire is compared against its
+ * full Floyd-Warshall closure.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ZoneTest {
+
+	@Before
+	public void setUp() {
+		Options.setTimingAnalsysisType("zone");
+	}
+
+	@After
+	public void tearDown() {
+		Options.setTimingAnalsysisType("off");
+		Zone.setCheckClosureFlag(false);
+		Zone.setSubsetFlag(true);
+		Zone.setSupersetFlag(true);
+	}
+
+	/**
+	 * Creates the state graphs of two timed LPNs. a cycles between two places and
+	 * sets its output x on the way. b waits for x and then cycles too. The delays
+	 * overlap, so every combination of the places of a and b is reached once x is
+	 * set, which gives 5 un-timed states.
+	 */
+	private static StateGraph[] createStateGraphs() {
+		LPN a = new LPN();
+		a.setLabel("a");
+		a.addOutput("x", "false");
+		a.addPlace("a0", true);
+		a.addPlace("a1", false);
+		addTransition(a, "ta0", "a0", "a1", "uniform(1,3)");
+		a.addBoolAssign("ta0", "x", "TRUE");
+		addTransition(a, "ta1", "a1", "a0", "uniform(2,4)");
+
+		LPN b = new LPN();
+		b.setLabel("b");
+		b.addInput("x", "false");
+		b.addPlace("b0", true);
+		b.addPlace("b1", false);
+		addTransition(b, "tb0", "b0", "b1", "uniform(0,2)");
+		b.addEnabling("tb0", "x");
+		addTransition(b, "tb1", "b1", "b0", "uniform(1,5)");
+
+		LPN[] lpns = { a, b };
+		StateGraph[] sgArray = new StateGraph[lpns.length];
+		for (int i = 0; i < lpns.length; i++) {
+			lpns[i].setLpnIndex(i);
+			sgArray[i] = new StateGraph(lpns[i]);
+			lpns[i].addStateGraph(sgArray[i]);
+		}
+		return sgArray;
+	}
+
+	private static void addTransition(LPN lpn, String name, String preset, String postset, String delay) {
+		lpn.addTransition(name);
+		lpn.addMovement(preset, name);
+		lpn.addMovement(name, postset);
+		lpn.changeDelay(name, delay);
+	}
+
+	private static StateSetInterface search() {
+		StateGraph[] sgArray = createStateGraphs();
+		State[] initStateArray = new State[sgArray.length];
+		for (int i = 0; i < sgArray.length; i++)
+			initStateArray[i] = sgArray[i].addState(sgArray[i].genInitialState());
+		return new Analysis(sgArray).search_dfs(sgArray, initStateArray);
+	}
+
+	private static int untimedCount(StateSetInterface reached) {
+		HashSet<PrjState> untimed = new HashSet<PrjState>();
+		for (PrjState state : reached)
+			untimed.add(((TimedPrjState) state).getUntimedPrjState());
+		return untimed.size();
+	}
+
+	@Test
+	public void testIncrementalClosure() {
+		Zone.setSubsetFlag(false);
+		Zone.setSupersetFlag(false);
+		Zone.setCheckClosureFlag(true);
+		// An incremental closure that differs from the full one throws an IllegalStateException.
+		StateSetInterface checked = search();
+		assertEquals(5, untimedCount(checked));
+
+		Zone.setCheckClosureFlag(false);
+		StateSetInterface unchecked = search();
+		assertEquals(checked.size(), unchecked.size());
+	}
+
+	@Test
+	public void testIncrementalClosureWithSubsets() {
+		Zone.setCheckClosureFlag(true);
+		assertEquals(5, untimedCount(search()));
+	}
+}